@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
@@ -76,7 +77,7 @@ public abstract class MovWriter {
 	public static final long DEFAULT_TIME_SCALE = 1000;
 	
 	private static class VideoSample {
-		final int duration;
+		int duration;
 		final long fileLength;
 		final long dataStart;
 		public VideoSample(int duration,long dataStart,long fileLength) throws InvalidDurationException, InvalidFileLengthException {
@@ -168,6 +169,26 @@ public abstract class MovWriter {
 			}
 		}
 
+		/** Extend the duration of the last sample, rather than
+		 * writing out another copy of the same image.
+		 */
+		void extendLastSample(int extraDuration) throws IOException {
+			if(extraDuration<=0) throw new InvalidDurationException("duration ("+extraDuration+") must be greater than zero.");
+			if(samples.size()==0) throw new IllegalStateException("there is no frame to extend");
+			
+			VideoSample sample = samples.get(samples.size()-1);
+			sample.duration += extraDuration;
+			totalDuration += extraDuration;
+			stts.extendLastSample(extraDuration);
+			
+			if(samplesInCurrentChunk>0) {
+				durationOfCurrentChunk += extraDuration;
+				if(durationOfCurrentChunk>=DEFAULT_TIME_SCALE) {
+					closeChunk();
+				}
+			}
+		}
+
 		void addFrame(int duration, byte[] imageFile) throws IOException {
 			if(w==-1 && h==-1) {
 				Dimension d = ImageSize.getSizeUsingImageIO(imageFile);
@@ -209,6 +230,16 @@ public abstract class MovWriter {
 	/** The video track. */
 	protected VideoTrack videoTrack = new VideoTrack();
 	
+	/** Whether consecutive identical frames are merged into one sample. */
+	private boolean mergeDuplicateFrames = false;
+	
+	/** The last image added, and its hash, when merging duplicate frames. */
+	private byte[] lastImage;
+	private int lastImageHash;
+	
+	/** The number of frames merged into the previous sample. */
+	private long mergedFrameCount = 0;
+	
 	/** Constructs a new <code>MovWriter</code>.
 	 * <P>By constructing this object a <code>FileOutputStream</code>
 	 * is opened for the destination file.  It remains open until
@@ -312,6 +343,7 @@ public abstract class MovWriter {
 		long byteSize = out.getBytesWritten() - startPosition;
 		VideoSample sample = new VideoSample(relativeDuration, out.getBytesWritten()-byteSize, byteSize);
 		videoTrack.addSample(sample);
+		lastImage = null;
 	}
 	
 	protected abstract void writeFrame(OutputStream out,BufferedImage image,Map<String, Object> settings) throws IOException;
@@ -333,9 +365,51 @@ public abstract class MovWriter {
 	public synchronized void addFrame(int duration, byte[] image) throws IOException {
 		if(closed) throw new IllegalArgumentException("this writer has already been closed");
 		
+		if(mergeDuplicateFrames) {
+			int hash = Arrays.hashCode(image);
+			if(lastImage!=null && hash==lastImageHash && Arrays.equals(image, lastImage)) {
+				videoTrack.extendLastSample(duration);
+				mergedFrameCount++;
+				return;
+			}
+			lastImage = image;
+			lastImageHash = hash;
+		}
+		
 		videoTrack.addFrame(duration, image);
 	}
 	
+	/** Extends the duration of the last frame added, instead of adding
+	 * a frame with the same image again.
+	 * 
+	 * @param duration the duration (in milliseconds) to add to the last frame.
+	 * @throws IOException
+	 */
+	public synchronized void extendLastFrame(int duration) throws IOException {
+		if(closed) throw new IllegalArgumentException("this writer has already been closed");
+		
+		videoTrack.extendLastSample(duration);
+		mergedFrameCount++;
+	}
+	
+	/** Whether a frame added with <code>addFrame(int, byte[])</code> that
+	 * has exactly the same image data as the previous one is merged into
+	 * the previous frame (extending its duration) rather than written out
+	 * again.  This is off by default.
+	 */
+	public synchronized void setMergeDuplicateFrames(boolean b) {
+		mergeDuplicateFrames = b;
+		if(!b) {
+			lastImage = null;
+		}
+	}
+	
+	/** The number of frames that were merged into the previous frame.
+	 */
+	public synchronized long getMergedFrameCount() {
+		return mergedFrameCount;
+	}
+	
 	/** Subclasses must define the VideoSampleDescriptionEntry this writer uses.
 	 */
 	protected abstract VideoSampleDescriptionEntry getVideoSampleDescriptionEntry();
@@ -114,6 +114,26 @@ public class TimeToSampleAtom extends LeafAtom {
 		}
 	}
 	
+	/** Extend the duration of the last sample in this atom.
+	 * 
+	 * @param extraDuration the duration to add, relative to the enclosing
+	 * media's time scale.
+	 */
+	public void extendLastSample(long extraDuration) {
+		if(table.length==0) throw new IllegalStateException("there is no sample to extend");
+		
+		TimeToSampleEntry last = table[table.length-1];
+		long newDuration = last.sampleDuration+extraDuration;
+		if(last.sampleCount==1) {
+			TimeToSampleEntry[] newTable = new TimeToSampleEntry[table.length-1];
+			System.arraycopy(table,0,newTable,0,newTable.length);
+			table = newTable;
+		} else {
+			last.sampleCount--;
+		}
+		addSampleTime(newDuration);
+	}
+	
 	public long getDurationOfSample(long sampleIndex) {
 		for(int a = 0; a<table.length; a++) {
 			if(sampleIndex<table[a].sampleCount) {
@@ -1,18 +1,31 @@
 package com.bric;
 
 import com.bric.qt.io.JPEGMovWriter;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 public class MjpegWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void basic() throws IOException {
-        JPEGMovWriter movWriter = new JPEGMovWriter(new File("output5.mov"));
+        JPEGMovWriter movWriter = new JPEGMovWriter(folder.newFile("output5.mov"));
 
         String[] files = { "1480880207035.jpeg",
             "1480880207046.jpeg",
@@ -61,4 +74,39 @@ public class MjpegWriterTest {
         }
         movWriter.close();
     }
+
+    private static byte[] jpeg(Color color) throws IOException {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, 64, 64);
+        g.dispose();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", output);
+        return output.toByteArray();
+    }
+
+    @Test
+    public void mergeDuplicateFrames() throws IOException {
+        byte[] red = jpeg(Color.RED);
+        byte[] blue = jpeg(Color.BLUE);
+
+        File merged = folder.newFile("merged.mov");
+        File unmerged = folder.newFile("unmerged.mov");
+        JPEGMovWriter mergedWriter = new JPEGMovWriter(merged);
+        mergedWriter.setMergeDuplicateFrames(true);
+        JPEGMovWriter unmergedWriter = new JPEGMovWriter(unmerged);
+        for (int i = 0; i < 20; ++i) {
+            byte[] image = i < 10 || i == 15 ? red : blue;
+            mergedWriter.addFrame(40, image);
+            unmergedWriter.addFrame(40, image);
+        }
+        mergedWriter.extendLastFrame(100);
+        mergedWriter.close();
+        unmergedWriter.close();
+
+        // red x10, blue x5, red, blue x4, plus the extended last frame
+        assertEquals(17, mergedWriter.getMergedFrameCount());
+        assertTrue(merged.length() < unmerged.length());
+    }
 }
@@ -146,6 +146,34 @@ pizza.getWaitTimeout = function() {};
  */
 pizza.openCSV = function(filename) {};
 
+/**
+ * Hand out the rows of a CSV file to the users of a load test.
+ *
+ * Unlike {@link module:CSV#randomRow} the rows come from a cursor shared by all
+ * the users, so with the "unique" strategy no two users will get the same row.
+ * The first row is treated as the column names and isn't returned.
+ *
+ * Strategies:
+ * - "sequential": rows in file order
+ * - "circular": rows in file order, starting again at the end
+ * - "unique": each row once, in random order
+ * - "partitioned": each worker gets its own slice of the rows, in file order
+ *
+ * @example
+ * var users = pizza.feeder("users.csv", "unique");
+ * var user = users.next();
+ * b.type("#username", user.get("username"));
+ *
+ * @param {String} filename the CSV filename to read.
+ * @param {String} strategy how the rows are handed out.
+ * @param {String=} onExhausted what to do when there are no rows left: "stop" to
+ * return null, "wrap" to start handing out the rows again, or "fail" (the default)
+ * to throw an error.
+ *
+ * @return {module:Feeder}
+ */
+pizza.feeder = function(filename, strategy, onExhausted) {};
+
 /**
  * Save a file to the script results.
  *
@@ -1690,6 +1718,34 @@ Browser.prototype.getInnerText = function(selector) {};
  */
 Browser.prototype.submit = function(selector) {};
 
+/**
+ * Send the page interactions made in the given function to the browser
+ * together, rather than waiting on the browser after each one.
+ *
+ * click(), focus(), hover(), clear(), selectContent(), type(), check(),
+ * select(), setValue() and submit() are queued and run by the browser in
+ * order once the function returns.  Filling in a large form this way takes
+ * one round trip to the browser rather than one for every field.
+ *
+ * Any other browser function called within the batch (one that returns a
+ * value or waits on the page) sends the queued commands first.
+ *
+ * @example
+ * // Fill in and submit a form
+ * b.batch(function() {
+ *     b.type("#firstName", "Jane");
+ *     b.type("#lastName", "Doe");
+ *     b.check("#terms");
+ *     b.click("#submit");
+ * });
+ * b.waitPageLoad();
+ *
+ * @param {Function} func the function making the calls to batch
+ * @throws Throws an exception if one of the queued commands fails, the
+ * commands after it are not run
+ */
+Browser.prototype.batch = function(func) {};
+
 /**
  * Test if an element matching the given selector exists in the current frame/tab.
  *
@@ -3082,6 +3138,30 @@ CSVRow.prototype.get = function(column) {};
  */
 CSVRow.prototype.getNumColumns = function() {};
 
+/**
+ * Rows of a CSV file shared between users
+ *
+ * See {@link module:pizza.feeder}
+ *
+ * @exports Feeder
+ */
+Feeder = {};
+
+/**
+ * Take the next row.
+ *
+ * @return {module:CSVRow} the row, or null if the rows have run out and the
+ * feeder was opened with "stop"
+ */
+Feeder.prototype.next = function() {};
+
+/**
+ * The number of rows, not counting the column names
+ *
+ * @return {Number}
+ */
+Feeder.prototype.size = function() {};
+
 /**
  * An array of bytes with a content type
  *
@@ -1,6 +1,7 @@
 package com.loadtestgo.script.api;
 
 import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.NativeFunction;
 import org.mozilla.javascript.NativeObject;
 import org.mozilla.javascript.regexp.NativeRegExp;
 
@@ -851,6 +852,31 @@ public interface Browser {
      */
     void submit(String selector);
 
+    /**
+     * Send the page interactions made in the given function to the browser
+     * together, rather than waiting on the browser after each one.
+     * <p>
+     * click(), focus(), hover(), clear(), selectContent(), type(), check(),
+     * select(), setValue() and submit() are queued and run by the browser in
+     * order once the function returns.  Filling in a large form this way
+     * takes one round trip to the browser rather than one for every field.
+     * <p>
+     * Any other browser function called within the batch (one that returns a
+     * value or waits on the page) sends the queued commands first.  If a
+     * queued command fails the rest aren't run and the error is thrown from
+     * batch(), or the function sending the queued commands.
+     * <p>
+     * b.batch(function() {
+     *   b.type("#firstName", "Jane");
+     *   b.type("#lastName", "Doe");
+     *   b.check("#terms");
+     *   b.click("#submit");
+     * });
+     *
+     * @param func the function making the calls to batch
+     */
+    void batch(NativeFunction func);
+
     /**
      * Test if an element matching the given selector exists in the current frame/tab.
      *
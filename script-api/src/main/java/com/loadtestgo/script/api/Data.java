@@ -1,19 +1,50 @@
 package com.loadtestgo.script.api;
 
+import java.nio.ByteBuffer;
+
 public class Data {
     String type;
     byte[] bytes;
+    ByteBuffer buffer;
 
     public Data(String type, byte[] bytes) {
         this.bytes = bytes;
         this.type = type;
     }
 
+    /**
+     * Data held in a buffer, it's only copied to a byte array if getBytes()
+     * is called.
+     */
+    public Data(String type, ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+        this.type = type;
+    }
+
     public String getType() {
         return type;
     }
 
-    public byte[] getBytes() {
+    public synchronized byte[] getBytes() {
+        if (bytes == null) {
+            ByteBuffer b = buffer.duplicate();
+            bytes = new byte[b.remaining()];
+            b.get(bytes);
+        }
         return bytes;
     }
+
+    /**
+     * A read only view of the data, for writing it out without a copy
+     */
+    public ByteBuffer getBuffer() {
+        if (buffer != null) {
+            return buffer.asReadOnlyBuffer();
+        }
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    public int getLength() {
+        return buffer != null ? buffer.remaining() : bytes.length;
+    }
 }
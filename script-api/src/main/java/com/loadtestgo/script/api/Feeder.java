@@ -0,0 +1,16 @@
+package com.loadtestgo.script.api;
+
+public interface Feeder {
+    /**
+     * The next row for this user, or null once the rows have run out and
+     * the feeder was told to stop.
+     */
+    CSV.Row next();
+
+    /**
+     * The number of data rows (not counting the header row)
+     */
+    int size();
+
+    String getStrategy();
+}
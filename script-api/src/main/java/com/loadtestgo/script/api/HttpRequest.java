@@ -2,6 +2,7 @@ package com.loadtestgo.script.api;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.loadtestgo.util.HttpHeader;
+import com.loadtestgo.util.HttpHeaders;
 import com.loadtestgo.util.Http;
 
 import java.util.ArrayList;
@@ -14,13 +15,13 @@ public class HttpRequest {
     public String method;
     public String url;
     public String protocol;
-    public ArrayList<HttpHeader> requestHeaders = new ArrayList<>();
+    public HttpHeaders requestHeaders = new HttpHeaders();
     public int requestBodySize;
 
     // Response
     public int statusCode;
     public String statusText;
-    public ArrayList<HttpHeader> responseHeaders = new ArrayList<>();
+    public HttpHeaders responseHeaders = new HttpHeaders();
     public int bodySize;
     public int bytesRecvCompressed = -1;
 
@@ -96,12 +97,12 @@ public class HttpRequest {
         this.url = url;
     }
 
-    public ArrayList<HttpHeader> getRequestHeaders() {
+    public HttpHeaders getRequestHeaders() {
         return requestHeaders;
     }
 
-    public void setRequestHeaders(ArrayList<HttpHeader> requestHeaders) {
-        this.requestHeaders = requestHeaders;
+    public void setRequestHeaders(List<HttpHeader> requestHeaders) {
+        this.requestHeaders = HttpHeaders.of(requestHeaders);
     }
 
     public int getStatusCode() {
@@ -112,12 +113,12 @@ public class HttpRequest {
         this.statusCode = statusCode;
     }
 
-    public ArrayList<HttpHeader> getResponseHeaders() {
+    public HttpHeaders getResponseHeaders() {
         return responseHeaders;
     }
 
-    public void setResponseHeaders(ArrayList<HttpHeader> responseHeaders) {
-        this.responseHeaders = responseHeaders;
+    public void setResponseHeaders(List<HttpHeader> responseHeaders) {
+        this.responseHeaders = HttpHeaders.of(responseHeaders);
     }
 
     public String getRedirectUrl() {
@@ -201,17 +201,7 @@ public class Page {
 
     public void addRequest(HttpRequest request) {
         // Keep the list in order of start time
-        int i = requests.size();
-        for (; i > 0; --i) {
-            HttpRequest r = requests.get(i - 1);
-            if (request.getStartTime() >= r.getStartTime()) {
-                break;
-            }
-        }
-        if (i < 0) {
-            i = 0;
-        }
-        requests.add(i, request);
+        requests.add(findInsertPosition(request.getStartTime()), request);
 
         // If the page is currently uninitialized set the URL to be of this
         // request.
@@ -220,6 +210,74 @@ public class Page {
         }
     }
 
+    /**
+     * Move a request to its correct position in the list after its start time
+     * was changed from previousStartTime.
+     */
+    public void updateRequestPosition(HttpRequest request, long previousStartTime) {
+        int pos = findRequest(request, previousStartTime);
+        if (pos < 0) {
+            return;
+        }
+        requests.remove(pos);
+        requests.add(findInsertPosition(request.getStartTime()), request);
+    }
+
+    /**
+     * Remove a request from the page, used when the request has been saved
+     * elsewhere and doesn't need to be kept in memory any longer.
+     */
+    public void removeRequest(HttpRequest request) {
+        int pos = findRequest(request, request.getStartTime());
+        if (pos >= 0) {
+            requests.remove(pos);
+        }
+    }
+
+    /**
+     * Position after the last request starting at or before startTime.
+     *
+     * Requests mostly arrive in start time order so this is usually the end
+     * of the list.
+     */
+    private int findInsertPosition(long startTime) {
+        int size = requests.size();
+        if (size == 0 || requests.get(size - 1).getStartTime() <= startTime) {
+            return size;
+        }
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (requests.get(mid).getStartTime() <= startTime) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int findRequest(HttpRequest request, long startTime) {
+        int low = 0;
+        int high = requests.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (requests.get(mid).getStartTime() < startTime) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < requests.size() && requests.get(i).getStartTime() == startTime; ++i) {
+            if (requests.get(i) == request) {
+                return i;
+            }
+        }
+        // Not where we expected it, the list must have been changed by someone else
+        return requests.indexOf(request);
+    }
+
     public enum Error {
         Aborted,
         AccessDenied,
@@ -136,6 +136,10 @@ public interface Pizza {
 
     CSV openCSV(String filename) throws IOException;
 
+    Feeder feeder(String filename, String strategy);
+
+    Feeder feeder(String filename, String strategy, String onExhausted);
+
     void saveFile(String name, Data data);
 
     void saveFile(String name, String data);
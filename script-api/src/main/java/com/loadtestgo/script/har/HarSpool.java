@@ -0,0 +1,271 @@
+package com.loadtestgo.script.har;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.loadtestgo.script.api.HttpRequest;
+import com.loadtestgo.script.api.Page;
+import com.loadtestgo.script.api.TestResult;
+import org.pmw.tinylog.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An append only log (NDJSON) of the HAR pages & entries of a test result,
+ * written while the test is still running.
+ *
+ * Each line is an object with a single "browser", "page" or "entry" field.
+ * Entries are written as soon as their request completes, pages once a newer
+ * page has been opened in their tab and again when the test finishes (the
+ * last line for a page wins).  Requests of finished pages are removed from
+ * the page after they're written, so a long running test only keeps the
+ * requests of the pages that are still open in memory, and a crash doesn't
+ * lose the requests that were already written.
+ *
+ * HarWriter.saveSpool() turns the spool into a HAR, this also works on the
+ * spool of a test that didn't finish.
+ */
+public class HarSpool implements Closeable {
+    static final String BROWSER = "browser";
+    static final String PAGE = "page";
+    static final String ENTRY = "entry";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final OutputStream output;
+    private final JsonGenerator generator;
+
+    // Requests that have been written out but are still in their page
+    private final Set<HttpRequest> spooledRequests = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<Page> finishedPages = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final ArrayList<HarCookie> cookies = new ArrayList<>();
+    private final HarEntryTimings timings = new HarEntryTimings();
+
+    private long numEntries = 0;
+    private long numEvicted = 0;
+    private boolean failed = false;
+    private boolean closed = false;
+
+    public HarSpool(File file) throws IOException {
+        this.file = file;
+        this.output = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+        this.generator = HarWriter.jsonFactory.createGenerator(output);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.generator.setRootValueSeparator(null);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Call once the request has completed.  The request is written out, and
+     * removed from the page if the page has already finished.
+     *
+     * @return true if the request was removed from the page
+     */
+    public synchronized boolean requestFinished(Page page, HttpRequest request) {
+        if (!writeRequest(page, request)) {
+            return false;
+        }
+        if (finishedPages.contains(page)) {
+            spooledRequests.remove(request);
+            page.removeRequest(request);
+            numEvicted++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Call once the page is no longer the current page of its tab.  The page
+     * is written out and the requests that have already been written are
+     * removed from it.
+     *
+     * @return the requests removed from the page
+     */
+    public synchronized List<HttpRequest> pageFinished(Page page) {
+        if (!finishedPages.add(page) || !isWritable()) {
+            return Collections.emptyList();
+        }
+
+        writePage(page);
+        flush();
+        if (!isWritable()) {
+            return Collections.emptyList();
+        }
+
+        List<HttpRequest> evicted = new ArrayList<>();
+        for (HttpRequest request : page.getRequests()) {
+            if (spooledRequests.remove(request)) {
+                evicted.add(request);
+            }
+        }
+        if (!evicted.isEmpty()) {
+            Set<HttpRequest> remove = Collections.newSetFromMap(new IdentityHashMap<>());
+            remove.addAll(evicted);
+            page.getRequests().removeIf(remove::contains);
+            numEvicted += evicted.size();
+        }
+        return evicted;
+    }
+
+    /**
+     * Write out everything that hasn't been written yet: the browser details,
+     * all pages and the requests that haven't completed.
+     */
+    public synchronized void finish(TestResult result) {
+        if (!isWritable()) {
+            return;
+        }
+
+        try {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart(BROWSER);
+            generator.writeStringField("name", result.getBrowserName());
+            generator.writeStringField("version", result.getBrowserVersion());
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            writeFailed(e);
+            return;
+        }
+
+        List<Page> pages;
+        synchronized (result) {
+            pages = new ArrayList<>(result.getPages());
+        }
+        for (Page page : pages) {
+            writePage(page);
+            for (HttpRequest request : new ArrayList<>(page.getRequests())) {
+                if (!spooledRequests.contains(request)) {
+                    writeRequest(page, request);
+                }
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Set if the spool couldn't be written to, nothing further is written or
+     * removed from the pages once it is.
+     */
+    public synchronized boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * The number of entries written
+     */
+    public synchronized long getNumEntries() {
+        return numEntries;
+    }
+
+    /**
+     * The number of requests removed from their page after being written
+     */
+    public synchronized long getNumEvicted() {
+        return numEvicted;
+    }
+
+    /**
+     * Anything received after the spool is closed is ignored.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            generator.close();
+        } finally {
+            output.close();
+        }
+    }
+
+    private boolean isWritable() {
+        return !failed && !closed;
+    }
+
+    private boolean writeRequest(Page page, HttpRequest request) {
+        if (!isWritable() || spooledRequests.contains(request)) {
+            return false;
+        }
+        // Data urls aren't written to the HAR, treat them as written so
+        // they're still removed from finished pages
+        if (request.getUrl() != null && request.getUrl().startsWith("data:")) {
+            spooledRequests.add(request);
+            return true;
+        }
+
+        try {
+            generator.writeStartObject();
+            generator.writeFieldName(ENTRY);
+            HarWriter.writeEntry(request, HarWriter.pageRef(pageNum(page)), cookies, timings, generator);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            writeFailed(e);
+            return false;
+        }
+        spooledRequests.add(request);
+        numEntries++;
+        return true;
+    }
+
+    private void writePage(Page page) {
+        if (!isWritable()) {
+            return;
+        }
+
+        try {
+            generator.writeStartObject();
+            generator.writeFieldName(PAGE);
+            HarWriter.writePage(page, pageNum(page), generator);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    private void flush() {
+        if (!isWritable()) {
+            return;
+        }
+
+        try {
+            generator.flush();
+        } catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    private void writeFailed(IOException e) {
+        Logger.error("Unable to write HAR spool {}: {}", file, e.getMessage());
+        failed = true;
+    }
+
+    /**
+     * Pages are numbered in the order they were added to the test result
+     */
+    private static int pageNum(Page page) {
+        Object pageId = page.getPageId();
+        if (pageId instanceof Integer) {
+            return (Integer)pageId + 1;
+        }
+        return 0;
+    }
+}
@@ -1,13 +1,19 @@
 package com.loadtestgo.script.har;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.loadtestgo.script.api.HttpRequest;
 import com.loadtestgo.script.api.Page;
 import com.loadtestgo.script.api.TestResult;
 import com.loadtestgo.util.HttpHeader;
+import com.loadtestgo.util.HttpHeaders;
 import com.loadtestgo.util.StringUtils;
 import org.pmw.tinylog.Logger;
 
@@ -15,18 +21,67 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+/**
+ * Writes test results out as HAR files.
+ *
+ * The HAR is streamed straight from the pages and requests of the test
+ * result, so no copy of the result is built up in memory while saving.
+ * The mappers, json factory & date formatter are shared and safe to use
+ * from multiple threads at once.
+ */
 public class HarWriter {
+    private static final String CREATOR_NAME = "Loadcust";
+    private static final String CREATOR_VERSION = "0.1";
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private static final DateTimeFormatter iso8601 =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ").withZone(ZoneId.systemDefault());
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    static final JsonFactory jsonFactory = mapper.getFactory();
+
+    private static final ObjectMapper resultMapper = new ObjectMapper();
+    static {
+        resultMapper.configure(SerializationFeature.WRITE_NULL_MAP_VALUES, false);
+        resultMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        resultMapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+    }
+
+    /**
+     * Write the test result as a HAR to the given stream.  The stream is
+     * flushed but not closed.
+     */
     public static void save(TestResult result, OutputStream output) throws IOException {
-        Har har = toHar(result);
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.writeValue(output, har);
+        try (JsonGenerator generator = jsonFactory.createGenerator(output)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            write(result, generator);
+        }
+    }
+
+    /**
+     * Write the test result as a HAR to the given stream, optionally gzip
+     * compressing it as it is written.  The stream is flushed but not closed.
+     */
+    public static void save(TestResult result, OutputStream output, boolean gzip) throws IOException {
+        if (!gzip) {
+            save(result, output);
+            return;
+        }
+
+        GZIPOutputStream gzipOutput = new GZIPOutputStream(output, GZIP_BUFFER_SIZE);
+        save(result, gzipOutput);
+        gzipOutput.finish();
+        gzipOutput.flush();
     }
 
     public static void save(TestResult testResult, String filePath) throws IOException {
@@ -41,6 +96,19 @@ public class HarWriter {
         }
     }
 
+    /**
+     * Save a test result as a gzip compressed HAR (.har.gz)
+     *
+     * @param testResult the input result to save
+     * @param filePath the file path to write to
+     * @throws IOException if there was a problem
+     */
+    public static void saveGzip(TestResult testResult, File filePath) throws IOException {
+        try (OutputStream output = new FileOutputStream(filePath)) {
+            HarWriter.save(testResult, output, true);
+        }
+    }
+
     /**
      * Save a test result to a file & compress using zip
      *
@@ -50,25 +118,361 @@ public class HarWriter {
      * @throws IOException if there was a problem
      */
     public static void saveZip(TestResult result, String fileName, File outputZip) throws IOException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.configure(SerializationFeature.WRITE_NULL_MAP_VALUES, false);
-        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-        objectMapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        try (FileOutputStream fileOutputStream = new FileOutputStream(outputZip);
+             ZipOutputStream zipOutputStream = new ZipOutputStream(fileOutputStream)) {
+            ZipEntry zipEntry = new ZipEntry(fileName);
+            zipOutputStream.putNextEntry(zipEntry);
+
+            resultMapper.writeValue(zipOutputStream, result);
+
+            zipOutputStream.closeEntry();
+        }
+    }
+
+    /**
+     * Assemble a HAR from a spool written by HarSpool.
+     *
+     * @param spoolFile the spool to read
+     * @param harFile the file path to write to
+     * @param gzip gzip compress the HAR
+     * @throws IOException if there was a problem
+     */
+    public static void saveSpool(File spoolFile, File harFile, boolean gzip) throws IOException {
+        try (OutputStream output = new FileOutputStream(harFile)) {
+            HarWriter.saveSpool(spoolFile, output, gzip);
+        }
+    }
+
+    /**
+     * Assemble a HAR from a spool written by HarSpool and write it to the
+     * given stream.  The stream is flushed but not closed.
+     *
+     * Only the pages are read into memory, the entries are copied across
+     * as they are read.  If the spool is truncated (the test didn't finish)
+     * everything up to the last complete line is written.
+     */
+    public static void saveSpool(File spoolFile, OutputStream output, boolean gzip) throws IOException {
+        GZIPOutputStream gzipOutput = null;
+        if (gzip) {
+            gzipOutput = new GZIPOutputStream(output, GZIP_BUFFER_SIZE);
+            output = gzipOutput;
+        }
+
+        try (JsonGenerator generator = jsonFactory.createGenerator(output)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            writeSpool(spoolFile, generator);
+        }
+
+        if (gzipOutput != null) {
+            gzipOutput.finish();
+            gzipOutput.flush();
+        }
+    }
+
+    private static void writeSpool(File spoolFile, JsonGenerator generator) throws IOException {
+        // First pass, the pages & browser details (the last line for each
+        // wins) and the number of complete entries
+        JsonNode browser = null;
+        TreeMap<Integer, JsonNode> pages = new TreeMap<>();
+        int numEntries = 0;
+        try (JsonParser parser = jsonFactory.createParser(spoolFile)) {
+            String type;
+            while ((type = nextSpoolLine(parser, spoolFile)) != null) {
+                if (type.equals(HarSpool.BROWSER)) {
+                    browser = parser.readValueAsTree();
+                } else if (type.equals(HarSpool.PAGE)) {
+                    JsonNode page = parser.readValueAsTree();
+                    pages.put(parsePageNum(page.path("id").asText()), page);
+                } else {
+                    parser.skipChildren();
+                    if (type.equals(HarSpool.ENTRY)) {
+                        numEntries++;
+                    }
+                }
+            }
+        } catch (JsonProcessingException e) {
+            Logger.warn("HAR spool {} is truncated: {}", spoolFile, e.getMessage());
+        }
+
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("log");
+        generator.writeStringField("version", "1.2");
 
-        FileOutputStream fileOutputStream = new FileOutputStream(outputZip);
-        ZipOutputStream zipOutputStream = new ZipOutputStream(fileOutputStream);
+        generator.writeObjectFieldStart("creator");
+        generator.writeStringField("name", CREATOR_NAME);
+        generator.writeStringField("version", CREATOR_VERSION);
+        generator.writeEndObject();
 
-        ZipEntry zipEntry = new ZipEntry(fileName);
-        zipOutputStream.putNextEntry(zipEntry);
+        generator.writeFieldName("browser");
+        if (browser != null) {
+            generator.writeTree(browser);
+        } else {
+            generator.writeStartObject();
+            generator.writeNullField("name");
+            generator.writeNullField("version");
+            generator.writeEndObject();
+        }
+
+        generator.writeArrayFieldStart("pages");
+        for (JsonNode page : pages.values()) {
+            generator.writeTree(page);
+        }
+        generator.writeEndArray();
+
+        // Second pass, copy the entries across
+        generator.writeArrayFieldStart("entries");
+        try (JsonParser parser = jsonFactory.createParser(spoolFile)) {
+            String type;
+            while (numEntries > 0 && (type = nextSpoolLine(parser, spoolFile)) != null) {
+                if (type.equals(HarSpool.ENTRY)) {
+                    generator.copyCurrentStructure(parser);
+                    numEntries--;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        generator.writeEndArray();
 
-        objectMapper.writeValue(zipOutputStream, result);
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
 
-        zipOutputStream.closeEntry();
+    /**
+     * Move to the value of the next line of the spool.
+     *
+     * @return the type of the line, or null at the end of the spool
+     */
+    private static String nextSpoolLine(JsonParser parser, File spoolFile) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_OBJECT) {
+            // End of the previous line
+            token = parser.nextToken();
+        }
+        if (token == null) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME) {
+            throw new IOException(String.format("Invalid HAR spool %s", spoolFile));
+        }
+        String type = parser.getCurrentName();
+        parser.nextToken();
+        return type;
+    }
 
-        zipOutputStream.close();
-        fileOutputStream.close();
+    private static int parsePageNum(String pageRef) {
+        try {
+            return Integer.parseInt(pageRef.substring(pageRef.indexOf('_') + 1));
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
     }
 
+    private static void write(TestResult result, JsonGenerator generator) throws IOException {
+        ArrayList<Page> pages = result.getPages();
+
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("log");
+        generator.writeStringField("version", "1.2");
+
+        generator.writeObjectFieldStart("creator");
+        generator.writeStringField("name", CREATOR_NAME);
+        generator.writeStringField("version", CREATOR_VERSION);
+        generator.writeEndObject();
+
+        generator.writeObjectFieldStart("browser");
+        generator.writeStringField("name", result.getBrowserName());
+        generator.writeStringField("version", result.getBrowserVersion());
+        generator.writeEndObject();
+
+        generator.writeArrayFieldStart("pages");
+        int i = 1;
+        for (Page page : pages) {
+            writePage(page, i, generator);
+            ++i;
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("entries");
+        ArrayList<HarCookie> cookies = new ArrayList<>();
+        HarEntryTimings timings = new HarEntryTimings();
+        i = 1;
+        for (Page page : pages) {
+            String pageRef = pageRef(i);
+            for (HttpRequest request : page.getRequests()) {
+                // Ignore data Urls
+                if (request.getUrl().startsWith("data:")) {
+                    continue;
+                }
+                writeEntry(request, pageRef, cookies, timings, generator);
+            }
+            ++i;
+        }
+        generator.writeEndArray();
+
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    static void writePage(Page page, int pageNum, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("startedDateTime", pageStartedDateTime(page));
+        generator.writeStringField("id", pageRef(pageNum));
+        generator.writeStringField("title", pageTitle(page, pageNum));
+        generator.writeObjectFieldStart("pageTimings");
+        generator.writeNumberField("onContentLoad", timeDiff(page.getNavStartTime(), page.getDomContentLoadedTime()));
+        generator.writeNumberField("onLoad", timeDiff(page.getNavStartTime(), page.getNavEndTime()));
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    static void writeEntry(HttpRequest request,
+                           String pageRef,
+                           ArrayList<HarCookie> cookies,
+                           HarEntryTimings timings,
+                           JsonGenerator generator) throws IOException {
+        // Cookies are collected from both the request & response headers, so
+        // they need to be parsed before the request is written
+        cookies.clear();
+        HttpHeaders requestHeaders = request.getRequestHeaders();
+        for (int i = 0; i < requestHeaders.size(); ++i) {
+            if (requestHeaders.getName(i).equals(HttpHeader.SET_COOKIE)) {
+                parseCookies(requestHeaders.getValue(i), cookies);
+            }
+        }
+        String mimeType = "";
+        HttpHeaders responseHeaders = request.getResponseHeaders();
+        for (int i = 0; i < responseHeaders.size(); ++i) {
+            if (responseHeaders.nameEqualsIgnoreCase(i, HttpHeader.COOKIE)) {
+                parseCookies(responseHeaders.getValue(i), cookies);
+            } else if (responseHeaders.nameEqualsIgnoreCase(i, HttpHeader.CONTENT_TYPE)) {
+                mimeType = responseHeaders.getValue(i);
+            }
+        }
+
+        generator.writeStartObject();
+        generator.writeStringField("pageref", pageRef);
+        generator.writeStringField("startedDateTime", formatDate(request.getStartTime()));
+        generator.writeNumberField("time", entryTime(request, timings));
+
+        // Request
+        generator.writeObjectFieldStart("request");
+        generator.writeStringField("method", request.getMethod());
+        generator.writeStringField("url", request.getUrl());
+        generator.writeStringField("httpVersion", request.getRequestHttpVersion());
+        generator.writeArrayFieldStart("cookies");
+        for (HarCookie cookie : cookies) {
+            writeCookie(cookie, generator);
+        }
+        generator.writeEndArray();
+        writeHeaders(request.getRequestHeaders(), generator);
+        generator.writeArrayFieldStart("queryString");
+        generator.writeEndArray();
+        generator.writeNumberField("headersSize", request.getRequestHeadersSize());
+        generator.writeNumberField("bodySize", request.getRequestBodySize());
+        generator.writeEndObject();
+
+        // Response
+        generator.writeObjectFieldStart("response");
+        String httpVersion = "HTTP/1.1";
+        String statusText = "";
+        int status;
+        int bodySize;
+        if (request.isFromCache()) {
+            if (request.getProtocol() != null) {
+                httpVersion = request.getRequestHttpVersion();
+            }
+            status = 304;
+            statusText = request.getStatusText();
+            bodySize = 0;
+        } else {
+            if (request.getProtocol() != null) {
+                httpVersion = request.getProtocol();
+            }
+            status = request.getStatusCode();
+            if (request.getStatusText() != null) {
+                statusText = request.getStatusText();
+            }
+            bodySize = responseBodySize(request);
+        }
+        generator.writeNumberField("status", status);
+        generator.writeStringField("statusText", statusText);
+        generator.writeStringField("httpVersion", httpVersion);
+        generator.writeArrayFieldStart("cookies");
+        generator.writeEndArray();
+        writeHeaders(request.getResponseHeaders(), generator);
+        generator.writeObjectFieldStart("content");
+        generator.writeNumberField("size", request.getBodySize());
+        generator.writeNumberField("compression", contentCompression(request));
+        generator.writeStringField("mimeType", mimeType);
+        generator.writeEndObject();
+        String redirectUrl = request.getRedirectUrl();
+        generator.writeStringField("redirectURL", redirectUrl != null ? redirectUrl : "");
+        generator.writeNumberField("headersSize", request.getResponseHeadersSize());
+        generator.writeNumberField("bodySize", bodySize);
+        generator.writeEndObject();
+
+        generator.writeObjectFieldStart("cache");
+        generator.writeEndObject();
+
+        generator.writeObjectFieldStart("timings");
+        generator.writeNumberField("blocked", timings.blocked);
+        generator.writeNumberField("dns", timings.dns);
+        generator.writeNumberField("connect", timings.connect);
+        generator.writeNumberField("send", timings.send);
+        generator.writeNumberField("wait", timings.wait);
+        generator.writeNumberField("receive", timings.receive);
+        generator.writeNumberField("ssl", timings.ssl);
+        generator.writeEndObject();
+
+        if (request.getIp() != null) {
+            generator.writeStringField("serverIPAddress", request.getIp());
+        }
+        if (!request.isFromCache()) {
+            generator.writeStringField("connection", String.valueOf(request.getConnectionId()));
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeHeaders(HttpHeaders headers, JsonGenerator generator) throws IOException {
+        generator.writeArrayFieldStart("headers");
+        byte[] data = headers.getData();
+        for (int i = 0; i < headers.size(); ++i) {
+            generator.writeStartObject();
+            generator.writeStringField("name", headers.getName(i));
+            // Write the value straight from the packed UTF-8 bytes
+            generator.writeFieldName("value");
+            int length = headers.getValueLength(i);
+            if (length < 0) {
+                generator.writeNull();
+            } else {
+                generator.writeUTF8String(data, headers.getValueOffset(i), length);
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeCookie(HarCookie cookie, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", cookie.name);
+        generator.writeStringField("value", cookie.value);
+        generator.writeStringField("path", cookie.path);
+        generator.writeStringField("domain", cookie.domain);
+        generator.writeStringField("expires", cookie.expires);
+        generator.writeBooleanField("httpOnly", cookie.httpOnly);
+        generator.writeBooleanField("secure", cookie.secure);
+        if (cookie.comment != null) {
+            generator.writeStringField("comment", cookie.comment);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Build the HAR object graph for the test result.  The save methods
+     * stream the HAR directly, this is for when the objects themselves are
+     * needed.
+     */
     static Har toHar(TestResult result) {
         Har har = new Har();
 
@@ -76,25 +480,16 @@ public class HarWriter {
         har.log.browser.name = result.getBrowserName();
         har.log.browser.version = result.getBrowserVersion();
 
-        har.log.creator.name = "Loadcust";
-        har.log.creator.version = "0.1";
-
-        DateFormat iso8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZZ");
+        har.log.creator.name = CREATOR_NAME;
+        har.log.creator.version = CREATOR_VERSION;
 
         // Set the page loaded info
         int i = 1;
         for (Page page : pages) {
             HarPage harPage = new HarPage();
-            if (page.getNavStartTime() != null) {
-                harPage.startedDateTime = iso8601.format(page.getNavStartTime());
-            } else {
-                harPage.startedDateTime = iso8601.format(page.createdTime);
-            }
-            harPage.id = String.format("page_%d", i);
-            harPage.title = page.getFinalName();
-            if (StringUtils.isEmpty(harPage.title)) {
-                harPage.title = String.format("Page %d", i);
-            }
+            harPage.startedDateTime = pageStartedDateTime(page);
+            harPage.id = pageRef(i);
+            harPage.title = pageTitle(page, i);
             harPage.pageTimings.onContentLoad = timeDiff(page.getNavStartTime(), page.getDomContentLoadedTime());
             harPage.pageTimings.onLoad = timeDiff(page.getNavStartTime(), page.getNavEndTime());
             har.log.pages.add(harPage);
@@ -104,7 +499,7 @@ public class HarWriter {
         // Set the list of HTTP entries
         i = 1;
         for (Page page : pages) {
-            String pageRef = String.format("page_%d", i);
+            String pageRef = pageRef(i);
             for (HttpRequest request : page.getRequests()) {
                 // Ignore data Urls
                 if (request.getUrl().startsWith("data:")) {
@@ -117,10 +512,13 @@ public class HarWriter {
                 entry.request.httpVersion = request.getRequestHttpVersion();
                 entry.request.headersSize = request.getRequestHeadersSize();
                 entry.request.url = request.getUrl();
-                for (HttpHeader httpHeader : request.getRequestHeaders()) {
-                    entry.request.headers.add(new HarHeader(httpHeader.name, httpHeader.value));
-                    if (httpHeader.name.equals(HttpHeader.SET_COOKIE)) {
-                        parseCookies(httpHeader.value, entry.request.cookies);
+                HttpHeaders requestHeaders = request.getRequestHeaders();
+                for (int h = 0; h < requestHeaders.size(); ++h) {
+                    String name = requestHeaders.getName(h);
+                    String value = requestHeaders.getValue(h);
+                    entry.request.headers.add(new HarHeader(name, value));
+                    if (name.equals(HttpHeader.SET_COOKIE)) {
+                        parseCookies(value, entry.request.cookies);
                     }
                 }
                 if (request.isFromCache()) {
@@ -142,80 +540,29 @@ public class HarWriter {
                         entry.response.statusText = request.getStatusText();
                     }
                     entry.response.headersSize = request.getResponseHeadersSize();
-                    if (request.getRecvHeadersEnd() >= 0) {
-                        entry.response.bodySize = request.getRecvHeadersEnd();
-                    } else {
-                        entry.response.bodySize = request.getBodySize();
-                    }
+                    entry.response.bodySize = responseBodySize(request);
                     entry.connection = String.valueOf(request.getConnectionId());
                 }
                 if (request.getRedirectUrl() != null) {
                     entry.response.redirectURL = request.getRedirectUrl();
                 }
-                for (HttpHeader httpHeader : request.getResponseHeaders()) {
-                    entry.response.headers.add(new HarHeader(httpHeader.name, httpHeader.value));
-                    if (httpHeader.name.equalsIgnoreCase(HttpHeader.COOKIE)) {
-                        parseCookies(httpHeader.value, entry.request.cookies);
-                    } else if (httpHeader.name.equalsIgnoreCase(httpHeader.CONTENT_TYPE)) {
-                        entry.response.content.mimeType = httpHeader.value;
+                HttpHeaders responseHeaders = request.getResponseHeaders();
+                for (int h = 0; h < responseHeaders.size(); ++h) {
+                    String name = responseHeaders.getName(h);
+                    String value = responseHeaders.getValue(h);
+                    entry.response.headers.add(new HarHeader(name, value));
+                    if (name.equalsIgnoreCase(HttpHeader.COOKIE)) {
+                        parseCookies(value, entry.request.cookies);
+                    } else if (name.equalsIgnoreCase(HttpHeader.CONTENT_TYPE)) {
+                        entry.response.content.mimeType = value;
                     }
                 }
 
                 entry.response.content.size = request.getBodySize();
-                if (request.getRecvHeadersEnd() >= 0) {
-                    entry.response.content.compression = request.getBodySize() - request.getRecvHeadersEnd();
-                }
+                entry.response.content.compression = contentCompression(request);
 
-                long totalTime = 0;
-                if (request.getBlockedTime() >= 0) {
-                    entry.timings.blocked = request.getBlockedTime();
-                    totalTime += entry.timings.blocked;
-                }
-                if (request.getDnsStart() >= 0 && request.getDnsEnd() >= 0) {
-                    entry.timings.dns = request.getDnsEnd() - request.getDnsStart();
-                    totalTime += entry.timings.dns;
-                }
-                if (request.getConnectStart() >= 0 && request.getConnectEnd() > 0) {
-                    entry.timings.connect = request.getConnectEnd() - request.getConnectStart();
-                    totalTime += entry.timings.connect;
-                }
-                if (request.getSslStart() > 0 && request.getSslEnd() >= 0) {
-                    entry.timings.ssl = request.getSslEnd() - request.getSslStart();
-                }
-                if (request.getSendStart() >= 0 && request.getSendEnd() >= 0) {
-                    entry.timings.send = request.getSendEnd() - request.getSendStart();
-                    totalTime += entry.timings.send;
-                } else {
-                    entry.timings.send = 0;
-                }
-                if (request.getSendEnd() >= 0 && request.getRecvHeadersEnd() >= 0) {
-                    entry.timings.wait = request.getRecvHeadersEnd() - request.getSendEnd();
-                    totalTime += entry.timings.wait;
-                } else {
-                    entry.timings.wait = 0;
-                }
-                if (request.getRecvEnd() >= 0) {
-                    if (request.getRecvHeadersEnd() >= 0) {
-                        entry.timings.receive = request.getRecvEnd() - request.getRecvHeadersEnd();
-                    } else {
-                        entry.timings.receive = request.getRecvEnd();
-                    }
-                } else {
-                    entry.timings.receive = 0;
-                }
-                totalTime += entry.timings.receive;
-
-                entry.time = request.getRecvEnd();
-                entry.startedDateTime = iso8601.format(request.getStartTime());
-
-                if (entry.time != totalTime) {
-                    long diff = entry.time - totalTime;
-                    // Print out an error if the diff is too large, small diffs happen due to rounding errors
-                    if (diff > 2 || diff < -2) {
-                        Logger.error("Total time mismatch: {} {} {}", request.getUrl(), entry.time, totalTime);
-                    }
-                    entry.time = totalTime;
-                }
+                entry.time = entryTime(request, entry.timings);
+                entry.startedDateTime = formatDate(request.getStartTime());
 
                 entry.serverIPAddress = request.getIp();
                 har.log.entries.add(entry);
@@ -226,6 +573,104 @@ public class HarWriter {
         return har;
     }
 
+    static String pageRef(int pageNum) {
+        return "page_" + pageNum;
+    }
+
+    private static String pageTitle(Page page, int pageNum) {
+        String title = page.getFinalName();
+        if (StringUtils.isEmpty(title)) {
+            title = "Page " + pageNum;
+        }
+        return title;
+    }
+
+    private static String pageStartedDateTime(Page page) {
+        if (page.getNavStartTime() != null) {
+            return formatDate(page.getNavStartTime().getTime());
+        } else {
+            return formatDate(page.createdTime.getTime());
+        }
+    }
+
+    private static String formatDate(long time) {
+        return iso8601.format(Instant.ofEpochMilli(time));
+    }
+
+    private static int responseBodySize(HttpRequest request) {
+        if (request.getRecvHeadersEnd() >= 0) {
+            return request.getRecvHeadersEnd();
+        } else {
+            return request.getBodySize();
+        }
+    }
+
+    private static int contentCompression(HttpRequest request) {
+        if (request.getRecvHeadersEnd() >= 0) {
+            return request.getBodySize() - request.getRecvHeadersEnd();
+        }
+        return 0;
+    }
+
+    /**
+     * Fill in the timings of the request & return the total time of the entry
+     */
+    private static long entryTime(HttpRequest request, HarEntryTimings timings) {
+        timings.blocked = -1;
+        timings.dns = -1;
+        timings.connect = -1;
+        timings.ssl = -1;
+
+        long totalTime = 0;
+        if (request.getBlockedTime() >= 0) {
+            timings.blocked = request.getBlockedTime();
+            totalTime += timings.blocked;
+        }
+        if (request.getDnsStart() >= 0 && request.getDnsEnd() >= 0) {
+            timings.dns = request.getDnsEnd() - request.getDnsStart();
+            totalTime += timings.dns;
+        }
+        if (request.getConnectStart() >= 0 && request.getConnectEnd() > 0) {
+            timings.connect = request.getConnectEnd() - request.getConnectStart();
+            totalTime += timings.connect;
+        }
+        if (request.getSslStart() > 0 && request.getSslEnd() >= 0) {
+            timings.ssl = request.getSslEnd() - request.getSslStart();
+        }
+        if (request.getSendStart() >= 0 && request.getSendEnd() >= 0) {
+            timings.send = request.getSendEnd() - request.getSendStart();
+            totalTime += timings.send;
+        } else {
+            timings.send = 0;
+        }
+        if (request.getSendEnd() >= 0 && request.getRecvHeadersEnd() >= 0) {
+            timings.wait = request.getRecvHeadersEnd() - request.getSendEnd();
+            totalTime += timings.wait;
+        } else {
+            timings.wait = 0;
+        }
+        if (request.getRecvEnd() >= 0) {
+            if (request.getRecvHeadersEnd() >= 0) {
+                timings.receive = request.getRecvEnd() - request.getRecvHeadersEnd();
+            } else {
+                timings.receive = request.getRecvEnd();
+            }
+        } else {
+            timings.receive = 0;
+        }
+        totalTime += timings.receive;
+
+        long time = request.getRecvEnd();
+        if (time != totalTime) {
+            long diff = time - totalTime;
+            // Print out an error if the diff is too large, small diffs happen due to rounding errors
+            if (diff > 2 || diff < -2) {
+                Logger.error("Total time mismatch: {} {} {}", request.getUrl(), time, totalTime);
+            }
+        }
+        return totalTime;
+    }
+
     private static void parseCookies(String value, ArrayList<HarCookie> cookies) {
         // Example cookie:
         // B=06c6oht8uhjrf&b=3&s=ho; expires=Mon, 20-Jul-2015 05:32:31 GMT; path=/; domain=.yahoo.com
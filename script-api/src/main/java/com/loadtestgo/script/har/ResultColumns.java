@@ -0,0 +1,170 @@
+package com.loadtestgo.script.har;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The columnar binary format for test results, written by ResultColumnsWriter
+ * and read by ResultColumnsReader.
+ *
+ * A file is a sequence of blocks, each holding the results, pages & requests
+ * of a number of tests as three tables, stored a column at a time.  Every
+ * block starts with the magic number and has a directory of its columns and
+ * their sizes, so a reader can skip the columns it doesn't need, and files
+ * can be concatenated into one archive.
+ *
+ * Block layout:
+ * <pre>
+ *   int     MAGIC
+ *   byte    VERSION
+ *   varint  number of results, pages, requests
+ *   varint  number of columns
+ *   per column: string name, byte table, byte type, int length in bytes
+ *   the column data, in directory order
+ * </pre>
+ *
+ * Pages are stored in result order, result.numPages gives the number of pages
+ * of each result.  Likewise requests are in page order and page.numRequests
+ * gives the number of requests of each page.
+ *
+ * Ints are zigzag varints, longs are zigzag varints of the difference from
+ * the previous row.  Strings are dictionary encoded, a varint count and the
+ * distinct strings, then a varint per row, 0 for null or 1 + the index into
+ * the dictionary.  Strings are a varint length then UTF-8 bytes.  Dates are
+ * stored as millis, 0 when not set.
+ */
+public final class ResultColumns {
+    public static final int MAGIC = 0x4c545243; // LTRC
+    public static final byte VERSION = 1;
+
+    public static final byte TABLE_RESULT = 0;
+    public static final byte TABLE_PAGE = 1;
+    public static final byte TABLE_REQUEST = 2;
+
+    public static final byte TYPE_INT = 0;
+    public static final byte TYPE_LONG = 1;
+    public static final byte TYPE_STRING = 2;
+
+    public static final String RESULT_START_TIME = "result.startTime";
+    public static final String RESULT_RUN_TIME = "result.runTime";
+    public static final String RESULT_SETUP_TIME = "result.setupTime";
+    public static final String RESULT_TEST_NAME = "result.testName";
+    public static final String RESULT_BROWSER_NAME = "result.browserName";
+    public static final String RESULT_BROWSER_VERSION = "result.browserVersion";
+    public static final String RESULT_BOT_NAME = "result.botName";
+    public static final String RESULT_IP = "result.ip";
+    public static final String RESULT_ERROR_TYPE = "result.errorType";
+    public static final String RESULT_ERROR_MESSAGE = "result.errorMessage";
+    public static final String RESULT_NUM_PAGES = "result.numPages";
+
+    public static final String PAGE_URL = "page.url";
+    public static final String PAGE_NAVIGATION_TYPE = "page.navigationType";
+    public static final String PAGE_STATE = "page.state";
+    public static final String PAGE_ERROR = "page.error";
+    public static final String PAGE_PROTOCOL = "page.protocol";
+    public static final String PAGE_NAV_START_TIME = "page.navStartTime";
+    public static final String PAGE_NAV_COMMIT_TIME = "page.navCommitTime";
+    public static final String PAGE_DOM_CONTENT_LOADED_TIME = "page.domContentLoadedTime";
+    public static final String PAGE_FIRST_PAINT_TIME = "page.firstPaintTime";
+    public static final String PAGE_FIRST_CONTENTFUL_PAINT_TIME = "page.firstContentfulPaintTime";
+    public static final String PAGE_NAV_END_TIME = "page.navEndTime";
+    public static final String PAGE_NUM_DOM_ELEMENTS = "page.numDomElements";
+    public static final String PAGE_NUM_FRAMES = "page.numFrames";
+    public static final String PAGE_NUM_REQUESTS = "page.numRequests";
+
+    public static final String REQUEST_URL = "request.url";
+    public static final String REQUEST_HOST = "request.host";
+    public static final String REQUEST_IP = "request.ip";
+    public static final String REQUEST_METHOD = "request.method";
+    public static final String REQUEST_PROTOCOL = "request.protocol";
+    public static final String REQUEST_RESOURCE_TYPE = "request.resourceType";
+    public static final String REQUEST_MIME_TYPE = "request.mimeType";
+    public static final String REQUEST_STATE = "request.state";
+    public static final String REQUEST_ERROR = "request.error";
+    public static final String REQUEST_STATUS_CODE = "request.statusCode";
+    public static final String REQUEST_START_TIME = "request.startTime";
+    public static final String REQUEST_BLOCKED_TIME = "request.blockedTime";
+    public static final String REQUEST_DNS_START = "request.dnsStart";
+    public static final String REQUEST_DNS_END = "request.dnsEnd";
+    public static final String REQUEST_CONNECT_START = "request.connectStart";
+    public static final String REQUEST_CONNECT_END = "request.connectEnd";
+    public static final String REQUEST_SSL_START = "request.sslStart";
+    public static final String REQUEST_SSL_END = "request.sslEnd";
+    public static final String REQUEST_SEND_START = "request.sendStart";
+    public static final String REQUEST_SEND_END = "request.sendEnd";
+    public static final String REQUEST_RECV_HEADERS_END = "request.recvHeadersEnd";
+    public static final String REQUEST_RECV_END = "request.recvEnd";
+    public static final String REQUEST_BODY_SIZE = "request.bodySize";
+    public static final String REQUEST_BYTES_RECV_COMPRESSED = "request.bytesRecvCompressed";
+    public static final String REQUEST_REQUEST_BODY_SIZE = "request.requestBodySize";
+    public static final String REQUEST_REQUEST_HEADERS_SIZE = "request.requestHeadersSize";
+    public static final String REQUEST_RESPONSE_HEADERS_SIZE = "request.responseHeadersSize";
+    public static final String REQUEST_CONNECTION_ID = "request.connectionId";
+    public static final String REQUEST_CONNECTION_REUSED = "request.connectionReused";
+    public static final String REQUEST_FROM_CACHE = "request.fromCache";
+
+    private ResultColumns() {
+    }
+
+    static void writeVarInt(DataOutput output, int value) throws IOException {
+        writeVarLong(output, value & 0xffffffffL);
+    }
+
+    static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            output.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    static int readVarInt(DataInput input) throws IOException {
+        return (int) readVarLong(input);
+    }
+
+    static long readVarLong(DataInput input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = input.readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid varint in result columns");
+    }
+
+    static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeString(DataOutput output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(output, bytes.length);
+        output.write(bytes);
+    }
+
+    static String readString(DataInput input) throws IOException {
+        int length = readVarInt(input);
+        if (length < 0) {
+            throw new IOException("Invalid string in result columns");
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
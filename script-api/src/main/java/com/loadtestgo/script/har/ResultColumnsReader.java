@@ -0,0 +1,266 @@
+package com.loadtestgo.script.har;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.loadtestgo.script.har.ResultColumns.*;
+
+/**
+ * Reads files written by ResultColumnsWriter a block at a time.
+ *
+ * Only the columns asked for are decoded, the rest are skipped over without
+ * being read, so scanning the page load times of thousands of results only
+ * touches those columns.
+ *
+ * <pre>
+ * try (ResultColumnsReader reader = new ResultColumnsReader(file,
+ *         ResultColumns.PAGE_NAV_START_TIME, ResultColumns.PAGE_NAV_END_TIME)) {
+ *     ResultColumnsReader.Block block;
+ *     while ((block = reader.next()) != null) {
+ *         long[] start = block.getLongs(ResultColumns.PAGE_NAV_START_TIME);
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class ResultColumnsReader implements Closeable {
+    private final DataInputStream input;
+    private final Set<String> columns;
+
+    /**
+     * @param columns the columns to read, all of them if none are given
+     */
+    public ResultColumnsReader(File file, String... columns) throws IOException {
+        this(new FileInputStream(file), columns);
+    }
+
+    public ResultColumnsReader(InputStream input, String... columns) {
+        this.input = new DataInputStream(new BufferedInputStream(input, 64 * 1024));
+        this.columns = columns.length == 0 ? null : new HashSet<>(Arrays.asList(columns));
+    }
+
+    /**
+     * Read the next block
+     *
+     * @return null at the end of the file
+     */
+    public Block next() throws IOException {
+        int magic;
+        try {
+            magic = input.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (magic != MAGIC) {
+            throw new IOException("Not a result columns file");
+        }
+        byte version = input.readByte();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported result columns version %d", version));
+        }
+
+        Block block = new Block(readVarInt(input), readVarInt(input), readVarInt(input));
+        int numColumns = readVarInt(input);
+        String[] names = new String[numColumns];
+        byte[] tables = new byte[numColumns];
+        byte[] types = new byte[numColumns];
+        int[] lengths = new int[numColumns];
+        for (int i = 0; i < numColumns; ++i) {
+            names[i] = readString(input);
+            tables[i] = input.readByte();
+            types[i] = input.readByte();
+            lengths[i] = input.readInt();
+        }
+
+        for (int i = 0; i < numColumns; ++i) {
+            if (columns != null && !columns.contains(names[i])) {
+                skipFully(lengths[i]);
+                continue;
+            }
+            byte[] data = new byte[lengths[i]];
+            input.readFully(data);
+            int rows = block.getNumRows(tables[i]);
+            ColumnInput column = new ColumnInput(data);
+            switch (types[i]) {
+                case TYPE_INT:
+                    block.values.put(names[i], column.readInts(rows));
+                    break;
+                case TYPE_LONG:
+                    block.values.put(names[i], column.readLongs(rows));
+                    break;
+                case TYPE_STRING:
+                    block.values.put(names[i], column.readStrings(rows));
+                    break;
+                default:
+                    // A column type added by a later version
+                    break;
+            }
+        }
+        return block;
+    }
+
+    private void skipFully(int n) throws IOException {
+        while (n > 0) {
+            int skipped = input.skipBytes(n);
+            if (skipped <= 0) {
+                throw new EOFException("Result columns file is truncated");
+            }
+            n -= skipped;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * The columns read from a block.  Each column has a value per result, page
+     * or request in the block, depending on its table.
+     */
+    public static class Block {
+        private final int numResults;
+        private final int numPages;
+        private final int numRequests;
+        private final Map<String, Object> values = new HashMap<>();
+
+        Block(int numResults, int numPages, int numRequests) {
+            this.numResults = numResults;
+            this.numPages = numPages;
+            this.numRequests = numRequests;
+        }
+
+        public int getNumResults() {
+            return numResults;
+        }
+
+        public int getNumPages() {
+            return numPages;
+        }
+
+        public int getNumRequests() {
+            return numRequests;
+        }
+
+        int getNumRows(byte table) {
+            switch (table) {
+                case TABLE_RESULT:
+                    return numResults;
+                case TABLE_PAGE:
+                    return numPages;
+                default:
+                    return numRequests;
+            }
+        }
+
+        public boolean hasColumn(String name) {
+            return values.containsKey(name);
+        }
+
+        public int[] getInts(String name) {
+            return get(name, int[].class);
+        }
+
+        public long[] getLongs(String name) {
+            return get(name, long[].class);
+        }
+
+        /**
+         * Rows with the same value share the same String
+         */
+        public String[] getStrings(String name) {
+            return get(name, String[].class);
+        }
+
+        private <T> T get(String name, Class<T> type) {
+            Object value = values.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException(String.format("Column %s wasn't read", name));
+            }
+            if (!type.isInstance(value)) {
+                throw new IllegalArgumentException(String.format("Column %s is not a %s column",
+                    name, type.getComponentType()));
+            }
+            return type.cast(value);
+        }
+    }
+
+    /**
+     * Decodes a column from its bytes
+     */
+    private static class ColumnInput {
+        private final byte[] data;
+        private int pos;
+
+        ColumnInput(byte[] data) {
+            this.data = data;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= data.length) {
+                    throw new EOFException("Result column is truncated");
+                }
+                byte b = data[pos++];
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Invalid varint in result columns");
+        }
+
+        int[] readInts(int rows) throws IOException {
+            int[] values = new int[rows];
+            for (int i = 0; i < rows; ++i) {
+                values[i] = unZigZag((int) readVarLong());
+            }
+            return values;
+        }
+
+        long[] readLongs(int rows) throws IOException {
+            long[] values = new long[rows];
+            long value = 0;
+            for (int i = 0; i < rows; ++i) {
+                value += unZigZag(readVarLong());
+                values[i] = value;
+            }
+            return values;
+        }
+
+        String[] readStrings(int rows) throws IOException {
+            String[] dictionary = new String[(int) readVarLong()];
+            for (int i = 0; i < dictionary.length; ++i) {
+                int length = (int) readVarLong();
+                if (length < 0 || length > data.length - pos) {
+                    throw new EOFException("Result column is truncated");
+                }
+                dictionary[i] = new String(data, pos, length, StandardCharsets.UTF_8);
+                pos += length;
+            }
+
+            String[] values = new String[rows];
+            for (int i = 0; i < rows; ++i) {
+                int id = (int) readVarLong();
+                if (id < 0 || id > dictionary.length) {
+                    throw new IOException("Invalid string id in result columns");
+                }
+                values[i] = id == 0 ? null : dictionary[id - 1];
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.loadtestgo.script.har;
+
+import com.loadtestgo.script.api.HttpRequest;
+import com.loadtestgo.script.api.Page;
+import com.loadtestgo.script.api.TestResult;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import static com.loadtestgo.script.har.ResultColumns.*;
+
+/**
+ * Writes test results in the columnar format described in ResultColumns.
+ *
+ * Results are encoded into the columns as they are added and written out as
+ * a block every blockSize results, and when the writer is flushed or closed.
+ * Safe to add results from multiple threads.
+ */
+public class ResultColumnsWriter implements Closeable {
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final DataOutputStream output;
+    private final int blockSize;
+    private final List<Column<TestResult>> resultColumns = new ArrayList<>();
+    private final List<Column<Page>> pageColumns = new ArrayList<>();
+    private final List<Column<HttpRequest>> requestColumns = new ArrayList<>();
+    private int numResults;
+    private int numPages;
+    private int numRequests;
+
+    public ResultColumnsWriter(OutputStream output) {
+        this(output, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ResultColumnsWriter(OutputStream output, int blockSize) {
+        this.output = new DataOutputStream(new BufferedOutputStream(output, 64 * 1024));
+        this.blockSize = Math.max(1, blockSize);
+
+        resultColumns.add(new LongColumn<>(RESULT_START_TIME, TABLE_RESULT, r -> millis(r.getStartTime())));
+        resultColumns.add(new IntColumn<>(RESULT_RUN_TIME, TABLE_RESULT, TestResult::getRunTime));
+        resultColumns.add(new IntColumn<>(RESULT_SETUP_TIME, TABLE_RESULT, TestResult::getSetupTime));
+        resultColumns.add(new StringColumn<>(RESULT_TEST_NAME, TABLE_RESULT, TestResult::getTestName));
+        resultColumns.add(new StringColumn<>(RESULT_BROWSER_NAME, TABLE_RESULT, TestResult::getBrowserName));
+        resultColumns.add(new StringColumn<>(RESULT_BROWSER_VERSION, TABLE_RESULT, TestResult::getBrowserVersion));
+        resultColumns.add(new StringColumn<>(RESULT_BOT_NAME, TABLE_RESULT, TestResult::getBotName));
+        resultColumns.add(new StringColumn<>(RESULT_IP, TABLE_RESULT, TestResult::getIp));
+        resultColumns.add(new StringColumn<>(RESULT_ERROR_TYPE, TABLE_RESULT,
+            r -> r.getError() == null ? null : name(r.getError().type)));
+        resultColumns.add(new StringColumn<>(RESULT_ERROR_MESSAGE, TABLE_RESULT,
+            r -> r.getError() == null ? null : r.getError().message));
+        resultColumns.add(new IntColumn<>(RESULT_NUM_PAGES, TABLE_RESULT, r -> r.getPages().size()));
+
+        pageColumns.add(new StringColumn<>(PAGE_URL, TABLE_PAGE, Page::getUrl));
+        pageColumns.add(new StringColumn<>(PAGE_NAVIGATION_TYPE, TABLE_PAGE, p -> name(p.getNavigationType())));
+        pageColumns.add(new StringColumn<>(PAGE_STATE, TABLE_PAGE, p -> name(p.getState())));
+        pageColumns.add(new StringColumn<>(PAGE_ERROR, TABLE_PAGE, p -> name(p.getError())));
+        pageColumns.add(new StringColumn<>(PAGE_PROTOCOL, TABLE_PAGE, Page::getProtocol));
+        pageColumns.add(new LongColumn<>(PAGE_NAV_START_TIME, TABLE_PAGE, p -> millis(p.getNavStartTime())));
+        pageColumns.add(new LongColumn<>(PAGE_NAV_COMMIT_TIME, TABLE_PAGE, p -> millis(p.getNavCommitTime())));
+        pageColumns.add(new LongColumn<>(PAGE_DOM_CONTENT_LOADED_TIME, TABLE_PAGE, p -> millis(p.getDomContentLoadedTime())));
+        pageColumns.add(new LongColumn<>(PAGE_FIRST_PAINT_TIME, TABLE_PAGE, p -> millis(p.getFirstPaintTime())));
+        pageColumns.add(new LongColumn<>(PAGE_FIRST_CONTENTFUL_PAINT_TIME, TABLE_PAGE, p -> millis(p.getFirstContentfulPaintTime())));
+        pageColumns.add(new LongColumn<>(PAGE_NAV_END_TIME, TABLE_PAGE, p -> millis(p.getNavEndTime())));
+        pageColumns.add(new IntColumn<>(PAGE_NUM_DOM_ELEMENTS, TABLE_PAGE, Page::getNumDomElements));
+        pageColumns.add(new IntColumn<>(PAGE_NUM_FRAMES, TABLE_PAGE, Page::getNumFrames));
+        pageColumns.add(new IntColumn<>(PAGE_NUM_REQUESTS, TABLE_PAGE, p -> p.getRequests().size()));
+
+        requestColumns.add(new StringColumn<>(REQUEST_URL, TABLE_REQUEST, HttpRequest::getUrl));
+        requestColumns.add(new StringColumn<>(REQUEST_HOST, TABLE_REQUEST, HttpRequest::getHost));
+        requestColumns.add(new StringColumn<>(REQUEST_IP, TABLE_REQUEST, HttpRequest::getIp));
+        requestColumns.add(new StringColumn<>(REQUEST_METHOD, TABLE_REQUEST, HttpRequest::getMethod));
+        requestColumns.add(new StringColumn<>(REQUEST_PROTOCOL, TABLE_REQUEST, HttpRequest::getProtocol));
+        requestColumns.add(new StringColumn<>(REQUEST_RESOURCE_TYPE, TABLE_REQUEST, r -> name(r.getResourceType())));
+        requestColumns.add(new StringColumn<>(REQUEST_MIME_TYPE, TABLE_REQUEST, HttpRequest::getMimeType));
+        requestColumns.add(new StringColumn<>(REQUEST_STATE, TABLE_REQUEST, r -> name(r.getState())));
+        requestColumns.add(new StringColumn<>(REQUEST_ERROR, TABLE_REQUEST, HttpRequest::getError));
+        requestColumns.add(new IntColumn<>(REQUEST_STATUS_CODE, TABLE_REQUEST, HttpRequest::getStatusCode));
+        requestColumns.add(new LongColumn<>(REQUEST_START_TIME, TABLE_REQUEST, HttpRequest::getStartTime));
+        requestColumns.add(new IntColumn<>(REQUEST_BLOCKED_TIME, TABLE_REQUEST, HttpRequest::getBlockedTime));
+        requestColumns.add(new IntColumn<>(REQUEST_DNS_START, TABLE_REQUEST, HttpRequest::getDnsStart));
+        requestColumns.add(new IntColumn<>(REQUEST_DNS_END, TABLE_REQUEST, HttpRequest::getDnsEnd));
+        requestColumns.add(new IntColumn<>(REQUEST_CONNECT_START, TABLE_REQUEST, HttpRequest::getConnectStart));
+        requestColumns.add(new IntColumn<>(REQUEST_CONNECT_END, TABLE_REQUEST, HttpRequest::getConnectEnd));
+        requestColumns.add(new IntColumn<>(REQUEST_SSL_START, TABLE_REQUEST, HttpRequest::getSslStart));
+        requestColumns.add(new IntColumn<>(REQUEST_SSL_END, TABLE_REQUEST, HttpRequest::getSslEnd));
+        requestColumns.add(new IntColumn<>(REQUEST_SEND_START, TABLE_REQUEST, HttpRequest::getSendStart));
+        requestColumns.add(new IntColumn<>(REQUEST_SEND_END, TABLE_REQUEST, HttpRequest::getSendEnd));
+        requestColumns.add(new IntColumn<>(REQUEST_RECV_HEADERS_END, TABLE_REQUEST, HttpRequest::getRecvHeadersEnd));
+        requestColumns.add(new IntColumn<>(REQUEST_RECV_END, TABLE_REQUEST, HttpRequest::getRecvEnd));
+        requestColumns.add(new IntColumn<>(REQUEST_BODY_SIZE, TABLE_REQUEST, HttpRequest::getBodySize));
+        requestColumns.add(new IntColumn<>(REQUEST_BYTES_RECV_COMPRESSED, TABLE_REQUEST, HttpRequest::getBytesRecvCompressed));
+        requestColumns.add(new IntColumn<>(REQUEST_REQUEST_BODY_SIZE, TABLE_REQUEST, HttpRequest::getRequestBodySize));
+        requestColumns.add(new IntColumn<>(REQUEST_REQUEST_HEADERS_SIZE, TABLE_REQUEST, HttpRequest::getRequestHeadersSize));
+        requestColumns.add(new IntColumn<>(REQUEST_RESPONSE_HEADERS_SIZE, TABLE_REQUEST, HttpRequest::getResponseHeadersSize));
+        requestColumns.add(new IntColumn<>(REQUEST_CONNECTION_ID, TABLE_REQUEST, HttpRequest::getConnectionId));
+        requestColumns.add(new IntColumn<>(REQUEST_CONNECTION_REUSED, TABLE_REQUEST, r -> r.isConnectionReused() ? 1 : 0));
+        requestColumns.add(new IntColumn<>(REQUEST_FROM_CACHE, TABLE_REQUEST, r -> r.isFromCache() ? 1 : 0));
+    }
+
+    /**
+     * Save a single test result to a file
+     */
+    public static void save(TestResult result, File file) throws IOException {
+        try (ResultColumnsWriter writer = new ResultColumnsWriter(new FileOutputStream(file))) {
+            writer.add(result);
+        }
+    }
+
+    public synchronized void add(TestResult result) throws IOException {
+        List<Page> pages = result.getPages();
+        synchronized (result) {
+            for (Column<TestResult> column : resultColumns) {
+                column.add(result);
+            }
+            for (Page page : pages) {
+                for (Column<Page> column : pageColumns) {
+                    column.add(page);
+                }
+                for (HttpRequest request : page.getRequests()) {
+                    for (Column<HttpRequest> column : requestColumns) {
+                        column.add(request);
+                    }
+                }
+                numRequests += page.getRequests().size();
+            }
+            numPages += pages.size();
+        }
+        numResults++;
+
+        if (numResults >= blockSize) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Write out the results added so far as a block
+     */
+    public synchronized void flush() throws IOException {
+        if (numResults > 0) {
+            writeBlock();
+        }
+        output.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            output.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        List<Column<?>> columns = new ArrayList<>();
+        columns.addAll(resultColumns);
+        columns.addAll(pageColumns);
+        columns.addAll(requestColumns);
+
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        writeVarInt(output, numResults);
+        writeVarInt(output, numPages);
+        writeVarInt(output, numRequests);
+        writeVarInt(output, columns.size());
+        for (Column<?> column : columns) {
+            column.finish();
+            writeString(output, column.name);
+            output.writeByte(column.table);
+            output.writeByte(column.type);
+            output.writeInt(column.data.size());
+        }
+        for (Column<?> column : columns) {
+            column.data.writeTo(output);
+            column.reset();
+        }
+
+        numResults = 0;
+        numPages = 0;
+        numRequests = 0;
+    }
+
+    private static long millis(Date date) {
+        return date == null ? 0 : date.getTime();
+    }
+
+    private static String name(Enum<?> value) {
+        return value == null ? null : value.name();
+    }
+
+    private abstract static class Column<T> {
+        final String name;
+        final byte table;
+        final byte type;
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        final DataOutputStream dataOutput = new DataOutputStream(data);
+
+        Column(String name, byte table, byte type) {
+            this.name = name;
+            this.table = table;
+            this.type = type;
+        }
+
+        abstract void add(T row) throws IOException;
+
+        /**
+         * Called before the data is written out
+         */
+        void finish() throws IOException {
+        }
+
+        void reset() {
+            data.reset();
+        }
+    }
+
+    private static class IntColumn<T> extends Column<T> {
+        private final ToIntFunction<T> getter;
+
+        IntColumn(String name, byte table, ToIntFunction<T> getter) {
+            super(name, table, TYPE_INT);
+            this.getter = getter;
+        }
+
+        @Override
+        void add(T row) throws IOException {
+            writeVarInt(dataOutput, zigZag(getter.applyAsInt(row)));
+        }
+    }
+
+    private static class LongColumn<T> extends Column<T> {
+        private final ToLongFunction<T> getter;
+        private long previous;
+
+        LongColumn(String name, byte table, ToLongFunction<T> getter) {
+            super(name, table, TYPE_LONG);
+            this.getter = getter;
+        }
+
+        @Override
+        void add(T row) throws IOException {
+            long value = getter.applyAsLong(row);
+            writeVarLong(dataOutput, zigZag(value - previous));
+            previous = value;
+        }
+
+        @Override
+        void reset() {
+            super.reset();
+            previous = 0;
+        }
+    }
+
+    /**
+     * The ids of the strings are written as rows are added, the dictionary is
+     * put in front of them when the block is written.
+     */
+    private static class StringColumn<T> extends Column<T> {
+        private final Function<T, String> getter;
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+        private final ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        private final DataOutputStream rowsOutput = new DataOutputStream(rows);
+
+        StringColumn(String name, byte table, Function<T, String> getter) {
+            super(name, table, TYPE_STRING);
+            this.getter = getter;
+        }
+
+        @Override
+        void add(T row) throws IOException {
+            String value = getter.apply(row);
+            int id = 0;
+            if (value != null) {
+                Integer existing = ids.get(value);
+                if (existing == null) {
+                    dictionary.add(value);
+                    existing = dictionary.size();
+                    ids.put(value, existing);
+                }
+                id = existing;
+            }
+            writeVarInt(rowsOutput, id);
+        }
+
+        @Override
+        void finish() throws IOException {
+            writeVarInt(dataOutput, dictionary.size());
+            for (String value : dictionary) {
+                writeString(dataOutput, value);
+            }
+            rows.writeTo(dataOutput);
+        }
+
+        @Override
+        void reset() {
+            super.reset();
+            rows.reset();
+            ids.clear();
+            dictionary.clear();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.loadtestgo.script.api;
+
+import com.loadtestgo.util.HttpHeader;
+import com.loadtestgo.util.HttpHeaders;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares keeping the headers of a 10k request page as lists of HttpHeader
+ * (how HttpRequest stored them before) against HttpHeaders.  The benchmarks
+ * time building the headers as they're read from the browser events, run
+ * with -prof gc to see the allocation.  main() prints the heap retained by
+ * the headers of the page for each.
+ *
+ * Run with: gradle :script-api:jmh -Pjmh.include=HttpHeadersBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpHeadersBenchmark {
+    private static final int NUM_REQUESTS = 10000;
+
+    private String[][] requestHeaders;
+    private String[][] responseHeaders;
+
+    @Setup
+    public void setup() {
+        requestHeaders = new String[NUM_REQUESTS][];
+        responseHeaders = new String[NUM_REQUESTS][];
+        for (int i = 0; i < NUM_REQUESTS; ++i) {
+            requestHeaders[i] = requestHeaders(i);
+            responseHeaders[i] = responseHeaders(i);
+        }
+    }
+
+    @Benchmark
+    public List<Object> arrayList() {
+        List<Object> page = new ArrayList<>(NUM_REQUESTS * 2);
+        for (int i = 0; i < NUM_REQUESTS; ++i) {
+            page.add(toList(requestHeaders[i]));
+            page.add(toList(responseHeaders[i]));
+        }
+        return page;
+    }
+
+    @Benchmark
+    public List<Object> packed() {
+        List<Object> page = new ArrayList<>(NUM_REQUESTS * 2);
+        for (int i = 0; i < NUM_REQUESTS; ++i) {
+            page.add(toPacked(requestHeaders[i]));
+            page.add(toPacked(responseHeaders[i]));
+        }
+        return page;
+    }
+
+    // Names and values are copied as they would be when parsed from the
+    // browser's JSON, rather than sharing the String constants
+    private static ArrayList<HttpHeader> toList(String[] headers) {
+        ArrayList<HttpHeader> list = new ArrayList<>();
+        for (int i = 0; i < headers.length; i += 2) {
+            list.add(new HttpHeader(new String(headers[i]), new String(headers[i + 1])));
+        }
+        return list;
+    }
+
+    private static HttpHeaders toPacked(String[] headers) {
+        HttpHeaders packed = new HttpHeaders();
+        for (int i = 0; i < headers.length; i += 2) {
+            packed.add(new String(headers[i]), new String(headers[i + 1]));
+        }
+        packed.trimToSize();
+        return packed;
+    }
+
+    private static String[] requestHeaders(int i) {
+        return new String[] {
+            "Accept", "*/*",
+            "Accept-Encoding", "gzip, deflate, br",
+            "Accept-Language", "en-US,en;q=0.9",
+            "Cache-Control", "no-cache",
+            "Connection", "keep-alive",
+            "Cookie", "session=" + Integer.toHexString(i * 7919) + "; theme=dark",
+            "Host", "cdn" + (i % 4) + ".example.com",
+            "Referer", "https://www.example.com/products/page" + (i % 50) + ".html",
+            "Sec-Fetch-Dest", "script",
+            "Sec-Fetch-Mode", "no-cors",
+            "Sec-Fetch-Site", "same-site",
+            "User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/80.0.3987.149 Safari/537.36",
+        };
+    }
+
+    private static String[] responseHeaders(int i) {
+        return new String[] {
+            "accept-ranges", "bytes",
+            "age", String.valueOf(i % 3600),
+            "cache-control", "public, max-age=31536000",
+            "content-encoding", "gzip",
+            "content-length", String.valueOf(1000 + i % 50000),
+            "content-type", "application/javascript; charset=utf-8",
+            "date", "Mon, 16 Mar 2020 10:" + (i % 60) + ":00 GMT",
+            "etag", "\"" + Integer.toHexString(i * 104729) + "\"",
+            "last-modified", "Fri, 13 Mar 2020 08:00:00 GMT",
+            "server", "nginx",
+            "vary", "Accept-Encoding",
+            "x-cache", "HIT",
+        };
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; ++i) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) {
+        HttpHeadersBenchmark benchmark = new HttpHeadersBenchmark();
+        benchmark.setup();
+        // Warm up the header name table so it isn't counted against the packed page
+        benchmark.packed();
+
+        long before = usedHeap();
+        List<Object> list = benchmark.arrayList();
+        long listBytes = usedHeap() - before;
+        list.clear();
+
+        before = usedHeap();
+        List<Object> packed = benchmark.packed();
+        long packedBytes = usedHeap() - before;
+
+        // Uses the packed page after measuring so it's still reachable
+        System.out.printf("%d requests, ArrayList<HttpHeader>: %,d bytes, HttpHeaders: %,d bytes (%d%%)%n",
+            packed.size() / 2, listBytes, packedBytes, packedBytes * 100 / listBytes);
+    }
+}
@@ -0,0 +1,70 @@
+package com.loadtestgo.script.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(JUnit4.class)
+public class PageTest {
+    private static HttpRequest request(long startTime) {
+        HttpRequest request = new HttpRequest();
+        request.setStartTime(startTime);
+        return request;
+    }
+
+    private static void assertOrder(Page page, long... startTimes) {
+        assertEquals(startTimes.length, page.getRequests().size());
+        for (int i = 0; i < startTimes.length; ++i) {
+            assertEquals(startTimes[i], page.getRequests().get(i).getStartTime());
+        }
+    }
+
+    @Test
+    public void addRequestKeepsStartTimeOrder() {
+        Page page = new Page();
+        page.addRequest(request(10));
+        page.addRequest(request(30));
+        page.addRequest(request(20));
+        page.addRequest(request(5));
+        page.addRequest(request(40));
+        assertOrder(page, 5, 10, 20, 30, 40);
+    }
+
+    @Test
+    public void addRequestEqualStartTimesKeepArrivalOrder() {
+        Page page = new Page();
+        HttpRequest a = request(10);
+        HttpRequest b = request(10);
+        HttpRequest c = request(10);
+        page.addRequest(a);
+        page.addRequest(b);
+        page.addRequest(request(5));
+        page.addRequest(c);
+        assertSame(a, page.getRequests().get(1));
+        assertSame(b, page.getRequests().get(2));
+        assertSame(c, page.getRequests().get(3));
+    }
+
+    @Test
+    public void updateRequestPosition() {
+        Page page = new Page();
+        HttpRequest moved = request(25);
+        page.addRequest(request(10));
+        page.addRequest(request(20));
+        page.addRequest(moved);
+        page.addRequest(request(30));
+
+        moved.setStartTime(5);
+        page.updateRequestPosition(moved, 25);
+        assertSame(moved, page.getRequests().get(0));
+        assertOrder(page, 5, 10, 20, 30);
+
+        moved.setStartTime(35);
+        page.updateRequestPosition(moved, 5);
+        assertSame(moved, page.getRequests().get(3));
+        assertOrder(page, 10, 20, 30, 35);
+    }
+}
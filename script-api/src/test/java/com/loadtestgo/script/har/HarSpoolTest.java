@@ -0,0 +1,136 @@
+package com.loadtestgo.script.har;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.loadtestgo.script.api.HttpRequest;
+import com.loadtestgo.script.api.Page;
+import com.loadtestgo.script.api.TestResult;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class HarSpoolTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static HttpRequest request(String url, long startTime) {
+        HttpRequest request = new HttpRequest();
+        request.setMethod("GET");
+        request.setUrl(url);
+        request.setStartTime(startTime);
+        request.setStatusCode(200);
+        request.setRecvEnd(10);
+        return request;
+    }
+
+    private static Page page(TestResult result, long startTime) {
+        Page page = new Page();
+        page.setNavStartTime(new Date(startTime));
+        result.addPage(page);
+        return page;
+    }
+
+    private static List<String> entries(JsonNode har) {
+        List<String> entries = new ArrayList<>();
+        for (JsonNode entry : har.get("log").get("entries")) {
+            entries.add(entry.toString());
+        }
+        Collections.sort(entries);
+        return entries;
+    }
+
+    @Test
+    public void matchesHarWriter() throws Exception {
+        TestResult result = new TestResult("test");
+        result.setBrowserName("Chrome");
+        result.setBrowserVersion("80.0");
+
+        File spoolFile = folder.newFile("test.har.ndjson");
+        HarSpool spool = new HarSpool(spoolFile);
+
+        Page page1 = page(result, 1000);
+        HttpRequest a = request("http://example.com/a", 1000);
+        HttpRequest b = request("http://example.com/b", 1010);
+        HttpRequest c = request("http://example.com/c", 1020);
+        page1.addRequest(a);
+        page1.addRequest(b);
+        page1.addRequest(c);
+        Page page2 = page(result, 2000);
+        HttpRequest d = request("http://example.com/d", 2000);
+        HttpRequest e = request("http://example.com/e", 2010);
+        page2.addRequest(d);
+        page2.addRequest(e);
+
+        ObjectMapper mapper = new ObjectMapper();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        HarWriter.save(result, expected);
+
+        spool.requestFinished(page1, a);
+        spool.requestFinished(page1, b);
+        spool.requestFinished(page2, d);
+        assertEquals(2, spool.pageFinished(page1).size());
+        assertEquals(1, page1.getRequests().size());
+
+        // Finishes after its page has, so it's removed straight away
+        spool.requestFinished(page1, c);
+        assertEquals(0, page1.getRequests().size());
+        assertEquals(2, page2.getRequests().size());
+
+        spool.finish(result);
+        spool.close();
+        assertEquals(5, spool.getNumEntries());
+        assertEquals(3, spool.getNumEvicted());
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        HarWriter.saveSpool(spoolFile, actual, false);
+
+        JsonNode expectedHar = mapper.readTree(expected.toByteArray());
+        JsonNode actualHar = mapper.readTree(actual.toByteArray());
+        assertEquals(expectedHar.get("log").get("browser"), actualHar.get("log").get("browser"));
+        assertEquals(expectedHar.get("log").get("pages"), actualHar.get("log").get("pages"));
+        assertEquals(entries(expectedHar), entries(actualHar));
+    }
+
+    @Test
+    public void truncatedSpool() throws Exception {
+        TestResult result = new TestResult("test");
+        File spoolFile = folder.newFile("test.har.ndjson");
+        HarSpool spool = new HarSpool(spoolFile);
+
+        Page page = page(result, 1000);
+        for (int i = 0; i < 3; ++i) {
+            HttpRequest request = request("http://example.com/" + i, 1000 + i);
+            page.addRequest(request);
+            if (i == 2) {
+                spool.pageFinished(page);
+            }
+            spool.requestFinished(page, request);
+        }
+        spool.close();
+
+        // Cut the last entry in half, as if the process died while writing it
+        try (RandomAccessFile file = new RandomAccessFile(spoolFile, "rw")) {
+            file.setLength(file.length() - 20);
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HarWriter.saveSpool(spoolFile, output, false);
+
+        JsonNode har = new ObjectMapper().readTree(output.toByteArray());
+        assertEquals(1, har.get("log").get("pages").size());
+        assertEquals(2, har.get("log").get("entries").size());
+    }
+}
@@ -0,0 +1,96 @@
+package com.loadtestgo.script.har;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.loadtestgo.script.api.HttpRequest;
+import com.loadtestgo.script.api.Page;
+import com.loadtestgo.script.api.TestResult;
+import com.loadtestgo.util.HttpHeader;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class HarWriterTest {
+    private static TestResult testResult() {
+        TestResult result = new TestResult("test");
+        result.setBrowserName("Chrome");
+        result.setBrowserVersion("80.0");
+
+        for (int p = 0; p < 2; ++p) {
+            Page page = new Page();
+            page.setNavStartTime(new Date(1000000 + p * 10000));
+            page.setUrl("http://example.com/" + p);
+            result.addPage(page);
+
+            for (int i = 0; i < 3; ++i) {
+                HttpRequest request = new HttpRequest();
+                request.setMethod("GET");
+                request.setUrl("http://example.com/" + p + "/" + i);
+                request.setStartTime(1000000 + p * 10000 + i * 10);
+                request.setStatusCode(200);
+                request.setStatusText("OK");
+                request.setIp(i == 1 ? null : "127.0.0.1");
+                request.setFromCache(i == 2);
+                request.setDnsStart(0);
+                request.setDnsEnd(5);
+                request.setSendStart(5);
+                request.setSendEnd(6);
+                request.setRecvHeadersEnd(20);
+                request.setRecvEnd(30);
+                request.setBodySize(100);
+                request.getRequestHeaders().add(new HttpHeader("Accept", "*/*"));
+                request.getRequestHeaders().add(new HttpHeader(HttpHeader.SET_COOKIE,
+                    "a=b; path=/; domain=.example.com; HttpOnly"));
+                request.getResponseHeaders().add(new HttpHeader("content-type", "text/html"));
+                request.getResponseHeaders().add(new HttpHeader(HttpHeader.COOKIE, "c=d; Secure"));
+                if (i == 0) {
+                    request.setRedirectUrl("http://example.com/redirect");
+                }
+                page.addRequest(request);
+            }
+
+            HttpRequest dataUrl = new HttpRequest();
+            dataUrl.setUrl("data:image/png;base64,AAAA");
+            page.addRequest(dataUrl);
+        }
+        return result;
+    }
+
+    @Test
+    public void streamMatchesHarObjects() throws Exception {
+        TestResult result = testResult();
+        ObjectMapper mapper = new ObjectMapper();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HarWriter.save(result, output);
+
+        JsonNode expected = mapper.valueToTree(HarWriter.toHar(result));
+        JsonNode actual = mapper.readTree(output.toByteArray());
+        assertEquals(expected, actual);
+        assertEquals(6, actual.get("log").get("entries").size());
+    }
+
+    @Test
+    public void gzip() throws Exception {
+        TestResult result = testResult();
+        ObjectMapper mapper = new ObjectMapper();
+
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        HarWriter.save(result, plain, false);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        HarWriter.save(result, compressed, true);
+
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertEquals(mapper.readTree(plain.toByteArray()), mapper.readTree(input));
+        }
+    }
+}
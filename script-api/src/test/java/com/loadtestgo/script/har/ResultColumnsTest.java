@@ -0,0 +1,133 @@
+package com.loadtestgo.script.har;
+
+import com.loadtestgo.script.api.ErrorType;
+import com.loadtestgo.script.api.HttpRequest;
+import com.loadtestgo.script.api.Page;
+import com.loadtestgo.script.api.ResourceType;
+import com.loadtestgo.script.api.TestError;
+import com.loadtestgo.script.api.TestResult;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(JUnit4.class)
+public class ResultColumnsTest {
+    private static TestResult testResult(int n) {
+        TestResult result = new TestResult("test" + (n % 2));
+        result.setStartTime(new Date(1000000 + n * 1000));
+        result.setRunTime(5000 + n);
+        result.setBrowserName("Chrome");
+        if (n == 1) {
+            TestError error = new TestError();
+            error.type = ErrorType.Timeout;
+            error.message = "Timed out";
+            result.setError(error);
+        }
+
+        for (int p = 0; p < 2; ++p) {
+            Page page = new Page();
+            page.setUrl("http://example.com/" + p);
+            page.setNavStartTime(new Date(1000000 + n * 1000 + p * 100));
+            if (p == 0) {
+                page.setNavEndTime(new Date(1000000 + n * 1000 + p * 100 + 50 + n));
+            }
+            result.addPage(page);
+
+            for (int i = 0; i < 3; ++i) {
+                HttpRequest request = new HttpRequest();
+                request.setMethod("GET");
+                request.parseUrl("http://cdn" + i + ".example.com/" + p + "/" + i);
+                request.setResourceType(ResourceType.Script);
+                request.setStatusCode(i == 2 ? 404 : 200);
+                request.setStartTime(1000000 + n * 1000 + i * 10);
+                request.setRecvEnd(30 + i);
+                request.setBodySize(100 * i);
+                request.setFromCache(i == 1);
+                page.addRequest(request);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ResultColumnsWriter writer = new ResultColumnsWriter(output, 2)) {
+            for (int n = 0; n < 3; ++n) {
+                writer.add(testResult(n));
+            }
+        }
+
+        try (ResultColumnsReader reader = new ResultColumnsReader(new ByteArrayInputStream(output.toByteArray()))) {
+            ResultColumnsReader.Block block = reader.next();
+            assertEquals(2, block.getNumResults());
+            assertEquals(4, block.getNumPages());
+            assertEquals(12, block.getNumRequests());
+
+            assertArrayEquals(new long[] { 1000000, 1001000 }, block.getLongs(ResultColumns.RESULT_START_TIME));
+            assertArrayEquals(new int[] { 5000, 5001 }, block.getInts(ResultColumns.RESULT_RUN_TIME));
+            assertArrayEquals(new String[] { "test0", "test1" }, block.getStrings(ResultColumns.RESULT_TEST_NAME));
+            assertArrayEquals(new String[] { null, "Timeout" }, block.getStrings(ResultColumns.RESULT_ERROR_TYPE));
+            assertArrayEquals(new int[] { 2, 2 }, block.getInts(ResultColumns.RESULT_NUM_PAGES));
+
+            assertArrayEquals(new long[] { 1000050, 0, 1001051, 0 }, block.getLongs(ResultColumns.PAGE_NAV_END_TIME));
+            assertArrayEquals(new int[] { 3, 3, 3, 3 }, block.getInts(ResultColumns.PAGE_NUM_REQUESTS));
+
+            String[] hosts = block.getStrings(ResultColumns.REQUEST_HOST);
+            assertEquals("cdn2.example.com", hosts[5]);
+            assertSame(hosts[0], hosts[3]);
+            int[] status = block.getInts(ResultColumns.REQUEST_STATUS_CODE);
+            assertEquals(404, status[2]);
+            assertEquals(200, status[3]);
+            assertArrayEquals(new int[] { 0, 1, 0 },
+                Arrays.copyOf(block.getInts(ResultColumns.REQUEST_FROM_CACHE), 3));
+            assertEquals(-1, block.getInts(ResultColumns.REQUEST_DNS_START)[0]);
+            assertEquals("Script", block.getStrings(ResultColumns.REQUEST_RESOURCE_TYPE)[0]);
+
+            block = reader.next();
+            assertEquals(1, block.getNumResults());
+            assertArrayEquals(new long[] { 1002000 }, block.getLongs(ResultColumns.RESULT_START_TIME));
+            assertArrayEquals(new String[] { "test0" }, block.getStrings(ResultColumns.RESULT_TEST_NAME));
+
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void selectedColumns() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // Separately written files can be concatenated
+        for (int n = 0; n < 2; ++n) {
+            try (ResultColumnsWriter writer = new ResultColumnsWriter(output)) {
+                writer.add(testResult(n));
+            }
+        }
+
+        long[] loadTimes = new long[4];
+        int numPages = 0;
+        try (ResultColumnsReader reader = new ResultColumnsReader(new ByteArrayInputStream(output.toByteArray()),
+                ResultColumns.PAGE_NAV_START_TIME, ResultColumns.PAGE_NAV_END_TIME)) {
+            ResultColumnsReader.Block block;
+            while ((block = reader.next()) != null) {
+                assertFalse(block.hasColumn(ResultColumns.REQUEST_URL));
+                long[] start = block.getLongs(ResultColumns.PAGE_NAV_START_TIME);
+                long[] end = block.getLongs(ResultColumns.PAGE_NAV_END_TIME);
+                for (int i = 0; i < block.getNumPages(); ++i) {
+                    loadTimes[numPages++] = end[i] == 0 ? 0 : end[i] - start[i];
+                }
+            }
+        }
+        assertArrayEquals(new long[] { 50, 0, 51, 0 }, loadTimes);
+    }
+}
@@ -0,0 +1,62 @@
+package com.loadtestgo.script.engine;
+
+import com.loadtestgo.script.engine.internal.api.CSVData;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CSV files loaded by the tests run in the engine.
+ *
+ * Every virtual user in a load test usually opens the same data files, the
+ * data is read-only so it's loaded once and shared.  Entries are keyed by
+ * the canonical path and checked against the file's modified time and size,
+ * so a file that's changed is loaded again.
+ */
+public class CSVCache {
+    private final ConcurrentHashMap<String, CSVData> files = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CSVData get(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        try {
+            // Other files can be loaded at the same time, only loads of this one wait
+            return files.compute(path, (key, data) -> {
+                if (data != null && data.getLastModified() == lastModified && data.getLength() == length) {
+                    hits.incrementAndGet();
+                    return data;
+                }
+                misses.incrementAndGet();
+                try {
+                    return CSVData.load(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public int size() {
+        return files.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void clear() {
+        files.clear();
+    }
+}
@@ -0,0 +1,33 @@
+package com.loadtestgo.script.engine;
+
+import com.loadtestgo.script.engine.internal.api.CSVData;
+import com.loadtestgo.script.engine.internal.api.DataFeeder;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The feeders handing out CSV rows to the tests run in the engine, one per
+ * file and strategy.  If the file has changed and been loaded again the
+ * feeder starts again with the new rows.
+ */
+public class DataFeeders {
+    private final ConcurrentHashMap<String, DataFeeder> feeders = new ConcurrentHashMap<>();
+
+    /**
+     * @param path the canonical path of the file
+     * @param partitions the number of workers, for the partitioned strategy
+     */
+    public DataFeeder get(String path, CSVData data, DataFeeder.Strategy strategy, int partitions) {
+        return feeders.compute(path + "|" + strategy, (key, feeder) -> {
+            if (feeder != null && feeder.getData() == data) {
+                return feeder;
+            }
+            return new DataFeeder(data, strategy, partitions, ThreadLocalRandom.current().nextLong());
+        });
+    }
+
+    public void clear() {
+        feeders.clear();
+    }
+}
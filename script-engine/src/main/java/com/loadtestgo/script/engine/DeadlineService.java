@@ -0,0 +1,125 @@
+package com.loadtestgo.script.engine;
+
+import org.pmw.tinylog.Logger;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs actions once a deadline has passed, e.g. interrupting a script that
+ * has run past its timeout.
+ *
+ * All deadlines share a single scheduler thread, so starting a test doesn't
+ * start a thread of its own.  The actions are run on that thread and so must
+ * be quick.
+ */
+public class DeadlineService {
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * A scheduled action that can be cancelled or moved
+     */
+    public class Deadline {
+        private final Runnable action;
+        // Guarded by this
+        private ScheduledFuture<?> future;
+        private long deadline;
+        private boolean cancelled = false;
+
+        private Deadline(Runnable action) {
+            this.action = action;
+        }
+
+        /**
+         * Run the action in delayMS from now instead, this can be called from
+         * the action itself to run it again.
+         */
+        public synchronized void reschedule(long delayMS) {
+            if (cancelled) {
+                return;
+            }
+            if (future != null) {
+                future.cancel(false);
+            }
+            deadline = System.currentTimeMillis() + delayMS;
+            future = executor.schedule(this::run, delayMS, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Push the deadline back by the given time
+         */
+        public synchronized void extend(long extraMS) {
+            if (cancelled) {
+                return;
+            }
+            reschedule(Math.max(deadline + extraMS - System.currentTimeMillis(), 0));
+        }
+
+        /**
+         * The action isn't run after this returns, unless it's already running
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+                future = null;
+            }
+        }
+
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * The time (ms since the epoch) the action is due to run
+         */
+        public synchronized long getDeadline() {
+            return deadline;
+        }
+
+        private void run() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                future = null;
+            }
+            try {
+                action.run();
+            } catch (Throwable t) {
+                Logger.error(t, "Deadline action failed");
+            }
+        }
+    }
+
+    public DeadlineService() {
+        executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "Deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Most deadlines are cancelled, don't leave them in the queue
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Run the action in delayMS from now
+     */
+    public Deadline schedule(long delayMS, Runnable action) {
+        Deadline deadline = new Deadline(action);
+        deadline.reschedule(delayMS);
+        return deadline;
+    }
+
+    /**
+     * The number of deadlines waiting to run
+     */
+    public int getPendingCount() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
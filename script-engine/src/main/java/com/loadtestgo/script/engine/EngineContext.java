@@ -1,17 +1,20 @@
 package com.loadtestgo.script.engine;
 
 import com.loadtestgo.script.engine.internal.browsers.chrome.ChromeFinder;
+import com.loadtestgo.script.engine.internal.browsers.chrome.ChromePool;
 import com.loadtestgo.script.engine.internal.server.BrowserWebSocketServer;
 import com.loadtestgo.util.IniFile;
 import com.loadtestgo.util.Settings;
+import org.java_websocket.server.SelectorStats;
 import org.pmw.tinylog.Logger;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * The main EngineContext that is shared between multiple browsers / users / sessions.
@@ -29,7 +32,14 @@ public class EngineContext {
     private String location;
     private EngineSettings engineSettings;
     private File chromeExecutable;
-    final private Map<String,Long> seqIds = new HashMap<>();
+    private ChromePool chromePool;
+    private boolean chromePoolClosed = false;
+    private ScriptCache scriptCache;
+    private CSVCache csvCache;
+    private DataFeeders dataFeeders;
+    private int workerCount = 1;
+    private DeadlineService deadlineService;
+    private SequenceIds sequenceIds;
 
     public EngineContext() {
         this.engineSettings = new EngineSettings(IniFile.settings());
@@ -43,7 +53,11 @@ public class EngineContext {
     {
         if (webSocketServer == null) {
             try {
-                webSocketServer = new BrowserWebSocketServer();
+                webSocketServer = new BrowserWebSocketServer(
+                    engineSettings.getBrowserMaxMessageSize(),
+                    engineSettings.getBrowserWebSocketDeflate(),
+                    engineSettings.getBrowserWebSocketDeflateLevel());
+                webSocketServer.setSelectorCount(engineSettings.getBrowserWebSocketSelectors());
                 webSocketServer.start();
                 Logger.info("WebSocket listening on port {}", String.valueOf(webSocketServer.getPort()));
             } catch (Exception e) {
@@ -54,7 +68,100 @@ public class EngineContext {
         return webSocketServer;
     }
 
+    /**
+     * Connections and queued buffers per websocket selector thread, empty if
+     * the websocket server hasn't been started.
+     */
+    public synchronized List<SelectorStats> getWebSocketSelectorStats() {
+        if (webSocketServer == null) {
+            return Collections.emptyList();
+        }
+        return webSocketServer.getSelectorStats();
+    }
+
+    /**
+     * The pool of pre-launched browsers, or null if the pool is disabled
+     * (see EngineSettings.getChromePoolMaxSize()).
+     */
+    public synchronized ChromePool getChromePool() {
+        if (chromePool == null && !chromePoolClosed) {
+            int maxSize = engineSettings.getChromePoolMaxSize();
+            if (maxSize > 0) {
+                chromePool = new ChromePool(this,
+                    engineSettings.getChromePoolMinSize(),
+                    maxSize,
+                    engineSettings.getChromePoolIdleTimeout());
+            }
+        }
+
+        return chromePool;
+    }
+
+    /**
+     * Compiled scripts shared by all tests run on this engine
+     */
+    public synchronized ScriptCache getScriptCache() {
+        if (scriptCache == null) {
+            scriptCache = new ScriptCache(engineSettings.getScriptCacheSize());
+        }
+
+        return scriptCache;
+    }
+
+    /**
+     * CSV files shared by all tests run on this engine
+     */
+    public synchronized CSVCache getCSVCache() {
+        if (csvCache == null) {
+            csvCache = new CSVCache();
+        }
+
+        return csvCache;
+    }
+
+    /**
+     * The CSV feeders shared by all tests run on this engine
+     */
+    public synchronized DataFeeders getDataFeeders() {
+        if (dataFeeders == null) {
+            dataFeeders = new DataFeeders();
+        }
+
+        return dataFeeders;
+    }
+
+    /**
+     * Shared scheduler for script timeouts
+     */
+    public synchronized DeadlineService getDeadlineService() {
+        if (deadlineService == null) {
+            deadlineService = new DeadlineService();
+        }
+
+        return deadlineService;
+    }
+
     public synchronized void cleanup() {
+        if (deadlineService != null) {
+            deadlineService.shutdown();
+            deadlineService = null;
+        }
+
+        if (chromePool != null) {
+            chromePool.close();
+            chromePool = null;
+        }
+        chromePoolClosed = true;
+
+        if (sequenceIds != null) {
+            try {
+                sequenceIds.close();
+            } catch (IOException e) {
+                Logger.error(e, "Unable to close sequence file");
+            }
+            sequenceIds = null;
+        }
+
         try {
             if (webSocketServer != null) {
                 webSocketServer.stop(3000);
@@ -111,6 +218,18 @@ public class EngineContext {
         this.loadTestId = loadTestId;
     }
 
+    /**
+     * The number of workers running tests in parallel, used to split data
+     * between them
+     */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+    }
+
     public String getLocation() {
         return location;
     }
@@ -151,12 +270,21 @@ public class EngineContext {
         return chromeExecutable;
     }
 
-    public long nextSeqId(String namedSequence) {
-        synchronized (seqIds) {
-            Long val = seqIds.getOrDefault(namedSequence, 0L);
-            seqIds.put(namedSequence, val+1);
-            return val;
+    public long nextSeqId(String namedSequence) throws IOException {
+        return getSequenceIds().next(namedSequence);
+    }
+
+    /**
+     * The named sequences shared by all tests run on this engine
+     */
+    public synchronized SequenceIds getSequenceIds() {
+        if (sequenceIds == null) {
+            String file = engineSettings.getSequenceFile();
+            sequenceIds = new SequenceIds(engineSettings.getSequenceBlockSize(),
+                file == null || file.isEmpty() ? null : new File(file));
         }
+
+        return sequenceIds;
     }
 }
 
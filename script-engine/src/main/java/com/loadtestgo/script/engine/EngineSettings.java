@@ -84,6 +84,46 @@ public class EngineSettings {
         return saveChromeLogs;
     }
 
+    /**
+     * Max time in ms to wait for the browser to respond to a command, 0 (the
+     * default) to only be limited by the script timeout.
+     */
+    public long getBrowserCommandTimeout() {
+        return settings.getLong("browser.command.timeout", 0L);
+    }
+
+    /**
+     * Max size in bytes of a message from the browser (DOM dumps, response
+     * bodies, screenshots...), bigger messages are dropped.
+     */
+    public int getBrowserMaxMessageSize() {
+        return settings.getInt("browser.message.max.size", 256 * 1024 * 1024);
+    }
+
+    /**
+     * Compress messages to and from the browser with permessage-deflate.  Only
+     * worth it when the browser isn't on the same machine, over loopback it
+     * just costs CPU.
+     */
+    public boolean getBrowserWebSocketDeflate() {
+        return settings.getBoolean("browser.websocket.deflate", false);
+    }
+
+    /**
+     * zlib level (0-9) for browser.websocket.deflate, the default favours speed.
+     */
+    public int getBrowserWebSocketDeflateLevel() {
+        return settings.getInt("browser.websocket.deflate.level", 1);
+    }
+
+    /**
+     * Number of threads selecting on the browser connections, one is enough
+     * until there are dozens of browsers per engine.
+     */
+    public int getBrowserWebSocketSelectors() {
+        return settings.getInt("browser.websocket.selectors", 1);
+    }
+
     public long getBrowserWaitConnectionTime() {
         if (browserWaitConnectionTime == null) {
             browserWaitConnectionTime = settings.getLong("browser.connection.wait.time", 10 * 1000L);
@@ -110,6 +150,97 @@ public class EngineSettings {
         this.captureVideo = captureVideo;
     }
 
+    /**
+     * Max number of screencast frames waiting to be written to the video,
+     * frames are dropped when the encoder falls further behind than this.
+     */
+    public int getVideoMaxQueuedFrames() {
+        return settings.getInt("video.queue.size", 30);
+    }
+
+    /**
+     * Max frame rate of the captured video, 0 (the default) for no limit.
+     */
+    public int getVideoMaxFps() {
+        return settings.getInt("video.max.fps", 0);
+    }
+
+    /**
+     * Video frames that differ from the previous frame by less than this
+     * (mean difference per colour channel, 0-255) are not written.  Zero
+     * (the default) only skips frames that are exactly the same.
+     */
+    public double getVideoFrameDiffThreshold() {
+        return settings.getDouble("video.frame.diff.threshold", 0.0);
+    }
+
+    /**
+     * Max number of pre-launched Chrome instances shared between users.
+     * Zero (the default) disables the pool.
+     */
+    public int getChromePoolMaxSize() {
+        return settings.getInt("chrome.pool.max", 0);
+    }
+
+    /**
+     * Number of Chrome instances the pool keeps launched and ready at all times.
+     */
+    public int getChromePoolMinSize() {
+        return settings.getInt("chrome.pool.min", 0);
+    }
+
+    /**
+     * Time in ms after which an unused pooled Chrome instance is closed (as long
+     * as the pool is above its min size).
+     */
+    public long getChromePoolIdleTimeout() {
+        return settings.getLong("chrome.pool.idle.timeout", 5 * 60 * 1000L);
+    }
+
+    /**
+     * Max number of compiled scripts (tests & the files they load) kept for
+     * reuse by later tests, 0 to compile the script every time.
+     */
+    public int getScriptCacheSize() {
+        return settings.getInt("script.cache.size", 256);
+    }
+
+    /**
+     * Rhino optimization level scripts are compiled with.  -1 runs scripts
+     * in the interpreter, which starts quickest, 0 (the default) compiles
+     * them to Java bytecode, and 1-9 also optimizes the generated code.
+     */
+    public int getScriptOptimizationLevel() {
+        return settings.getInt("script.optimization.level", 0);
+    }
+
+    /**
+     * Share one sealed copy of the standard JavaScript objects between all
+     * tests, rather than creating them for each test.  Off by default as
+     * scripts can't modify the built-in objects (e.g. add to Array.prototype)
+     * when this is on, only turn it on for scripts that don't.
+     */
+    public boolean getShareStandardScope() {
+        return settings.getBoolean("script.shared.scope", false);
+    }
+
+    /**
+     * Number of ids each thread reserves at a time from a named sequence,
+     * 1 hands them out strictly in order.
+     */
+    public int getSequenceBlockSize() {
+        return settings.getInt("seq.block.size", 1);
+    }
+
+    /**
+     * File the named sequences are kept in, so ids stay unique across
+     * restarts and between runners on the same host.  Not set keeps them
+     * in memory.
+     */
+    public String getSequenceFile() {
+        return settings.getString("seq.file");
+    }
+
     public void setVerboseLogging(boolean verboseLogging) {
         this.verboseLogging = verboseLogging;
     }
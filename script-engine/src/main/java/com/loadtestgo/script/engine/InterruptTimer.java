@@ -2,30 +2,41 @@ package com.loadtestgo.script.engine;
 
 import org.pmw.tinylog.Logger;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
+/**
+ * Interrupts the script thread once the script has run for longer than its
+ * timeout.  Time spent opening the browser doesn't count towards the timeout,
+ * so when the deadline is reached it's pushed back by the browser open time
+ * if need be.
+ */
 public class InterruptTimer {
-    private Timer timer;
+    private DeadlineService.Deadline deadline;
     private Thread thread;
     private TestContext testContext;
     private long startTime;
     private long timeoutMS;
     private boolean stopped;
+    private boolean cancelled;
 
-    public InterruptTimer(Timer timer, Thread thread, TestContext testContext, long startTime, long timeoutMS) {
-        this.timer = timer;
+    public InterruptTimer(DeadlineService deadlineService, Thread thread, TestContext testContext,
+                          long startTime, long timeoutMS) {
         this.thread = thread;
         this.testContext = testContext;
         this.startTime = startTime;
         this.stopped = false;
+        this.cancelled = false;
         this.timeoutMS = timeoutMS;
 
-        timer.schedule(newTimerTask(), timeoutMS);
+        synchronized (this) {
+            this.deadline = deadlineService.schedule(timeoutMS, this::checkTimerAndRescheduleIfNecessary);
+        }
     }
 
     public void checkTimerAndRescheduleIfNecessary() {
         synchronized (this) {
+            if (cancelled || stopped) {
+                return;
+            }
+
             long currentTime = System.currentTimeMillis();
 
             long runTime = currentTime - startTime;
@@ -36,18 +47,20 @@ public class InterruptTimer {
                 thread.interrupt();
                 stopped = true;
             } else {
-                timer.schedule(newTimerTask(), timeLeft);
+                deadline.reschedule(timeLeft);
             }
         }
     }
 
-    private TimerTask newTimerTask() {
-        return new TimerTask() {
-            @Override
-            public void run() {
-                checkTimerAndRescheduleIfNecessary();
-            }
-        };
+    /**
+     * Call once the script has finished, the thread won't be interrupted
+     * after this returns.
+     */
+    public void cancel() {
+        synchronized (this) {
+            cancelled = true;
+            deadline.cancel();
+        }
     }
 
     public boolean isStopped() {
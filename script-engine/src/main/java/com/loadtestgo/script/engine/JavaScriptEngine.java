@@ -22,6 +22,8 @@ public class JavaScriptEngine {
     private TestContext testContext;
     private Context context;
     private ScriptableObject scope;
+    private ScriptCache scriptCache;
+    private ScriptableObject standardScope;
     private Console console;
     private ConsoleNotifier consoleNotifier;
 
@@ -46,28 +48,29 @@ public class JavaScriptEngine {
         }
 
         contextFactory.setSandboxed(testContext.sandboxJavaScript());
+        contextFactory.setOptimizationLevel(testContext.getScriptOptimizationLevel());
 
         context = contextFactory.enterContext();
         JsRuntimeSupport runtimeSupport = new JsRuntimeSupport(testContext);
-        scope = context.initStandardObjects(runtimeSupport, false);
-
-        // Remove access to standard Java classes.
-        if (testContext.sandboxJavaScript()) {
-            String varsToRemove[] = {
-                "getClass",
-                "Packages",
-                "JavaAdapter",
-                "JavaImporter",
-                "JavaException",
-                "ImporterTopLevel",
-                "Continuation",
-                "java", "javax", "org", "com", "edu", "net"
-            };
-
-            for (String var : varsToRemove) {
-                scope.delete(var);
-            }
+        scriptCache = testContext.getEngineContext().getScriptCache();
+        if (testContext.getEngineSettings().getShareStandardScope()) {
+            // The standard objects are shared with the other tests, they're
+            // found through the prototype of our top level scope
+            scope = runtimeSupport;
+            standardScope = scriptCache.getStandardScope(context, testContext.sandboxJavaScript());
+            scope.setPrototype(standardScope);
+            scope.setParentScope(null);
+            // Keep the reflected Java classes to this test, they're modified
+            // when wrapped (see RhinoContextFactory)
+            new ClassCache().associate(scope);
+        } else {
+            standardScope = null;
+            scope = context.initStandardObjects(runtimeSupport, false);
 
+            // Remove access to standard Java classes.
+            if (testContext.sandboxJavaScript()) {
+                ScriptCache.removeSandboxedVars(scope);
+            }
         }
 
         // Setup results notifier to go via the console notifier if none is set
@@ -222,7 +225,11 @@ public class JavaScriptEngine {
                 group.name = scope.getClassName();
             }
 
-            if (prototype) {
+            if (scope == standardScope) {
+                // Shared standard objects, they're globals as far as the
+                // user is concerned
+                group.name = "global";
+            } else if (prototype) {
                 group.name += " Prototype";
             }
 
@@ -280,16 +287,14 @@ public class JavaScriptEngine {
         Date startTime = new Date();
         result.setStartTime(startTime);
 
-        Timer timer = null;
         InterruptTimer interruptTimer = null;
         if (timeoutMS > 0) {
-            timer = new Timer();
-            interruptTimer = new InterruptTimer(timer, Thread.currentThread(),
-                testContext, startTime.getTime(), timeoutMS);
+            interruptTimer = new InterruptTimer(testContext.getEngineContext().getDeadlineService(),
+                Thread.currentThread(), testContext, startTime.getTime(), timeoutMS);
         }
 
         try {
-            return context.evaluateString(scope, script, filename, 1, null);
+            return scriptCache.getScript(context, script, filename).exec(context, scope);
         } catch (Exception e) {
             ScriptException se = asScriptException(e);
             if (interruptTimer != null && interruptTimer.isStopped()) {
@@ -300,12 +305,36 @@ public class JavaScriptEngine {
         } finally {
             long now = System.currentTimeMillis();
             result.setRunTime((int) (now - result.getStartTime().getTime()));
-            if (timer != null) {
-                timer.cancel();
+            if (interruptTimer != null) {
+                interruptTimer.cancel();
             }
         }
     }
 
+    /**
+     * Compile a script into the engine's script cache ahead of time, so the
+     * tests that run it don't have to.
+     *
+     * @throws ScriptException if the script doesn't compile
+     */
+    public static void precompile(EngineContext engineContext, String script, String filename,
+                                  int optimizationLevel) throws ScriptException {
+        RhinoContextFactory contextFactory = new RhinoContextFactory();
+        contextFactory.setOptimizationLevel(optimizationLevel);
+        Context context = contextFactory.enterContext();
+        try {
+            engineContext.getScriptCache().getScript(context, script, filename);
+        } catch (RhinoException re) {
+            throw new ScriptException(
+                ErrorType.Script,
+                re.details(), re.sourceName(),
+                re.lineNumber(), re.columnNumber(),
+                null);
+        } finally {
+            Context.exit();
+        }
+    }
+
     public Object runPartialScript(String script, int startLine) throws ScriptException {
         try {
             Object object = context.evaluateString(scope, script, "", startLine, null);
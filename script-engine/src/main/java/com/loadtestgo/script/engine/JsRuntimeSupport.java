@@ -1,5 +1,6 @@
 package com.loadtestgo.script.engine;
 
+import com.loadtestgo.util.FileUtils;
 import org.mozilla.javascript.*;
 import org.pmw.tinylog.Logger;
 
@@ -50,8 +51,10 @@ public class JsRuntimeSupport extends ScriptableObject {
             filePath = fullPath;
         }
 
-        try {
-            return cx.evaluateReader(newScope, new InputStreamReader(new FileInputStream(file)), filePath, 1, null);
+        try (InputStream input = new FileInputStream(file)) {
+            String source = FileUtils.readAllText(input);
+            Script script = dis.testContext.getEngineContext().getScriptCache().getScript(cx, source, filePath);
+            return script.exec(cx, newScope);
         } catch (IOException e) {
             if (dis.testContext.getIsFileSystemSandboxed()) {
                 throw new ScriptException(e.getMessage());
@@ -0,0 +1,196 @@
+package com.loadtestgo.script.engine;
+
+import com.loadtestgo.util.Hex;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiled scripts and standard objects shared by all the tests run in the
+ * engine.
+ *
+ * Compiling a script is much more expensive than running it, and a load test
+ * runs the same scripts (and the files they load()) over and over.  Compiled
+ * scripts don't hold any state of their own so they're cached here, keyed by
+ * the file name and a hash of the source, so edited files are recompiled.
+ *
+ * The standard JavaScript objects (Object, Array, JSON...) are also only
+ * created once.  They're sealed, so one test can't modify them for the
+ * others, and each test's scope uses them as its prototype.
+ */
+public class ScriptCache {
+    // Standard objects that aren't available to sandboxed scripts
+    private static final String[] SANDBOX_REMOVED_VARS = {
+        "getClass",
+        "Packages",
+        "JavaAdapter",
+        "JavaImporter",
+        "JavaException",
+        "ImporterTopLevel",
+        "Continuation",
+        "java", "javax", "org", "com", "edu", "net"
+    };
+
+    private final int maxSize;
+    private final Map<Key, Script> scripts;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // Guarded by this
+    private ScriptableObject standardScope;
+    private ScriptableObject sandboxedStandardScope;
+
+    private static class Key {
+        final String sourceName;
+        final String hash;
+        final int optimizationLevel;
+        final int languageVersion;
+
+        Key(String sourceName, String hash, int optimizationLevel, int languageVersion) {
+            this.sourceName = sourceName;
+            this.hash = hash;
+            this.optimizationLevel = optimizationLevel;
+            this.languageVersion = languageVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return optimizationLevel == key.optimizationLevel &&
+                languageVersion == key.languageVersion &&
+                hash.equals(key.hash) &&
+                sourceName.equals(key.sourceName);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = sourceName.hashCode();
+            result = 31 * result + hash.hashCode();
+            result = 31 * result + optimizationLevel;
+            result = 31 * result + languageVersion;
+            return result;
+        }
+    }
+
+    /**
+     * @param maxSize max number of compiled scripts kept, the least recently
+     *                used are removed after that, 0 to disable caching
+     */
+    public ScriptCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.scripts = new LinkedHashMap<Key, Script>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Script> eldest) {
+                return size() > ScriptCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the compiled script for the given source, compiling it if it hasn't
+     * been seen before.
+     */
+    public Script getScript(Context cx, String source, String sourceName) {
+        if (maxSize <= 0) {
+            misses.incrementAndGet();
+            return cx.compileString(source, sourceName, 1, null);
+        }
+
+        Key key = new Key(sourceName == null ? "" : sourceName, hash(source),
+            cx.getOptimizationLevel(), cx.getLanguageVersion());
+        synchronized (scripts) {
+            Script script = scripts.get(key);
+            if (script != null) {
+                hits.incrementAndGet();
+                return script;
+            }
+        }
+
+        // Compile outside of the lock, if two threads compile the same script
+        // at once one of them is thrown away
+        misses.incrementAndGet();
+        Script script = cx.compileString(source, sourceName, 1, null);
+        synchronized (scripts) {
+            Script existing = scripts.putIfAbsent(key, script);
+            return existing != null ? existing : script;
+        }
+    }
+
+    /**
+     * The sealed scope holding the standard JavaScript objects, to be used as
+     * the prototype of a test's top level scope.
+     *
+     * @param sandboxed remove access to Java packages & classes
+     */
+    public synchronized ScriptableObject getStandardScope(Context cx, boolean sandboxed) {
+        if (sandboxed) {
+            if (sandboxedStandardScope == null) {
+                sandboxedStandardScope = newStandardScope(cx, true);
+            }
+            return sandboxedStandardScope;
+        } else {
+            if (standardScope == null) {
+                standardScope = newStandardScope(cx, false);
+            }
+            return standardScope;
+        }
+    }
+
+    private static ScriptableObject newStandardScope(Context cx, boolean sandboxed) {
+        ScriptableObject scope = cx.initStandardObjects(null, true);
+        if (sandboxed) {
+            removeSandboxedVars(scope);
+        }
+        scope.sealObject();
+        return scope;
+    }
+
+    static void removeSandboxedVars(ScriptableObject scope) {
+        for (String var : SANDBOX_REMOVED_VARS) {
+            scope.delete(var);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (scripts) {
+            return scripts.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (scripts) {
+            scripts.clear();
+        }
+    }
+
+    private static String hash(String source) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return Hex.bytesToHex(sha256.digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has SHA-256, but fall back to the source itself
+            return source;
+        }
+    }
+}
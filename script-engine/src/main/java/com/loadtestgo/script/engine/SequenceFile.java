@@ -0,0 +1,191 @@
+package com.loadtestgo.script.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.loadtestgo.util.Hex;
+
+/**
+ * Named sequence counters kept in a memory-mapped file, so ids stay unique
+ * when the runner is restarted and when several runners on the host share
+ * the file.
+ *
+ * The file is a table of fixed size slots, each holding a sequence name and
+ * the next free id (the high-water mark).  Reserving ids locks the slot's
+ * region of the file, which keeps other processes out, so callers should
+ * reserve blocks of ids rather than one at a time.  Only one instance is
+ * opened per file in a JVM, as file locks can't be used between threads,
+ * and it's closed once everyone that opened it has closed it.
+ */
+public class SequenceFile {
+    private static final int MAGIC = 0x53455131; // SEQ1
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 64;
+    private static final int MAX_NAME_BYTES = SLOT_SIZE - 2 - 8;
+    private static final int VALUE_OFFSET = SLOT_SIZE - 8;
+    private static final int NUM_SLOTS = 4096;
+
+    private static final Map<String, SequenceFile> openFiles = new HashMap<>();
+
+    private final File file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    // Slots are striped over a few locks, it's only needed to keep threads
+    // in this process from asking for overlapping file locks
+    private final Object[] slotLocks = newLocks(64);
+    // Guarded by openFiles
+    private int openCount;
+
+    private SequenceFile(File file) throws IOException {
+        this.file = file;
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+        long size = HEADER_SIZE + (long)NUM_SLOTS * SLOT_SIZE;
+        try (FileLock lock = channel.lock(0, HEADER_SIZE, false)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            int magic = buffer.getInt(0);
+            if (magic == 0) {
+                buffer.putInt(4, NUM_SLOTS);
+                buffer.putInt(0, MAGIC);
+            } else if (magic != MAGIC || buffer.getInt(4) != NUM_SLOTS) {
+                channel.close();
+                throw new IOException(String.format("%s is not a sequence file", file.getPath()));
+            }
+        }
+    }
+
+    /**
+     * Open a sequence file, creating it if it doesn't exist.  Each open()
+     * must be matched by a close().
+     */
+    public static SequenceFile open(File file) throws IOException {
+        File canonicalFile = file.getCanonicalFile();
+        synchronized (openFiles) {
+            SequenceFile sequenceFile = openFiles.get(canonicalFile.getPath());
+            if (sequenceFile == null) {
+                sequenceFile = new SequenceFile(canonicalFile);
+                openFiles.put(canonicalFile.getPath(), sequenceFile);
+            }
+            sequenceFile.openCount++;
+            return sequenceFile;
+        }
+    }
+
+    /**
+     * Close the file once it's no longer open anywhere else in the JVM
+     */
+    public void close() throws IOException {
+        synchronized (openFiles) {
+            if (openCount == 0 || --openCount > 0) {
+                return;
+            }
+            openFiles.remove(file.getPath());
+            channel.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Reserve <code>count</code> ids from the named sequence
+     *
+     * @return the first id reserved
+     */
+    public long reserve(String name, int count) throws IOException {
+        int slot = findSlot(name);
+        long offset = HEADER_SIZE + (long)slot * SLOT_SIZE;
+        synchronized (slotLock(slot)) {
+            try (FileLock lock = channel.lock(offset, SLOT_SIZE, false)) {
+                int valueOffset = (int)offset + VALUE_OFFSET;
+                long value = buffer.getLong(valueOffset);
+                buffer.putLong(valueOffset, value + count);
+                return value;
+            }
+        }
+    }
+
+    private static Object[] newLocks(int n) {
+        Object[] locks = new Object[n];
+        for (int i = 0; i < n; ++i) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    private Object slotLock(int slot) {
+        return slotLocks[slot % slotLocks.length];
+    }
+
+    private int findSlot(String name) throws IOException {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            return slot;
+        }
+
+        byte[] key = slotKey(name);
+        int start = Math.floorMod(Arrays.hashCode(key), NUM_SLOTS);
+        // Claiming a slot is done with the header locked, so two processes
+        // can't claim the same empty slot for different names
+        synchronized (this) {
+            try (FileLock lock = channel.lock(0, HEADER_SIZE, false)) {
+                for (int i = 0; i < NUM_SLOTS; ++i) {
+                    int candidate = (start + i) % NUM_SLOTS;
+                    int offset = HEADER_SIZE + candidate * SLOT_SIZE;
+                    int length = buffer.getShort(offset);
+                    if (length == 0) {
+                        for (int j = 0; j < key.length; ++j) {
+                            buffer.put(offset + 2 + j, key[j]);
+                        }
+                        buffer.putShort(offset, (short)key.length);
+                    } else if (!matches(offset, key)) {
+                        continue;
+                    }
+                    slots.put(name, candidate);
+                    return candidate;
+                }
+            }
+        }
+        throw new IOException(String.format("No room for sequence '%s' in %s", name, file.getPath()));
+    }
+
+    private boolean matches(int offset, byte[] key) {
+        if (buffer.getShort(offset) != key.length) {
+            return false;
+        }
+        for (int j = 0; j < key.length; ++j) {
+            if (buffer.get(offset + 2 + j) != key[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The name as stored in a slot, long names are replaced by their hash
+     */
+    private static byte[] slotKey(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0 && bytes.length <= MAX_NAME_BYTES) {
+            return bytes;
+        }
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return ("#" + Hex.bytesToHex(sha1.digest(bytes))).getBytes(StandardCharsets.UTF_8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
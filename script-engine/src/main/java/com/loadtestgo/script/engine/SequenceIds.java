@@ -0,0 +1,97 @@
+package com.loadtestgo.script.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The named sequences handed out by pizza.nextSeqId().
+ *
+ * With a block size greater than 1 each thread reserves a block of ids at a
+ * time and hands them out itself, so the shared counter is only touched once
+ * per block.  Ids are still unique, but are no longer given out in order
+ * across threads, and ids left in a thread's block are skipped.
+ *
+ * With a sequence file the counters are kept in the file, so they carry on
+ * where they left off when the runner is restarted and can be shared with
+ * other runners on the same host.  Use a large block size with a file, each
+ * reservation locks the file.
+ */
+public class SequenceIds {
+    private final int blockSize;
+    private final File file;
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final ThreadLocal<Map<String, Block>> blocks = ThreadLocal.withInitial(HashMap::new);
+    private SequenceFile sequenceFile;
+
+    /**
+     * @param file the sequence file, or null to keep the counters in memory
+     */
+    public SequenceIds(int blockSize, File file) {
+        this.blockSize = Math.max(1, blockSize);
+        this.file = file;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long next(String name) throws IOException {
+        if (blockSize == 1) {
+            return reserve(name, 1);
+        }
+
+        Map<String, Block> threadBlocks = blocks.get();
+        Block block = threadBlocks.get(name);
+        if (block == null) {
+            block = new Block();
+            threadBlocks.put(name, block);
+        }
+        if (block.next == block.end) {
+            block.next = reserve(name, blockSize);
+            block.end = block.next + blockSize;
+        }
+        return block.next++;
+    }
+
+    private long reserve(String name, int count) throws IOException {
+        if (file != null) {
+            return getSequenceFile().reserve(name, count);
+        }
+
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(name, key -> new AtomicLong());
+        }
+        return counter.getAndAdd(count);
+    }
+
+    private synchronized SequenceFile getSequenceFile() throws IOException {
+        if (sequenceFile == null) {
+            sequenceFile = SequenceFile.open(file);
+        }
+        return sequenceFile;
+    }
+
+    /**
+     * Close the sequence file, if one was opened
+     */
+    public synchronized void close() throws IOException {
+        if (sequenceFile != null) {
+            sequenceFile.close();
+            sequenceFile = null;
+        }
+    }
+
+    private static class Block {
+        long next;
+        long end;
+    }
+}
@@ -5,13 +5,15 @@ import com.loadtestgo.script.api.TestResult;
 import com.loadtestgo.script.api.TestResultFile;
 import com.loadtestgo.script.engine.internal.api.ChromeBrowser;
 import com.loadtestgo.script.engine.internal.browsers.chrome.ChromeSettings;
+import com.loadtestgo.script.har.HarSpool;
 import com.loadtestgo.util.Dirs;
-import org.apache.commons.io.IOUtils;
 import org.pmw.tinylog.Logger;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -34,6 +36,8 @@ public class TestContext {
     protected long browserOpenStartTime;
     protected String videoFilePath;
     protected boolean captureVideo = true;
+    protected HarSpool harSpool;
+    protected Integer scriptOptimizationLevel;
 
     public TestContext(UserContext userContext) {
         this.userContext = userContext;
@@ -203,8 +207,11 @@ public class TestContext {
 
     public void saveFile(String name, Data data) {
         File file = new File(getOutputDirectory(), name);
-        try (FileOutputStream output = new FileOutputStream(file)) {
-            IOUtils.write(data.getBytes(), output);
+        try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+            ByteBuffer buffer = data.getBuffer();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
             this.testResult.getSavedFiles().add(new TestResultFile(name, file));
         } catch (IOException e) {
             Logger.error(e, "Unable to save script file {}", file);
@@ -235,4 +242,32 @@ public class TestContext {
     public String getTestName() {
         return testResult.getTestName();
     }
+
+    /**
+     * Spool finished requests & pages to disk as the test runs rather than
+     * keeping them all in the test result.  Must be set before the browser
+     * is opened.
+     */
+    public void setHarSpool(HarSpool harSpool) {
+        this.harSpool = harSpool;
+    }
+
+    public HarSpool getHarSpool() {
+        return harSpool;
+    }
+
+    /**
+     * Override the Rhino optimization level for this test, null to use the
+     * engine setting (see EngineSettings.getScriptOptimizationLevel()).
+     */
+    public void setScriptOptimizationLevel(Integer scriptOptimizationLevel) {
+        this.scriptOptimizationLevel = scriptOptimizationLevel;
+    }
+
+    public int getScriptOptimizationLevel() {
+        if (scriptOptimizationLevel != null) {
+            return scriptOptimizationLevel;
+        }
+        return getEngineSettings().getScriptOptimizationLevel();
+    }
 }
@@ -0,0 +1,364 @@
+package com.loadtestgo.script.engine.internal.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The rows of a CSV file, read-only so one copy can be shared by all the
+ * tests in the engine.
+ *
+ * Files are memory-mapped rather than read onto the heap.  Loading only
+ * scans the file once to find where each row starts, the fields are parsed
+ * from the mapped bytes when a row is asked for, so big data files load
+ * quickly and are paged in by the OS as they're used.
+ */
+public class CSVData {
+    // Map files in 1GB segments, a single mapping is limited to 2GB
+    private static final int SEGMENT_SHIFT = 30;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private final ByteBuffer[] segments;
+    private final long length;
+    private final RowIndex rows;
+    private final Map<String,Integer> columnNames;
+    private final long lastModified;
+
+    private CSVData(ByteBuffer[] segments, long length, long lastModified) {
+        this.segments = segments;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.rows = index();
+
+        Map<String,Integer> names = new HashMap<>();
+        if (rows.size() > 0) {
+            String[] columns = parseRow(0);
+            for (int i = 0; i < columns.length; ++i) {
+                names.put(columns[i].toLowerCase().trim(), i);
+            }
+        }
+        this.columnNames = Collections.unmodifiableMap(names);
+    }
+
+    public static CSVData load(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            long lastModified = file.lastModified();
+            long size = channel.size();
+            int numSegments = (int)((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            ByteBuffer[] segments = new ByteBuffer[numSegments];
+            for (int i = 0; i < numSegments; ++i) {
+                long start = (long)i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(size - start, 1L << SEGMENT_SHIFT));
+            }
+            // The mapping stays valid after the channel is closed
+            return new CSVData(segments, size, lastModified);
+        }
+    }
+
+    public static CSVData read(InputStream inputStream) throws IOException {
+        byte[] bytes = IOUtils.toByteArray(inputStream);
+        return new CSVData(new ByteBuffer[] { ByteBuffer.wrap(bytes) }, bytes.length, 0);
+    }
+
+    /**
+     * The modified time of the file when it was loaded, 0 if it was read from a stream
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * The size in bytes of the data
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public int getNumRows() {
+        return rows.size();
+    }
+
+    /**
+     * Lower case column names from the first row, mapped to their index
+     */
+    public Map<String,Integer> getColumnNames() {
+        return columnNames;
+    }
+
+    private byte byteAt(long pos) {
+        return segments[(int)(pos >>> SEGMENT_SHIFT)].get((int)(pos & SEGMENT_MASK));
+    }
+
+    private enum ParseState {
+        START,
+        INQUOTES,
+        INQUOTE_ESCAPE,
+        NOQUOTES
+    }
+
+    private enum ParseAllState {
+        START,
+        INQUOTES,
+        INQUOTE_ESCAPE,
+        START_SKIP_R,
+        START_SKIP_N,
+        NOQUOTES
+    }
+
+    /**
+     * Find where each row starts.  A line break outside quotes ends a row,
+     * "\r\n" and "\n\r" count as one break, and there's no row for the end
+     * of the file.
+     */
+    private RowIndex index() {
+        RowIndex index = new RowIndex();
+        long pos = 0;
+        if (length >= 3 && byteAt(0) == (byte)0xEF && byteAt(1) == (byte)0xBB && byteAt(2) == (byte)0xBF) {
+            pos = 3;
+        }
+
+        ParseAllState parseState = ParseAllState.START;
+        long rowStart = pos;
+        boolean hasContent = false;
+        // Scan a chunk at a time, getting each byte from the mapped buffer is much slower
+        byte[] chunk = new byte[64 * 1024];
+        int chunkLength = 0;
+        long chunkStart = pos;
+        for (; pos < length; ++pos) {
+            if (pos - chunkStart >= chunkLength) {
+                chunkStart = pos;
+                chunkLength = readChunk(pos, chunk);
+            }
+            int i = (int)(pos - chunkStart);
+            if (parseState == ParseAllState.NOQUOTES) {
+                // Most bytes are unquoted field values, skip to the next separator
+                while (i < chunkLength && chunk[i] != ',' && chunk[i] != '\n' && chunk[i] != '\r') {
+                    ++i;
+                }
+                pos = chunkStart + i;
+                if (i == chunkLength) {
+                    --pos;
+                    continue;
+                }
+            }
+            byte c = chunk[i];
+            switch (parseState) {
+                case START:
+                case START_SKIP_N:
+                case START_SKIP_R:
+                    if (c == '\"') {
+                        parseState = ParseAllState.INQUOTES;
+                    } else if (c == '\n') {
+                        if (parseState != ParseAllState.START_SKIP_N) {
+                            index.add(rowStart);
+                            hasContent = false;
+                            parseState = ParseAllState.START_SKIP_R;
+                        } else {
+                            parseState = ParseAllState.START;
+                        }
+                        rowStart = pos + 1;
+                    } else if (c == '\r') {
+                        if (parseState != ParseAllState.START_SKIP_R) {
+                            index.add(rowStart);
+                            hasContent = false;
+                            parseState = ParseAllState.START_SKIP_N;
+                        } else {
+                            parseState = ParseAllState.START;
+                        }
+                        rowStart = pos + 1;
+                    } else {
+                        parseState = ParseAllState.NOQUOTES;
+                        hasContent = true;
+                    }
+                    break;
+                case NOQUOTES:
+                case INQUOTE_ESCAPE:
+                    if (c == ',') {
+                        hasContent = true;
+                        parseState = ParseAllState.START;
+                    } else if (c == '\n') {
+                        index.add(rowStart);
+                        hasContent = false;
+                        rowStart = pos + 1;
+                        parseState = ParseAllState.START_SKIP_R;
+                    } else if (c == '\r') {
+                        index.add(rowStart);
+                        hasContent = false;
+                        rowStart = pos + 1;
+                        parseState = ParseAllState.START_SKIP_N;
+                    } else {
+                        hasContent = true;
+                        if (parseState == ParseAllState.INQUOTE_ESCAPE) {
+                            parseState = ParseAllState.INQUOTES;
+                        }
+                    }
+                    break;
+                case INQUOTES:
+                    if (c == '\"') {
+                        parseState = ParseAllState.INQUOTE_ESCAPE;
+                    } else {
+                        hasContent = true;
+                    }
+                    break;
+            }
+        }
+
+        if (hasContent) {
+            index.add(rowStart);
+        }
+        index.trim();
+        return index;
+    }
+
+    /**
+     * Copy bytes from <code>pos</code> into <code>chunk</code>, stopping at the end of the segment
+     */
+    private int readChunk(long pos, byte[] chunk) {
+        ByteBuffer segment = segments[(int)(pos >>> SEGMENT_SHIFT)].duplicate();
+        segment.position((int)(pos & SEGMENT_MASK));
+        int n = Math.min(chunk.length, segment.remaining());
+        segment.get(chunk, 0, n);
+        return n;
+    }
+
+    /**
+     * Parse the fields of a row.  Commas and line breaks inside quotes are
+     * part of the field, a doubled quote inside quotes is a literal quote.
+     *
+     * @return null if the row doesn't exist
+     */
+    public String[] parseRow(int row) {
+        if (row < 0 || row >= rows.size()) {
+            return null;
+        }
+
+        List<String> columns = new ArrayList<>();
+        FieldBuffer val = new FieldBuffer();
+        ParseState parseState = ParseState.START;
+        for (long pos = rows.get(row); pos < length; ++pos) {
+            byte c = byteAt(pos);
+            if ((c == '\n' || c == '\r') && parseState != ParseState.INQUOTES) {
+                break;
+            }
+            switch (parseState) {
+                case START:
+                    if (c == '\"') {
+                        parseState = ParseState.INQUOTES;
+                    } else if (c == ',') {
+                        columns.add(val.take());
+                    } else {
+                        parseState = ParseState.NOQUOTES;
+                        val.append(c);
+                    }
+                    break;
+                case NOQUOTES:
+                    if (c == ',') {
+                        columns.add(val.take());
+                        parseState = ParseState.START;
+                    } else {
+                        val.append(c);
+                    }
+                    break;
+                case INQUOTES:
+                    if (c == '\"') {
+                        parseState = ParseState.INQUOTE_ESCAPE;
+                    } else {
+                        val.append(c);
+                    }
+                    break;
+                case INQUOTE_ESCAPE:
+                    if (c == ',') {
+                        columns.add(val.take());
+                        parseState = ParseState.START;
+                    } else {
+                        val.append(c);
+                        parseState = ParseState.INQUOTES;
+                    }
+                    break;
+            }
+        }
+        columns.add(val.take());
+        return columns.toArray(new String[columns.size()]);
+    }
+
+    /**
+     * The UTF-8 bytes of the field being parsed
+     */
+    private static class FieldBuffer {
+        private byte[] bytes = new byte[64];
+        private int size = 0;
+
+        void append(byte b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = b;
+        }
+
+        String take() {
+            String s = new String(bytes, 0, size, StandardCharsets.UTF_8);
+            size = 0;
+            return s;
+        }
+    }
+
+    /**
+     * Start offsets of the rows, as ints until the file is too big for them
+     */
+    private static class RowIndex {
+        private int[] offsets = new int[1024];
+        private long[] longOffsets;
+        private int size = 0;
+
+        void add(long offset) {
+            if (longOffsets == null && offset > Integer.MAX_VALUE) {
+                longOffsets = new long[offsets.length];
+                for (int i = 0; i < size; ++i) {
+                    longOffsets[i] = offsets[i];
+                }
+                offsets = null;
+            }
+            if (longOffsets != null) {
+                if (size == longOffsets.length) {
+                    longOffsets = Arrays.copyOf(longOffsets, size * 2);
+                }
+                longOffsets[size++] = offset;
+            } else {
+                if (size == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, size * 2);
+                }
+                offsets[size++] = (int)offset;
+            }
+        }
+
+        long get(int row) {
+            return longOffsets != null ? longOffsets[row] : offsets[row];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void trim() {
+            if (longOffsets != null) {
+                longOffsets = Arrays.copyOf(longOffsets, size);
+            } else {
+                offsets = Arrays.copyOf(offsets, size);
+            }
+        }
+    }
+}
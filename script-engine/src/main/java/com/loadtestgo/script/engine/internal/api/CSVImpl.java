@@ -1,15 +1,12 @@
 package com.loadtestgo.script.engine.internal.api;
 
 import com.loadtestgo.script.api.CSV;
-import org.apache.commons.io.input.BOMInputStream;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class CSVImpl implements CSV {
-    private List<String> rows;
-    private Map<String,Integer> columnNames = new HashMap<>();
+    private final CSVData data;
 
     public class Row implements CSV.Row {
         private String values[];
@@ -24,7 +21,7 @@ public class CSVImpl implements CSV {
                 return null;
             }
 
-            Integer i = CSVImpl.this.columnNames.get(columnName.toLowerCase());
+            Integer i = data.getColumnNames().get(columnName.toLowerCase());
             if (i == null || i >= values.length) {
                 return null;
             }
@@ -48,40 +45,39 @@ public class CSVImpl implements CSV {
     }
 
     public CSVImpl(File file) throws IOException {
-        init(new FileInputStream(file));
+        this(CSVData.load(file));
     }
 
     public CSVImpl(InputStream inputStream) throws IOException {
-        init(inputStream);
+        this(CSVData.read(inputStream));
     }
 
-    private void init(InputStream inputStream) throws IOException {
-        rows = parseCsvRowsIntoArray(inputStream);
+    /**
+     * A view of data that may be shared with other tests
+     */
+    public CSVImpl(CSVData data) {
+        this.data = data;
+    }
 
-        if (rows.size() > 0) {
-            List<String> columns = parseCsvRow(rows.get(0));
-            for (int i = 0; i < columns.size(); ++i) {
-                String name = columns.get(i);
-                columnNames.put(name.toLowerCase().trim(), i);
-            }
-        }
+    public CSVData getData() {
+        return data;
     }
 
     @Override
     public int getNumRows() {
-        return rows.size();
+        return data.getNumRows();
     }
 
     @Override
     public int size() {
-        return rows.size();
+        return data.getNumRows();
     }
 
     @Override
     public Row row(int row) {
-        if (row >= 0 && row < rows.size()) {
-            List<String> columns = parseCsvRow(rows.get(row));
-            return new Row(columns.toArray(new String[0]));
+        String[] columns = data.parseRow(row);
+        if (columns != null) {
+            return new Row(columns);
         } else {
             return null;
         }
@@ -89,16 +85,16 @@ public class CSVImpl implements CSV {
 
     @Override
     public Row randomRow() {
-        if (rows.size() < 2) {
+        if (data.getNumRows() < 2) {
             return null;
         }
-        return row(1 + randomInt(rows.size() - 1));
+        return row(1 + randomInt(data.getNumRows() - 1));
     }
 
     @Override
     public Row randomRow(boolean header) {
         if (!header) {
-            return row(randomInt(rows.size()));
+            return row(randomInt(data.getNumRows()));
         } else {
             return randomRow();
         }
@@ -148,168 +144,7 @@ public class CSVImpl implements CSV {
 
     @Override
     public List<String> getColumnNames() {
-        return new ArrayList<>(columnNames.keySet());
-    }
-
-    enum ParseState {
-        START,
-        INQUOTES,
-        INQUOTE_ESCAPE,
-        NOQUOTES
-    }
-
-    enum ParseAllState {
-        START,
-        INQUOTES,
-        INQUOTE_ESCAPE,
-        START_SKIP_R,
-        START_SKIP_N,
-        NOQUOTES
-    }
-
-    static List<String> parseCsvRowsIntoArray(InputStream file) throws IOException {
-        BufferedReader reader = new BufferedReader(
-            new InputStreamReader(
-                new BOMInputStream(file),
-                StandardCharsets.UTF_8));
-
-        return parseCsvRowsIntoArray(reader);
-    }
-
-    static List<String> parseCsvRowsIntoArray(BufferedReader reader) throws IOException {
-        ArrayList<String> rows = new ArrayList<>();
-
-        int charactorAsInt;
-        ParseAllState parseState = ParseAllState.START;
-        StringBuilder val = new StringBuilder();
-
-        while((charactorAsInt = reader.read()) != -1) {
-            char c = (char)charactorAsInt;
-            switch (parseState) {
-                case START:
-                case START_SKIP_N:
-                case START_SKIP_R:
-                    if (c == '\"') {
-                        parseState = ParseAllState.INQUOTES;
-                    } else if (c == '\n') {
-                        if (parseState != ParseAllState.START_SKIP_N) {
-                            rows.add(val.toString());
-                            val = new StringBuilder();
-                            parseState = ParseAllState.START_SKIP_R;
-                        } else {
-                            parseState = ParseAllState.START;
-                        }
-                    } else if (c == '\r') {
-                        if (parseState != ParseAllState.START_SKIP_R) {
-                            rows.add(val.toString());
-                            val = new StringBuilder();
-                            parseState = ParseAllState.START_SKIP_N;
-                        } else {
-                            parseState = ParseAllState.START;
-                        }
-                    } else {
-                        parseState = ParseAllState.NOQUOTES;
-                        val.append(c);
-                    }
-                    break;
-                case NOQUOTES:
-                    if (c == ',') {
-                        val.append(c);
-                        parseState = ParseAllState.START;
-                    } else if (c == '\n') {
-                        rows.add(val.toString());
-                        val = new StringBuilder();
-                        parseState = ParseAllState.START_SKIP_R;
-                    } else if (c == '\r') {
-                        rows.add(val.toString());
-                        val = new StringBuilder();
-                        parseState = ParseAllState.START_SKIP_N;
-                    } else {
-                        val.append(c);
-                    }
-                    break;
-                case INQUOTES:
-                    if (c == '\"') {
-                        parseState = ParseAllState.INQUOTE_ESCAPE;
-                    } else {
-                        val.append(c);
-                    }
-                    break;
-                case INQUOTE_ESCAPE:
-                    if (c == ',') {
-                        val.append(c);
-                        parseState = ParseAllState.START;
-                    } else if (c == '\n') {
-                        rows.add(val.toString());
-                        val = new StringBuilder();
-                        parseState = ParseAllState.START_SKIP_R;
-                    } else if (c == '\r') {
-                        rows.add(val.toString());
-                        val = new StringBuilder();
-                        parseState = ParseAllState.START_SKIP_N;
-                    } else {
-                        val.append(c);
-                        parseState = ParseAllState.INQUOTES;
-                    }
-                    break;
-            }
-        }
-
-        if (val.length() > 0) {
-            rows.add(val.toString());
-        }
-
-        return rows;
-    }
-
-    static List<String> parseCsvRow(String line) {
-        ArrayList<String> columns = new ArrayList<>();
-        StringBuilder val = new StringBuilder();
-        ParseState parseState = ParseState.START;
-        for (int i = 0; i < line.length(); ++i) {
-            char c = line.charAt(i);
-            switch (parseState) {
-                case START:
-                    if (c == '\"') {
-                        parseState = ParseState.INQUOTES;
-                    } else if (c == ',') {
-                        columns.add(val.toString());
-                        val = new StringBuilder();
-                    } else {
-                        parseState = ParseState.NOQUOTES;
-                        val.append(c);
-                    }
-                    break;
-                case NOQUOTES:
-                    if (c == ',') {
-                        columns.add(val.toString());
-                        val = new StringBuilder();
-                        parseState = ParseState.START;
-                    } else {
-                        val.append(c);
-                    }
-                    break;
-                case INQUOTES:
-                    if (c == '\"') {
-                        parseState = ParseState.INQUOTE_ESCAPE;
-                    } else {
-                        val.append(c);
-                    }
-                    break;
-                case INQUOTE_ESCAPE:
-                    if (c == ',') {
-                        columns.add(val.toString());
-                        val = new StringBuilder();
-                        parseState = ParseState.START;
-                    } else {
-                        val.append(c);
-                        parseState = ParseState.INQUOTES;
-                    }
-                    break;
-            }
-        }
-        columns.add(val.toString());
-        return columns;
+        return new ArrayList<>(data.getColumnNames().keySet());
     }
 
     static int randomInt(int max) {
@@ -3,18 +3,24 @@ package com.loadtestgo.script.engine.internal.api;
 import com.loadtestgo.script.api.*;
 import com.loadtestgo.script.engine.*;
 import com.loadtestgo.script.engine.internal.FormatUtils;
+import com.loadtestgo.script.engine.internal.browsers.chrome.ChromePool;
 import com.loadtestgo.script.engine.internal.browsers.chrome.ChromeProcess;
 import com.loadtestgo.script.engine.internal.browsers.chrome.ChromeSettings;
 import com.loadtestgo.script.engine.internal.browsers.chrome.ChromeWebSocket;
 import com.loadtestgo.script.engine.internal.rhino.RhinoUtils;
+import com.loadtestgo.script.engine.internal.server.BrowserWebSocket;
 import com.loadtestgo.script.engine.internal.server.BrowserWebSocketServer;
 import com.loadtestgo.util.Http;
 import com.loadtestgo.util.HttpHeader;
 import com.loadtestgo.util.StringUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.mozilla.javascript.Context;
 import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.NativeFunction;
 import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.regexp.NativeRegExp;
 import org.pmw.tinylog.Logger;
 
@@ -24,16 +30,24 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class ChromeBrowser implements Browser {
+    // Waits on request activity are woken as soon as requests finish, this
+    // only bounds how long we go without checking the browser is still open
+    private static final long MAX_REQUEST_WAIT_MS = 1000;
+
     private ChromeWebSocket pizzaHandler;
     private ChromeProcess chromeProcess;
+    private ChromePool.PooledChrome pooledChrome; // non null if leased from the ChromePool
     private EngineSettings engineSettings;
     private TestContext testContext;
     private boolean ignoreHttpErrors = false;
     private ArrayList<Integer> ignoreHttpErrorCodes = null;
     private long startTime = -1;
     private Long defaultWaitTimeout = null; // no timeout on wait functions by default
+    private ArrayList<BrowserWebSocket.Command> batch = null; // commands queued by batch()
 
     public ChromeBrowser(TestContext testContext) {
         init(testContext, new ChromeSettings());
@@ -57,6 +71,10 @@ public class ChromeBrowser implements Browser {
                 pizzaHandler = userContext.getPizzaHandler();
             }
 
+            if (chromeProcess == null) {
+                leaseFromPool(userContext, settings);
+            }
+
             if (chromeProcess == null) {
                 if (userContext.isChromeProfileInitialSetup()) {
                     settings.unpackExtension = false;
@@ -98,6 +116,30 @@ public class ChromeBrowser implements Browser {
         }
     }
 
+    /**
+     * Take an already running browser from the engine's pool if there is one.
+     * Browsers kept open between tests, or started with non default settings or
+     * by an external launcher, are never pooled.
+     */
+    private void leaseFromPool(UserContext userContext, ChromeSettings settings) {
+        if (userContext.keepBrowserOpen() ||
+            testContext.getProcessLauncher() != null ||
+            !ChromePool.canLease(settings)) {
+            return;
+        }
+
+        ChromePool pool = userContext.getEngineContext().getChromePool();
+        if (pool == null) {
+            return;
+        }
+
+        pooledChrome = pool.lease();
+        if (pooledChrome != null) {
+            chromeProcess = pooledChrome.getProcess();
+            pizzaHandler = pooledChrome.getPizzaHandler();
+        }
+    }
+
     private void openBrowserRetryLoop(ChromeSettings settings) {
         if (openBrowserAndWait(settings)) {
             return;
@@ -144,11 +186,24 @@ public class ChromeBrowser implements Browser {
     }
 
     public void close() {
+        if (pooledChrome != null) {
+            ChromePool pool = testContext.getEngineContext().getChromePool();
+            if (pool != null) {
+                pool.release(pooledChrome);
+            } else {
+                pizzaHandler.close();
+                chromeProcess.close();
+            }
+            pooledChrome = null;
+            testContext.setOpenBrowser(null);
+            return;
+        }
+
         if (testContext.getUserContext().keepBrowserOpen()) {
             HashMap<String, Object> params = new HashMap<>();
             params.put("reuseSession", testContext.getUserContext().reuseSession());
             try {
-                checkResponseForErrors(pizzaHandler.sendCommand("reset", params));
+                checkResponseForErrors(sendCommand("reset", params));
                 pizzaHandler.reset();
                 testContext.setOpenBrowser(null);
                 return;
@@ -167,29 +222,29 @@ public class ChromeBrowser implements Browser {
     public void emulateDevice(String name) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("name", name);
-        checkResponseForErrors(pizzaHandler.sendCommand("emulateDevice", params));
+        checkResponseForErrors(sendCommand("emulateDevice", params));
     }
 
     @Override
     public Object listDevices() {
-        return getResponseData(pizzaHandler.sendCommand("listDevices"));
+        return getResponseData(sendCommand("listDevices"));
     }
 
     @Override
     public void emulateNetworkCondition(NativeObject conditions) {
-        checkResponseForErrors(pizzaHandler.sendCommand("emulateNetworkCondition", RhinoUtils.deserialize(conditions)));
+        checkResponseForErrors(sendCommand("emulateNetworkCondition", RhinoUtils.deserialize(conditions)));
     }
 
     @Override
     public void emulateNetworkCondition(String name) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("name", name);
-        checkResponseForErrors(pizzaHandler.sendCommand("emulateNetworkCondition", params));
+        checkResponseForErrors(sendCommand("emulateNetworkCondition", params));
     }
 
     @Override
     public Object listNetworkConditions() {
-        return getResponseData(pizzaHandler.sendCommand("listNetworkConditions"));
+        return getResponseData(sendCommand("listNetworkConditions"));
     }
 
     @Override
@@ -226,7 +281,7 @@ public class ChromeBrowser implements Browser {
             startVideoCapture();
         }
 
-        return checkNavigationSuccess(pizzaHandler.sendCommand("open", params));
+        return checkNavigationSuccess(sendCommand("open", params));
     }
 
     private Page checkNavigationSuccess(JSONObject result) {
@@ -294,30 +349,32 @@ public class ChromeBrowser implements Browser {
     public void openAsync(String url) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("url", Http.prependHttpToUrl(url));
-        checkResponseForErrors(pizzaHandler.sendCommand("openAsync", params));
+        checkResponseForErrors(sendCommand("openAsync", params));
     }
 
     @Override
     public Page newPage() {
+        flushBatch();
         return pizzaHandler.newPage();
     }
 
     @Override
     public Page newPage(String pageName) {
+        flushBatch();
         return pizzaHandler.newPage(pageName);
     }
 
     @Override
     public String getUrl() {
         HashMap<String,Object> params = new HashMap<>();
-        return getResponseString(pizzaHandler.sendCommand("getUrl", params));
+        return getResponseString(sendCommand("getUrl", params));
     }
 
     @Override
     public void verifyText(String text) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("text", text);
-        JSONObject result = pizzaHandler.sendCommand("hasText", params);
+        JSONObject result = sendCommand("hasText", params);
         if (!getResponseBoolean(result)) {
             throw new ScriptException(String.format("Unable to find text '%s'", text));
         }
@@ -327,7 +384,7 @@ public class ChromeBrowser implements Browser {
     public void verifyNotText(String text) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("text", text);
-        JSONObject result = pizzaHandler.sendCommand("hasText", params);
+        JSONObject result = sendCommand("hasText", params);
         if (getResponseBoolean(result)) {
             throw new ScriptException(String.format("Found text '%s'", text));
         }
@@ -338,7 +395,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         String text = regexp.toString();
         params.put("regexp", text);
-        JSONObject result = pizzaHandler.sendCommand("hasText", params);
+        JSONObject result = sendCommand("hasText", params);
         if (!getResponseBoolean(result)) {
             throw new ScriptException(String.format("Unable to find text matching '%s'", text));
         }
@@ -349,7 +406,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         String text = regexp.toString();
         params.put("regexp", text);
-        JSONObject result = pizzaHandler.sendCommand("hasText", params);
+        JSONObject result = sendCommand("hasText", params);
         if (getResponseBoolean(result)) {
             throw new ScriptException(String.format("Found text matching '%s'", text));
         }
@@ -359,7 +416,7 @@ public class ChromeBrowser implements Browser {
     public boolean hasText(String text) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("text", text);
-        return getResponseBoolean(pizzaHandler.sendCommand("hasText", params));
+        return getResponseBoolean(sendCommand("hasText", params));
     }
 
     @Override
@@ -367,7 +424,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         String text = regexp.toString();
         params.put("regexp", text);
-        JSONObject result = pizzaHandler.sendCommand("hasText", params);
+        JSONObject result = sendCommand("hasText", params);
         return getResponseBoolean(result);
     }
 
@@ -376,7 +433,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("text", text);
         applyTimeoutIfNecessary(params);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitText", params));
+        checkResponseForErrors(sendCommand("waitText", params));
     }
 
     @Override
@@ -384,7 +441,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("text", text);
         params.put("timeout", timeoutMS);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitText", params));
+        checkResponseForErrors(sendCommand("waitText", params));
     }
 
     @Override
@@ -393,7 +450,7 @@ public class ChromeBrowser implements Browser {
         String text = regexp.toString();
         params.put("regexp", text);
         applyTimeoutIfNecessary(params);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitText", params));
+        checkResponseForErrors(sendCommand("waitText", params));
     }
 
     @Override
@@ -402,7 +459,7 @@ public class ChromeBrowser implements Browser {
         String text = regexp.toString();
         params.put("regexp", text);
         params.put("timeout", timeoutMS);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitText", params));
+        checkResponseForErrors(sendCommand("waitText", params));
     }
 
     @Override
@@ -410,7 +467,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("text", text);
         applyTimeoutIfNecessary(params);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitNotText", params));
+        checkResponseForErrors(sendCommand("waitNotText", params));
     }
 
     @Override
@@ -418,7 +475,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("text", text);
         params.put("timeout", timeoutMS);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitNotText", params));
+        checkResponseForErrors(sendCommand("waitNotText", params));
     }
 
     @Override
@@ -427,7 +484,7 @@ public class ChromeBrowser implements Browser {
         String text = regexp.toString();
         params.put("regexp", text);
         applyTimeoutIfNecessary(params);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitNotText", params));
+        checkResponseForErrors(sendCommand("waitNotText", params));
     }
 
     @Override
@@ -435,14 +492,14 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         String text = regexp.toString();
         params.put("regexp", text);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitNotText", params));
+        checkResponseForErrors(sendCommand("waitNotText", params));
     }
 
     @Override
     public void verifyTitle(String title) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("text", title);
-        JSONObject result = pizzaHandler.sendCommand("verifyTitle", params);
+        JSONObject result = sendCommand("verifyTitle", params);
         if (!getResponseBoolean(result)) {
             throw new ScriptException(String.format("Page title did not match '%s'", title));
         }
@@ -450,7 +507,7 @@ public class ChromeBrowser implements Browser {
 
     @Override
     public String getTitle() {
-        return getResponseString(pizzaHandler.sendCommand("getTitle"));
+        return getResponseString(sendCommand("getTitle"));
     }
 
     @Override
@@ -458,7 +515,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         String text = regexp.toString();
         params.put("regexp", text);
-        JSONObject result = pizzaHandler.sendCommand("verifyTitle", params);
+        JSONObject result = sendCommand("verifyTitle", params);
         if (!getResponseBoolean(result)) {
             throw new ScriptException(String.format("Page title did not match %s", text));
         }
@@ -468,71 +525,71 @@ public class ChromeBrowser implements Browser {
     public Object execute(String script) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("script", script);
-        return getResponseData(pizzaHandler.sendCommand("execute", params));
+        return getResponseData(sendCommand("execute", params));
     }
 
     @Override
     public Object jq(String script) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("script", script);
-        return getResponseData(pizzaHandler.sendCommand("jq", params));
+        return getResponseData(sendCommand("jq", params));
     }
 
     @Override
     public Object listFrames() {
-        return getResponseData(pizzaHandler.sendCommand("listFrames"));
+        return getResponseData(sendCommand("listFrames"));
     }
 
     @Override
     public Object listFrames(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        return getResponseData(pizzaHandler.sendCommand("listFrames", params));
+        return getResponseData(sendCommand("listFrames", params));
     }
 
     @Override
     public Object listAllFrames() {
-        return getResponseData(pizzaHandler.sendCommand("listAllFrames"));
+        return getResponseData(sendCommand("listAllFrames"));
     }
 
     @Override
     public Object selectFrame(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        return getResponseData(pizzaHandler.sendCommand("selectFrame", params));
+        return getResponseData(sendCommand("selectFrame", params));
     }
 
     @Override
     public Object selectFrameCss(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        return getResponseData(pizzaHandler.sendCommand("selectFrameCss", params));
+        return getResponseData(sendCommand("selectFrameCss", params));
     }
 
     @Override
     public Object selectTopFrame() {
-        return getResponseData(pizzaHandler.sendCommand("selectTopFrame"));
+        return getResponseData(sendCommand("selectTopFrame"));
     }
 
     @Override
     public void blockUrl(String url) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("url", url);
-        checkResponseForErrors(pizzaHandler.sendCommand("blockUrl", params));
+        checkResponseForErrors(sendCommand("blockUrl", params));
     }
 
     @Override
     public void blockUrl(String... urls) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("url", urls);
-        checkResponseForErrors(pizzaHandler.sendCommand("blockUrl", params));
+        checkResponseForErrors(sendCommand("blockUrl", params));
     }
 
     @Override
     public void block3rdPartyUrls() {
         HashMap<String,Object> params = new HashMap<>();
         params.put("url", Globals.ThirdParty);
-        checkResponseForErrors(pizzaHandler.sendCommand("blockUrl", params));
+        checkResponseForErrors(sendCommand("blockUrl", params));
     }
 
     @Override
@@ -540,46 +597,46 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("url", url);
         params.put("rewriteUrl", rewriteUrl);
-        checkResponseForErrors(pizzaHandler.sendCommand("rewriteUrl", params));
+        checkResponseForErrors(sendCommand("rewriteUrl", params));
     }
 
     @Override
     public void clearRules() {
-        checkResponseForErrors(pizzaHandler.sendCommand("clearRules"));
+        checkResponseForErrors(sendCommand("clearRules"));
     }
 
     @Override
     public Object listTabs() {
-        return getResponseData(pizzaHandler.sendCommand("listTabs"));
+        return getResponseData(sendCommand("listTabs"));
     }
 
     @Override
     public Object selectTab(NativeObject tab) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("tab", RhinoUtils.deserialize(tab));
-        return getResponseData(pizzaHandler.sendCommand("selectTab", params));
+        return getResponseData(sendCommand("selectTab", params));
     }
 
     @Override
     public Object selectTab(int tabIndex) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("tab", tabIndex);
-        return getResponseData(pizzaHandler.sendCommand("selectTab", params));
+        return getResponseData(sendCommand("selectTab", params));
     }
 
     @Override
     public Object selectLatestTab() {
-        return getResponseData(pizzaHandler.sendCommand("selectLatestTab"));
+        return getResponseData(sendCommand("selectLatestTab"));
     }
 
     @Override
     public Object selectMainTab() {
-        return getResponseData(pizzaHandler.sendCommand("selectMainTab"));
+        return getResponseData(sendCommand("selectMainTab"));
     }
 
     @Override
     public Object newTab() {
-        return getResponseData(pizzaHandler.sendCommand("newTab"));
+        return getResponseData(sendCommand("newTab"));
     }
 
     @Override
@@ -587,7 +644,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("name", name);
         params.put("value", value);
-        JSONObject response = pizzaHandler.sendCommand("setHeader", params);
+        JSONObject response = sendCommand("setHeader", params);
         checkResponseForErrors(response);
     }
 
@@ -595,7 +652,7 @@ public class ChromeBrowser implements Browser {
     public void removeHeader(String key) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("name", key);
-        JSONObject response = pizzaHandler.sendCommand("removeHeader", params);
+        JSONObject response = sendCommand("removeHeader", params);
         checkResponseForErrors(response);
     }
 
@@ -603,7 +660,7 @@ public class ChromeBrowser implements Browser {
     public void setUserAgent(String userAgent) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("userAgent", userAgent);
-        checkResponseForErrors(pizzaHandler.sendCommand("setUserAgent", params));
+        checkResponseForErrors(sendCommand("setUserAgent", params));
     }
 
     @Override
@@ -611,7 +668,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("username", username);
         params.put("password", password);
-        checkResponseForErrors(pizzaHandler.sendCommand("setAuth", params));
+        checkResponseForErrors(sendCommand("setAuth", params));
     }
 
     @Override
@@ -621,12 +678,15 @@ public class ChromeBrowser implements Browser {
 
     @Override
     public void waitHttpIdle(long idleTimeMS, Long timeoutMS) {
+        flushBatch();
         long idleTimeBegin = System.currentTimeMillis();
         Long waitTimeEnd = null;
         if (timeoutMS != null) {
             waitTimeEnd = idleTimeBegin + timeoutMS;
         }
         while (true) {
+            // Read before checking the requests so we don't miss a request finishing
+            long activity = pizzaHandler.getRequestActivity();
             long now = System.currentTimeMillis();
             if (waitTimeEnd != null && now >= waitTimeEnd) {
                 throw new ScriptException(ErrorType.Timeout, String.format("Timeout after %s while waiting for HTTP " +
@@ -635,6 +695,7 @@ public class ChromeBrowser implements Browser {
             if (!pizzaHandler.isOpen()) {
                 throw new ScriptException(ErrorType.Internal, "Browser closed");
             }
+            long waitEnd = waitTimeEnd != null ? waitTimeEnd : Long.MAX_VALUE;
             if (!pizzaHandler.checkPendingRequests()) {
                 long lastRequestFinishTime = pizzaHandler.getLastRequestFinishedTime();
                 if (lastRequestFinishTime > 0) {
@@ -653,9 +714,13 @@ public class ChromeBrowser implements Browser {
                 if (idleTimeBegin + idleTimeMS <= now) {
                     return;
                 }
+
+                // Any requests started in the meantime are picked up when we
+                // wake to check whether we've been idle long enough
+                waitEnd = Math.min(waitEnd, idleTimeBegin + idleTimeMS);
             }
             try {
-                Thread.sleep(50);
+                pizzaHandler.waitRequestActivity(activity, Math.min(waitEnd - now, MAX_REQUEST_WAIT_MS));
             } catch (InterruptedException e) {
                 throw new ScriptException(ErrorType.Timeout, "waitForHttpRequests() interrupted");
             }
@@ -677,9 +742,9 @@ public class ChromeBrowser implements Browser {
         if (shouldApplyTimeout()) {
             HashMap<String,Object> params = new HashMap<>();
             params.put("timeout", this.defaultWaitTimeout);
-            return checkNavigationSuccess(pizzaHandler.sendCommand("waitPageLoad", params));
+            return checkNavigationSuccess(sendCommand("waitPageLoad", params));
         } else {
-            return checkNavigationSuccess(pizzaHandler.sendCommand("waitPageLoad"));
+            return checkNavigationSuccess(sendCommand("waitPageLoad"));
         }
     }
 
@@ -687,22 +752,22 @@ public class ChromeBrowser implements Browser {
     public Page waitPageLoad(Long timeoutMS) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("timeout", timeoutMS);
-        return checkNavigationSuccess(pizzaHandler.sendCommand("waitPageLoad", params));
+        return checkNavigationSuccess(sendCommand("waitPageLoad", params));
     }
 
     @Override
     public void clearPageLoad() {
-        checkResponseForErrors(pizzaHandler.sendCommand("clearPageLoad"));
+        checkResponseForErrors(sendCommand("clearPageLoad"));
     }
 
     @Override
     public void clearCache() {
-        checkResponseForErrors(pizzaHandler.sendCommand("clearCache"));
+        checkResponseForErrors(sendCommand("clearCache"));
     }
 
     @Override
     public void clearCookies() {
-        checkResponseForErrors(pizzaHandler.sendCommand("clearCookies"));
+        checkResponseForErrors(sendCommand("clearCookies"));
     }
 
     @Override
@@ -710,7 +775,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("name", name);
         params.put("value", value);
-        checkResponseForErrors(pizzaHandler.sendCommand("setCookie", params));
+        checkResponseForErrors(sendCommand("setCookie", params));
     }
 
     @Override
@@ -719,14 +784,14 @@ public class ChromeBrowser implements Browser {
         params.put("name", name);
         params.put("value", value);
         params.put("details", RhinoUtils.deserialize(details));
-        checkResponseForErrors(pizzaHandler.sendCommand("setCookie", params));
+        checkResponseForErrors(sendCommand("setCookie", params));
     }
 
     @Override
     public Object getCookie(String name) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("name", name);
-        return getResponseData(pizzaHandler.sendCommand("getCookie", params));
+        return getResponseData(sendCommand("getCookie", params));
     }
 
     @Override
@@ -734,14 +799,14 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("url", url);
         params.put("name", name);
-        return getResponseData(pizzaHandler.sendCommand("getCookie", params));
+        return getResponseData(sendCommand("getCookie", params));
     }
 
     @Override
     public void removeCookie(String name) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("name", name);
-        checkResponseForErrors(pizzaHandler.sendCommand("removeCookie", params));
+        checkResponseForErrors(sendCommand("removeCookie", params));
     }
 
     @Override
@@ -749,14 +814,14 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("url", Http.prependHttpToUrl(url));
         params.put("name", name);
-        checkResponseForErrors(pizzaHandler.sendCommand("removeCookie", params));
+        checkResponseForErrors(sendCommand("removeCookie", params));
     }
 
     @Override
     public void click(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        checkResponseForErrors(pizzaHandler.sendCommand("click", params));
+        sendBatchableCommand("click", params);
     }
 
     @Override
@@ -764,7 +829,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.putAll(RhinoUtils.deserialize(paramsIn));
-        checkResponseForErrors(pizzaHandler.sendCommand("click", params));
+        sendBatchableCommand("click", params);
     }
 
     @Override
@@ -773,14 +838,14 @@ public class ChromeBrowser implements Browser {
         params.put("selector", selector);
         params.put("x", x);
         params.put("y", y);
-        checkResponseForErrors(pizzaHandler.sendCommand("click", params));
+        sendBatchableCommand("click", params);
     }
 
     @Override
     public void doubleClick(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        checkResponseForErrors(pizzaHandler.sendCommand("doubleClick", params));
+        checkResponseForErrors(sendCommand("doubleClick", params));
     }
 
     @Override
@@ -789,21 +854,21 @@ public class ChromeBrowser implements Browser {
         params.put("selector", selector);
         params.put("x", x);
         params.put("y", y);
-        checkResponseForErrors(pizzaHandler.sendCommand("doubleClick", params));
+        checkResponseForErrors(sendCommand("doubleClick", params));
     }
 
     @Override
     public void focus(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        checkResponseForErrors(pizzaHandler.sendCommand("focus", params));
+        sendBatchableCommand("focus", params);
     }
 
     @Override
     public void hover(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        checkResponseForErrors(pizzaHandler.sendCommand("hover", params));
+        sendBatchableCommand("hover", params);
     }
 
     @Override
@@ -811,7 +876,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.putAll(RhinoUtils.deserialize(paramsIn));
-        checkResponseForErrors(pizzaHandler.sendCommand("hover", params));
+        sendBatchableCommand("hover", params);
     }
 
     @Override
@@ -820,21 +885,21 @@ public class ChromeBrowser implements Browser {
         params.put("selector", selector);
         params.put("x", x);
         params.put("y", y);
-        checkResponseForErrors(pizzaHandler.sendCommand("hover", params));
+        sendBatchableCommand("hover", params);
     }
 
     @Override
     public void clear(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        checkResponseForErrors(pizzaHandler.sendCommand("clear", params));
+        sendBatchableCommand("clear", params);
     }
 
     @Override
     public void selectContent(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        checkResponseForErrors(pizzaHandler.sendCommand("selectContent", params));
+        sendBatchableCommand("selectContent", params);
     }
 
     @Override
@@ -842,7 +907,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("text", text);
-        checkResponseForErrors(pizzaHandler.sendCommand("type", params));
+        sendBatchableCommand("type", params);
     }
 
     @Override
@@ -850,7 +915,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("text", text);
-        checkResponseForErrors(pizzaHandler.sendCommand("type", params));
+        sendBatchableCommand("type", params);
     }
 
     @Override
@@ -858,7 +923,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("text", new Object[] {text});
-        checkResponseForErrors(pizzaHandler.sendCommand("type", params));
+        sendBatchableCommand("type", params);
     }
 
     @Override
@@ -869,14 +934,14 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("text", text);
-        checkResponseForErrors(pizzaHandler.sendCommand("type", params));
+        sendBatchableCommand("type", params);
     }
 
     @Override
     public void check(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        checkResponseForErrors(pizzaHandler.sendCommand("check", params));
+        sendBatchableCommand("check", params);
     }
 
     @Override
@@ -884,14 +949,14 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("check", on);
-        checkResponseForErrors(pizzaHandler.sendCommand("check", params));
+        sendBatchableCommand("check", params);
     }
 
     @Override
     public boolean checked(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        return getResponseBoolean(pizzaHandler.sendCommand("checked", params));
+        return getResponseBoolean(sendCommand("checked", params));
     }
 
     @Override
@@ -899,7 +964,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("value", RhinoUtils.deserialize(value));
-        getResponseData(pizzaHandler.sendCommand("select", params));
+        getResponseData(sendCommand("select", params));
     }
 
     @Override
@@ -909,14 +974,14 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> valueParams = new HashMap<>();
         valueParams.put("text", text);
         params.put("value", valueParams);
-        checkResponseForErrors(pizzaHandler.sendCommand("select", params));
+        sendBatchableCommand("select", params);
     }
 
     @Override
     public Object getValue(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        return getResponseData(pizzaHandler.sendCommand("getValue", params));
+        return getResponseData(sendCommand("getValue", params));
     }
 
     @Override
@@ -924,7 +989,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("value", value);
-        checkResponseForErrors(pizzaHandler.sendCommand("setValue", params));
+        sendBatchableCommand("setValue", params);
     }
 
     @Override
@@ -942,59 +1007,59 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("files", Arrays.asList(file.getAbsolutePath()));
-        checkResponseForErrors(pizzaHandler.sendCommand("setFiles", params));
+        checkResponseForErrors(sendCommand("setFiles", params));
     }
 
     @Override
     public String getInnerHTML() {
         HashMap<String,Object> params = new HashMap<>();
-        return getResponseString(pizzaHandler.sendCommand("getInnerHTML", params));
+        return getResponseString(sendCommand("getInnerHTML", params));
     }
 
     @Override
     public String getInnerHTML(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        return getResponseString(pizzaHandler.sendCommand("getInnerHTML", params));
+        return getResponseString(sendCommand("getInnerHTML", params));
     }
 
     @Override
     public String getOuterHTML() {
-        return getResponseString(pizzaHandler.sendCommand("getOuterHTML"));
+        return getResponseString(sendCommand("getOuterHTML"));
     }
 
     @Override
     public String getOuterHTML(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        return getResponseString(pizzaHandler.sendCommand("getOuterHTML", params));
+        return getResponseString(sendCommand("getOuterHTML", params));
     }
 
     @Override
     public String getInnerText() {
         HashMap<String,Object> params = new HashMap<>();
-        return getResponseString(pizzaHandler.sendCommand("getInnerText", params));
+        return getResponseString(sendCommand("getInnerText", params));
     }
 
     @Override
     public String getInnerText(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        return getResponseString(pizzaHandler.sendCommand("getInnerText", params));
+        return getResponseString(sendCommand("getInnerText", params));
     }
 
     @Override
     public void submit(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        checkResponseForErrors(pizzaHandler.sendCommand("submit", params));
+        sendBatchableCommand("submit", params);
     }
 
     @Override
     public boolean exists(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        JSONObject result = pizzaHandler.sendCommand("exists", params);
+        JSONObject result = sendCommand("exists", params);
         return getResponseBoolean(result);
     }
 
@@ -1002,7 +1067,7 @@ public class ChromeBrowser implements Browser {
     public boolean isVisible(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        JSONObject result = pizzaHandler.sendCommand("isVisible", params);
+        JSONObject result = sendCommand("isVisible", params);
         return getResponseBoolean(result);
     }
 
@@ -1010,7 +1075,7 @@ public class ChromeBrowser implements Browser {
     public void verifyExists(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        JSONObject result = pizzaHandler.sendCommand("verifyExists", params);
+        JSONObject result = sendCommand("verifyExists", params);
         if (!getResponseBoolean(result)) {
             throw new ScriptException(String.format("Unable to find element '%s'", selector));
         }
@@ -1020,7 +1085,7 @@ public class ChromeBrowser implements Browser {
     public void verifyNotExists(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        JSONObject result = pizzaHandler.sendCommand("verifyExists", params);
+        JSONObject result = sendCommand("verifyExists", params);
         if (getResponseBoolean(result)) {
             throw new ScriptException(String.format("Found element matching selector '%s'", selector));
         }
@@ -1031,14 +1096,14 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("visibleOnly", false);
-        return getResponseData(pizzaHandler.sendCommand("query", params));
+        return getResponseData(sendCommand("query", params));
     }
 
     public Object queryVisible(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("visibleOnly", true);
-        return getResponseData(pizzaHandler.sendCommand("query", params));
+        return getResponseData(sendCommand("query", params));
     }
 
     @Override
@@ -1046,7 +1111,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         applyTimeoutIfNecessary(params);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitElement", params));
+        checkResponseForErrors(sendCommand("waitElement", params));
     }
 
     @Override
@@ -1054,7 +1119,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("timeout", timeoutMS);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitElement", params));
+        checkResponseForErrors(sendCommand("waitElement", params));
     }
 
     @Deprecated
@@ -1068,7 +1133,7 @@ public class ChromeBrowser implements Browser {
         params.put("selector", selector);
         params.put("text", text);
         applyTimeoutIfNecessary(params);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitElementText", params));
+        checkResponseForErrors(sendCommand("waitElementText", params));
     }
 
     @Override
@@ -1077,7 +1142,7 @@ public class ChromeBrowser implements Browser {
         params.put("selector", selector);
         params.put("text", text);
         params.put("timeout", timeoutMS);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitElementText", params));
+        checkResponseForErrors(sendCommand("waitElementText", params));
     }
 
     @Override
@@ -1085,7 +1150,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         applyTimeoutIfNecessary(params);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitVisible", params));
+        checkResponseForErrors(sendCommand("waitVisible", params));
     }
 
     @Override
@@ -1093,7 +1158,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("timeout", timeoutMS);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitVisible", params));
+        checkResponseForErrors(sendCommand("waitVisible", params));
     }
 
     @Deprecated
@@ -1106,7 +1171,7 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         applyTimeoutIfNecessary(params);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitNotVisible", params));
+        checkResponseForErrors(sendCommand("waitNotVisible", params));
     }
 
     @Override
@@ -1114,14 +1179,14 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("timeout", timeoutMS);
-        checkResponseForErrors(pizzaHandler.sendCommand("waitNotVisible", params));
+        checkResponseForErrors(sendCommand("waitNotVisible", params));
     }
 
     @Override
     public void highlight(String selector) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
-        checkResponseForErrors(pizzaHandler.sendCommand("highlight", params));
+        checkResponseForErrors(sendCommand("highlight", params));
     }
 
     @Override
@@ -1129,46 +1194,46 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("selector", selector);
         params.put("color", RhinoUtils.deserialize(color));
-        checkResponseForErrors(pizzaHandler.sendCommand("highlight", params));
+        checkResponseForErrors(sendCommand("highlight", params));
     }
 
     @Override
     public void clearHighlight() {
-        checkResponseForErrors(pizzaHandler.sendCommand("clearHighlight"));
+        checkResponseForErrors(sendCommand("clearHighlight"));
     }
 
     @Override
     public void handleDialog(boolean accept) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("accept", accept);
-        checkResponseForErrors(pizzaHandler.sendCommand("handleDialog", params));
+        checkResponseForErrors(sendCommand("handleDialog", params));
     }
 
     @Override
     public void handleDialog(String text) {
         HashMap<String,Object> params = new HashMap<>();
         params.put("promptText", text);
-        checkResponseForErrors(pizzaHandler.sendCommand("handleDialog", params));
+        checkResponseForErrors(sendCommand("handleDialog", params));
     }
 
     @Override
     public void dismissDialogs() {
-        checkResponseForErrors(pizzaHandler.sendCommand("dismissDialogs"));
+        checkResponseForErrors(sendCommand("dismissDialogs"));
     }
 
     @Override
     public boolean isDialogOpen() {
-        return getResponseBoolean(pizzaHandler.sendCommand("isDialogOpen"));
+        return getResponseBoolean(sendCommand("isDialogOpen"));
     }
 
     @Override
     public Object getOpenDialog() {
-        return getResponseData(pizzaHandler.sendCommand("getOpenDialog"));
+        return getResponseData(sendCommand("getOpenDialog"));
     }
 
     @Override
     public Object listCookies() {
-        return getResponseData(pizzaHandler.sendCommand("listCookies"));
+        return getResponseData(sendCommand("listCookies"));
     }
 
     @Override
@@ -1183,17 +1248,17 @@ public class ChromeBrowser implements Browser {
 
     @Override
     public Page back() {
-        return checkNavigationSuccess(pizzaHandler.sendCommand("back"));
+        return checkNavigationSuccess(sendCommand("back"));
     }
 
     @Override
     public Page forward() {
-        return checkNavigationSuccess(pizzaHandler.sendCommand("forward"));
+        return checkNavigationSuccess(sendCommand("forward"));
     }
 
     @Override
     public Page reload() {
-        return checkNavigationSuccess(pizzaHandler.sendCommand("reload"));
+        return checkNavigationSuccess(sendCommand("reload"));
     }
 
     @Override
@@ -1214,65 +1279,113 @@ public class ChromeBrowser implements Browser {
         HashMap<String,Object> params = new HashMap<>();
         params.put("format", format);
         params.put("quality", quality);
-        checkResponseForErrors(pizzaHandler.sendCommand("screenshot", params));
-        ByteBuffer buffer = pizzaHandler.getByteBuffer();
-        return new Data(String.format("image/%s", format), buffer.array());
+        JSONObject response = sendCommand("screenshot", params);
+        checkResponseForErrors(response);
+        ByteBuffer buffer = pizzaHandler.takeCommandData(response);
+        return new Data(String.format("image/%s", format), buffer);
     }
 
     @Override
     public Data getResponseBody(HttpRequest httpRequest) {
+        flushBatch();
         HashMap<String,Object> params = new HashMap<>();
         params.put("requestId", httpRequest.requestId);
 
         // Wait on the request if it is still downloading
-        while (pizzaHandler.checkIsRequestPending(httpRequest)) {
+        while (true) {
+            long activity = pizzaHandler.getRequestActivity();
+            if (!pizzaHandler.checkIsRequestPending(httpRequest)) {
+                break;
+            }
+            if (!pizzaHandler.isOpen()) {
+                throw new ScriptException(ErrorType.Internal, "Browser closed");
+            }
             try {
-                Thread.sleep(50);
+                pizzaHandler.waitRequestActivity(activity, MAX_REQUEST_WAIT_MS);
             } catch (InterruptedException e) {
                 throw new ScriptException(ErrorType.Timeout, "getResponseBody() interrupted");
             }
         }
 
-        JSONObject value = getResponseJson(pizzaHandler.sendCommand("getResponseBody", params));
+        JSONObject response = sendCommand("getResponseBody", params);
+        JSONObject value = getResponseJson(response);
         String format = value.getString("format");
-        ByteBuffer buffer = pizzaHandler.getByteBuffer();
+        ByteBuffer buffer = pizzaHandler.takeCommandData(response);
         String contentType = findResponseHeader(httpRequest, HttpHeader.CONTENT_TYPE);
         if (format.equals("raw")) {
-            return new Data(contentType != null ? contentType : "application/binary", buffer.array());
+            return new Data(contentType != null ? contentType : "application/binary", buffer);
         } else {
-            return new Data(contentType != null ? contentType : "text/plain", buffer.array());
+            return new Data(contentType != null ? contentType : "text/plain", buffer);
         }
     }
 
     private String findResponseHeader(HttpRequest httpRequest, String headerName) {
-        for (HttpHeader httpHeader : httpRequest.getResponseHeaders()) {
-            if (httpHeader.name != null && httpHeader.name.equalsIgnoreCase(headerName)) {
-                return httpHeader.value;
-            }
-        }
-        return null;
+        return httpRequest.getResponseHeaders().getFirst(headerName);
     }
 
     @Override
     public void verifyRequest(NativeRegExp regExp) {
+        flushBatch();
         pizzaHandler.verifyRequest(regExp);
     }
 
     @Override
     public void verifyRequest(String url) {
+        flushBatch();
         pizzaHandler.verifyRequest(url);
     }
 
     @Override
     public void startVideoCapture() {
+        flushBatch();
         pizzaHandler.startVideoCapture();
     }
 
     @Override
     public void stopVideoCapture() {
+        flushBatch();
         pizzaHandler.stopVideoCapture();
     }
 
+    @Override
+    public void batch(NativeFunction func) {
+        if (batch != null) {
+            // Already batching, the commands join the outer batch
+            callFunction(func);
+            return;
+        }
+
+        batch = new ArrayList<>();
+        boolean completed = false;
+        try {
+            callFunction(func);
+            completed = true;
+            flushBatch();
+        } finally {
+            try {
+                if (!completed) {
+                    // The commands queued before the error are still run, but the
+                    // script's own error is the one reported
+                    try {
+                        flushBatch();
+                    } catch (RuntimeException e) {
+                        Logger.info("Batched command failed after script error: {}", e.getMessage());
+                    }
+                }
+            } finally {
+                // Stop batching even if a command failed, or later commands
+                // would be queued and never sent
+                batch = null;
+            }
+        }
+    }
+
+    private void callFunction(NativeFunction func) {
+        Context cx = Context.getCurrentContext();
+        Scriptable scope = ScriptableObject.getTopLevelScope(func);
+        func.call(cx, scope, scope, new Object[0]);
+    }
+
     @Override
     public void setWaitTimeout(Long timeout) {
         if (timeout == null) {
@@ -1373,6 +1486,43 @@ public class ChromeBrowser implements Browser {
         }
     }
 
+    /**
+     * Send the commands queued by batch() so far
+     */
+    private void flushBatch() {
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+
+        List<BrowserWebSocket.Command> commands = batch;
+        batch = new ArrayList<>();
+        for (JSONObject response : pizzaHandler.sendCommands(commands)) {
+            checkResponseForErrors(response);
+        }
+    }
+
+    private JSONObject sendCommand(String name) {
+        flushBatch();
+        return pizzaHandler.sendCommand(name);
+    }
+
+    private JSONObject sendCommand(String name, Map<String, Object> params) {
+        flushBatch();
+        return pizzaHandler.sendCommand(name, params);
+    }
+
+    /**
+     * Send a command that doesn't return anything, within batch() it's
+     * queued and sent along with the other commands of the batch.
+     */
+    private void sendBatchableCommand(String name, Map<String, Object> params) {
+        if (batch != null) {
+            batch.add(new BrowserWebSocket.Command(name, params));
+        } else {
+            checkResponseForErrors(pizzaHandler.sendCommand(name, params));
+        }
+    }
+
     private void checkResponseForErrors(JSONObject result) {
         try {
             if (result.has("response")) {
@@ -0,0 +1,194 @@
+package com.loadtestgo.script.engine.internal.api;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the rows of a CSV file to the virtual users.  One is shared by
+ * all the tests in the engine, so users draw from the same cursor and two
+ * users never get the same row unless the feeder wraps around.
+ *
+ * Row 0 is the header and is never handed out.
+ */
+public class DataFeeder {
+    public static final int EXHAUSTED = -1;
+
+    public enum Strategy {
+        /** Rows in file order */
+        SEQUENTIAL,
+        /** Rows in file order, starting again from the top at the end */
+        CIRCULAR,
+        /** Each row once, in random order */
+        UNIQUE,
+        /** Rows in file order, each worker only gets every Nth row from its own slice */
+        PARTITIONED;
+
+        public static Strategy parse(String name) {
+            for (Strategy strategy : values()) {
+                if (strategy.name().equalsIgnoreCase(name)) {
+                    return strategy;
+                }
+            }
+            return null;
+        }
+
+        public String toString() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    public enum Exhausted {
+        /** No more rows, next() returns null */
+        STOP,
+        /** Start handing out the rows again */
+        WRAP,
+        /** Throw an error */
+        FAIL;
+
+        public static Exhausted parse(String name) {
+            for (Exhausted exhausted : values()) {
+                if (exhausted.name().equalsIgnoreCase(name)) {
+                    return exhausted;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final CSVData data;
+    private final Strategy strategy;
+    private final int numRows;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLong[] partitionCursors;
+    private final Permutation permutation;
+
+    /**
+     * @param partitions the number of workers, for the partitioned strategy
+     * @param seed the seed for the order of the unique strategy
+     */
+    public DataFeeder(CSVData data, Strategy strategy, int partitions, long seed) {
+        this.data = data;
+        this.strategy = strategy;
+        this.numRows = Math.max(data.getNumRows() - 1, 0);
+
+        partitions = Math.max(1, Math.min(partitions, Math.max(numRows, 1)));
+        this.partitionCursors = new AtomicLong[partitions];
+        for (int i = 0; i < partitions; ++i) {
+            partitionCursors[i] = new AtomicLong();
+        }
+
+        this.permutation = strategy == Strategy.UNIQUE && numRows > 0 ? new Permutation(numRows, seed) : null;
+    }
+
+    public CSVData getData() {
+        return data;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * The number of data rows
+     */
+    public int size() {
+        return numRows;
+    }
+
+    /**
+     * Take the next row for a worker
+     *
+     * @param wrap start again from the beginning when the rows have run out
+     * @return the row index, or EXHAUSTED
+     */
+    public int next(int workerId, boolean wrap) {
+        if (numRows == 0) {
+            return EXHAUSTED;
+        }
+
+        switch (strategy) {
+            case CIRCULAR:
+                return 1 + (int)(cursor.getAndIncrement() % numRows);
+            case UNIQUE: {
+                long i = cursor.getAndIncrement();
+                if (i >= numRows && !wrap) {
+                    return EXHAUSTED;
+                }
+                return 1 + permutation.get((int)(i % numRows));
+            }
+            case PARTITIONED: {
+                int partitions = partitionCursors.length;
+                int partition = Math.floorMod(workerId, partitions);
+                // Rows partition, partition + partitions, partition + 2 * partitions...
+                int partitionSize = (numRows - partition + partitions - 1) / partitions;
+                long i = partitionCursors[partition].getAndIncrement();
+                if (i >= partitionSize && !wrap) {
+                    return EXHAUSTED;
+                }
+                return 1 + partition + (int)(i % partitionSize) * partitions;
+            }
+            case SEQUENTIAL:
+            default: {
+                long i = cursor.getAndIncrement();
+                if (i >= numRows && !wrap) {
+                    return EXHAUSTED;
+                }
+                return 1 + (int)(i % numRows);
+            }
+        }
+    }
+
+    /**
+     * A random permutation of 0..n-1 that doesn't need an array of n entries:
+     * a small Feistel network over the next power of 4 up, repeated until the
+     * result is in range.
+     */
+    static class Permutation {
+        private static final int ROUNDS = 4;
+
+        private final int n;
+        private final int halfBits;
+        private final long halfMask;
+        private final int[] keys = new int[ROUNDS];
+
+        Permutation(int n, long seed) {
+            this.n = n;
+            int bits = 64 - Long.numberOfLeadingZeros(Math.max(n - 1, 1));
+            this.halfBits = (bits + 1) / 2;
+            this.halfMask = (1L << halfBits) - 1;
+            Random random = new Random(seed);
+            for (int i = 0; i < ROUNDS; ++i) {
+                keys[i] = random.nextInt();
+            }
+        }
+
+        int get(int i) {
+            long x = i;
+            do {
+                x = encrypt(x);
+            } while (x >= n);
+            return (int)x;
+        }
+
+        private long encrypt(long x) {
+            long left = (x >>> halfBits) & halfMask;
+            long right = x & halfMask;
+            for (int key : keys) {
+                long t = left ^ (mix((int)right ^ key) & halfMask);
+                left = right;
+                right = t;
+            }
+            return (left << halfBits) | right;
+        }
+
+        private static long mix(int h) {
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+            return h & 0xffffffffL;
+        }
+    }
+}
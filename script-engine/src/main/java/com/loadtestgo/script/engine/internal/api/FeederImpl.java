@@ -0,0 +1,47 @@
+package com.loadtestgo.script.engine.internal.api;
+
+import com.loadtestgo.script.api.CSV;
+import com.loadtestgo.script.api.Feeder;
+import com.loadtestgo.script.engine.ScriptException;
+
+/**
+ * A test's handle on a shared DataFeeder
+ */
+public class FeederImpl implements Feeder {
+    private final String filename;
+    private final DataFeeder feeder;
+    private final CSVImpl csv;
+    private final DataFeeder.Exhausted onExhausted;
+    private final int workerId;
+
+    public FeederImpl(String filename, DataFeeder feeder, DataFeeder.Exhausted onExhausted, int workerId) {
+        this.filename = filename;
+        this.feeder = feeder;
+        this.csv = new CSVImpl(feeder.getData());
+        this.onExhausted = onExhausted;
+        this.workerId = workerId;
+    }
+
+    @Override
+    public CSV.Row next() {
+        int row = feeder.next(workerId, onExhausted == DataFeeder.Exhausted.WRAP);
+        if (row == DataFeeder.EXHAUSTED) {
+            if (onExhausted == DataFeeder.Exhausted.FAIL) {
+                throw new ScriptException(
+                    String.format("No rows left in '%s' for the %s feeder", filename, feeder.getStrategy()));
+            }
+            return null;
+        }
+        return csv.row(row);
+    }
+
+    @Override
+    public int size() {
+        return feeder.size();
+    }
+
+    @Override
+    public String getStrategy() {
+        return feeder.getStrategy().toString();
+    }
+}
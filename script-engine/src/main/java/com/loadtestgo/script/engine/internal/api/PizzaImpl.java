@@ -184,13 +184,54 @@ public class PizzaImpl implements Pizza {
     }
 
     @Override
-    public long nextSeqId(String namedSequence) { return getEngineContext().nextSeqId(namedSequence); }
+    public long nextSeqId(String namedSequence) {
+        try {
+            return getEngineContext().nextSeqId(namedSequence);
+        } catch (IOException e) {
+            throw new ScriptException(e.getMessage());
+        }
+    }
 
     @Override
     public CSV openCSV(String filename) {
         File file = testContext.getFile(filename);
         try {
-            return new CSVImpl(file);
+            return new CSVImpl(getEngineContext().getCSVCache().get(file));
+        } catch (IOException e) {
+            throw new ScriptException(e.getMessage());
+        }
+    }
+
+    @Override
+    public Feeder feeder(String filename, String strategy) {
+        return feeder(filename, strategy, null);
+    }
+
+    @Override
+    public Feeder feeder(String filename, String strategy, String onExhausted) {
+        DataFeeder.Strategy feederStrategy = DataFeeder.Strategy.parse(strategy);
+        if (feederStrategy == null) {
+            throw new ScriptException(String.format(
+                "Unknown feeder strategy '%s', expected sequential, circular, unique or partitioned", strategy));
+        }
+
+        DataFeeder.Exhausted exhausted = DataFeeder.Exhausted.FAIL;
+        if (onExhausted != null) {
+            exhausted = DataFeeder.Exhausted.parse(onExhausted);
+            if (exhausted == null) {
+                throw new ScriptException(String.format(
+                    "Unknown feeder exhausted option '%s', expected stop, wrap or fail", onExhausted));
+            }
+        }
+
+        File file = testContext.getFile(filename);
+        EngineContext engineContext = getEngineContext();
+        try {
+            CSVData data = engineContext.getCSVCache().get(file);
+            DataFeeder dataFeeder = engineContext.getDataFeeders().get(
+                file.getCanonicalPath(), data, feederStrategy, engineContext.getWorkerCount());
+            return new FeederImpl(filename, dataFeeder, exhausted,
+                testContext.getUserContext().getWorkerId());
         } catch (IOException e) {
             throw new ScriptException(e.getMessage());
         }
@@ -0,0 +1,213 @@
+package com.loadtestgo.script.engine.internal.browsers.chrome;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Streaming decoder for the messages sent by our Chrome extension.
+ *
+ * Events look like { "event": "Network.dataReceived", "details": { ... } }.  The event
+ * name is read first, so the details of events we don't care about are skipped without
+ * being parsed, and the high volume Network.* events are bound straight into a
+ * ChromeNetworkEvent.  Everything else (command responses and the remaining events)
+ * is built into a JSONObject in the same pass, so the existing handlers are unchanged.
+ */
+public class ChromeEventDecoder {
+    // Thread safe once configured, so shared between all connections
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    // Events that are bound to ChromeNetworkEvent rather than a JSONObject
+    static final Set<String> NETWORK_EVENTS = new HashSet<>(Arrays.asList(
+        "Network.dataReceived",
+        "Network.loadingFinished",
+        "Network.requestServedFromCache"));
+
+    public interface Handler {
+        /**
+         * Return false to have the details of the event skipped.
+         */
+        boolean wantsEvent(String event);
+
+        void onEvent(String event, JSONObject details) throws JSONException;
+
+        void onNetworkEvent(String event, ChromeNetworkEvent details) throws JSONException;
+
+        /**
+         * Messages that are not events, such as command responses.
+         */
+        void onMessage(JSONObject json) throws JSONException;
+    }
+
+    public void decode(String message, Handler handler) throws IOException, JSONException {
+        try (JsonParser parser = jsonFactory.createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JSONException("A JSONObject text must begin with '{'");
+            }
+
+            String event = null;
+            Object details = null;
+            JSONObject other = null;
+            boolean skipped = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (skipped || details instanceof ChromeNetworkEvent) {
+                    // Any other fields are of no interest once we've got what we need
+                    parser.skipChildren();
+                    continue;
+                }
+                if (other == null) {
+                    if (name.equals("event") && token == JsonToken.VALUE_STRING) {
+                        event = parser.getText();
+                        continue;
+                    } else if (name.equals("details") && token == JsonToken.START_OBJECT) {
+                        if (event == null) {
+                            // Details before the event name, we don't know what to bind to
+                            details = readObject(parser);
+                        } else if (!handler.wantsEvent(event)) {
+                            parser.skipChildren();
+                            skipped = true;
+                        } else if (NETWORK_EVENTS.contains(event)) {
+                            details = readNetworkEvent(parser);
+                        } else {
+                            details = readObject(parser);
+                        }
+                        continue;
+                    }
+
+                    // Not an event, build the whole thing
+                    other = new JSONObject();
+                    if (event != null) {
+                        other.put("event", event);
+                    }
+                    if (details != null) {
+                        other.put("details", details);
+                    }
+                }
+                other.put(name, readValue(parser, token));
+            }
+
+            if (other != null) {
+                handler.onMessage(other);
+            } else if (event == null) {
+                handler.onMessage(new JSONObject());
+            } else if (skipped) {
+                // Nothing to do
+            } else if (details instanceof ChromeNetworkEvent) {
+                handler.onNetworkEvent(event, (ChromeNetworkEvent) details);
+            } else if (details instanceof JSONObject) {
+                if (handler.wantsEvent(event)) {
+                    handler.onEvent(event, (JSONObject) details);
+                }
+            } else {
+                throw new JSONException("JSONObject[\"details\"] not found.");
+            }
+        }
+    }
+
+    private static ChromeNetworkEvent readNetworkEvent(JsonParser parser) throws IOException {
+        ChromeNetworkEvent event = new ChromeNetworkEvent();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (name) {
+                case "tabId":
+                    event.tabId = parser.getValueAsInt(-1);
+                    break;
+                case "requestId":
+                    event.requestId = parser.getValueAsString();
+                    break;
+                case "frameId":
+                    event.frameId = parser.getValueAsString();
+                    break;
+                case "processId":
+                    event.processId = parser.getValueAsString();
+                    break;
+                case "timestamp":
+                    event.timestamp = parser.getValueAsDouble(Double.NaN);
+                    break;
+                case "dataLength":
+                    event.dataLength = parser.getValueAsInt();
+                    break;
+                case "encodedDataLength":
+                    event.encodedDataLength = parser.getValueAsInt();
+                    break;
+                default:
+                    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                    }
+                    break;
+            }
+        }
+
+        if (event.tabId == -1) {
+            throw new JSONException("JSONObject[\"tabId\"] not found.");
+        }
+        if (event.requestId == null) {
+            throw new JSONException("JSONObject[\"requestId\"] not found.");
+        }
+        return event;
+    }
+
+    /**
+     * Read the object the parser is positioned at the start of into a JSONObject,
+     * mirroring the value types org.json would produce.
+     */
+    private static JSONObject readObject(JsonParser parser) throws IOException {
+        JSONObject object = new JSONObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            object.put(name, readValue(parser, parser.nextToken()));
+        }
+        return object;
+    }
+
+    private static JSONArray readArray(JsonParser parser) throws IOException {
+        JSONArray array = new JSONArray();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            array.put(readValue(parser, token));
+        }
+        return array;
+    }
+
+    private static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                return readObject(parser);
+            case START_ARRAY:
+                return readArray(parser);
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        return parser.getIntValue();
+                    case LONG:
+                        return parser.getLongValue();
+                    default:
+                        return parser.getDoubleValue();
+                }
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return JSONObject.NULL;
+            default:
+                throw new JSONException("Unexpected token " + token);
+        }
+    }
+}
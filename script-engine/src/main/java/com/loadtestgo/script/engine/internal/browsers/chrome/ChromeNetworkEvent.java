@@ -0,0 +1,37 @@
+package com.loadtestgo.script.engine.internal.browsers.chrome;
+
+import org.json.JSONObject;
+
+/**
+ * The details of a high volume DevTools Network.* event (dataReceived,
+ * loadingFinished, requestServedFromCache) bound directly from the websocket
+ * message, so we don't have to build a JSONObject for each one.
+ */
+public class ChromeNetworkEvent {
+    public int tabId = -1;
+    public String requestId;
+    public String frameId;
+    public String processId;
+    public double timestamp = Double.NaN;
+    public int dataLength;
+    public int encodedDataLength;
+
+    static ChromeNetworkEvent fromJson(JSONObject details) {
+        ChromeNetworkEvent event = new ChromeNetworkEvent();
+        event.tabId = details.getInt("tabId");
+        event.requestId = details.getString("requestId");
+        event.frameId = details.optString("frameId", null);
+        event.processId = details.optString("processId", null);
+        event.timestamp = details.optDouble("timestamp");
+        event.dataLength = details.optInt("dataLength");
+        event.encodedDataLength = details.optInt("encodedDataLength");
+        return event;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{\"tabId\":%d,\"requestId\":\"%s\",\"timestamp\":%s," +
+                "\"dataLength\":%d,\"encodedDataLength\":%d}",
+            tabId, requestId, timestamp, dataLength, encodedDataLength);
+    }
+}
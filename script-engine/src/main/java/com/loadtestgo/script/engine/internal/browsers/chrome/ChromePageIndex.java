@@ -0,0 +1,144 @@
+package com.loadtestgo.script.engine.internal.browsers.chrome;
+
+import com.loadtestgo.script.api.Page;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lookups of the pages of a test result by tab and frame, so we don't have to
+ * scan all the pages for every browser event.
+ *
+ * Each index points to the most recently added page with the given key.  The
+ * tab/frame/process ids of a page change as it is navigated, so entries are
+ * checked on lookup and we fall back to a scan of the pages if the page no
+ * longer matches.  Keys that were never indexed have no page.
+ *
+ * Must be accessed with the lock of the test result held.
+ */
+class ChromePageIndex {
+    private final Map<Page, Integer> positions = new IdentityHashMap<>();
+    private final Map<Integer, Page> pagesByTab = new HashMap<>();
+    private final Map<FrameKey, Page> pagesByFrame = new HashMap<>();
+    private final Map<FrameKey, Page> pagesByFrameAndProcess = new HashMap<>();
+
+    private static class FrameKey {
+        final int tabId;
+        final int frameId;
+        final int processId;
+
+        FrameKey(int tabId, int frameId, int processId) {
+            this.tabId = tabId;
+            this.frameId = frameId;
+            this.processId = processId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FrameKey)) {
+                return false;
+            }
+            FrameKey other = (FrameKey)o;
+            return tabId == other.tabId && frameId == other.frameId && processId == other.processId;
+        }
+
+        @Override
+        public int hashCode() {
+            return (tabId * 31 + frameId) * 31 + processId;
+        }
+    }
+
+    /**
+     * Call after the page is added to the end of the test result pages
+     */
+    void addPage(Page page) {
+        positions.put(page, positions.size());
+        pageUpdated(page);
+    }
+
+    /**
+     * Call after the tab, frame or process id of the page changes
+     */
+    void pageUpdated(Page page) {
+        index(pagesByTab, page.getTabId(), page);
+        index(pagesByFrame, new FrameKey(page.getTabId(), page.getFrameId(), -1), page);
+        index(pagesByFrameAndProcess, new FrameKey(page.getTabId(), page.getFrameId(), page.getProcessId()), page);
+    }
+
+    private <K> void index(Map<K, Page> index, K key, Page page) {
+        Page current = index.get(key);
+        if (current == null || getPosition(current) <= getPosition(page)) {
+            index.put(key, page);
+        }
+    }
+
+    private int getPosition(Page page) {
+        Integer position = positions.get(page);
+        return position == null ? -1 : position;
+    }
+
+    Page getCurrentPageForTab(List<Page> pages, int tabId) {
+        Page page = pagesByTab.get(tabId);
+        if (page == null) {
+            return null;
+        } else if (page.getTabId() == tabId) {
+            return page;
+        }
+
+        // Stale entry
+        for (int i = pages.size() - 1; i >= 0; --i) {
+            page = pages.get(i);
+            if (page.getTabId() == tabId) {
+                pagesByTab.put(tabId, page);
+                return page;
+            }
+        }
+        pagesByTab.remove(tabId);
+        return null;
+    }
+
+    Page getPageForFrame(List<Page> pages, int tabId, int frameId) {
+        FrameKey key = new FrameKey(tabId, frameId, -1);
+        Page page = pagesByFrame.get(key);
+        if (page == null) {
+            return null;
+        } else if (page.getTabId() == tabId && page.getFrameId() == frameId) {
+            return page;
+        }
+
+        // Stale entry
+        for (int i = pages.size() - 1; i >= 0; --i) {
+            page = pages.get(i);
+            if (page.getTabId() == tabId && page.getFrameId() == frameId) {
+                pagesByFrame.put(key, page);
+                return page;
+            }
+        }
+        pagesByFrame.remove(key);
+        return null;
+    }
+
+    Page getPageForFrameAndProcess(List<Page> pages, int tabId, int frameId, int processId) {
+        FrameKey key = new FrameKey(tabId, frameId, processId);
+        Page page = pagesByFrameAndProcess.get(key);
+        if (page == null) {
+            return null;
+        } else if (page.getTabId() == tabId && page.getFrameId() == frameId &&
+            page.getProcessId() == processId) {
+            return page;
+        }
+
+        // Stale entry
+        for (int i = pages.size() - 1; i >= 0; --i) {
+            page = pages.get(i);
+            if (page.getTabId() == tabId && page.getFrameId() == frameId && page.getProcessId() == processId) {
+                pagesByFrameAndProcess.put(key, page);
+                return page;
+            }
+        }
+        pagesByFrameAndProcess.remove(key);
+        return null;
+    }
+}
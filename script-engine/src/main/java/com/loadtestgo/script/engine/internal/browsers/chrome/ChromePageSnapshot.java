@@ -0,0 +1,70 @@
+package com.loadtestgo.script.engine.internal.browsers.chrome;
+
+import com.loadtestgo.script.api.HttpRequest;
+import com.loadtestgo.script.api.Page;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable copy of the state of the requests of a page.
+ *
+ * Handed to the script thread (verifyRequest(), etc) so it doesn't have to
+ * lock the page while browser events are being processed.
+ */
+class ChromePageSnapshot {
+    final Page page;
+    final long version;
+    private final List<RequestStatus> requests;
+
+    static class RequestStatus {
+        final HttpRequest request;
+        final String url;
+        final HttpRequest.State state;
+        final boolean webSocket;
+        final String error;
+        final int statusCode;
+        final String statusText;
+
+        RequestStatus(HttpRequest request) {
+            this.request = request;
+            this.url = request.getUrl();
+            this.state = request.getState();
+            this.webSocket = request.isWebSocket();
+            this.error = request.getError();
+            this.statusCode = request.getStatusCode();
+            this.statusText = request.getStatusText();
+        }
+    }
+
+    /**
+     * Must be called with the lock of the tab the page belongs to held,
+     * or for pages no events have been received for.
+     */
+    ChromePageSnapshot(Page page, long version) {
+        this.page = page;
+        this.version = version;
+
+        List<RequestStatus> requests = new ArrayList<>();
+        for (HttpRequest request : page.getRequests()) {
+            requests.add(new RequestStatus(request));
+        }
+        this.requests = Collections.unmodifiableList(requests);
+    }
+
+    static boolean isRequestPending(HttpRequest request) {
+        HttpRequest.State state = request.getState();
+        if (request.isWebSocket()) {
+            // Once a websocket connection is established don't wait on it,
+            // it may be kept open for the lifetime of the page.
+            return state != HttpRequest.State.Recv && state != HttpRequest.State.Complete;
+        } else {
+            return state != HttpRequest.State.Complete;
+        }
+    }
+
+    List<RequestStatus> getRequests() {
+        return requests;
+    }
+}
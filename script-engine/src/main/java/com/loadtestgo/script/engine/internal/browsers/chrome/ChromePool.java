@@ -0,0 +1,342 @@
+package com.loadtestgo.script.engine.internal.browsers.chrome;
+
+import com.loadtestgo.script.engine.EngineContext;
+import com.loadtestgo.script.engine.TestContext;
+import com.loadtestgo.script.engine.UserContext;
+import com.loadtestgo.script.engine.internal.server.BrowserWebSocketServer;
+import org.json.JSONObject;
+import org.pmw.tinylog.Logger;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of already launched and connected Chrome instances shared by all the
+ * UserContexts of an EngineContext.
+ *
+ * Launching Chrome, setting up the profile and waiting for the extension to
+ * connect back to us takes up most of the setup time of short scripts.  Browsers
+ * are leased from the pool when a script opens a browser and reset and returned
+ * when the script is done with it.
+ *
+ * Each pooled browser has its own slot id, which is used as its websocket id and
+ * tmp dir (and so Chrome profile).  Slot ids start at POOL_ID_BASE so they don't
+ * clash with worker ids.
+ */
+public class ChromePool {
+    static final int POOL_ID_BASE = 100000;
+    private static final long MAINTENANCE_INTERVAL_MS = 5000;
+    // A healthy idle browser answers a ping straight away
+    private static final long HEALTH_CHECK_TIMEOUT_MS = 2000;
+
+    private final EngineContext engineContext;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeout;
+    private final ChromePoolStats stats = new ChromePoolStats();
+
+    // Most recently used browsers are at the front
+    private final LinkedBlockingDeque<PooledChrome> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger nextSlotId = new AtomicInteger(POOL_ID_BASE);
+    private final ConcurrentLinkedQueue<Integer> freeSlotIds = new ConcurrentLinkedQueue<>();
+    // Released browsers waiting to be reset before going back on the idle list
+    private final ConcurrentLinkedQueue<PooledChrome> pendingReset = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService maintenance;
+    private volatile boolean closed = false;
+
+    /**
+     * A browser owned by the pool
+     */
+    public static class PooledChrome {
+        private final int slotId;
+        private ChromeProcess process;
+        private ChromeWebSocket pizzaHandler;
+        private long lastUsed;
+
+        PooledChrome(int slotId) {
+            this.slotId = slotId;
+        }
+
+        public ChromeProcess getProcess() {
+            return process;
+        }
+
+        public ChromeWebSocket getPizzaHandler() {
+            return pizzaHandler;
+        }
+    }
+
+    public ChromePool(EngineContext engineContext, int minSize, int maxSize, long idleTimeout) {
+        this.engineContext = engineContext;
+        this.maxSize = Math.max(maxSize, 0);
+        this.minSize = Math.min(Math.max(minSize, 0), this.maxSize);
+        this.idleTimeout = idleTimeout;
+
+        // Two threads so resetting released browsers isn't held up by a launch
+        maintenance = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "ChromePool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain,
+            0, MAINTENANCE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Can a browser opened with the given settings be served from the pool?
+     * Pooled browsers are all launched with the default settings.
+     */
+    public static boolean canLease(ChromeSettings settings) {
+        return !settings.ignoreCertErrors &&
+            !settings.enableQuic &&
+            settings.forceQuicForHost == null &&
+            !settings.startMaximized &&
+            (settings.args == null || settings.args.length == 0) &&
+            settings.preferences == null;
+    }
+
+    /**
+     * Lease a connected browser.  If none are idle a new one is launched, unless
+     * the pool is full in which case null is returned and the caller should launch
+     * its own browser.
+     *
+     * The caller must call reset(testContext) on the returned pizza handler and
+     * give the browser back with release() when done.
+     */
+    public PooledChrome lease() {
+        if (closed) {
+            return null;
+        }
+
+        PooledChrome chrome;
+        while ((chrome = idle.pollFirst()) != null) {
+            if (isHealthy(chrome)) {
+                stats.recordHit();
+                return chrome;
+            }
+            stats.recordHealthCheckFailure();
+            destroy(chrome);
+        }
+
+        stats.recordMiss();
+        return launchIfBelow(maxSize);
+    }
+
+    /**
+     * Return a browser to the pool.  The browser stops recording to the test
+     * straight away, but is reset to a blank state on the pool's own thread so
+     * the script doesn't wait for it.  If the reset fails the browser is closed
+     * instead.
+     */
+    public void release(PooledChrome chrome) {
+        // Detach from the finished test before anything else arrives
+        chrome.pizzaHandler.reset();
+
+        if (closed) {
+            destroy(chrome);
+            return;
+        }
+
+        pendingReset.add(chrome);
+        try {
+            maintenance.execute(this::resetPending);
+        } catch (RejectedExecutionException e) {
+            // Closed in the meantime
+            resetPending();
+        }
+    }
+
+    /**
+     * Close the browser instead of returning it to the pool, for example when
+     * the script has left it in a bad state.
+     */
+    public void discard(PooledChrome chrome) {
+        destroy(chrome);
+    }
+
+    public ChromePoolStats getStats() {
+        return stats;
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public void close() {
+        closed = true;
+        maintenance.shutdownNow();
+
+        PooledChrome chrome;
+        while ((chrome = pendingReset.poll()) != null) {
+            destroy(chrome);
+        }
+        while ((chrome = idle.pollFirst()) != null) {
+            destroy(chrome);
+        }
+
+        Logger.info("Chrome pool stats: {}", stats);
+    }
+
+    private void resetPending() {
+        PooledChrome chrome;
+        while ((chrome = pendingReset.poll()) != null) {
+            if (closed || !reset(chrome)) {
+                destroy(chrome);
+                continue;
+            }
+
+            chrome.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(chrome);
+            // close() may have drained the idle list before we added to it
+            if (closed && idle.remove(chrome)) {
+                destroy(chrome);
+            }
+        }
+    }
+
+    private boolean reset(PooledChrome chrome) {
+        try {
+            HashMap<String, Object> params = new HashMap<>();
+            params.put("reuseSession", false);
+            JSONObject response = chrome.pizzaHandler.sendCommand("reset", params);
+            JSONObject result = response.optJSONObject("response");
+            if (result != null && result.has("error")) {
+                throw new RuntimeException(result.optString("error"));
+            }
+            return true;
+        } catch (Throwable t) {
+            Logger.warn("Unable to reset pooled browser: {}.  Closing...", t);
+            return false;
+        }
+    }
+
+    private void maintain() {
+        try {
+            evictIdle();
+            while (!closed && size.get() < minSize) {
+                PooledChrome chrome = launchIfBelow(minSize);
+                if (chrome == null) {
+                    break;
+                }
+                chrome.lastUsed = System.currentTimeMillis();
+                idle.offerLast(chrome);
+            }
+        } catch (Throwable t) {
+            Logger.error(t, "Chrome pool maintenance failed");
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        // Oldest entries are at the end
+        Iterator<PooledChrome> iterator = idle.descendingIterator();
+        while (iterator.hasNext() && size.get() > minSize) {
+            PooledChrome chrome = iterator.next();
+            if (now - chrome.lastUsed < idleTimeout) {
+                break;
+            }
+            if (idle.remove(chrome)) {
+                stats.recordEviction();
+                destroy(chrome);
+            }
+        }
+    }
+
+    private boolean isHealthy(PooledChrome chrome) {
+        try {
+            if (!chrome.process.isRunning() || !chrome.pizzaHandler.isOpen()) {
+                return false;
+            }
+            JSONObject response = chrome.pizzaHandler.sendCommand("ping", null, HEALTH_CHECK_TIMEOUT_MS);
+            JSONObject result = response.optJSONObject("response");
+            return result != null && !result.has("error");
+        } catch (Throwable t) {
+            Logger.warn("Pooled browser health check failed: {}", t.getMessage());
+            return false;
+        }
+    }
+
+    private PooledChrome launchIfBelow(int limit) {
+        // Reserve the slot before launching so concurrent leases don't overshoot
+        while (true) {
+            int current = size.get();
+            if (current >= limit) {
+                return null;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+
+        PooledChrome chrome = launch();
+        if (chrome == null) {
+            size.decrementAndGet();
+        }
+        return chrome;
+    }
+
+    private PooledChrome launch() {
+        Integer slotId = freeSlotIds.poll();
+        if (slotId == null) {
+            slotId = nextSlotId.getAndIncrement();
+        }
+
+        PooledChrome chrome = new PooledChrome(slotId);
+        TestContext launchContext = new TestContext(new UserContext(engineContext, slotId));
+
+        long start = System.currentTimeMillis();
+        BrowserWebSocketServer webSocketServer = engineContext.getWebSocketServer();
+        chrome.pizzaHandler = new ChromeWebSocket(launchContext);
+        webSocketServer.initHandler(slotId, chrome.pizzaHandler);
+
+        chrome.process = new ChromeProcess(launchContext, new ChromeSettings());
+        boolean connected = false;
+        try {
+            chrome.process.start();
+            connected = chrome.pizzaHandler.waitForConnection();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            Logger.error(e, "Unable to launch pooled browser");
+        }
+
+        // The launch context was only needed to start the browser
+        launchContext.cleanup();
+
+        if (!connected) {
+            stats.recordLaunchFailure();
+            closeBrowser(chrome);
+            return null;
+        }
+
+        stats.recordLaunch(System.currentTimeMillis() - start);
+
+        // Drop events until the browser is leased
+        chrome.pizzaHandler.reset();
+        return chrome;
+    }
+
+    private void destroy(PooledChrome chrome) {
+        closeBrowser(chrome);
+        size.decrementAndGet();
+    }
+
+    private void closeBrowser(PooledChrome chrome) {
+        chrome.pizzaHandler.close();
+        chrome.process.close();
+        engineContext.getWebSocketServer().removeHandler(chrome.slotId, chrome.pizzaHandler);
+        freeSlotIds.add(chrome.slotId);
+    }
+}
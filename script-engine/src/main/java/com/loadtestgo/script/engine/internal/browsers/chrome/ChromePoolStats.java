@@ -0,0 +1,120 @@
+package com.loadtestgo.script.engine.internal.browsers.chrome;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters for the Chrome pool, used to size the pool for a given load.
+ */
+public class ChromePoolStats {
+    // Upper bounds (inclusive) of the launch latency histogram buckets in ms,
+    // the last bucket catches everything slower.
+    private static final long[] LAUNCH_LATENCY_BUCKETS = { 250, 500, 1000, 2000, 4000, 8000, Long.MAX_VALUE };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong launches = new AtomicLong();
+    private final AtomicLong launchFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong healthCheckFailures = new AtomicLong();
+    private final AtomicLongArray launchLatency = new AtomicLongArray(LAUNCH_LATENCY_BUCKETS.length);
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    void recordLaunch(long latencyMs) {
+        launches.incrementAndGet();
+        for (int i = 0; i < LAUNCH_LATENCY_BUCKETS.length; ++i) {
+            if (latencyMs <= LAUNCH_LATENCY_BUCKETS[i]) {
+                launchLatency.incrementAndGet(i);
+                break;
+            }
+        }
+    }
+
+    void recordLaunchFailure() {
+        launchFailures.incrementAndGet();
+    }
+
+    void recordEviction() {
+        evictions.incrementAndGet();
+    }
+
+    void recordHealthCheckFailure() {
+        healthCheckFailures.incrementAndGet();
+    }
+
+    /**
+     * Number of leases served by an already running browser
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of leases where no idle browser was available
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getLaunches() {
+        return launches.get();
+    }
+
+    public long getLaunchFailures() {
+        return launchFailures.get();
+    }
+
+    /**
+     * Number of browsers closed because they were idle for too long
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getHealthCheckFailures() {
+        return healthCheckFailures.get();
+    }
+
+    /**
+     * The upper bound in ms of each bucket returned by getLaunchLatencyHistogram()
+     */
+    public long[] getLaunchLatencyBuckets() {
+        return LAUNCH_LATENCY_BUCKETS.clone();
+    }
+
+    /**
+     * Count of browser launches (start until connected) for each latency bucket
+     */
+    public long[] getLaunchLatencyHistogram() {
+        long[] counts = new long[launchLatency.length()];
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] = launchLatency.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("hits: %d, misses: %d, launches: %d, launch failures: %d, " +
+                "evictions: %d, health check failures: %d, launch latency:",
+            getHits(), getMisses(), getLaunches(), getLaunchFailures(),
+            getEvictions(), getHealthCheckFailures()));
+        long[] counts = getLaunchLatencyHistogram();
+        for (int i = 0; i < counts.length; ++i) {
+            if (LAUNCH_LATENCY_BUCKETS[i] == Long.MAX_VALUE) {
+                s.append(String.format(" >%dms=%d", LAUNCH_LATENCY_BUCKETS[i - 1], counts[i]));
+            } else {
+                s.append(String.format(" <=%dms=%d", LAUNCH_LATENCY_BUCKETS[i], counts[i]));
+            }
+        }
+        return s.toString();
+    }
+}
@@ -473,6 +473,17 @@ public class ChromeProcess {
         }
     }
 
+    /**
+     * Is the browser process still alive?  Always true for browsers started by a
+     * ProcessLauncher as we've no way of checking.
+     */
+    public boolean isRunning() {
+        if (process != null) {
+            return process.isAlive();
+        }
+        return processLauncher != null;
+    }
+
     public String getCacheDir() {
         return cacheDir;
     }
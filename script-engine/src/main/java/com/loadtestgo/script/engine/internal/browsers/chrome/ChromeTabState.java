@@ -0,0 +1,216 @@
+package com.loadtestgo.script.engine.internal.browsers.chrome;
+
+import com.loadtestgo.script.api.HttpRequest;
+import com.loadtestgo.script.api.Page;
+import com.loadtestgo.script.har.HarSpool;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The event processing state for a single browser tab.
+ *
+ * Events are handled while holding the lock of the tab they belong to, so
+ * the events of different tabs don't contend with each other or with the
+ * script thread.
+ *
+ * The script thread reads the number of pending requests and the time the
+ * last request finished for each page without locking, these are kept up to
+ * date after each event by only checking the requests that haven't finished
+ * yet.  For anything else it takes a ChromePageSnapshot, which is only rebuilt
+ * when events have been handled since the last one was taken.
+ *
+ * When the result is being spooled to disk (HarSpool) requests are handed to
+ * the spool as they finish, and the pages of the tab are finished once a newer
+ * page is the current page of the tab.
+ */
+class ChromeTabState {
+    final int tabId;
+
+    // Set when the test result is being spooled to disk
+    private final HarSpool spool;
+
+    // All of these must only be accessed with the tab lock held
+    final Map<String, HttpRequest> ongoingRequests = new HashMap<>();
+    final Map<String, JSONObject> deferredRequestExtraInfo = new HashMap<>();
+    final Map<String, JSONObject> deferredResponseExtraInfo = new HashMap<>();
+
+    // The page each request of the tab was added to
+    final Map<HttpRequest, Page> requestPages = new IdentityHashMap<>();
+
+    // Requests that we've decided are chrome internal requests and shouldn't be logged
+    final Set<String> internalRequestIds = new HashSet<>();
+
+    String authRequestId;
+
+    // Requests that are not complete yet (including open websockets)
+    private final Set<HttpRequest> unfinishedRequests = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Map<Page, Integer> pendingCounts = new IdentityHashMap<>();
+    // Set when a request is added since the last call to changed()
+    private boolean requestsAdded = false;
+
+    // Read without the lock by the script thread
+    private final Set<HttpRequest> pendingRequests = ConcurrentHashMap.newKeySet();
+    private final Map<Page, PageRequests> pageRequests = new ConcurrentHashMap<>();
+
+    // Pages with requests from this tab that haven't been finished in the spool
+    private final Set<Page> openPages = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private volatile long version = 0;
+    private volatile ChromePageSnapshot snapshot;
+
+    static class PageRequests {
+        volatile int pending = 0;
+        volatile long lastFinishedTime = -1;
+    }
+
+    ChromeTabState(int tabId, HarSpool spool) {
+        this.tabId = tabId;
+        this.spool = spool;
+    }
+
+    void addRequest(Page page, HttpRequest request) {
+        page.addRequest(request);
+        requestPages.put(request, page);
+        if (spool != null) {
+            openPages.add(page);
+        }
+        PageRequests counts = getPageRequests(page);
+        requestsAdded = true;
+        if (request.getState() == HttpRequest.State.Complete) {
+            counts.lastFinishedTime = Math.max(counts.lastFinishedTime, request.getEndTime());
+            spoolRequest(page, request);
+        } else {
+            unfinishedRequests.add(request);
+            if (ChromePageSnapshot.isRequestPending(request)) {
+                pendingRequests.add(request);
+            }
+        }
+    }
+
+    private PageRequests getPageRequests(Page page) {
+        return pageRequests.computeIfAbsent(page, p -> new PageRequests());
+    }
+
+    /**
+     * Called with the tab lock held after handling an event that may have
+     * changed the state of the requests of the tab.
+     *
+     * @return true if any request was added or finished, or the set of pending
+     *         requests changed
+     */
+    boolean changed() {
+        version++;
+
+        boolean activity = requestsAdded;
+        requestsAdded = false;
+        Map<Page, Integer> counts = new IdentityHashMap<>();
+        Iterator<HttpRequest> iterator = unfinishedRequests.iterator();
+        while (iterator.hasNext()) {
+            HttpRequest request = iterator.next();
+            Page page = requestPages.get(request);
+            if (request.getState() == HttpRequest.State.Complete) {
+                iterator.remove();
+                pendingRequests.remove(request);
+                PageRequests pageCounts = getPageRequests(page);
+                pageCounts.lastFinishedTime = Math.max(pageCounts.lastFinishedTime, request.getEndTime());
+                spoolRequest(page, request);
+                activity = true;
+            } else if (ChromePageSnapshot.isRequestPending(request)) {
+                activity |= pendingRequests.add(request);
+                counts.merge(page, 1, Integer::sum);
+            } else {
+                // Open websocket, not waited on
+                activity |= pendingRequests.remove(request);
+            }
+        }
+
+        for (Page page : pendingCounts.keySet()) {
+            if (!counts.containsKey(page)) {
+                getPageRequests(page).pending = 0;
+                activity = true;
+            }
+        }
+        for (Map.Entry<Page, Integer> entry : counts.entrySet()) {
+            PageRequests pageCounts = getPageRequests(entry.getKey());
+            if (pageCounts.pending != entry.getValue()) {
+                pageCounts.pending = entry.getValue();
+                activity = true;
+            }
+        }
+        pendingCounts = counts;
+
+        return activity;
+    }
+
+    private void spoolRequest(Page page, HttpRequest request) {
+        if (spool != null && spool.requestFinished(page, request)) {
+            requestPages.remove(request);
+        }
+    }
+
+    boolean isSpooling() {
+        return spool != null;
+    }
+
+    /**
+     * Called with the tab lock held when spooling, finishes all the pages
+     * of the tab other than its current page.
+     */
+    void finishPages(Page currentPage) {
+        if (spool == null || openPages.isEmpty()) {
+            return;
+        }
+
+        Iterator<Page> iterator = openPages.iterator();
+        while (iterator.hasNext()) {
+            Page page = iterator.next();
+            if (page != currentPage) {
+                iterator.remove();
+                List<HttpRequest> evicted = spool.pageFinished(page);
+                for (HttpRequest request : evicted) {
+                    requestPages.remove(request);
+                }
+            }
+        }
+    }
+
+    boolean hasPendingRequests(Page page) {
+        PageRequests counts = pageRequests.get(page);
+        return counts != null && counts.pending > 0;
+    }
+
+    long getLastRequestFinishedTime(Page page) {
+        PageRequests counts = pageRequests.get(page);
+        return counts == null ? -1 : counts.lastFinishedTime;
+    }
+
+    boolean isPending(HttpRequest request) {
+        return pendingRequests.contains(request);
+    }
+
+    /**
+     * Get a snapshot of the given page, which must belong to this tab.
+     * The previous snapshot is returned if nothing has changed since.
+     */
+    ChromePageSnapshot getSnapshot(Page page) {
+        ChromePageSnapshot current = snapshot;
+        if (current != null && current.page == page && current.version == version) {
+            return current;
+        }
+
+        synchronized (this) {
+            current = new ChromePageSnapshot(page, version);
+            snapshot = current;
+            return current;
+        }
+    }
+}
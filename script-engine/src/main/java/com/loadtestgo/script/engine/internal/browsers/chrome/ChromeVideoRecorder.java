@@ -0,0 +1,302 @@
+package com.loadtestgo.script.engine.internal.browsers.chrome;
+
+import com.bric.qt.io.JPEGMovWriter;
+import org.pmw.tinylog.Logger;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the screencast frames sent by the browser to a video file.
+ *
+ * Frames are queued and then decoded & written on a dedicated encoder thread,
+ * so the websocket thread never waits on the disk (which would hold up the
+ * other browser events, and the page timings we measure from them).
+ *
+ * The queue is bounded, when it's full the most recently queued frame is
+ * replaced by the new one.  Frame durations come from the frame timestamps,
+ * so the frame before a dropped frame is just shown for longer.
+ *
+ * Chrome sends the same frame over and over while the page is idle.  Frames
+ * identical to the previous one extend the duration of the previous sample in
+ * the video rather than being written again, and optionally frames that only
+ * differ from the previous frame by less than a threshold (the mean difference
+ * of a grid of sampled pixels) are skipped too.  The frame rate can also be
+ * capped, frames arriving faster than that replace the pending frame.
+ */
+class ChromeVideoRecorder {
+    // Number of pixels sampled along each axis when comparing frames
+    private static final int DIFF_GRID_SIZE = 32;
+
+    private final File file;
+    private final int maxQueuedFrames;
+    private final long minFrameInterval;
+    private final double diffThreshold;
+
+    // Guarded by the queue lock
+    private final Deque<Frame> queue = new ArrayDeque<>();
+    private Thread encoderThread;
+    private boolean closed = false;
+
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesSkipped = new AtomicLong();
+
+    // Only accessed by the encoder thread, and by close() once it has stopped
+    private JPEGMovWriter writer;
+    private byte[] previousImage;
+    private BufferedImage previousDecodedImage;
+    private long previousFrameTime;
+
+    private static class Frame {
+        final byte[] image;
+        final long time;
+
+        Frame(byte[] image, long time) {
+            this.image = image;
+            this.time = time;
+        }
+    }
+
+    /**
+     * @param file the video file to write
+     * @param maxQueuedFrames frames are dropped when more than this are waiting to be written
+     * @param maxFps the max frame rate of the video, 0 for no limit
+     * @param diffThreshold frames that differ from the previous frame by less than this
+     *                      (mean difference per colour channel, 0-255) are skipped, 0 to disable
+     */
+    ChromeVideoRecorder(File file, int maxQueuedFrames, int maxFps, double diffThreshold) {
+        this.file = file;
+        this.maxQueuedFrames = Math.max(1, maxQueuedFrames);
+        this.minFrameInterval = maxFps > 0 ? 1000 / maxFps : 0;
+        this.diffThreshold = diffThreshold;
+    }
+
+    /**
+     * Queue a frame to be written, doesn't block.
+     *
+     * @param image the JPEG
+     * @param frameTime the time the frame was captured (ms)
+     */
+    void addFrame(byte[] image, long frameTime) {
+        framesReceived.incrementAndGet();
+        synchronized (queue) {
+            if (closed) {
+                framesDropped.incrementAndGet();
+                return;
+            }
+            if (queue.size() >= maxQueuedFrames) {
+                queue.pollLast();
+                framesDropped.incrementAndGet();
+            }
+            queue.addLast(new Frame(image, frameTime));
+
+            if (encoderThread == null) {
+                encoderThread = new Thread(this::encode, "VideoEncoder");
+                encoderThread.setDaemon(true);
+                encoderThread.start();
+            }
+            queue.notifyAll();
+        }
+    }
+
+    private void encode() {
+        while (true) {
+            Frame frame;
+            synchronized (queue) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                frame = queue.pollFirst();
+            }
+            if (frame == null) {
+                // Closed & all frames written
+                return;
+            }
+            writeFrame(frame);
+        }
+    }
+
+    private void writeFrame(Frame frame) {
+        byte[] image = frame.image;
+        try {
+            if (writer == null) {
+                Logger.info("Saving video to {}", file);
+                writer = new JPEGMovWriter(file);
+                writer.setMergeDuplicateFrames(true);
+            }
+
+            if (previousImage != null) {
+                if (frame.time - previousFrameTime < minFrameInterval) {
+                    // Over the max frame rate, show this frame in place of the pending one
+                    previousImage = image;
+                    previousDecodedImage = null;
+                    framesSkipped.incrementAndGet();
+                    return;
+                }
+
+                if (diffThreshold > 0 && isSimilar(image)) {
+                    // The pending frame is shown for longer instead
+                    framesSkipped.incrementAndGet();
+                    return;
+                }
+
+                writer.addFrame(duration(previousFrameTime, frame.time), previousImage);
+                framesWritten.incrementAndGet();
+            }
+
+            previousImage = image;
+            previousDecodedImage = null;
+            previousFrameTime = frame.time;
+        } catch (IOException e) {
+            Logger.error(e, "Unable to add frame to video");
+        }
+    }
+
+    /**
+     * Compare a grid of pixels of the image with the pending frame
+     */
+    private boolean isSimilar(byte[] image) {
+        if (Arrays.equals(image, previousImage)) {
+            return true;
+        }
+
+        try {
+            if (previousDecodedImage == null) {
+                previousDecodedImage = ImageIO.read(new ByteArrayInputStream(previousImage));
+            }
+            BufferedImage decodedImage = ImageIO.read(new ByteArrayInputStream(image));
+            if (previousDecodedImage == null || decodedImage == null) {
+                return false;
+            }
+            return imageDiff(previousDecodedImage, decodedImage) < diffThreshold;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Mean difference per colour channel (0-255) of a grid of pixels sampled
+     * from both images.  Images of different sizes are completely different.
+     */
+    static double imageDiff(BufferedImage a, BufferedImage b) {
+        int width = a.getWidth();
+        int height = a.getHeight();
+        if (width != b.getWidth() || height != b.getHeight()) {
+            return 255;
+        }
+
+        long total = 0;
+        int samples = 0;
+        for (int i = 0; i < DIFF_GRID_SIZE; ++i) {
+            int y = (int)((i + 0.5) * height / DIFF_GRID_SIZE);
+            for (int j = 0; j < DIFF_GRID_SIZE; ++j) {
+                int x = (int)((j + 0.5) * width / DIFF_GRID_SIZE);
+                int rgbA = a.getRGB(x, y);
+                int rgbB = b.getRGB(x, y);
+                total += Math.abs(((rgbA >> 16) & 0xff) - ((rgbB >> 16) & 0xff));
+                total += Math.abs(((rgbA >> 8) & 0xff) - ((rgbB >> 8) & 0xff));
+                total += Math.abs((rgbA & 0xff) - (rgbB & 0xff));
+                samples += 3;
+            }
+        }
+        return (double)total / samples;
+    }
+
+    private static int duration(long startTime, long endTime) {
+        int diff = (int)(endTime - startTime);
+        if (diff <= 0) {
+            diff = 1;
+        }
+        return diff;
+    }
+
+    /**
+     * Write out the queued frames and close the video.  The last frame is
+     * shown until the time close() is called.
+     *
+     * @return the video file, or null if nothing was written
+     */
+    File close() {
+        long endTime = System.currentTimeMillis();
+
+        Thread thread;
+        synchronized (queue) {
+            if (closed) {
+                return null;
+            }
+            closed = true;
+            thread = encoderThread;
+            queue.notifyAll();
+        }
+
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Logger.error("Interrupted while writing video frames");
+                return null;
+            }
+        }
+
+        if (writer == null) {
+            return null;
+        }
+
+        try {
+            if (previousImage != null) {
+                writer.addFrame(duration(previousFrameTime, endTime), previousImage);
+                framesWritten.incrementAndGet();
+            }
+            writer.close();
+        } catch (IOException e) {
+            Logger.error(e, "Unable to save video");
+            return null;
+        } finally {
+            previousImage = null;
+            previousDecodedImage = null;
+        }
+
+        Logger.info("Video {}: {} frames received, {} written, {} merged, {} skipped, {} dropped",
+            file, framesReceived.get(), framesWritten.get(), writer.getMergedFrameCount(),
+            framesSkipped.get(), framesDropped.get());
+        return file;
+    }
+
+    long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    /**
+     * Frames not written because they were over the max frame rate, or
+     * were too similar to the previous frame
+     */
+    long getFramesSkipped() {
+        return framesSkipped.get();
+    }
+
+    /**
+     * Frames dropped because the encoder couldn't keep up (or that arrived
+     * after the video was closed)
+     */
+    long getFramesDropped() {
+        return framesDropped.get();
+    }
+}
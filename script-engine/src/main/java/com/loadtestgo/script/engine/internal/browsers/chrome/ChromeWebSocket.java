@@ -1,12 +1,14 @@
 package com.loadtestgo.script.engine.internal.browsers.chrome;
 
-import com.bric.qt.io.JPEGMovWriter;
 import com.loadtestgo.script.api.*;
+import com.loadtestgo.script.engine.EngineSettings;
 import com.loadtestgo.script.engine.ResultsNotifier;
 import com.loadtestgo.script.engine.ScriptException;
 import com.loadtestgo.script.engine.TestContext;
+import com.loadtestgo.script.engine.internal.server.BinaryFrame;
 import com.loadtestgo.script.engine.internal.server.BrowserWebSocket;
-import com.loadtestgo.util.HttpHeader;
+import com.loadtestgo.script.har.HarSpool;
+import com.loadtestgo.util.HttpHeaders;
 import com.loadtestgo.util.Http;
 import com.loadtestgo.util.StringUtils;
 import org.json.JSONArray;
@@ -17,42 +19,69 @@ import org.pmw.tinylog.Logger;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class ChromeWebSocket extends BrowserWebSocket {
-    private TestResult testResult;
-    private TestContext testContext;
-    private ResultsNotifier resultNotifier;
-    private String authRequestId;
+    private volatile TestResult testResult;
+    private volatile TestContext testContext;
+    private volatile ResultsNotifier resultNotifier;
 
-    // Requests that we've decided are chrome internal requests and shouldn't be logged
-    private Set<String> internalRequestIds;
+    // Event processing state, sharded by tab
+    private volatile ConcurrentHashMap<Integer, ChromeTabState> tabs = new ConcurrentHashMap<>();
 
-    private Map<String, HttpRequest> ongoingRequests = new HashMap<>();
-    private Map<String, JSONObject> deferredRequestExtraInfo = new HashMap<>();
-    private Map<String, JSONObject> deferredResponseExtraInfo = new HashMap<>();
+    // Lookup of the test result pages, guarded by the test result lock
+    private volatile ChromePageIndex pageIndex;
 
-    private JPEGMovWriter videoWriter;
-    private byte[] previousImage;
-    private long previousFrameTime;
-    private boolean capturingVideo;
-    private Object videoLock = new Object();
+    // Finished requests & pages are written here when set
+    private volatile HarSpool spool;
+
+    // Bumped and notified whenever the pending requests change, a page is added
+    // or the connection is closed, so the script thread can wait on it rather
+    // than poll
+    private final Object requestActivityLock = new Object();
+    private long requestActivity = 0;
+
+    // The recorder is created on the first captured frame, guarded by videoLock
+    private ChromeVideoRecorder videoRecorder;
+    private volatile boolean capturingVideo;
+    private final Object videoLock = new Object();
+
+    private final ChromeEventDecoder eventDecoder = new ChromeEventDecoder();
+    private final ChromeEventDecoder.Handler eventHandler = new EventHandler();
 
     // These events are not written out as they make the verbose logs too busy
     static List<String> DONT_LOG_THESE_EVENTS = Arrays.asList("Page.screencastFrame", "Network.dataReceived");
 
+    // We don't do anything with these events, so don't bother parsing their details
+    static Set<String> IGNORED_EVENTS = new HashSet<>(Arrays.asList(
+        "tabCreated", "tabUpdated", "debuggerDetached", "Network.resourceChangedPriority"));
+
     public ChromeWebSocket(TestContext testContext) {
         super(testContext);
         this.testContext = testContext;
         this.testResult = testContext.getTestResult();
         this.resultNotifier = testContext.getResultNotifier();
-        this.internalRequestIds = new HashSet<>();
+        this.pageIndex = createPageIndex(testResult);
+        this.spool = testContext.getHarSpool();
+    }
+
+    private static ChromePageIndex createPageIndex(TestResult testResult) {
+        ChromePageIndex pageIndex = new ChromePageIndex();
+        synchronized (testResult) {
+            for (Page page : testResult.getPages()) {
+                pageIndex.addPage(page);
+            }
+        }
+        return pageIndex;
     }
 
     public void reset() {
         this.testResult = null;
         this.resultNotifier = null;
+        this.spool = null;
+        this.tabs = new ConcurrentHashMap<>();
 
         closeVideo();
     }
@@ -61,171 +90,266 @@ public class ChromeWebSocket extends BrowserWebSocket {
         this.testContext = testContext;
         this.testResult = testContext.getTestResult();
         this.resultNotifier = testContext.getResultNotifier();
-        this.internalRequestIds = new HashSet<>();
+        this.spool = testContext.getHarSpool();
+        this.tabs = new ConcurrentHashMap<>();
+        this.pageIndex = createPageIndex(testResult);
 
         closeVideo();
     }
 
     public void close() {
         closeVideo();
+        notifyRequestActivity();
     }
 
     private void closeVideo() {
+        ChromeVideoRecorder recorder;
         synchronized (videoLock) {
             capturingVideo = false;
-            if (videoWriter != null) {
-                try {
-                    writeLastFrame();
-                    videoWriter.close();
-                    testContext.addFile(videoWriter.getFile().getAbsoluteFile());
-                } catch (IOException e) {
-                    Logger.error("Unable to save video", e);
-                }
-                videoWriter = null;
+            recorder = videoRecorder;
+            videoRecorder = null;
+        }
+        if (recorder != null) {
+            File file = recorder.close();
+            if (file != null) {
+                testContext.addFile(file.getAbsoluteFile());
             }
         }
     }
 
+    /**
+     * Not synchronized, events are serialised per tab (see ChromeTabState) so that
+     * the script thread doesn't have to wait on event processing to send commands.
+     */
     @Override
-    protected boolean onMessage(JSONObject json) throws JSONException {
-        synchronized (this) {
+    public void onMessage(String message) {
+        try {
+            eventDecoder.decode(message, eventHandler);
+        } catch (IOException|JSONException e) {
+            Logger.error(e, "Unable to parse message");
+        }
+    }
+
+    private class EventHandler implements ChromeEventDecoder.Handler {
+        @Override
+        public boolean wantsEvent(String event) {
             // Too late if the conn is closed
-            if (conn == null) {
-                return false;
-            }
+            return conn != null && testResult != null && !IGNORED_EVENTS.contains(event);
+        }
 
-            if (super.onMessage(json)) {
-                return true;
-            }
+        @Override
+        public void onEvent(String event, JSONObject details) throws JSONException {
+            handleEvent(event, details);
+        }
 
-            if (testResult == null) {
-                return true;
-            }
+        @Override
+        public void onNetworkEvent(String event, ChromeNetworkEvent details) throws JSONException {
+            handleNetworkEvent(event, details);
+        }
 
-            String event = json.getString("event");
-            JSONObject details = json.getJSONObject("details");
+        @Override
+        public void onMessage(JSONObject json) throws JSONException {
+            ChromeWebSocket.this.onMessage(json);
+        }
+    }
 
-            if (verboseLogging) {
-                if (!DONT_LOG_THESE_EVENTS.contains(event)) {
-                    Logger.info("{} {}", event, details.toString());
-                }
+    @Override
+    protected boolean onMessage(JSONObject json) throws JSONException {
+        // Too late if the conn is closed
+        if (conn == null) {
+            return false;
+        }
+
+        if (super.onMessage(json)) {
+            return true;
+        }
+
+        if (testResult == null) {
+            return true;
+        }
+
+        return handleEvent(json.getString("event"), json.getJSONObject("details"));
+    }
+
+    private ChromeTabState getTab(int tabId) {
+        return tabs.computeIfAbsent(tabId, id -> new ChromeTabState(id, spool));
+    }
+
+    /**
+     * Call with the tab lock held after handling an event for the tab
+     */
+    private void tabChanged(ChromeTabState tab) {
+        if (tab.changed()) {
+            notifyRequestActivity();
+        }
+        if (tab.isSpooling()) {
+            tab.finishPages(getCurrentPageForTab(tab.tabId));
+        }
+    }
+
+    private boolean handleNetworkEvent(String event, ChromeNetworkEvent details) throws JSONException {
+        if (verboseLogging) {
+            if (!DONT_LOG_THESE_EVENTS.contains(event)) {
+                Logger.info("{} {}", event, details.toString());
             }
+        }
 
+        ChromeTabState tab = getTab(details.tabId);
+        synchronized (tab) {
             switch (event) {
-                case "navigationBegin":
-                    navigationBegin(details);
-                    break;
-                case "navigationCommitted":
-                    navigationCommitted(details);
-                    break;
-                case "Network.requestWillBeSent":
-                    networkRequestWillBeSent(details);
-                    break;
-                case "Network.requestWillBeSentExtraInfo":
-                    networkRequestWillBeSentExtraInfo(details);
-                    break;
                 case "Network.dataReceived":
+                    // Only the byte counts change, nothing the snapshots care about
                     networkDataReceived(details);
-                    break;
-                case "Network.responseReceived":
-                    networkResponseReceived(details);
-                    break;
-                case "Network.responseReceivedExtraInfo":
-                    networkResponseReceivedExtraInfo(details);
-                    break;
+                    return true;
                 case "Network.loadingFinished":
                     networkLoadingFinished(details);
                     break;
-                case "Network.loadingFailed":
-                    networkLoadingFailed(details);
-                    break;
-                case "Network.resourceChangedPriority":
-                    networkResourceChangedPriority(details);
-                    break;
                 case "Network.requestServedFromCache":
                     networkRequestServedFromCache(details);
                     break;
-                case "Network.webSocketCreated":
-                    networkWebSocketCreated(details);
-                    break;
-                case "Network.webSocketWillSendHandshakeRequest":
-                    networkWebSocketWillSendHandshakeRequest(details);
-                    break;
-                case "Network.webSocketHandshakeResponseReceived":
-                    networkWebSocketHandshakeResponseReceived(details);
-                    break;
-                case "Network.webSocketFrameSent":
-                    networkWebSocketFrameSent(details);
-                    break;
-                case "Network.webSocketFrameReceived":
-                    networkWebSocketFrameReceived(details);
-                    break;
-                case "Network.webSocketFrameError":
-                    networkWebSocketFrameError(details);
-                    break;
-                case "Network.webSocketClosed":
-                    networkWebSocketClosed(details);
-                    break;
-                case "navigationDOMContentLoaded":
-                    navigationDOMContentLoaded(details);
-                    break;
-                case "historyStateUpdated":
-                    historyStateUpdated(details);
-                    break;
-                case "navigationCompleted":
-                    navigationCompleted(details);
-                    break;
-                case "navigationError":
-                    navigationError(details);
-                    break;
-                case "navigationLoadTimes":
-                    navigationLoadTimes(details);
-                    break;
-                case "onAuthRequired":
-                    onAuthRequired(details);
-                    break;
-                case "tabCreated":
-                    tabCreated(details);
-                    break;
-                case "tabUpdated":
-                    tabUpdated(details);
-                    break;
-                case "tabRemoved":
-                    tabRemoved(details);
-                    break;
-                case "debuggerDetached":
-                    debuggerDetached(details);
-                    break;
-                case "Console.messagesCleared":
-                    consoleMessagesCleared(details);
-                    break;
-                case "Console.messageAdded":
-                    consoleMessagesAdded(details);
-                    break;
-                case "Console.messageRepeatCountUpdated":
-                    messageRepeatCountUpdated(details);
-                    break;
-                case "Page.screencastFrame":
-                    screencastFrame(details);
-                    break;
-                case "Pizza.inspectElement":
-                    inspectElement(details);
-                    break;
-                case "Inspector.targetCrashed":
-                    Logger.error("tab crashed: {}", event, details.toString());
-                    break;
-                case "calculatedPageStats":
-                    calculatedPageStats(details);
-                    break;
                 default:
                     Logger.error("unhandled: {} {}", event, details.toString());
                     return false;
             }
 
+            tabChanged(tab);
             return true;
         }
     }
 
+    private boolean handleEvent(String event, JSONObject details) throws JSONException {
+        if (verboseLogging) {
+            if (!DONT_LOG_THESE_EVENTS.contains(event)) {
+                Logger.info("{} {}", event, details.toString());
+            }
+        }
+
+        int tabId = details.optInt("tabId", -1);
+        if (tabId == -1) {
+            // Not tab specific (screencast frames, etc)
+            return dispatchEvent(event, details);
+        }
+
+        ChromeTabState tab = getTab(tabId);
+        synchronized (tab) {
+            boolean handled = dispatchEvent(event, details);
+            tabChanged(tab);
+            return handled;
+        }
+    }
+
+    private boolean dispatchEvent(String event, JSONObject details) throws JSONException {
+        switch (event) {
+            case "navigationBegin":
+                navigationBegin(details);
+                break;
+            case "navigationCommitted":
+                navigationCommitted(details);
+                break;
+            case "Network.requestWillBeSent":
+                networkRequestWillBeSent(details);
+                break;
+            case "Network.requestWillBeSentExtraInfo":
+                networkRequestWillBeSentExtraInfo(details);
+                break;
+            case "Network.dataReceived":
+                networkDataReceived(ChromeNetworkEvent.fromJson(details));
+                break;
+            case "Network.responseReceived":
+                networkResponseReceived(details);
+                break;
+            case "Network.responseReceivedExtraInfo":
+                networkResponseReceivedExtraInfo(details);
+                break;
+            case "Network.loadingFinished":
+                networkLoadingFinished(ChromeNetworkEvent.fromJson(details));
+                break;
+            case "Network.loadingFailed":
+                networkLoadingFailed(details);
+                break;
+            case "Network.resourceChangedPriority":
+                networkResourceChangedPriority(details);
+                break;
+            case "Network.requestServedFromCache":
+                networkRequestServedFromCache(ChromeNetworkEvent.fromJson(details));
+                break;
+            case "Network.webSocketCreated":
+                networkWebSocketCreated(details);
+                break;
+            case "Network.webSocketWillSendHandshakeRequest":
+                networkWebSocketWillSendHandshakeRequest(details);
+                break;
+            case "Network.webSocketHandshakeResponseReceived":
+                networkWebSocketHandshakeResponseReceived(details);
+                break;
+            case "Network.webSocketFrameSent":
+                networkWebSocketFrameSent(details);
+                break;
+            case "Network.webSocketFrameReceived":
+                networkWebSocketFrameReceived(details);
+                break;
+            case "Network.webSocketFrameError":
+                networkWebSocketFrameError(details);
+                break;
+            case "Network.webSocketClosed":
+                networkWebSocketClosed(details);
+                break;
+            case "navigationDOMContentLoaded":
+                navigationDOMContentLoaded(details);
+                break;
+            case "historyStateUpdated":
+                historyStateUpdated(details);
+                break;
+            case "navigationCompleted":
+                navigationCompleted(details);
+                break;
+            case "navigationError":
+                navigationError(details);
+                break;
+            case "navigationLoadTimes":
+                navigationLoadTimes(details);
+                break;
+            case "onAuthRequired":
+                onAuthRequired(details);
+                break;
+            case "tabCreated":
+                tabCreated(details);
+                break;
+            case "tabUpdated":
+                tabUpdated(details);
+                break;
+            case "tabRemoved":
+                tabRemoved(details);
+                break;
+            case "debuggerDetached":
+                debuggerDetached(details);
+                break;
+            case "Console.messagesCleared":
+                consoleMessagesCleared(details);
+                break;
+            case "Console.messageAdded":
+                consoleMessagesAdded(details);
+                break;
+            case "Console.messageRepeatCountUpdated":
+                messageRepeatCountUpdated(details);
+                break;
+            case "Pizza.inspectElement":
+                inspectElement(details);
+                break;
+            case "Inspector.targetCrashed":
+                Logger.error("tab crashed: {}", event, details.toString());
+                break;
+            case "calculatedPageStats":
+                calculatedPageStats(details);
+                break;
+            default:
+                Logger.error("unhandled: {} {}", event, details.toString());
+                return false;
+        }
+
+        return true;
+    }
+
     private void tabUpdated(JSONObject details) {
         // Tab moved, changed display, was activated, etc
     }
@@ -244,89 +368,63 @@ public class ChromeWebSocket extends BrowserWebSocket {
         }
         // Tab is removed cancel all ongoing requests for that tab, we've no way of getting information
         // about these requests - however once the tab is closed, the connections are also closed.
-        synchronized(testResult) {
-            List<String> requestsToRemove = new ArrayList<>();
-            for (Map.Entry<String, HttpRequest> requestEntry : ongoingRequests.entrySet()) {
-                HttpRequest request = requestEntry.getValue();
-                if (request.getTabId() == tabId) {
-                    request.setError("Cancelled");
-                    request.setState(HttpRequest.State.Complete);
-                    requestsToRemove.add(requestEntry.getKey());
-                }
-            }
-
-            for (String requestId : requestsToRemove) {
-                ongoingRequests.remove(requestId);
-            }
+        ChromeTabState tab = getTab(tabId);
+        for (HttpRequest request : tab.ongoingRequests.values()) {
+            request.setError("Cancelled");
+            request.setState(HttpRequest.State.Complete);
         }
+        tab.ongoingRequests.clear();
     }
 
-    private void screencastFrame(JSONObject details) {
-        String data = details.getString("data");
-
-        synchronized (videoLock) {
-            if (capturingVideo) {
-                JSONObject metadata = details.getJSONObject("metadata");
-                double timestamp = metadata.getDouble("timestamp");
-
-                long frameTime = convertToMillisFromSeconds(timestamp);
-
-                Base64.Decoder decoder = Base64.getDecoder();
-
-                byte[] rawData = decoder.decode(data);
+    /**
+     * Frames are acked straight away and handed to the video recorder, which
+     * writes them on its own thread.
+     */
+    @Override
+    protected void onScreencastFrame(BinaryFrame frame) {
+        int sessionId = frame.getId();
+        try {
+            sendMessage(String.format("{ \"name\": \"screencastAck\", \"id\": null, \"type\": \"pizza\"," +
+                "\"params\": {\"sessionId\": %d} }", sessionId));
+        } catch (ScriptException e) {
+            // Connection closed while we were handling the frame
+            Logger.debug("Unable to ack screencast frame: {}", e.getMessage());
+        }
 
-                try {
-                    if (videoWriter == null) {
-                        String filePath = testContext.getVideoFilePath();
-                        File file = null;
-                        if (filePath == null) {
-                            String baseName = testContext.getTestName();
-                            if (baseName == null) {
-                                baseName = "video";
-                            }
-                            file = new File(testContext.getOutputDirectory(), baseName + ".mov");
-                        } else {
-                            file = new File(filePath);
-                        }
-                        Logger.info("Saving video to {}", file);
-                        videoWriter = new JPEGMovWriter(file);
-                    }
+        if (!capturingVideo) {
+            return;
+        }
 
-                    if (previousImage != null) {
-                        int diff = (int) (frameTime - this.previousFrameTime);
-                        if (diff <= 0) {
-                            diff = 1;
-                        }
-                        videoWriter.addFrame(diff, previousImage);
-                    }
+        long frameTime = convertToMillisFromSeconds(frame.getTimestamp());
+        byte[] image = BinaryFrame.toArray(frame.getPayload());
 
-                    previousImage = rawData;
-                    previousFrameTime = frameTime;
-                } catch (IOException e) {
-                    Logger.error("unable to add frame to video", e);
-                }
+        ChromeVideoRecorder recorder;
+        synchronized (videoLock) {
+            if (!capturingVideo) {
+                return;
             }
+            if (videoRecorder == null) {
+                EngineSettings settings = testContext.getEngineSettings();
+                videoRecorder = new ChromeVideoRecorder(getVideoFile(),
+                    settings.getVideoMaxQueuedFrames(),
+                    settings.getVideoMaxFps(),
+                    settings.getVideoFrameDiffThreshold());
+            }
+            recorder = videoRecorder;
         }
-        int sessionId = details.getInt("sessionId");
-        sendMessage(String.format("{ \"name\": \"screencastAck\", \"id\": null, \"type\": \"pizza\"," +
-            "\"params\": {\"sessionId\": %d} }", sessionId));
+        recorder.addFrame(image, frameTime);
     }
 
-    private void writeLastFrame() {
-        try {
-            if (videoWriter != null && previousImage != null) {
-                long timestamp = System.currentTimeMillis();
-                int diff = (int) (timestamp - this.previousFrameTime);
-                if (diff <= 0) {
-                    diff = 1;
-                }
-                videoWriter.addFrame(diff, previousImage);
+    private File getVideoFile() {
+        String filePath = testContext.getVideoFilePath();
+        if (filePath == null) {
+            String baseName = testContext.getTestName();
+            if (baseName == null) {
+                baseName = "video";
             }
-
-            previousImage = null;
-            previousFrameTime = 0;
-        } catch (IOException e) {
-            Logger.error("Problem writing last frame of video", e);
+            return new File(testContext.getOutputDirectory(), baseName + ".mov");
+        } else {
+            return new File(filePath);
         }
     }
 
@@ -369,11 +467,10 @@ public class ChromeWebSocket extends BrowserWebSocket {
                 return;
             }
 
-            synchronized (testResult) {
-                authRequestId = requestId;
-                page.addRequest(request);
-                ongoingRequests.put(requestId, request);
-            }
+            ChromeTabState tab = getTab(tabId);
+            tab.authRequestId = requestId;
+            tab.addRequest(page, request);
+            tab.ongoingRequests.put(requestId, request);
         } else {
             request.setRecvEnd((int)((long)endTime - request.getStartTime()));
             request.setState(HttpRequest.State.Complete);
@@ -416,38 +513,21 @@ public class ChromeWebSocket extends BrowserWebSocket {
     }
 
     public boolean checkPendingRequests() {
-        synchronized (testResult) {
-            Page page = getCurrentPage();
-            if (page == null) {
-                return false;
-            }
-
-            for (HttpRequest request : page.getRequests()) {
-                if (checkIsRequestPending(request)) {
-                    return true;
-                }
-            }
+        Page page = getCurrentPage();
+        if (page == null) {
+            return false;
         }
-        return false;
+        ChromeTabState tab = tabs.get(page.getTabId());
+        return tab != null && tab.hasPendingRequests(page);
     }
 
     public boolean checkIsRequestPending(HttpRequest httpRequest) {
-        synchronized (testResult) {
-            HttpRequest.State state = httpRequest.getState();
-            if (httpRequest.isWebSocket()) {
-                // Once a websocket connection is established don't wait on it,
-                // it may be kept open for the lifetime of the page.
-                if (state != HttpRequest.State.Recv &&
-                    state != HttpRequest.State.Complete) {
-                    return true;
-                }
-            } else {
-                if (state != HttpRequest.State.Complete) {
-                    return true;
-                }
-            }
+        ChromeTabState tab = tabs.get(httpRequest.getTabId());
+        if (tab == null) {
+            // No events for the tab, so nothing else is updating the request
+            return ChromePageSnapshot.isRequestPending(httpRequest);
         }
-        return false;
+        return tab.isPending(httpRequest);
     }
 
     public long getLastRequestFinishedTime() {
@@ -455,19 +535,57 @@ public class ChromeWebSocket extends BrowserWebSocket {
         if (page == null) {
             return -1;
         }
+        ChromeTabState tab = tabs.get(page.getTabId());
+        return tab == null ? -1 : tab.getLastRequestFinishedTime(page);
+    }
 
-        long lastTime = -1;
-        synchronized (testResult) {
-            for (HttpRequest request : page.getRequests()) {
-                if (request.getState() == HttpRequest.State.Complete) {
-                    if (request.getEndTime() > lastTime) {
-                        lastTime = request.getEndTime();
-                    }
+    /**
+     * A counter that changes whenever a request is added, finishes or stops
+     * being pending (a websocket connecting), a page is added or the connection
+     * is closed.  Read it before checking the request state and
+     * pass it to waitRequestActivity().
+     */
+    public long getRequestActivity() {
+        synchronized (requestActivityLock) {
+            return requestActivity;
+        }
+    }
+
+    /**
+     * Wait until the request activity counter moves on from the given value,
+     * or the timeout expires.
+     */
+    public void waitRequestActivity(long activity, long timeoutMS) throws InterruptedException {
+        long waitEnd = System.currentTimeMillis() + timeoutMS;
+        synchronized (requestActivityLock) {
+            while (requestActivity == activity) {
+                long remaining = waitEnd - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return;
                 }
+                requestActivityLock.wait(remaining);
             }
         }
+    }
+
+    private void notifyRequestActivity() {
+        synchronized (requestActivityLock) {
+            requestActivity++;
+            requestActivityLock.notifyAll();
+        }
+    }
+
+    private ChromePageSnapshot getPageSnapshot(Page page) {
+        if (page == null) {
+            return null;
+        }
 
-        return lastTime;
+        ChromeTabState tab = tabs.get(page.getTabId());
+        if (tab == null) {
+            // No events for this page yet (e.g. just created by newPage())
+            return new ChromePageSnapshot(page, 0);
+        }
+        return tab.getSnapshot(page);
     }
 
     private Page getUnitializedPage() {
@@ -501,20 +619,18 @@ public class ChromeWebSocket extends BrowserWebSocket {
         regexp = regexp.substring(start, end);
         Pattern p = Pattern.compile(regexp);
         boolean found = false;
-        synchronized (testResult) {
-            Page page = getCurrentPage();
-            if (page == null) {
-                throw new ScriptException("No page found");
-            }
+        ChromePageSnapshot snapshot = getPageSnapshot(getCurrentPage());
+        if (snapshot == null) {
+            throw new ScriptException("No page found");
+        }
 
-            for (HttpRequest request : page.requests) {
-                String url = request.getUrl();
-                if (url != null) {
-                    Matcher m = p.matcher(url);
-                    if (m.find()) {
-                        verifyRequest(url, request);
-                        found = true;
-                    }
+        for (ChromePageSnapshot.RequestStatus request : snapshot.getRequests()) {
+            String url = request.url;
+            if (url != null) {
+                Matcher m = p.matcher(url);
+                if (m.find()) {
+                    verifyRequest(url, request);
+                    found = true;
                 }
             }
         }
@@ -527,20 +643,18 @@ public class ChromeWebSocket extends BrowserWebSocket {
 
     public void verifyRequest(String url) {
         boolean found = false;
-        synchronized (testResult) {
-            if (url == null) {
-                throw new ScriptException("No URL specified");
-            }
-            Page page = getCurrentPage();
-            if (page == null) {
-                throw new ScriptException("No page found");
-            }
-            for (HttpRequest request : page.requests) {
-                if (url.equals(request.getUrl())) {
-                    verifyRequest(url, request);
-                    found = true;
-                    break;
-                }
+        if (url == null) {
+            throw new ScriptException("No URL specified");
+        }
+        ChromePageSnapshot snapshot = getPageSnapshot(getCurrentPage());
+        if (snapshot == null) {
+            throw new ScriptException("No page found");
+        }
+        for (ChromePageSnapshot.RequestStatus request : snapshot.getRequests()) {
+            if (url.equals(request.url)) {
+                verifyRequest(url, request);
+                found = true;
+                break;
             }
         }
 
@@ -549,18 +663,18 @@ public class ChromeWebSocket extends BrowserWebSocket {
         }
     }
 
-    private void verifyRequest(String url, HttpRequest request) {
+    private void verifyRequest(String url, ChromePageSnapshot.RequestStatus request) {
         if (request.error != null) {
             throw new ScriptException(String.format("%s: %s", url, request.error));
         }
 
-        int statusCode = request.getStatusCode();
+        int statusCode = request.statusCode;
         if (statusCode >= 400 && statusCode <= 600) {
             throw new ScriptException(String.format("%s: HTTP status '%d %s'",
-                    url, request.getStatusCode(), request.getStatusText()));
+                    url, request.statusCode, request.statusText));
         }
 
-        if (request.isWebSocket()) {
+        if (request.webSocket) {
             if (request.state != HttpRequest.State.Recv &&
                 request.state != HttpRequest.State.Complete) {
                 throw new ScriptException(
@@ -575,17 +689,13 @@ public class ChromeWebSocket extends BrowserWebSocket {
     }
 
     public void startVideoCapture() {
-        synchronized (videoLock) {
-            capturingVideo = true;
-        }
+        capturingVideo = true;
         sendCommand("startVideoCapture");
     }
 
     public void stopVideoCapture() {
         sendCommand("stopVideoCapture");
-        synchronized (videoLock) {
-            capturingVideo = false;
-        }
+        capturingVideo = false;
     }
 
     class FrameInfo {
@@ -632,38 +742,46 @@ public class ChromeWebSocket extends BrowserWebSocket {
     }
 
     RequestInfo getDevToolsRequestInfo(JSONObject details) throws JSONException {
+        return getDevToolsRequestInfo(details.getInt("tabId"),
+            details.has("frameId") ? details.getString("frameId") : null,
+            details.getString("requestId"),
+            details.optString("processId", null));
+    }
+
+    RequestInfo getDevToolsRequestInfo(ChromeNetworkEvent details) {
+        return getDevToolsRequestInfo(details.tabId, details.frameId, details.requestId, details.processId);
+    }
+
+    private RequestInfo getDevToolsRequestInfo(int tabId, String frameId, String longRequestId, String processId) {
         RequestInfo requestInfo = new RequestInfo();
-        requestInfo.tabId = details.getInt("tabId");
-        if (details.has("frameId")) {
-            String frameId = details.getString("frameId");
+        requestInfo.tabId = tabId;
+        if (frameId != null) {
             int dotPos = frameId.indexOf(".");
             if (dotPos > 0) {
                 // Old style was "x.y" where x was the process id and y was the frame id (unique only per process)
-                String processId = frameId.substring(0, dotPos);
+                String frameProcessId = frameId.substring(0, dotPos);
                 String shortFrameId = frameId.substring(dotPos + 1);
                 requestInfo.frameId = shortFrameId;
-                requestInfo.processId = Integer.valueOf(processId);
+                requestInfo.processId = Integer.valueOf(frameProcessId);
             } else {
                 // New style - process id is not available and string is long
                 requestInfo.frameId = frameId;
             }
         }
 
-        String longRequestId = details.getString("requestId");
         int dotPos = longRequestId.indexOf(".");
         if (dotPos > 0) {
             // Old style, < chrome 60 ?
             requestInfo.requestId = longRequestId;
-            String processId = longRequestId.substring(0, dotPos);
+            String requestProcessId = longRequestId.substring(0, dotPos);
             try {
-                requestInfo.processId = Integer.valueOf(processId);
+                requestInfo.processId = Integer.valueOf(requestProcessId);
             } catch (NumberFormatException e) {
-                Logger.error("Unable to parse processId {} as int", processId);
+                Logger.error("Unable to parse processId {} as int", requestProcessId);
             }
         } else {
             // New style, > chrome 70 ?
             requestInfo.requestId = longRequestId;
-            String processId = details.optString("processId", null);
             if (StringUtils.isSet(processId)) {
                 try {
                     requestInfo.processId = Integer.valueOf(processId);
@@ -725,15 +843,14 @@ public class ChromeWebSocket extends BrowserWebSocket {
         HttpRequest request;
         boolean authRequestAlreadyMade = false;
 
-        synchronized (testResult) {
-            // Handle the case where the auth request is received before 'requestWillBeSent'
-            if (authRequestId != null) {
-                request = ongoingRequests.remove(authRequestId);
-                authRequestId = null;
-                authRequestAlreadyMade = true;
-            } else {
-                request = new HttpRequest();
-            }
+        ChromeTabState tab = getTab(requestInfo.tabId);
+        // Handle the case where the auth request is received before 'requestWillBeSent'
+        if (tab.authRequestId != null) {
+            request = tab.ongoingRequests.remove(tab.authRequestId);
+            tab.authRequestId = null;
+            authRequestAlreadyMade = true;
+        } else {
+            request = new HttpRequest();
         }
 
         request.setTabId(requestInfo.tabId);
@@ -778,16 +895,13 @@ public class ChromeWebSocket extends BrowserWebSocket {
             }
         }
 
-        JSONObject deferredDetails = deferredRequestExtraInfo.get(request.requestId);
+        JSONObject deferredDetails = tab.deferredRequestExtraInfo.remove(request.requestId);
         if (deferredDetails != null) {
             setRequestHeaders(deferredDetails, request);
-            deferredRequestExtraInfo.remove(request.requestId);
         }
 
-        synchronized (testResult) {
-            page.addRequest(request);
-            ongoingRequests.put(requestInfo.getRequestId(), request);
-        }
+        tab.addRequest(page, request);
+        tab.ongoingRequests.put(requestInfo.getRequestId(), request);
     }
 
     private void networkRequestWillBeSentExtraInfo(JSONObject details) {
@@ -801,7 +915,7 @@ public class ChromeWebSocket extends BrowserWebSocket {
         if (request == null) {
             String requestId = details.getString("requestId");
             if (!StringUtils.isEmpty(requestId)) {
-                deferredRequestExtraInfo.put(requestId, details);
+                getTab(requestInfo.tabId).deferredRequestExtraInfo.put(requestId, details);
             }
             return;
         }
@@ -820,7 +934,7 @@ public class ChromeWebSocket extends BrowserWebSocket {
             // Headers are not always available in raw form, fallback to
             // grabbing the ones parsed by Chrome.
             JSONObject headersObj = responseObj.getJSONObject("requestHeaders");
-            ArrayList<HttpHeader> headers = getHeadersFromJson(headersObj);
+            HttpHeaders headers = getHeadersFromJson(headersObj);
             request.setRequestHeaders(headers);
 
             // Calc response headers len
@@ -853,9 +967,10 @@ public class ChromeWebSocket extends BrowserWebSocket {
                 JSONObject timing = responseObj.getJSONObject("timing");
                 long startTime = convertToMillisFromSeconds(timing.getDouble("requestTime"));
                 startTime += request.getWallTimeOffset();
+                long previousStartTime = request.getStartTime();
                 request.setStartTime(startTime);
 
-                updateRequestPosition(request);
+                updateRequestPosition(request, previousStartTime);
 
                 request.setDnsStart((int) timing.getDouble("dnsStart"));
                 request.setDnsEnd((int) timing.getDouble("dnsEnd"));
@@ -879,7 +994,7 @@ public class ChromeWebSocket extends BrowserWebSocket {
             // Headers are not always available in raw form, fallback to
             // grabbing the ones parsed by Chrome
             JSONObject headersObj = responseObj.getJSONObject("headers");
-            ArrayList<HttpHeader> headers = getHeadersFromJson(headersObj);
+            HttpHeaders headers = getHeadersFromJson(headersObj);
             request.setResponseHeaders(headers);
 
             String statusText = responseObj.getString("statusText");
@@ -936,10 +1051,9 @@ public class ChromeWebSocket extends BrowserWebSocket {
 
         request.setStartTime(System.currentTimeMillis());
 
-        synchronized (testResult) {
-            page.addRequest(request);
-            ongoingRequests.put(requestInfo.getRequestId(), request);
-        }
+        ChromeTabState tab = getTab(requestInfo.tabId);
+        tab.addRequest(page, request);
+        tab.ongoingRequests.put(requestInfo.getRequestId(), request);
     }
 
     private void setRequestStartTime(JSONObject details, HttpRequest request) {
@@ -959,8 +1073,9 @@ public class ChromeWebSocket extends BrowserWebSocket {
         RequestInfo requestInfo = getDevToolsRequestInfo(details);
         HttpRequest request = getRequestForTab(requestInfo);
 
+        long previousStartTime = request.getStartTime();
         setRequestStartTime(details, request);
-        updateRequestPosition(request);
+        updateRequestPosition(request, previousStartTime);
         setRequestHeaders(requestObj, request);
 
         request.setSendStart(0);
@@ -968,14 +1083,15 @@ public class ChromeWebSocket extends BrowserWebSocket {
     }
 
     private void setRequestHeaders(JSONObject requestObj, HttpRequest request) {
-        ArrayList<HttpHeader> headers = new ArrayList<>();
+        HttpHeaders headers = new HttpHeaders();
         JSONObject jsonHeaders = requestObj.getJSONObject("headers");
         for (Iterator keys = jsonHeaders.keys(); keys.hasNext();) {
             Object key =  keys.next();
             String name = key.toString();
             String value = jsonHeaders.getString(name);
-            headers.add(new HttpHeader(name, value));
+            headers.add(name, value);
         }
+        headers.trimToSize();
         request.setRequestHeaders(headers);
 
         // Calc request headers len
@@ -1072,46 +1188,13 @@ public class ChromeWebSocket extends BrowserWebSocket {
         removeOngoingRequest(requestInfo);
     }
 
-    private void updateRequestPosition(HttpRequest request) {
+    private void updateRequestPosition(HttpRequest request, long previousStartTime) {
         // Update the position in the list of requests so that is sorted by
         // startTime
-        synchronized (testResult) {
-            Page page = getPageForExistingRequest(request);
-            if (page != null) {
-                updateRequestPosition(page, request);
-            }
-        }
-    }
-
-    private void updateRequestPosition(Page page, HttpRequest request) {
-        ArrayList<HttpRequest> requests = page.getRequests();
-
-        // Keep the list in order of start time
-        int pos = requests.indexOf(request);
-        if (pos < 0) {
-            return;
-        }
-        int newPos = pos;
-        for (int i = requests.size(); i > 0; --i) {
-            HttpRequest r = requests.get(i - 1);
-            newPos = i - 1;
-            if (request.getStartTime() >= r.getStartTime()) {
-                break;
-            }
-        }
-        if (pos != newPos) {
-            requests.remove(pos);
-            requests.add(newPos, request);
-        }
-    }
-
-    private Page getPageForExistingRequest(HttpRequest request) {
-        for (Page page : getPages()) {
-            if (page.getRequests().contains(request)) {
-                return page;
-            }
+        Page page = getTab(request.getTabId()).requestPages.get(request);
+        if (page != null) {
+            page.updateRequestPosition(request, previousStartTime);
         }
-        return null;
     }
 
     private void padBlockedTime(HttpRequest request) {
@@ -1139,26 +1222,23 @@ public class ChromeWebSocket extends BrowserWebSocket {
         }
     }
 
-    private int getHeadersSize(ArrayList<HttpHeader> headers) {
-        int size = 0;
-        for (HttpHeader header : headers) {
-            size += header.name.getBytes().length;
-            size += 3; // " : "
-            size += header.value.getBytes().length;
-            size += 2; // "\r\n"
-        }
+    private int getHeadersSize(HttpHeaders headers) {
+        int size = headers.getByteCount();
+        size += headers.size() * 3; // " : "
+        size += headers.size() * 2; // "\r\n"
         size += 2; // "\r\n"
         return size;
     }
 
-    private ArrayList<HttpHeader> getHeadersFromJson(JSONObject headersObj) throws JSONException {
+    private HttpHeaders getHeadersFromJson(JSONObject headersObj) throws JSONException {
         Iterator iterator = headersObj.keys();
-        ArrayList<HttpHeader> headers = new ArrayList<>();
+        HttpHeaders headers = new HttpHeaders();
         while (iterator.hasNext()) {
             String key = (String)iterator.next();
             String value = headersObj.getString(key);
-            headers.add(new HttpHeader(key, value));
+            headers.add(key, value);
         }
+        headers.trimToSize();
         return headers;
     }
 
@@ -1173,9 +1253,10 @@ public class ChromeWebSocket extends BrowserWebSocket {
             return;
         }
 
+        ChromeTabState tab = getTab(requestInfo.tabId);
         HttpRequest request = getRequestForTab(requestInfo);
         if (request == null) {
-            JSONObject deferredDetails = deferredRequestExtraInfo.get(requestInfo.requestId);
+            JSONObject deferredDetails = tab.deferredRequestExtraInfo.get(requestInfo.requestId);
             if (deferredDetails == null) {
                 Logger.error("networkResponseReceived event, but no request found: {}", responseObj.getString("url"));
                 return;
@@ -1194,10 +1275,9 @@ public class ChromeWebSocket extends BrowserWebSocket {
         request.setResourceType(convertResourceType(details.getString("type")));
         finishResponse(requestInfo, request, responseObj);
 
-        JSONObject deferredDetails = deferredResponseExtraInfo.get(request.requestId);
+        JSONObject deferredDetails = tab.deferredResponseExtraInfo.remove(request.requestId);
         if (deferredDetails != null) {
             processHeadersText(request, deferredDetails);
-            deferredResponseExtraInfo.remove(request.requestId);
         }
     }
 
@@ -1227,12 +1307,10 @@ public class ChromeWebSocket extends BrowserWebSocket {
 
         setRequestHeaders(responseObj, request);
 
-        synchronized (testResult) {
-            page.addRequest(request);
-            ongoingRequests.put(requestInfo.getRequestId(), request);
-        }
-
-        deferredRequestExtraInfo.remove(request.requestId);
+        ChromeTabState tab = getTab(requestInfo.tabId);
+        tab.addRequest(page, request);
+        tab.ongoingRequests.put(requestInfo.getRequestId(), request);
+        tab.deferredRequestExtraInfo.remove(request.requestId);
         return request;
     }
 
@@ -1246,7 +1324,7 @@ public class ChromeWebSocket extends BrowserWebSocket {
         if (request == null) {
             String requestId = details.getString("requestId");
             if (!StringUtils.isEmpty(requestId)) {
-                deferredRequestExtraInfo.put(requestId, details);
+                getTab(requestInfo.tabId).deferredRequestExtraInfo.put(requestId, details);
             }
         } else {
             if (details.has("headersText")) {
@@ -1257,7 +1335,7 @@ public class ChromeWebSocket extends BrowserWebSocket {
         // Blocked cookies also available
     }
 
-    private void networkRequestServedFromCache(JSONObject details) throws JSONException {
+    private void networkRequestServedFromCache(ChromeNetworkEvent details) {
         RequestInfo requestInfo = getDevToolsRequestInfo(details);
         if (isInternalRequestId(requestInfo)) {
             return;
@@ -1272,7 +1350,7 @@ public class ChromeWebSocket extends BrowserWebSocket {
         request.setFromCache(true);
     }
 
-    private void networkLoadingFinished(JSONObject details) throws JSONException {
+    private void networkLoadingFinished(ChromeNetworkEvent details) {
         RequestInfo requestInfo = getDevToolsRequestInfo(details);
         if (isInternalRequestId(requestInfo)) {
             removeInternalRequestId(requestInfo);
@@ -1286,21 +1364,13 @@ public class ChromeWebSocket extends BrowserWebSocket {
             return;
         }
 
-        setRecvEnd(details, request);
+        setRecvEnd(details.timestamp, request);
         request.setState(HttpRequest.State.Complete);
         removeOngoingRequest(requestInfo);
     }
 
-    private void removeOngoingRequest(String requestId) {
-        synchronized (testResult) {
-            ongoingRequests.remove(requestId);
-        }
-    }
-
     private void removeOngoingRequest(RequestInfo requestInfo) {
-        synchronized (testResult) {
-            ongoingRequests.remove(requestInfo.getRequestId());
-        }
+        getTab(requestInfo.tabId).ongoingRequests.remove(requestInfo.getRequestId());
     }
 
     private void networkLoadingFailed(JSONObject details) throws JSONException {
@@ -1360,13 +1430,17 @@ public class ChromeWebSocket extends BrowserWebSocket {
     }
 
     private static void setRecvEnd(JSONObject details, HttpRequest request) {
+        setRecvEnd(details.getDouble("timestamp"), request);
+    }
+
+    private static void setRecvEnd(double timestamp, HttpRequest request) {
         // Take into account wall time offsets being sent separately (this is stored in request.wallTimeOffset)
         // Timestamp is in seconds (with micro second accuracy)
-        long endTime = (long)(details.getDouble("timestamp") * 1000);
+        long endTime = (long)(timestamp * 1000);
         request.setRecvEnd((int) (endTime - (request.getStartTime() - request.getWallTimeOffset())));
     }
 
-    private void networkDataReceived(JSONObject details) throws JSONException {
+    private void networkDataReceived(ChromeNetworkEvent details) {
         RequestInfo requestInfo = getDevToolsRequestInfo(details);
         if (isInternalRequestId(requestInfo)) {
             return;
@@ -1378,7 +1452,7 @@ public class ChromeWebSocket extends BrowserWebSocket {
             return;
         }
 
-        request.addBytesRecv(details.getInt("dataLength"), details.getInt("encodedDataLength"));
+        request.addBytesRecv(details.dataLength, details.encodedDataLength);
     }
 
     private void navigationBegin(JSONObject details) throws JSONException {
@@ -1434,6 +1508,7 @@ public class ChromeWebSocket extends BrowserWebSocket {
         // message.
         if (page.getProcessId() == -1) {
             page.setProcessId(frameInfo.processId);
+            pageUpdated(page);
         }
 
         page.setNavigationType(convertNavigationType(details.getString("transitionType")));
@@ -1443,23 +1518,29 @@ public class ChromeWebSocket extends BrowserWebSocket {
     }
 
     private Page setupPageForNewNavigation(JSONObject details, String url, Page page, FrameInfo frameInfo) {
-        // Check if there's already a page (created by the user using browser.newPage())
-        // if so use it, if not create one.
-        if (page == null || page.getState() != Page.State.Uninitialised) {
-            page = getUnitializedPage();
-            if (page == null) {
-                page = new Page();
-                addPage(page);
+        Date navStartTime = convertToDateFromMillis(details.getDouble("timeStamp"));
+
+        // Claim the page under the results lock, the uninitialised page could
+        // otherwise be picked up by a navigation in another tab.
+        synchronized (testResult) {
+            // Check if there's already a page (created by the user using browser.newPage())
+            // if so use it, if not create one.
+            if (page == null || page.getState() != Page.State.Uninitialised) {
+                page = getUnitializedPage();
+                if (page == null) {
+                    page = new Page();
+                    addPage(page);
+                }
             }
-        }
 
-        Date navStartTime = convertToDateFromMillis(details.getDouble("timeStamp"));
-        page.setFrameId(frameInfo.frameId);
-        page.setTabId(frameInfo.tabId);
-        page.setProcessId(frameInfo.processId);
-        page.setOrigUrl(url);
-        page.setNavStartTime(navStartTime);
-        page.setState(Page.State.NavigationBegin);
+            page.setFrameId(frameInfo.frameId);
+            page.setTabId(frameInfo.tabId);
+            page.setProcessId(frameInfo.processId);
+            pageIndex.pageUpdated(page);
+            page.setOrigUrl(url);
+            page.setNavStartTime(navStartTime);
+            page.setState(Page.State.NavigationBegin);
+        }
 
         if (resultNotifier != null) {
             resultNotifier.onPageStart(page);
@@ -1481,48 +1562,48 @@ public class ChromeWebSocket extends BrowserWebSocket {
     }
 
     private void navigationDOMContentLoaded(JSONObject details) throws JSONException {
-        synchronized(testResult) {
-            Page page = getPageForTab(details);
-            if (page == null) {
-                return;
-            }
+        Page page = getPageForTab(details);
+        if (page == null) {
+            return;
+        }
 
-            String url = details.getString("url");
-            if (StringUtils.isSet(url)) {
-                url = Http.stripAnchor(url);
-                // HTTP2/3 document requests are missing a load event - generate one here instead
-                for (Map.Entry<String,HttpRequest> requestEntry : ongoingRequests.entrySet()) {
-                    HttpRequest request = requestEntry.getValue();
-                    if (isNewHttp(request.getProtocol()) && url.equalsIgnoreCase(request.url)) {
-                        if (request.getResourceType().equals(ResourceType.Document)) {
-                            boolean isNavigate = false;
-                            for (HttpHeader header : request.getRequestHeaders()) {
-                                if (StringUtils.equalsIgnoreCase(header.name, "sec-fetch-mode")) {
-                                    if (StringUtils.equalsIgnoreCase(header.value, "navigate")) {
-                                        isNavigate = true;
-                                        break;
-                                    }
+        ChromeTabState tab = getTab(page.getTabId());
+        String url = details.getString("url");
+        if (StringUtils.isSet(url)) {
+            url = Http.stripAnchor(url);
+            // HTTP2/3 document requests are missing a load event - generate one here instead
+            for (Map.Entry<String,HttpRequest> requestEntry : tab.ongoingRequests.entrySet()) {
+                HttpRequest request = requestEntry.getValue();
+                if (isNewHttp(request.getProtocol()) && url.equalsIgnoreCase(request.url)) {
+                    if (request.getResourceType().equals(ResourceType.Document)) {
+                        boolean isNavigate = false;
+                        HttpHeaders headers = request.getRequestHeaders();
+                        for (int i = 0; i < headers.size(); ++i) {
+                            if (headers.nameEqualsIgnoreCase(i, "sec-fetch-mode")) {
+                                if (StringUtils.equalsIgnoreCase(headers.getValue(i), "navigate")) {
+                                    isNavigate = true;
+                                    break;
                                 }
                             }
-                            if (isNavigate) {
-                                Date date = convertToDateFromMillis(details.getDouble("timeStamp"));
-                                request.setRecvEnd((int) (date.getTime() - request.getStartTime()));
-                                request.setState(HttpRequest.State.Complete);
-                                removeOngoingRequest(requestEntry.getKey());
-                                break;
-                            }
+                        }
+                        if (isNavigate) {
+                            Date date = convertToDateFromMillis(details.getDouble("timeStamp"));
+                            request.setRecvEnd((int) (date.getTime() - request.getStartTime()));
+                            request.setState(HttpRequest.State.Complete);
+                            tab.ongoingRequests.remove(requestEntry.getKey());
+                            break;
                         }
                     }
                 }
             }
+        }
 
-            if (details.getInt("frameId") != page.getFrameId()) {
-                return;
-            }
-
-            page.setDomContentLoadedTime(convertToDateFromMillis(details.getDouble("timeStamp")));
-            page.setState(Page.State.DOMContentLoaded);
+        if (details.getInt("frameId") != page.getFrameId()) {
+            return;
         }
+
+        page.setDomContentLoadedTime(convertToDateFromMillis(details.getDouble("timeStamp")));
+        page.setState(Page.State.DOMContentLoaded);
     }
 
     private boolean isNewHttp(String protocol) {
@@ -1927,6 +2008,14 @@ public class ChromeWebSocket extends BrowserWebSocket {
     private void addPage(Page page) {
         synchronized(testResult) {
             testResult.addPage(page);
+            pageIndex.addPage(page);
+        }
+        notifyRequestActivity();
+    }
+
+    private void pageUpdated(Page page) {
+        synchronized(testResult) {
+            pageIndex.pageUpdated(page);
         }
     }
 
@@ -1956,24 +2045,13 @@ public class ChromeWebSocket extends BrowserWebSocket {
     }
 
     private Page getPageForFrameAndProcess(FrameInfo frameInfo) throws JSONException {
-        if (frameInfo.processId != -1) {
-            synchronized(testResult) {
-                for (int i = getPages().size() - 1; i >= 0; --i) {
-                    Page page = getPages().get(i);
-                    if (page.getTabId() == frameInfo.tabId && page.frameId == frameInfo.frameId && page.processId == frameInfo.processId) {
-                        return page;
-                    }
-                }
-                return null;
-            }
-        } else {
-            for (int i = getPages().size() - 1; i >= 0; --i) {
-                Page page = getPages().get(i);
-                if (page.getTabId() == frameInfo.tabId && page.frameId == frameInfo.frameId) {
-                    return page;
-                }
+        synchronized(testResult) {
+            if (frameInfo.processId != -1) {
+                return pageIndex.getPageForFrameAndProcess(getPages(),
+                    frameInfo.tabId, frameInfo.frameId, frameInfo.processId);
+            } else {
+                return pageIndex.getPageForFrame(getPages(), frameInfo.tabId, frameInfo.frameId);
             }
-            return null;
         }
     }
 
@@ -1986,21 +2064,12 @@ public class ChromeWebSocket extends BrowserWebSocket {
     }
 
     private HttpRequest getRequestForTab(RequestInfo requestInfo) {
-        synchronized(testResult) {
-            String id = requestInfo.getRequestId();
-            return ongoingRequests.get(id);
-        }
+        return getTab(requestInfo.tabId).ongoingRequests.get(requestInfo.getRequestId());
     }
 
     private Page getCurrentPageForTab(int tabId) {
         synchronized(testResult) {
-            for (int i = getPages().size() - 1; i >= 0; --i) {
-                Page page = getPages().get(i);
-                if (page.getTabId() == tabId) {
-                    return page;
-                }
-            }
-            return null;
+            return pageIndex.getCurrentPageForTab(getPages(), tabId);
         }
     }
 
@@ -2021,15 +2090,15 @@ public class ChromeWebSocket extends BrowserWebSocket {
     }
 
     private void addInternalRequestId(RequestInfo requestInfo) {
-        internalRequestIds.add(requestInfo.getRequestId());
+        getTab(requestInfo.tabId).internalRequestIds.add(requestInfo.getRequestId());
     }
 
     private boolean isInternalRequestId(RequestInfo requestInfo) {
-        return internalRequestIds.contains(requestInfo.getRequestId());
+        return getTab(requestInfo.tabId).internalRequestIds.contains(requestInfo.getRequestId());
     }
 
     private void removeInternalRequestId(RequestInfo requestInfo) {
-        internalRequestIds.remove(requestInfo.getRequestId());
+        getTab(requestInfo.tabId).internalRequestIds.remove(requestInfo.getRequestId());
     }
 
     private ArrayList<Page> getPages() {
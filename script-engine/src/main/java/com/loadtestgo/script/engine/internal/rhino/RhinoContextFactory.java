@@ -19,6 +19,7 @@ import java.util.*;
  */
 public class RhinoContextFactory extends ContextFactory {
     private boolean sandboxed = false;
+    private int optimizationLevel = 0;
 
     /**
      * Disable access to these methods for all Java objects
@@ -175,6 +176,8 @@ public class RhinoContextFactory extends ContextFactory {
         // Run as ES6, only a few ES6 features are available right now
         context.setLanguageVersion(Context.VERSION_ES6);
 
+        context.setOptimizationLevel(optimizationLevel);
+
         return context;
     }
 
@@ -195,4 +198,14 @@ public class RhinoContextFactory extends ContextFactory {
     public void setSandboxed(boolean sandboxed) {
         this.sandboxed = sandboxed;
     }
+
+    /**
+     * -1 to interpret scripts, 0-9 to compile them to Java bytecode
+     */
+    public void setOptimizationLevel(int optimizationLevel) {
+        if (!Context.isValidOptimizationLevel(optimizationLevel)) {
+            throw new IllegalArgumentException("Invalid optimization level " + optimizationLevel);
+        }
+        this.optimizationLevel = optimizationLevel;
+    }
 }
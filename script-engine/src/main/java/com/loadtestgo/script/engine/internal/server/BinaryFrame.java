@@ -0,0 +1,93 @@
+package com.loadtestgo.script.engine.internal.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A binary message sent by the browser extension.
+ *
+ * Binary messages start with a header saying what the payload is and who it
+ * is for, so several payloads can be in flight at once:
+ *
+ *   type (1 byte)
+ *   command id, or screencast session id (int32)
+ *   frame timestamp in seconds, screencast frames only (float64)
+ *   payload
+ *
+ * All big endian.  The payload is a view of the message, it isn't copied.
+ */
+public class BinaryFrame {
+    /** Data for a command (screenshot, response body), sent before the command's response */
+    public static final byte COMMAND_DATA = 1;
+    /** A JPEG screencast frame */
+    public static final byte SCREENCAST_FRAME = 2;
+
+    private final byte type;
+    private final int id;
+    private final double timestamp;
+    private final ByteBuffer payload;
+
+    private BinaryFrame(byte type, int id, double timestamp, ByteBuffer payload) {
+        this.type = type;
+        this.id = id;
+        this.timestamp = timestamp;
+        this.payload = payload;
+    }
+
+    /**
+     * Read the frame header, the message position is left untouched.
+     *
+     * @throws IllegalArgumentException the message is too short or of an unknown type
+     */
+    public static BinaryFrame parse(ByteBuffer message) {
+        ByteBuffer buffer = message.duplicate();
+        if (buffer.remaining() < 5) {
+            throw new IllegalArgumentException("Binary message too short: " + buffer.remaining() + " bytes");
+        }
+        byte type = buffer.get();
+        int id = buffer.getInt();
+        double timestamp = 0;
+        switch (type) {
+            case COMMAND_DATA:
+                break;
+            case SCREENCAST_FRAME:
+                if (buffer.remaining() < 8) {
+                    throw new IllegalArgumentException("Screencast frame missing timestamp");
+                }
+                timestamp = buffer.getDouble();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown binary message type: " + type);
+        }
+        return new BinaryFrame(type, id, timestamp, buffer.slice());
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public double getTimestamp() {
+        return timestamp;
+    }
+
+    public ByteBuffer getPayload() {
+        return payload;
+    }
+
+    /**
+     * Copy a payload into a byte array, for the APIs that need one
+     */
+    public static byte[] toArray(ByteBuffer payload) {
+        ByteBuffer buffer = payload.duplicate();
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 &&
+                buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -2,6 +2,7 @@ package com.loadtestgo.script.engine.internal.server;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.loadtestgo.script.api.ErrorType;
 import com.loadtestgo.script.engine.EngineContext;
 import com.loadtestgo.script.engine.EngineSettings;
 import com.loadtestgo.script.engine.ScriptException;
@@ -13,12 +14,19 @@ import org.json.JSONObject;
 import org.pmw.tinylog.Logger;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BrowserWebSocket {
     protected final int minSupportedVersion;
@@ -27,20 +35,47 @@ public class BrowserWebSocket {
     protected CountDownLatch connectLatch = new CountDownLatch(1);
     protected String version;
     protected AtomicInteger commandId = new AtomicInteger();
-    protected LinkedBlockingQueue<JSONObject> commandResponses;
+    // Commands waiting on a response from the browser, by command id
+    protected ConcurrentHashMap<Integer, CompletableFuture<JSONObject>> pendingCommands;
+    protected long commandTimeout;
+    protected AtomicLong commandTimeouts = new AtomicLong();
+    protected AtomicLong lateResponses = new AtomicLong();
     protected ObjectMapper mapper = new ObjectMapper();
-    protected ByteBuffer byteBuffer = null;
+    // Binary data sent for a command, waiting for the command's response
+    protected ConcurrentHashMap<Integer, ByteBuffer> commandData = new ConcurrentHashMap<>();
     protected EngineSettings engineSettings = null;
     final protected AtomicBoolean closing = new AtomicBoolean(false);
 
+    /**
+     * A command to send as part of a batch, see sendCommands()
+     */
+    public static class Command {
+        private final String name;
+        private final Map<String, Object> params;
+
+        public Command(String name, Map<String, Object> params) {
+            this.name = name;
+            this.params = params;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Map<String, Object> getParams() {
+            return params;
+        }
+    }
+
     public BrowserWebSocket(TestContext testContext) {
         this.commandId.set(0);
-        this.commandResponses = new LinkedBlockingQueue<>();
+        this.pendingCommands = new ConcurrentHashMap<>();
 
         EngineContext engineContext = testContext.getEngineContext();
         this.verboseLogging = engineContext.isVerbose();
         this.minSupportedVersion = engineContext.getChromeMinVersion();
         this.engineSettings = engineContext.getEngineSettings();
+        this.commandTimeout = engineSettings.getBrowserCommandTimeout();
     }
 
     public void initConnection(WebSocket conn, JSONObject json) {
@@ -85,15 +120,15 @@ public class BrowserWebSocket {
         }
 
         synchronized (this) {
-            // Sending null to the commandResponses doesn't work,
-            // it throws an error so send a special message to
-            // indicate that the connection has closed.
-            JSONObject jsonObject = new JSONObject();
-            try {
-                jsonObject.put("goodbye", "cruelworld");
-            } catch (JSONException e) {
+            // Nothing more is coming for the commands still waiting
+            RuntimeException lost = new RuntimeException("Lost connection to browser.");
+            for (Integer id : pendingCommands.keySet()) {
+                CompletableFuture<JSONObject> future = pendingCommands.remove(id);
+                if (future != null) {
+                    future.completeExceptionally(lost);
+                }
             }
-            commandResponses.add(jsonObject);
+            commandData.clear();
 
             if (conn != null) {
                 Logger.debug("Closing socket...");
@@ -107,9 +142,42 @@ public class BrowserWebSocket {
         }
     }
 
+    /**
+     * Handle a binary message.  The message may be in a pooled buffer that's
+     * reused once this returns, anything kept must be copied.
+     */
     public void onMessage(ByteBuffer message) {
-        // Always just one byte buffer
-        byteBuffer = message;
+        BinaryFrame frame;
+        try {
+            frame = BinaryFrame.parse(message);
+        } catch (IllegalArgumentException e) {
+            Logger.error(e, "Unable to read binary message");
+            return;
+        }
+
+        switch (frame.getType()) {
+            case BinaryFrame.COMMAND_DATA:
+                if (pendingCommands.containsKey(frame.getId())) {
+                    // Joined fragments are in a pooled direct buffer, whole messages
+                    // are already a heap copy that can be kept
+                    ByteBuffer payload = frame.getPayload();
+                    commandData.put(frame.getId(),
+                        payload.isDirect() ? ByteBuffer.wrap(BinaryFrame.toArray(payload)) : payload);
+                } else {
+                    lateResponses.incrementAndGet();
+                    Logger.warn("Data for command id {} that isn't waiting on a response", frame.getId());
+                }
+                break;
+            case BinaryFrame.SCREENCAST_FRAME:
+                onScreencastFrame(frame);
+                break;
+        }
+    }
+
+    /**
+     * Called on the websocket thread for each screencast frame
+     */
+    protected void onScreencastFrame(BinaryFrame frame) {
     }
 
     public synchronized void onMessage(String message) {
@@ -123,7 +191,7 @@ public class BrowserWebSocket {
     protected boolean onMessage(JSONObject json) throws JSONException {
         if (json.has("type")) {
             if (json.getString("type").equals("response")) {
-                commandResponses.add(json);
+                onResponse(json);
                 return true;
             }
         }
@@ -131,6 +199,19 @@ public class BrowserWebSocket {
         return false;
     }
 
+    private void onResponse(JSONObject json) {
+        int id = responseId(json);
+        CompletableFuture<JSONObject> future = pendingCommands.remove(id);
+        if (future == null) {
+            // The command has timed out (or was never sent)
+            commandData.remove(id);
+            lateResponses.incrementAndGet();
+            Logger.warn("Response for command id {} that isn't waiting on a response", id);
+            return;
+        }
+        future.complete(json);
+    }
+
     public synchronized void sendMessage(String message) {
         Logger.info("sendMessage {}", message);
 
@@ -161,111 +242,267 @@ public class BrowserWebSocket {
     }
 
     public JSONObject webDriverPost(String path, Map<String,Object> params) {
-        int commandId = this.commandId.addAndGet(1);
-
-        try {
-            sendMessage(String.format(
-                    "{ \"type\": \"webdriver\", \"path\": \"%s\", \"id\": %d, \"method\": \"POST\", \"params\": %s }",
-                    path, commandId, mapper.writeValueAsString(params)));
-        } catch (JsonProcessingException e) {
-        }
-
-        return waitResponse(commandId);
+        return webDriver("POST", path, params);
     }
 
     public JSONObject webDriverGet(String path, Map<String,Object> params) {
-        int commandId = this.commandId.addAndGet(1);
+        return webDriver("GET", path, params);
+    }
 
+    private JSONObject webDriver(String method, String path, Map<String,Object> params) {
+        int commandId = this.commandId.addAndGet(1);
+        String message = null;
         try {
-            sendMessage(String.format(
-                    "{ \"type\": \"webdriver\", \"path\": \"%s\", \"id\": %d, \"method\": \"GET\", \"params\": %s }",
-                    path, commandId, mapper.writeValueAsString(params)));
+            message = String.format(
+                    "{ \"type\": \"webdriver\", \"path\": \"%s\", \"id\": %d, \"method\": \"%s\", \"params\": %s }",
+                    path, commandId, method, mapper.writeValueAsString(params));
         } catch (JsonProcessingException e) {
         }
 
-        return waitResponse(commandId);
+        return waitResponse(path, commandId, send(commandId, message), commandTimeout);
     }
 
     public JSONObject sendCommand(String path) {
+        return sendCommand(path, null, commandTimeout);
+    }
+
+    public JSONObject sendCommand(String path, Map<String, Object> params) {
+        return sendCommand(path, params, commandTimeout);
+    }
+
+    /**
+     * Send a command and wait for its response
+     *
+     * @param timeoutMS max time to wait for the response, 0 to wait until the
+     *                  script is interrupted or the browser connection is lost
+     */
+    public JSONObject sendCommand(String path, Map<String, Object> params, long timeoutMS) {
         long start = 0;
         if (verboseLogging) {
             start = System.currentTimeMillis();
         }
 
         int commandId = this.commandId.addAndGet(1);
+        CompletableFuture<JSONObject> future = send(commandId, commandMessage(path, commandId, params));
 
-        sendMessage(String.format("{ \"name\": \"%s\", \"id\": %d, \"type\": \"pizza\" }",
-                path, commandId));
-
-        JSONObject response = waitResponse(commandId);
+        JSONObject response = waitResponse(path, commandId, future, timeoutMS);
         if (verboseLogging) {
             Logger.info("command took: {} ms", System.currentTimeMillis() - start);
         }
         return response;
     }
 
-    public JSONObject sendCommand(String path, Map<String, Object> params) {
+    /**
+     * Send a command without waiting for its response, several commands can
+     * be outstanding on the connection at once.
+     *
+     * The future completes with the response, or exceptionally if the
+     * browser connection is lost.  It's up to the caller to give up on it,
+     * a response that comes after that is counted in getLateResponses().
+     * Any binary data sent for the command is kept until it's taken with
+     * takeCommandData().
+     */
+    public CompletableFuture<JSONObject> sendCommandAsync(String path, Map<String, Object> params) {
+        int commandId = this.commandId.addAndGet(1);
+        CompletableFuture<JSONObject> future = send(commandId, commandMessage(path, commandId, params));
+        future.whenComplete((response, t) -> pendingCommands.remove(commandId));
+        return future;
+    }
+
+    private String commandMessage(String path, int commandId, Map<String, Object> params) {
+        if (params == null) {
+            return String.format("{ \"name\": \"%s\", \"id\": %d, \"type\": \"pizza\" }",
+                    path, commandId);
+        }
+        try {
+            return String.format("{ \"name\": \"%s\", \"id\": %d, \"type\": \"pizza\", \"params\": %s }",
+                    path, commandId, mapper.writeValueAsString(params));
+        } catch (JsonProcessingException e) {
+            // Shouldn't ever happen, params is simple
+            throw new ScriptException("Unable to encode params for command: " + path);
+        }
+    }
+
+    /**
+     * Register for the response and then send the message, so that a quick
+     * response can't arrive before there's anyone waiting on it.
+     */
+    private CompletableFuture<JSONObject> send(int commandId, String message) {
+        CompletableFuture<JSONObject> future = new CompletableFuture<>();
+        pendingCommands.put(commandId, future);
+        try {
+            sendMessage(message);
+        } catch (Throwable t) {
+            pendingCommands.remove(commandId);
+            throw t;
+        }
+        return future;
+    }
+
+    /**
+     * Send several commands to the browser in one message.  The browser runs
+     * them in order, each once the previous one has completed, and stops at
+     * the first one that fails (the rest get an error response).
+     *
+     * @return the responses, in the same order as the commands
+     */
+    public List<JSONObject> sendCommands(List<Command> commands) {
+        if (commands.isEmpty()) {
+            return Collections.emptyList();
+        }
+
         long start = 0;
         if (verboseLogging) {
             start = System.currentTimeMillis();
         }
 
-        int commandId = this.commandId.addAndGet(1);
+        int count = commands.size();
+        int firstCommandId = this.commandId.addAndGet(count) - count + 1;
 
+        StringBuilder message = new StringBuilder("{ \"type\": \"batch\", \"commands\": [");
+        for (int i = 0; i < count; ++i) {
+            Command command = commands.get(i);
+            if (i > 0) {
+                message.append(", ");
+            }
+            message.append(String.format("{ \"name\": \"%s\", \"id\": %d, \"type\": \"pizza\"",
+                command.getName(), firstCommandId + i));
+            if (command.getParams() != null) {
+                try {
+                    message.append(", \"params\": ");
+                    message.append(mapper.writeValueAsString(command.getParams()));
+                } catch (JsonProcessingException e) {
+                    // Ignore, shouldn't ever happen, params is simple
+                }
+            }
+            message.append(" }");
+        }
+        message.append("] }");
+
+        List<CompletableFuture<JSONObject>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            CompletableFuture<JSONObject> future = new CompletableFuture<>();
+            pendingCommands.put(firstCommandId + i, future);
+            futures.add(future);
+        }
         try {
-            sendMessage(String.format("{ \"name\": \"%s\", \"id\": %d, \"type\": \"pizza\", \"params\": %s }",
-                    path, commandId, mapper.writeValueAsString(params)));
-        } catch (JsonProcessingException e) {
-            // Ignore, shouldn't ever happen, params is simple
+            sendMessage(message.toString());
+        } catch (Throwable t) {
+            for (int i = 0; i < count; ++i) {
+                pendingCommands.remove(firstCommandId + i);
+            }
+            throw t;
         }
 
-        JSONObject response = waitResponse(commandId);
+        // The whole batch shares the timeout
+        long deadline = commandTimeout > 0 ? System.currentTimeMillis() + commandTimeout : 0;
+        List<JSONObject> responses = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; ++i) {
+                long timeout = 0;
+                if (deadline > 0) {
+                    timeout = Math.max(deadline - System.currentTimeMillis(), 1);
+                }
+                responses.add(waitResponse(commands.get(i).getName(), firstCommandId + i, futures.get(i), timeout));
+            }
+        } finally {
+            // Stop waiting on the rest of the batch if one of them failed
+            for (int i = 0; i < count; ++i) {
+                if (!futures.get(i).isDone()) {
+                    pendingCommands.remove(firstCommandId + i);
+                    commandData.remove(firstCommandId + i);
+                }
+            }
+        }
         if (verboseLogging) {
-            Logger.info("command took: {} ms", System.currentTimeMillis() - start);
+            Logger.info("{} commands took: {} ms", count, System.currentTimeMillis() - start);
         }
-        return response;
+        return responses;
     }
 
-    private JSONObject waitResponse(int commandId) {
-        while (true) {
-            JSONObject obj;
-            try {
-                obj = commandResponses.take();
-            } catch (InterruptedException e) {
-                Logger.info("Interrupted while waiting for response for command id: {}", commandId);
-                throw new ScriptException("Script interrupted");
+    private JSONObject waitResponse(String name, int commandId,
+                                    CompletableFuture<JSONObject> future, long timeoutMS) {
+        JSONObject obj;
+        try {
+            if (timeoutMS > 0) {
+                obj = future.get(timeoutMS, TimeUnit.MILLISECONDS);
+            } else {
+                obj = future.get();
             }
+        } catch (InterruptedException e) {
+            pendingCommands.remove(commandId);
+            commandData.remove(commandId);
+            Logger.info("Interrupted while waiting for response for command id: {}", commandId);
+            throw new ScriptException("Script interrupted");
+        } catch (TimeoutException e) {
+            pendingCommands.remove(commandId);
+            commandData.remove(commandId);
+            commandTimeouts.incrementAndGet();
+            throw new ScriptException(ErrorType.Timeout,
+                String.format("Timed out after %d ms waiting for browser command '%s'", timeoutMS, name));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
 
-            Logger.info(obj);
-            if (obj.has("id")) {
-                try {
-                    int id = obj.getInt("id");
-                    if (id == commandId) {
-                        return obj;
-                    }
-                } catch (JSONException e) {
-                    Logger.error(e);
-                }
-            } else if (obj.has("goodbye")) {
-                try {
-                    String status = obj.getString("goodbye");
-                    if (status.equals("cruelworld")) {
-                        throw new RuntimeException("Lost connection to browser.");
-                    }
-                } catch (JSONException e) {
-                    Logger.error(e);
-                }
+        Logger.info(obj);
+        return obj;
+    }
+
+    /**
+     * The command id a response is for, or -1 if it doesn't have one
+     */
+    private static int responseId(JSONObject obj) {
+        if (obj.has("id")) {
+            try {
+                return obj.getInt("id");
+            } catch (JSONException e) {
+                Logger.error(e);
             }
         }
+        return -1;
+    }
+
+    /**
+     * Number of commands sent that are still waiting on a response
+     */
+    public int getPendingCommandCount() {
+        return pendingCommands.size();
+    }
+
+    /**
+     * Number of commands that timed out waiting on a response
+     */
+    public long getCommandTimeouts() {
+        return commandTimeouts.get();
+    }
+
+    /**
+     * Number of responses received after their command timed out
+     */
+    public long getLateResponses() {
+        return lateResponses.get();
     }
 
     public boolean isOpen() {
-        return conn.isOpen();
+        // Cleared by close() when the socket drops
+        WebSocket conn = this.conn;
+        return conn != null && conn.isOpen();
     }
 
-    public ByteBuffer getByteBuffer() {
-        ByteBuffer r = byteBuffer;
-        byteBuffer = null;
-        return r;
+    /**
+     * Take the binary data (screenshot, response body...) the browser sent
+     * for a command.
+     *
+     * @param response the command's response
+     */
+    public ByteBuffer takeCommandData(JSONObject response) {
+        ByteBuffer data = commandData.remove(responseId(response));
+        if (data == null) {
+            throw new ScriptException(ErrorType.Internal, "No data received from browser");
+        }
+        return data;
     }
 }
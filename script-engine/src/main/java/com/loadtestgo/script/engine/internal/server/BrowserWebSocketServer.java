@@ -1,11 +1,13 @@
 package com.loadtestgo.script.engine.internal.server;
 
 import org.java_websocket.WebSocket;
-import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_10;
+import org.java_websocket.drafts.Draft_17;
 import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
-import org.java_websocket.util.Charsetfunctions;
+import org.java_websocket.util.ByteBufferPool;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.pmw.tinylog.Logger;
@@ -13,19 +15,55 @@ import org.pmw.tinylog.Logger;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class BrowserWebSocketServer extends WebSocketServer {
+    // Screenshots and response bodies are often a few MB, bigger than the
+    // frame buffers, so fragmented messages are joined in buffers from their own pool
+    private static final int MAX_POOLED_MESSAGE_SIZE = 8 * 1024 * 1024;
+    private static final int MAX_POOLED_MESSAGES_PER_SIZE = 2;
+
     private Map<WebSocket, BrowserWebSocket> clientMap = new ConcurrentHashMap<>();
     private Map<Integer, BrowserWebSocket> idMap = new ConcurrentHashMap<>();
-    private final Map<WebSocket, List<Framedata>> fragmentsPerConnection = new HashMap<>();
+    private final Map<WebSocket, MessageReassembler> fragmentsPerConnection = new ConcurrentHashMap<>();
+    private final int maxMessageSize;
+    private final ByteBufferPool messagePool =
+        new ByteBufferPool(true, MAX_POOLED_MESSAGE_SIZE, MAX_POOLED_MESSAGES_PER_SIZE);
 
     public BrowserWebSocketServer() throws UnknownHostException {
-        super(new InetSocketAddress(0));
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxMessageSize fragmented messages bigger than this (in bytes) are dropped
+     */
+    public BrowserWebSocketServer(int maxMessageSize) throws UnknownHostException {
+        this(maxMessageSize, false, 0);
+    }
+
+    /**
+     * @param maxMessageSize fragmented messages bigger than this (in bytes) are dropped, and
+     *                       compressed messages that inflate to more than this close the connection
+     * @param deflate compress messages with permessage-deflate when the browser offers it
+     * @param deflateLevel the zlib compression level (0-9) used when compressing
+     */
+    public BrowserWebSocketServer(int maxMessageSize, boolean deflate, int deflateLevel)
+            throws UnknownHostException {
+        super(new InetSocketAddress(0), drafts(maxMessageSize, deflate, deflateLevel));
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    private static List<Draft> drafts(int maxMessageSize, boolean deflate, int deflateLevel) {
+        // Chrome only speaks RFC 6455, the older drafts aren't needed
+        Draft_17 draft17 = new Draft_17(deflate, deflateLevel);
+        Draft_10 draft10 = new Draft_10(deflate, deflateLevel);
+        // Compressed messages are checked as they're inflated
+        draft17.setMaxMessageSize(maxMessageSize);
+        draft10.setMaxMessageSize(maxMessageSize);
+        return Arrays.asList(draft17, draft10);
     }
 
     @Override
@@ -55,8 +93,11 @@ public class BrowserWebSocketServer extends WebSocketServer {
         if (browserCommsHandler != null) {
             browserCommsHandler.close();
         }
-        synchronized (fragmentsPerConnection) {
-            fragmentsPerConnection.remove(conn);
+        MessageReassembler reassembler = fragmentsPerConnection.remove(conn);
+        if (reassembler != null) {
+            synchronized (reassembler) {
+                reassembler.close();
+            }
         }
     }
 
@@ -69,42 +110,29 @@ public class BrowserWebSocketServer extends WebSocketServer {
 
     public void onFragment(WebSocket conn, Framedata fragment) {
         // Handle large responses, why this isn't handled by the websocket library I don't know...
-        List<Framedata> fragmentList = null;
-        synchronized (fragmentsPerConnection) {
-            fragmentList = fragmentsPerConnection.get(conn);
-            if (fragmentList == null) {
-                fragmentList = new ArrayList<>();
-                fragmentsPerConnection.put(conn, fragmentList);
+        MessageReassembler reassembler = fragmentsPerConnection.computeIfAbsent(conn,
+            c -> new MessageReassembler(maxMessageSize, messagePool));
+        MessageReassembler.Message message;
+        synchronized (reassembler) {
+            try {
+                message = reassembler.add(fragment);
+            } catch (MessageReassembler.MessageException e) {
+                Logger.error("Error decoding frame {}", e.getMessage());
+                return;
             }
         }
-        synchronized (fragmentList) {
-            fragmentList.add(fragment);
-            if (fragment.isFin()) {
-                try {
-                    Framedata first = fragmentList.get(0);
-                    if (first.getOpcode() == Framedata.Opcode.BINARY) {
-                        int size = 0;
-                        for (Framedata frame : fragmentList) {
-                            size += frame.getPayloadData().limit();
-                        }
-                        ByteBuffer buffer = ByteBuffer.allocate(size);
-                        for (Framedata frame : fragmentList) {
-                            buffer.put(frame.getPayloadData());
-                        }
-                        onMessage(conn, buffer);
-                    } else {
-                        StringBuilder buffer = new StringBuilder();
-                        for (Framedata frame : fragmentList) {
-                            buffer.append(Charsetfunctions.stringUtf8(frame.getPayloadData()));
-                        }
-                        onMessage(conn, buffer.toString());
-                    }
-                } catch (InvalidDataException e) {
-                    Logger.error("Error decoding frame {}", e.getMessage());
-                } finally {
-                    fragmentList.clear();
-                }
+        if (message == null) {
+            return;
+        }
+        if (message.binary != null) {
+            try {
+                onMessage(conn, message.binary);
+            } finally {
+                // Whatever BrowserWebSocket keeps it has copied
+                messagePool.release(message.binary);
             }
+        } else {
+            onMessage(conn, message.text);
         }
     }
 
@@ -149,4 +177,8 @@ public class BrowserWebSocketServer extends WebSocketServer {
     public void initHandler(int userId, BrowserWebSocket browserWebSocket) {
         idMap.put(userId, browserWebSocket);
     }
+
+    public void removeHandler(int userId, BrowserWebSocket browserWebSocket) {
+        idMap.remove(userId, browserWebSocket);
+    }
 }
\ No newline at end of file
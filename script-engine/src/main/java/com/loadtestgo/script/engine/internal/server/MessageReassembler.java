@@ -0,0 +1,152 @@
+package com.loadtestgo.script.engine.internal.server;
+
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.util.ByteBufferPool;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Joins the fragments of a websocket message back together, one per
+ * connection.
+ *
+ * Fragments are copied into a buffer from the pool, swapped for a bigger
+ * one as needed.  Text messages are decoded once the last fragment arrives,
+ * so UTF-8 sequences split across fragments decode correctly, and the buffer
+ * goes back to the pool.  Binary messages are handed on as they are, without
+ * a further copy, so the receiver owns that buffer and must release it to
+ * the pool when done.
+ *
+ * Messages over the max size are dropped.
+ */
+class MessageReassembler {
+    static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final int maxMessageSize;
+    private final ByteBufferPool pool;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    private ByteBuffer buffer;
+    private Framedata.Opcode opcode;
+    // A long so it can't wrap when the max size is Integer.MAX_VALUE
+    private long size;
+    private boolean tooBig;
+
+    /**
+     * A reassembled message, either text or binary
+     */
+    static class Message {
+        final String text;
+        final ByteBuffer binary;
+
+        Message(String text, ByteBuffer binary) {
+            this.text = text;
+            this.binary = binary;
+        }
+    }
+
+    /**
+     * Thrown when the last fragment of a message is received and the message
+     * can't be used
+     */
+    static class MessageException extends Exception {
+        MessageException(String message) {
+            super(message);
+        }
+    }
+
+    MessageReassembler(int maxMessageSize, ByteBufferPool pool) {
+        this.maxMessageSize = maxMessageSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Add a fragment, returns the complete message once the last fragment
+     * has been added, otherwise null.
+     */
+    Message add(Framedata fragment) throws MessageException {
+        if (opcode == null) {
+            opcode = fragment.getOpcode();
+        }
+
+        ByteBuffer payload = fragment.getPayloadData();
+        size += payload.remaining();
+        if (size > maxMessageSize && !tooBig) {
+            tooBig = true;
+            // The rest of the message is dropped, so the buffer isn't needed
+            pool.release(buffer);
+            buffer = null;
+        }
+        if (!tooBig) {
+            ensureCapacity(payload.remaining());
+            buffer.put(payload);
+        }
+
+        if (!fragment.isFin()) {
+            return null;
+        }
+
+        try {
+            if (tooBig) {
+                throw new MessageException(String.format(
+                    "Message of %d bytes over the max size of %d bytes", size, maxMessageSize));
+            }
+            buffer.flip();
+            if (opcode == Framedata.Opcode.BINARY) {
+                ByteBuffer binary = buffer;
+                buffer = null;
+                return new Message(null, binary);
+            } else {
+                return new Message(decode(), null);
+            }
+        } finally {
+            reset();
+        }
+    }
+
+    private String decode() throws MessageException {
+        try {
+            CharBuffer chars = decoder.reset().decode(buffer);
+            return chars.toString();
+        } catch (CharacterCodingException e) {
+            throw new MessageException("Invalid UTF-8 in text message: " + e.getMessage());
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer == null) {
+            buffer = pool.acquire(Math.max(INITIAL_CAPACITY, extra));
+        } else if (buffer.remaining() < extra) {
+            long needed = (long) buffer.position() + extra;
+            int capacity = (int) Math.min(Math.max(needed, (long) buffer.capacity() * 2), maxMessageSize);
+            ByteBuffer bigger = pool.acquire(capacity);
+            buffer.flip();
+            bigger.put(buffer);
+            pool.release(buffer);
+            buffer = bigger;
+        }
+    }
+
+    private void reset() {
+        opcode = null;
+        size = 0;
+        tooBig = false;
+        // Only the pool keeps hold of the buffer between messages
+        pool.release(buffer);
+        buffer = null;
+    }
+
+    /**
+     * Give back the buffer of a message still being received, the
+     * connection has closed
+     */
+    void close() {
+        reset();
+    }
+}
@@ -27,7 +27,9 @@ pizza.main.commands = function() {
         _dialogInfo = null,
         _sessionId = 0,
         _timeouts = new Set(),
-        _webRequestModifyCallbacks = [];
+        _webRequestModifyCallbacks = [],
+        // Callbacks waiting on the response to a batched command, by command id
+        _batchWaiters = {};
 
     pizza.contexttracker.addContextDestroyedHandler(function(contextIds) {
         for (var i = 0; i < contextIds.length; ++i) {
@@ -64,6 +66,33 @@ pizza.main.commands = function() {
         }
     };
 
+    // Run the commands sent in a batch one after the other, each command is
+    // started once the one before it has responded.  Once a command fails the
+    // rest aren't run, but each still gets a response.
+    var _handleBatch = function(cmds) {
+        var i = 0;
+        var failed = false;
+        var next = function() {
+            if (i >= cmds.length) {
+                return;
+            }
+            var cmd = cmds[i++];
+            if (failed) {
+                sendResponse(cmd.id, { error: "Not run, an earlier command in the batch failed" });
+                next();
+                return;
+            }
+            _batchWaiters[cmd.id] = function(response) {
+                if (response && response.error) {
+                    failed = true;
+                }
+                next();
+            };
+            _handleCommand(cmd);
+        };
+        next();
+    };
+
     var _setResponseHandler = function(responseHandler) {
         _responseHandler = responseHandler;
     };
@@ -78,6 +107,12 @@ pizza.main.commands = function() {
         } else {
             _responseHandler(id, response);
         }
+
+        var waiter = _batchWaiters[id];
+        if (waiter) {
+            delete _batchWaiters[id];
+            waiter(response);
+        }
     }
 
     var relayChromeError = function(id) {
@@ -428,13 +463,9 @@ pizza.main.commands = function() {
                  sendResponse(id, { error: formatExceptionDetailsException(response)});
              } else if (response.data) {
                  console.time("encode");
-                 var rawData = atob(response.data);
-                 var ab = new Uint8Array(rawData.length);
-                 for (var i = 0; i < rawData.length; i++) {
-                     ab[i] = rawData.charCodeAt(i);
-                 }
+                 var ab = pizza.base64ToBytes(response.data);
                  console.timeEnd("encode");
-                 _binaryResponseHandler(ab);
+                 _binaryResponseHandler(id, ab);
                  sendResponse(id, {});
              } else {
                  sendResponse(id, { error: response.message });
@@ -454,14 +485,9 @@ pizza.main.commands = function() {
             var marker = "base64,";
             var base64begin = dataUrl.indexOf(marker);
             base64begin += marker.length;
-            var s = dataUrl.substr(base64begin);
-            var rawData = atob(s);
-            var ab = new Uint8Array(rawData.length);
-            for (var i = 0; i < rawData.length; i++) {
-                ab[i] = rawData.charCodeAt(i);
-            }
+            var ab = pizza.base64ToBytes(dataUrl.substr(base64begin));
             console.timeEnd("encode");
-            _binaryResponseHandler(ab);
+            _binaryResponseHandler(id, ab);
             sendResponse(id, {});
         }
 
@@ -2320,6 +2346,10 @@ pizza.main.commands = function() {
         });
     };
 
+    var _ping = function(id) {
+        sendResponse(id, { value: true });
+    };
+
     var _reset = function(id, params) {
         // close any dialogs
         var firstTab = null;
@@ -2333,6 +2363,7 @@ pizza.main.commands = function() {
         // Clear automation API
         _automationAPI = null;
         _sessionId++;
+        _batchWaiters = {};
 
         function finish(next) {
             _autoDismissDialogs = false;
@@ -2626,15 +2657,10 @@ pizza.main.commands = function() {
                     sendResponse(id, { error: formatExceptionDetailsException(response)});
                 } else if (response.body) {
                     if (response.base64Encoded) {
-                        var rawData = atob(response.body);
-                        var ab = new Uint8Array(rawData.length);
-                        for (var i = 0; i < rawData.length; i++) {
-                            ab[i] = rawData.charCodeAt(i);
-                        }
-                        _binaryResponseHandler(ab);
+                        _binaryResponseHandler(id, pizza.base64ToBytes(response.body));
                         sendResponse(id, {value: {format: "raw"}});
                     } else {
-                        _binaryResponseHandler(new TextEncoder("utf-8").encode(response.body));
+                        _binaryResponseHandler(id, new TextEncoder("utf-8").encode(response.body));
                         sendResponse(id, {value: {format: "string"}});
                     }
                 } else {
@@ -2768,9 +2794,11 @@ pizza.main.commands = function() {
     addCommand("getResponseBody", _getResponseBody);
 
     addCommand("reset", _reset);
+    addCommand("ping", _ping);
 
     return {
         handleCommand: _handleCommand,
+        handleBatch: _handleBatch,
         handleEvent: handleEvent,
         setResponseHandler: _setResponseHandler,
         setBinaryResponseHandler: _setBinaryResponseHandler,
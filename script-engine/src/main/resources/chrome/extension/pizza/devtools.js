@@ -18,7 +18,9 @@ pizza.main.devtools = function() {
                 method === 'Page.javascriptDialogClosed') {
                 pizza.commands.handleEvent(method, params);
             } else if (method === 'Page.screencastFrame') {
-                _ws.send(JSON.stringify({event: method, details: params}));
+                // Sent as binary, saves the engine decoding the base64 frame
+                _ws.send(pizza.frameBinary(pizza.BINARY_SCREENCAST_FRAME, params.sessionId,
+                    pizza.base64ToBytes(params.data), params.metadata.timestamp));
             }
         } else {
             // Network events go directly to browser
@@ -56,6 +56,8 @@ pizza.main.setup = function() {
                 pizza.webdriver.handleCommand(obj);
             } else if (obj.type === "pizza") {
                 pizza.commands.handleCommand(obj);
+            } else if (obj.type === "batch") {
+                pizza.commands.handleBatch(obj.commands);
             } else {
                 console.warn("unknown command type for command", obj)
             }
@@ -82,8 +84,9 @@ pizza.main.setup = function() {
             ws.send(s);
         };
 
-        var binaryResponseHandler = function(response) {
-            ws.send(response);
+        // Binary data for a command is sent just before the command's response
+        var binaryResponseHandler = function(id, data) {
+            ws.send(pizza.frameBinary(pizza.BINARY_COMMAND_DATA, id, data));
         };
 
         pizza.webdriver.setResponseHandler(responseHandler);
@@ -317,6 +317,40 @@ pizza.arrayDelete = function(array, item) {
     return array.slice(i, 1);
 };
 
+/**
+ * Decode a base64 string into a Uint8Array
+ */
+pizza.base64ToBytes = function(base64) {
+    var rawData = atob(base64);
+    var bytes = new Uint8Array(rawData.length);
+    for (var i = 0; i < rawData.length; i++) {
+        bytes[i] = rawData.charCodeAt(i);
+    }
+    return bytes;
+};
+
+// Binary message types, see BinaryFrame.java
+pizza.BINARY_COMMAND_DATA = 1;
+pizza.BINARY_SCREENCAST_FRAME = 2;
+
+/**
+ * Build a binary message for the engine: the type (1 byte), the command or
+ * screencast session id (int32), the timestamp for screencast frames
+ * (float64) and then the bytes, all big endian.
+ */
+pizza.frameBinary = function(type, id, bytes, timestamp) {
+    var headerLength = (type === pizza.BINARY_SCREENCAST_FRAME) ? 13 : 5;
+    var message = new Uint8Array(headerLength + bytes.length);
+    var view = new DataView(message.buffer);
+    view.setUint8(0, type);
+    view.setInt32(1, id);
+    if (type === pizza.BINARY_SCREENCAST_FRAME) {
+        view.setFloat64(5, timestamp);
+    }
+    message.set(bytes, headerLength);
+    return message;
+};
+
 /**
  * Add startsWith function to JavaScript strings
  */
@@ -0,0 +1,73 @@
+package com.loadtestgo.script.engine;
+
+import com.loadtestgo.script.api.ErrorType;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class DeadlineServiceTest {
+    private EngineContext engineContext = new EngineContext();
+
+    @After
+    public void cleanup() {
+        engineContext.cleanup();
+    }
+
+    @Test
+    public void cancel() throws Exception {
+        DeadlineService service = engineContext.getDeadlineService();
+        AtomicInteger runs = new AtomicInteger();
+        DeadlineService.Deadline deadline = service.schedule(50, runs::incrementAndGet);
+        deadline.cancel();
+
+        Thread.sleep(150);
+        assertEquals(0, runs.get());
+        assertEquals(0, service.getPendingCount());
+    }
+
+    @Test
+    public void extend() throws Exception {
+        DeadlineService service = engineContext.getDeadlineService();
+        CountDownLatch latch = new CountDownLatch(1);
+        long startTime = System.currentTimeMillis();
+        DeadlineService.Deadline deadline = service.schedule(50, latch::countDown);
+        deadline.extend(200);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - startTime >= 250);
+        assertEquals(0, service.getPendingCount());
+    }
+
+    @Test
+    public void scriptTimeout() throws Exception {
+        JavaScriptEngine engine = new JavaScriptEngine();
+        engine.init(new TestContext(new UserContext(engineContext), "test"));
+        try {
+            engine.runScript("pizza.sleep(10000)", "test.js", 100);
+            fail("Script wasn't interrupted");
+        } catch (ScriptException e) {
+            assertEquals(ErrorType.Timeout, e.getErrorType());
+        } finally {
+            engine.finish();
+        }
+
+        // A script that finishes in time doesn't leave its deadline behind
+        engine.init(new TestContext(new UserContext(engineContext), "test"));
+        try {
+            engine.runScript("1", "test.js", 100);
+            assertEquals(0, engineContext.getDeadlineService().getPendingCount());
+            Thread.sleep(200);
+            assertFalse(Thread.interrupted());
+        } finally {
+            engine.finish();
+        }
+    }
+}
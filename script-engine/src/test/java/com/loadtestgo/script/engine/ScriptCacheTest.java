@@ -0,0 +1,129 @@
+package com.loadtestgo.script.engine;
+
+import com.loadtestgo.util.Settings;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class ScriptCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EngineContext engineContext = new EngineContext();
+
+    private Object run(String script) throws ScriptException {
+        return run(script, null);
+    }
+
+    private Object run(String script, Integer optimizationLevel) throws ScriptException {
+        return run(engineContext, script, optimizationLevel);
+    }
+
+    private Object run(EngineContext engineContext, String script, Integer optimizationLevel) throws ScriptException {
+        JavaScriptEngine engine = new JavaScriptEngine();
+        TestContext testContext = new TestContext(new UserContext(engineContext), "test");
+        testContext.setBaseDirectory(folder.getRoot());
+        testContext.setScriptOptimizationLevel(optimizationLevel);
+        engine.init(testContext);
+        try {
+            return engine.valueToString(engine.runScript(script, "test.js"));
+        } finally {
+            engine.finish();
+        }
+    }
+
+    @Test
+    public void reusesCompiledScripts() throws Exception {
+        ScriptCache cache = engineContext.getScriptCache();
+
+        assertEquals("3", run("var x = [1, 2, 3]; x.length"));
+        assertEquals("3", run("var x = [1, 2, 3]; x.length"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        assertEquals("4", run("var x = [1, 2, 3, 4]; x.length"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void reusesLoadedFiles() throws Exception {
+        ScriptCache cache = engineContext.getScriptCache();
+        File lib = folder.newFile("lib.js");
+        Files.write(lib.toPath(), "(function(v) { return v * 2; })".getBytes(StandardCharsets.UTF_8));
+
+        String script = "load('lib.js')(21)";
+        assertEquals("42", run(script));
+        assertEquals("42", run(script));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // Changed files are recompiled
+        Files.write(lib.toPath(), "(function(v) { return v + v + 1; })".getBytes(StandardCharsets.UTF_8));
+        assertEquals("43", run(script));
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void optimizationLevels() throws Exception {
+        ScriptCache cache = engineContext.getScriptCache();
+        String script = "var total = 0; for (var i = 0; i < 10; ++i) { total += i; } total";
+
+        assertEquals("45", run(script, -1));
+        assertEquals("45", run(script, 0));
+        assertEquals("45", run(script, 9));
+        assertEquals(3, cache.getMisses());
+
+        // Compiled ahead of time
+        JavaScriptEngine.precompile(engineContext, "1 + 1", "test.js", 0);
+        assertEquals("2", run("1 + 1", 0));
+        assertEquals(4, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testsDontShareGlobals() throws Exception {
+        run("var leak = 1; Object = null;");
+        assertEquals("undefined", run("typeof leak"));
+        assertEquals("function", run("typeof Object"));
+    }
+
+    @Test
+    public void scriptsCanModifyBuiltIns() throws Exception {
+        assertEquals("2 b 3 4", run(
+            "Array.prototype.second = function() { return this[1]; };\n" +
+            "String.prototype.x = 'b';\n" +
+            "Math.x = 3;\n" +
+            "Object.defineProperty(Object.prototype, 'y', { value: 4 });\n" +
+            "[1, 2].second() + ' ' + ''.x + ' ' + Math.x + ' ' + ({}).y"));
+
+        // Each test has its own standard objects
+        assertEquals("undefined undefined", run("typeof [].second + ' ' + typeof Math.x"));
+    }
+
+    @Test
+    public void sharedStandardObjectsAreSealed() throws Exception {
+        Settings settings = new Settings();
+        settings.set("script.shared.scope", true);
+        EngineContext sharedContext = new EngineContext(settings);
+
+        try {
+            run(sharedContext, "Array.prototype.leak = 1;", null);
+            fail("Standard objects can be modified");
+        } catch (ScriptException e) {
+            // Expected
+        }
+        assertEquals("undefined", run(sharedContext, "typeof [].leak", null));
+    }
+}
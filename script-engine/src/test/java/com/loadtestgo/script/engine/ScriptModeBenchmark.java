@@ -0,0 +1,105 @@
+package com.loadtestgo.script.engine;
+
+import com.loadtestgo.script.engine.internal.rhino.RhinoContextFactory;
+import com.loadtestgo.util.FileUtils;
+import org.mozilla.javascript.ClassCache;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Rhino optimization levels on the scripts/ examples: compiling
+ * them (what every test paid before the script cache), fetching them from
+ * a precompiled script cache, and running a CPU bound script.  The examples
+ * themselves drive a browser so they're compiled but not run.
+ *
+ * Run with: gradle :script-engine:jmh -Pjmh.include=ScriptModeBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptModeBenchmark {
+    private static final String CPU_SCRIPT =
+        "var rows = [];\n" +
+        "for (var i = 0; i < 1000; ++i) {\n" +
+        "    rows.push({ id: i, name: 'user' + i, email: 'user' + i + '@example.com' });\n" +
+        "}\n" +
+        "var matches = rows.filter(function(row) { return row.id % 3 == 0; })\n" +
+        "    .map(function(row) { return row.name.toUpperCase(); });\n" +
+        "JSON.stringify(matches).length;\n";
+
+    @Param({"-1", "0", "9"})
+    public int optimizationLevel;
+
+    private List<String> names = new ArrayList<>();
+    private List<String> sources = new ArrayList<>();
+    private Context context;
+    private ScriptCache cache;
+    private ScriptableObject standardScope;
+    private Script cpuScript;
+
+    @Setup
+    public void setup() {
+        File dir = new File(System.getProperty("scripts.dir", "../scripts"));
+        if (!dir.isDirectory()) {
+            dir = new File("scripts");
+        }
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".js"));
+        if (files == null) {
+            throw new IllegalStateException("Unable to find the scripts dir, set -Dscripts.dir");
+        }
+        for (File file : files) {
+            names.add(file.getName());
+            sources.add(FileUtils.readAllText(file));
+        }
+
+        RhinoContextFactory contextFactory = new RhinoContextFactory();
+        contextFactory.setOptimizationLevel(optimizationLevel);
+        context = contextFactory.enterContext();
+
+        cache = new ScriptCache(1024);
+        for (int i = 0; i < sources.size(); ++i) {
+            cache.getScript(context, sources.get(i), names.get(i));
+        }
+        standardScope = cache.getStandardScope(context, false);
+        cpuScript = cache.getScript(context, CPU_SCRIPT, "cpu.js");
+    }
+
+    @TearDown
+    public void tearDown() {
+        Context.exit();
+    }
+
+    @Benchmark
+    public void compile(Blackhole blackhole) {
+        for (int i = 0; i < sources.size(); ++i) {
+            blackhole.consume(context.compileString(sources.get(i), names.get(i), 1, null));
+        }
+    }
+
+    @Benchmark
+    public void precompiled(Blackhole blackhole) {
+        for (int i = 0; i < sources.size(); ++i) {
+            blackhole.consume(cache.getScript(context, sources.get(i), names.get(i)));
+        }
+    }
+
+    @Benchmark
+    public Object run() {
+        ScriptableObject scope = (ScriptableObject) context.newObject(standardScope);
+        scope.setPrototype(standardScope);
+        scope.setParentScope(null);
+        new ClassCache().associate(scope);
+        return cpuScript.exec(context, scope);
+    }
+}
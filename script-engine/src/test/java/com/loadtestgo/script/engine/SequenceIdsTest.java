@@ -0,0 +1,121 @@
+package com.loadtestgo.script.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class SequenceIdsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void inOrder() throws Exception {
+        SequenceIds ids = new SequenceIds(1, null);
+        assertEquals(0, ids.next("a"));
+        assertEquals(1, ids.next("a"));
+        assertEquals(0, ids.next("b"));
+        assertEquals(2, ids.next("a"));
+    }
+
+    @Test
+    public void uniqueWithBlocks() throws Exception {
+        checkUnique(new SequenceIds(16, null));
+    }
+
+    @Test
+    public void uniqueWithFile() throws Exception {
+        SequenceIds ids = new SequenceIds(16, folder.newFile("unique.seq"));
+        checkUnique(ids);
+        ids.close();
+    }
+
+    @Test
+    public void fileKeepsHighWaterMark() throws Exception {
+        File file = folder.newFile("restart.seq");
+        SequenceIds ids = new SequenceIds(1, file);
+        assertEquals(0, ids.next("a"));
+        assertEquals(1, ids.next("a"));
+        assertEquals(0, ids.next(longName()));
+        ids.close();
+
+        // Closed, so opening it again maps the file afresh
+        ids = new SequenceIds(10, file);
+        assertEquals(2, ids.next("a"));
+        assertEquals(3, ids.next("a"));
+        assertEquals(1, ids.next(longName()));
+        ids.close();
+
+        ids = new SequenceIds(1, file);
+        assertEquals(12, ids.next("a"));
+        ids.close();
+    }
+
+    @Test
+    public void fileIsSharedUntilClosed() throws Exception {
+        File file = folder.newFile("shared.seq");
+        SequenceFile first = SequenceFile.open(file);
+        SequenceFile second = SequenceFile.open(file);
+        assertSame(first, second);
+        assertEquals(0, first.reserve("a", 5));
+
+        // Still open for the other user
+        first.close();
+        assertEquals(5, second.reserve("a", 5));
+        second.close();
+
+        SequenceFile reopened = SequenceFile.open(file);
+        assertNotSame(first, reopened);
+        assertEquals(10, reopened.reserve("a", 1));
+        reopened.close();
+    }
+
+    private static String longName() {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            name.append('x');
+        }
+        return name.toString();
+    }
+
+    private void checkUnique(SequenceIds ids) throws Exception {
+        int numThreads = 8;
+        int perThread = 1000;
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        List<Throwable> errors = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; ++i) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int j = 0; j < perThread; ++j) {
+                        assertTrue(seen.add(ids.next("user")));
+                    }
+                } catch (Throwable t) {
+                    synchronized (errors) {
+                        errors.add(t);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, errors.size());
+        assertEquals(numThreads * perThread, seen.size());
+    }
+}
@@ -1,110 +1,83 @@
 package com.loadtestgo.script.engine.internal.api;
 
+import com.loadtestgo.script.engine.CSVCache;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import java.io.*;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 @RunWith(JUnit4.class)
 public class CSVImplTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private CSVData data(String s) throws IOException {
+        return CSVData.read(new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private String[] parseLine(String line) throws IOException {
+        CSVData data = data(line);
+        assertEquals(1, data.getNumRows());
+        return data.parseRow(0);
+    }
+
     @Test
-    public void testParseLine() {
-        List<String> r = CSVImpl.parseCsvRow(
-            "a,b,c,d"
-        );
-
-        assertEquals(4, r.size());
-        assertEquals("a", r.get(0));
-        assertEquals("b", r.get(1));
-        assertEquals("c", r.get(2));
-        assertEquals("d", r.get(3));
-
-        r = CSVImpl.parseCsvRow(
-            "\"a\",\"b\",\"c\",\"d\""
-        );
-
-        assertEquals(4, r.size());
-        assertEquals("a", r.get(0));
-        assertEquals("b", r.get(1));
-        assertEquals("c", r.get(2));
-        assertEquals("d", r.get(3));
-
-        r = CSVImpl.parseCsvRow(
-            "\"a\",b,c,d"
-        );
-
-        assertEquals(4, r.size());
-        assertEquals("a", r.get(0));
-        assertEquals("b", r.get(1));
-        assertEquals("c", r.get(2));
-        assertEquals("d", r.get(3));
-
-        r = CSVImpl.parseCsvRow(
-            "\"abcdefg\",b,c,abcdefgh"
-        );
-
-        assertEquals(4, r.size());
-        assertEquals("abcdefg", r.get(0));
-        assertEquals("b", r.get(1));
-        assertEquals("c", r.get(2));
-        assertEquals("abcdefgh", r.get(3));
-
-        r = CSVImpl.parseCsvRow(
-            "\"abc\"\"defg\",b,\"c\",abcdefgh"
-        );
-
-        assertEquals(4, r.size());
-        assertEquals("abc\"defg", r.get(0));
-        assertEquals("b", r.get(1));
-        assertEquals("c", r.get(2));
-        assertEquals("abcdefgh", r.get(3));
+    public void testParseLine() throws IOException {
+        assertArrayEquals(new String[] {"a", "b", "c", "d"}, parseLine("a,b,c,d"));
+        assertArrayEquals(new String[] {"a", "b", "c", "d"}, parseLine("\"a\",\"b\",\"c\",\"d\""));
+        assertArrayEquals(new String[] {"a", "b", "c", "d"}, parseLine("\"a\",b,c,d"));
+        assertArrayEquals(new String[] {"abcdefg", "b", "c", "abcdefgh"}, parseLine("\"abcdefg\",b,c,abcdefgh"));
+
+        // Quoted commas and line breaks, doubled quotes
+        assertArrayEquals(new String[] {"abc\"defg", "b", "c", "abcdefgh"}, parseLine("\"abc\"\"defg\",b,\"c\",abcdefgh"));
+        assertArrayEquals(new String[] {"a,b", "c\r\nd", "\""}, parseLine("\"a,b\",\"c\r\nd\",\"\"\"\""));
+
+        // Empty fields
+        assertArrayEquals(new String[] {"a", "", "c", ""}, parseLine("a,,c,"));
+        assertArrayEquals(new String[] {"", "", ""}, parseLine(",\"\","));
+        assertArrayEquals(new String[] {"", "b"}, parseLine(",b"));
     }
 
-    private BufferedReader reader(String s) {
-        InputStream is = new ByteArrayInputStream(s.getBytes());
-        return new BufferedReader(new InputStreamReader(is));
+    private void assertRows(String file, String[]... rows) throws IOException {
+        CSVData data = data(file);
+        assertEquals(file, rows.length, data.getNumRows());
+        for (int i = 0; i < rows.length; ++i) {
+            assertArrayEquals(file, rows[i], data.parseRow(i));
+        }
+        assertNull(data.parseRow(rows.length));
     }
 
     @Test
-    public void testParseFile() throws IOException {
-        List<String> r = CSVImpl.parseCsvRowsIntoArray(reader("a,b,c\nd,f,g"));
-        assertEquals(2, r.size());
-        assertEquals("a,b,c", r.get(0));
-        assertEquals("d,f,g", r.get(1));
-
-        r = CSVImpl.parseCsvRowsIntoArray(reader("a,b,c\rd,f,g"));
-        assertEquals(2, r.size());
-        assertEquals("a,b,c", r.get(0));
-        assertEquals("d,f,g", r.get(1));
-
-        r = CSVImpl.parseCsvRowsIntoArray(reader("a,b,c\rd,f,g\n"));
-        assertEquals(2, r.size());
-        assertEquals("a,b,c", r.get(0));
-        assertEquals("d,f,g", r.get(1));
-
-        r = CSVImpl.parseCsvRowsIntoArray(reader("a,b,c\r\nd,f,g\n"));
-        assertEquals(2, r.size());
-        assertEquals("a,b,c", r.get(0));
-        assertEquals("d,f,g", r.get(1));
-
-        r = CSVImpl.parseCsvRowsIntoArray(reader("a,b,c\n\rd,f,g\n"));
-        assertEquals(2, r.size());
-        assertEquals("a,b,c", r.get(0));
-        assertEquals("d,f,g", r.get(1));
-
-        r = CSVImpl.parseCsvRowsIntoArray(reader("a,b,c\r\nd,f,g\n\n"));
-        assertEquals(3, r.size());
-        assertEquals("a,b,c", r.get(0));
-        assertEquals("d,f,g", r.get(1));
-        assertEquals("", r.get(2));
-
-        r = CSVImpl.parseCsvRowsIntoArray(reader("a,b,\"c\nd\",f,g\n"));
-        assertEquals(1, r.size());
-        assertEquals("a,b,c\nd,f,g", r.get(0));
+    public void testParseRows() throws IOException {
+        String[] abc = {"a", "b", "c"};
+        String[] dfg = {"d", "f", "g"};
+        assertRows("a,b,c\nd,f,g", abc, dfg);
+        assertRows("a,b,c\rd,f,g", abc, dfg);
+        assertRows("a,b,c\rd,f,g\n", abc, dfg);
+        assertRows("a,b,c\r\nd,f,g\r\n", abc, dfg);
+        assertRows("a,b,c\n\rd,f,g\n", abc, dfg);
+        assertRows("\"a\",b,\"c\"\r\nd,\"f\",g", abc, dfg);
+
+        // A blank line is a row with one empty field
+        assertRows("a,b,c\r\nd,f,g\n\n", abc, dfg, new String[] {""});
+        assertRows("a,b,c\r\n\r\nd,f,g", abc, new String[] {""}, dfg);
+
+        // Line breaks inside quotes don't end the row
+        assertRows("a,b,\"c\nd\",f,g\n", new String[] {"a", "b", "c\nd", "f", "g"});
+        assertRows("a,\"b\r\n\"\"c\"\"\"\r\nd,f,g", new String[] {"a", "b\r\n\"c\""}, dfg);
+
+        assertRows("");
     }
 
     @Test
@@ -118,4 +91,38 @@ public class CSVImplTest {
         assertEquals("bom", csv.value(1, 0));
         assertEquals("bom", csv.value(1, "hello"));
     }
+
+    private CSVImpl csv(String s) throws IOException {
+        return new CSVImpl(new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testRows() throws IOException {
+        CSVImpl csv = csv("name,\"address\"\r\nbob,\"1 Main St, \"\"Apt\"\" 2\nSpringfield\"\r\n\u00e9,x\n");
+        assertEquals(3, csv.getNumRows());
+        assertEquals("1 Main St, \"Apt\" 2\nSpringfield", csv.value(1, "address"));
+        assertEquals("bob", csv.value(1, 0));
+        assertEquals("\u00e9", csv.value(2, "name"));
+        assertNull(csv.row(3));
+    }
+
+    @Test
+    public void testSharedFile() throws IOException {
+        File file = tmp.newFile("users.csv");
+        Files.write(file.toPath(), "user,password\nalice,1\nbob,2\n".getBytes(StandardCharsets.UTF_8));
+
+        CSVCache cache = new CSVCache();
+        CSVImpl csv = new CSVImpl(cache.get(file));
+        assertEquals(3, csv.getNumRows());
+        assertEquals("bob", csv.value(2, "user"));
+        assertSame(csv.getData(), cache.get(file));
+
+        // Changed files are loaded again
+        Files.write(file.toPath(), "user,password\ncarol,3\n".getBytes(StandardCharsets.UTF_8));
+        file.setLastModified(file.lastModified() + 2000);
+        CSVImpl changed = new CSVImpl(cache.get(file));
+        assertNotSame(csv.getData(), changed.getData());
+        assertEquals("carol", changed.value(1, "user"));
+        assertEquals(1, cache.size());
+    }
 }
@@ -0,0 +1,94 @@
+package com.loadtestgo.script.engine.internal.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class DataFeederTest {
+    private static CSVData data(int rows) throws IOException {
+        StringBuilder csv = new StringBuilder("user\n");
+        for (int i = 1; i <= rows; ++i) {
+            csv.append("user").append(i).append("\n");
+        }
+        return CSVData.read(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void sequential() throws IOException {
+        DataFeeder feeder = new DataFeeder(data(3), DataFeeder.Strategy.SEQUENTIAL, 1, 0);
+        assertEquals(3, feeder.size());
+        assertEquals(1, feeder.next(0, false));
+        assertEquals(2, feeder.next(0, false));
+        assertEquals(3, feeder.next(0, false));
+        assertEquals(DataFeeder.EXHAUSTED, feeder.next(0, false));
+        assertEquals(2, feeder.next(0, true));
+    }
+
+    @Test
+    public void circular() throws IOException {
+        DataFeeder feeder = new DataFeeder(data(2), DataFeeder.Strategy.CIRCULAR, 1, 0);
+        assertEquals(1, feeder.next(0, false));
+        assertEquals(2, feeder.next(0, false));
+        assertEquals(1, feeder.next(0, false));
+    }
+
+    @Test
+    public void uniqueAcrossThreads() throws Exception {
+        int rows = 10007;
+        DataFeeder feeder = new DataFeeder(data(rows), DataFeeder.Strategy.UNIQUE, 1, 42);
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; ++t) {
+            Thread thread = new Thread(() -> {
+                int row;
+                while ((row = feeder.next(0, false)) != DataFeeder.EXHAUSTED) {
+                    assertTrue(seen.add(row));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(rows, seen.size());
+        assertFalse(seen.contains(0));
+        assertTrue(seen.contains(rows));
+    }
+
+    @Test
+    public void partitioned() throws IOException {
+        DataFeeder feeder = new DataFeeder(data(5), DataFeeder.Strategy.PARTITIONED, 2, 0);
+        Set<Integer> worker0 = new HashSet<>();
+        Set<Integer> worker1 = new HashSet<>();
+        int row;
+        while ((row = feeder.next(0, false)) != DataFeeder.EXHAUSTED) {
+            worker0.add(row);
+        }
+        while ((row = feeder.next(1, false)) != DataFeeder.EXHAUSTED) {
+            worker1.add(row);
+        }
+        assertEquals(3, worker0.size());
+        assertEquals(2, worker1.size());
+        worker0.retainAll(worker1);
+        assertTrue(worker0.isEmpty());
+    }
+
+    @Test
+    public void empty() throws IOException {
+        DataFeeder feeder = new DataFeeder(data(0), DataFeeder.Strategy.CIRCULAR, 1, 0);
+        assertEquals(DataFeeder.EXHAUSTED, feeder.next(0, true));
+    }
+}
@@ -0,0 +1,122 @@
+package com.loadtestgo.script.engine.internal.browsers.chrome;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building a JSONObject for every message from the extension against
+ * the streaming ChromeEventDecoder, replaying the event mix of a typical page
+ * load (mostly Network.dataReceived).
+ *
+ * Run with: gradle :script-engine:jmh -Pjmh.include=ChromeEventDecoderBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChromeEventDecoderBenchmark {
+    private List<String> messages;
+    private ChromeEventDecoder decoder;
+
+    @Setup
+    public void setup() {
+        messages = captureStream(200, 20);
+        decoder = new ChromeEventDecoder();
+    }
+
+    @Benchmark
+    public void jsonObject(Blackhole blackhole) throws JSONException {
+        for (String message : messages) {
+            blackhole.consume(new JSONObject(message));
+        }
+    }
+
+    @Benchmark
+    public void streamingDecoder(Blackhole blackhole) throws IOException, JSONException {
+        ChromeEventDecoder.Handler handler = new ChromeEventDecoder.Handler() {
+            @Override
+            public boolean wantsEvent(String event) {
+                return !event.equals("Network.resourceChangedPriority");
+            }
+
+            @Override
+            public void onEvent(String event, JSONObject details) {
+                blackhole.consume(details);
+            }
+
+            @Override
+            public void onNetworkEvent(String event, ChromeNetworkEvent details) {
+                blackhole.consume(details);
+            }
+
+            @Override
+            public void onMessage(JSONObject json) {
+                blackhole.consume(json);
+            }
+        };
+
+        for (String message : messages) {
+            decoder.decode(message, handler);
+        }
+    }
+
+    /**
+     * Build the stream of events the extension sends for a page with the given
+     * number of requests, each receiving the given number of data chunks.
+     */
+    static List<String> captureStream(int numRequests, int chunksPerRequest) {
+        List<String> messages = new ArrayList<>();
+        double timestamp = 1000.0;
+        for (int i = 0; i < numRequests; ++i) {
+            String requestId = "1000." + i;
+            String url = "https://example.com/assets/resource" + i + ".js";
+            messages.add(event("Network.requestWillBeSent",
+                "\"requestId\":\"" + requestId + "\",\"frameId\":\"F1\",\"loaderId\":\"L1\"," +
+                "\"documentURL\":\"https://example.com/\"," +
+                "\"request\":{\"url\":\"" + url + "\",\"method\":\"GET\",\"headers\":{" +
+                "\"Accept\":\"*/*\",\"User-Agent\":\"Mozilla/5.0 (X11; Linux x86_64) Chrome/80.0\"," +
+                "\"Referer\":\"https://example.com/\"},\"initialPriority\":\"High\"}," +
+                "\"timestamp\":" + timestamp + ",\"wallTime\":1580000000.123," +
+                "\"initiator\":{\"type\":\"parser\",\"url\":\"https://example.com/\",\"lineNumber\":12}," +
+                "\"type\":\"Script\",\"tabId\":1"));
+            messages.add(event("Network.responseReceived",
+                "\"requestId\":\"" + requestId + "\",\"frameId\":\"F1\",\"loaderId\":\"L1\"," +
+                "\"timestamp\":" + (timestamp + 0.05) + ",\"type\":\"Script\"," +
+                "\"response\":{\"url\":\"" + url + "\",\"status\":200,\"statusText\":\"OK\"," +
+                "\"headers\":{\"Content-Type\":\"application/javascript\",\"Content-Length\":\"65536\"," +
+                "\"Cache-Control\":\"max-age=3600\"},\"mimeType\":\"application/javascript\"," +
+                "\"connectionReused\":true,\"connectionId\":12,\"remoteIPAddress\":\"93.184.216.34\"," +
+                "\"remotePort\":443,\"fromDiskCache\":false,\"encodedDataLength\":320," +
+                "\"protocol\":\"h2\",\"timing\":{\"requestTime\":" + timestamp + ",\"dnsStart\":-1," +
+                "\"dnsEnd\":-1,\"connectStart\":-1,\"connectEnd\":-1,\"sslStart\":-1,\"sslEnd\":-1," +
+                "\"sendStart\":0.2,\"sendEnd\":0.3,\"receiveHeadersEnd\":48.1}},\"tabId\":1"));
+            messages.add(event("Network.resourceChangedPriority",
+                "\"requestId\":\"" + requestId + "\",\"newPriority\":\"Low\"," +
+                "\"timestamp\":" + timestamp + ",\"tabId\":1"));
+            for (int j = 0; j < chunksPerRequest; ++j) {
+                timestamp += 0.001;
+                messages.add(event("Network.dataReceived",
+                    "\"requestId\":\"" + requestId + "\",\"timestamp\":" + timestamp + "," +
+                    "\"dataLength\":3276,\"encodedDataLength\":1024,\"tabId\":1"));
+            }
+            messages.add(event("Network.loadingFinished",
+                "\"requestId\":\"" + requestId + "\",\"timestamp\":" + timestamp + "," +
+                "\"encodedDataLength\":20800,\"tabId\":1"));
+            messages.add("{\"type\":\"response\",\"id\":" + i + ",\"response\":{\"value\":true}}");
+        }
+        return messages;
+    }
+
+    private static String event(String name, String details) {
+        return "{\"event\":\"" + name + "\",\"details\":{" + details + "}}";
+    }
+}
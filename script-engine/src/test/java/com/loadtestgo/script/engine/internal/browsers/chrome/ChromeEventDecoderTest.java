@@ -0,0 +1,118 @@
+package com.loadtestgo.script.engine.internal.browsers.chrome;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ChromeEventDecoderTest {
+    private static class RecordingHandler implements ChromeEventDecoder.Handler {
+        List<String> events = new ArrayList<>();
+        List<Object> details = new ArrayList<>();
+        List<JSONObject> messages = new ArrayList<>();
+
+        @Override
+        public boolean wantsEvent(String event) {
+            return !event.equals("tabUpdated");
+        }
+
+        @Override
+        public void onEvent(String event, JSONObject details) {
+            this.events.add(event);
+            this.details.add(details);
+        }
+
+        @Override
+        public void onNetworkEvent(String event, ChromeNetworkEvent details) {
+            this.events.add(event);
+            this.details.add(details);
+        }
+
+        @Override
+        public void onMessage(JSONObject json) {
+            messages.add(json);
+        }
+    }
+
+    @Test
+    public void networkEvent() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        new ChromeEventDecoder().decode("{\"event\":\"Network.dataReceived\",\"details\":" +
+            "{\"requestId\":\"12.3\",\"timestamp\":123.456,\"dataLength\":100," +
+            "\"encodedDataLength\":50,\"extra\":{\"a\":[1,2]},\"tabId\":7}}", handler);
+
+        assertEquals(1, handler.events.size());
+        assertEquals("Network.dataReceived", handler.events.get(0));
+        ChromeNetworkEvent event = (ChromeNetworkEvent)handler.details.get(0);
+        assertEquals(7, event.tabId);
+        assertEquals("12.3", event.requestId);
+        assertEquals(123.456, event.timestamp, 0.0);
+        assertEquals(100, event.dataLength);
+        assertEquals(50, event.encodedDataLength);
+    }
+
+    @Test
+    public void otherEvent() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        new ChromeEventDecoder().decode("{\"event\":\"Network.responseReceived\",\"details\":" +
+            "{\"requestId\":\"1\",\"response\":{\"status\":200,\"headers\":{\"A\":\"b\"}}," +
+            "\"list\":[1,2.5,\"x\",null,true],\"tabId\":3}}", handler);
+
+        assertEquals(1, handler.events.size());
+        JSONObject details = (JSONObject)handler.details.get(0);
+        assertEquals(3, details.getInt("tabId"));
+        assertEquals(200, details.getJSONObject("response").getInt("status"));
+        assertEquals("b", details.getJSONObject("response").getJSONObject("headers").getString("A"));
+        assertEquals(5, details.getJSONArray("list").length());
+        assertTrue(details.getJSONArray("list").isNull(3));
+    }
+
+    @Test
+    public void skippedEvent() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        new ChromeEventDecoder().decode("{\"event\":\"tabUpdated\",\"details\":" +
+            "{\"tab\":{\"id\":1,\"url\":\"http://a/\"}}}", handler);
+
+        assertEquals(0, handler.events.size());
+        assertEquals(0, handler.messages.size());
+    }
+
+    @Test
+    public void response() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        new ChromeEventDecoder().decode("{\"type\":\"response\",\"id\":4," +
+            "\"response\":{\"value\":\"ok\"}}", handler);
+
+        assertEquals(0, handler.events.size());
+        assertEquals(1, handler.messages.size());
+        JSONObject json = handler.messages.get(0);
+        assertEquals("response", json.getString("type"));
+        assertEquals(4, json.getInt("id"));
+        assertEquals("ok", json.getJSONObject("response").getString("value"));
+    }
+
+    @Test
+    public void matchesJsonObject() throws Exception {
+        for (String message : ChromeEventDecoderBenchmark.captureStream(2, 2)) {
+            JSONObject expected = new JSONObject(message);
+            RecordingHandler handler = new RecordingHandler();
+            new ChromeEventDecoder().decode(message, handler);
+            if (handler.messages.size() > 0) {
+                assertEquals(expected.toString(), handler.messages.get(0).toString());
+            } else if (handler.details.get(0) instanceof JSONObject) {
+                assertEquals(expected.getJSONObject("details").toString(), handler.details.get(0).toString());
+            } else {
+                ChromeNetworkEvent event = (ChromeNetworkEvent)handler.details.get(0);
+                JSONObject details = expected.getJSONObject("details");
+                assertEquals(details.getString("requestId"), event.requestId);
+                assertEquals(details.getDouble("timestamp"), event.timestamp, 0.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.loadtestgo.script.engine.internal.browsers.chrome;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ChromeVideoRecorderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void framesWrittenOrDropped() throws Exception {
+        File file = new File(folder.getRoot(), "video.mov");
+        ChromeVideoRecorder recorder = new ChromeVideoRecorder(file, 2, 0, 0);
+
+        byte[] frame = new byte[1024];
+        for (int i = 0; i < 200; ++i) {
+            recorder.addFrame(frame, i * 40);
+        }
+
+        assertEquals(file, recorder.close());
+        assertTrue(file.length() > 0);
+        assertEquals(200, recorder.getFramesReceived());
+        assertEquals(200, recorder.getFramesWritten() + recorder.getFramesDropped());
+
+        // Closed, further frames are dropped
+        recorder.addFrame(frame, 10000);
+        assertEquals(201, recorder.getFramesWritten() + recorder.getFramesDropped());
+    }
+
+    @Test
+    public void maxFps() throws Exception {
+        File file = new File(folder.getRoot(), "video.mov");
+        ChromeVideoRecorder recorder = new ChromeVideoRecorder(file, 1000, 10, 0);
+
+        byte[] frame = new byte[1024];
+        for (int i = 0; i < 100; ++i) {
+            recorder.addFrame(frame, i * 10);
+        }
+        recorder.close();
+
+        // One frame per 100ms over the 1s of frames
+        assertEquals(10, recorder.getFramesWritten());
+        assertEquals(90, recorder.getFramesSkipped());
+    }
+
+    @Test
+    public void imageDiff() {
+        BufferedImage a = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        BufferedImage b = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        assertEquals(0.0, ChromeVideoRecorder.imageDiff(a, b), 0.0);
+
+        Graphics2D g = b.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 100, 100);
+        g.dispose();
+        assertEquals(255.0, ChromeVideoRecorder.imageDiff(a, b), 0.0);
+
+        BufferedImage c = new BufferedImage(50, 100, BufferedImage.TYPE_INT_RGB);
+        assertEquals(255.0, ChromeVideoRecorder.imageDiff(a, c), 0.0);
+    }
+
+    private static byte[] jpeg(int gray) throws IOException {
+        BufferedImage image = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(gray, gray, gray));
+        g.fillRect(0, 0, 200, 150);
+        g.dispose();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", output);
+        return output.toByteArray();
+    }
+
+    private ChromeVideoRecorder record(double diffThreshold, byte[]... frames) {
+        ChromeVideoRecorder recorder = new ChromeVideoRecorder(
+            new File(folder.getRoot(), "similar" + diffThreshold + ".mov"), 1000, 0, diffThreshold);
+        for (int i = 0; i < frames.length; ++i) {
+            recorder.addFrame(frames[i], i * 40);
+        }
+        assertNotNull(recorder.close());
+        return recorder;
+    }
+
+    @Test
+    public void similarFramesSkipped() throws Exception {
+        byte[] base = jpeg(128);
+        byte[] slightlyLighter = jpeg(130);
+        byte[] slightlyDarker = jpeg(126);
+        byte[] white = jpeg(255);
+
+        // The two frames close to the pending one are skipped, the white one isn't
+        ChromeVideoRecorder recorder = record(10, base, slightlyLighter, slightlyDarker, white);
+        assertEquals(2, recorder.getFramesSkipped());
+        assertEquals(2, recorder.getFramesWritten());
+
+        // A lower threshold than the difference keeps them
+        recorder = record(1, base, slightlyLighter, slightlyDarker, white);
+        assertEquals(0, recorder.getFramesSkipped());
+        assertEquals(4, recorder.getFramesWritten());
+    }
+
+    @Test
+    public void noFrames() {
+        ChromeVideoRecorder recorder = new ChromeVideoRecorder(new File(folder.getRoot(), "video.mov"), 2, 0, 0);
+        assertNull(recorder.close());
+    }
+}
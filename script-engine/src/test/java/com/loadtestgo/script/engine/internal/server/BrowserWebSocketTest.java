@@ -0,0 +1,232 @@
+package com.loadtestgo.script.engine.internal.server;
+
+import com.loadtestgo.script.api.ErrorType;
+import com.loadtestgo.script.engine.EasyTestContext;
+import com.loadtestgo.script.engine.ScriptException;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class BrowserWebSocketTest {
+    /**
+     * Replies to each batch straight away, with the responses in reverse order
+     */
+    private static class ReversingWebSocket extends BrowserWebSocket {
+        List<String> messages = new ArrayList<>();
+
+        ReversingWebSocket() {
+            super(new EasyTestContext());
+        }
+
+        @Override
+        public synchronized void sendMessage(String message) {
+            messages.add(message);
+            try {
+                JSONArray commands = new JSONObject(message).getJSONArray("commands");
+                List<JSONObject> responses = new ArrayList<>();
+                for (int i = 0; i < commands.length(); ++i) {
+                    JSONObject command = commands.getJSONObject(i);
+                    JSONObject response = new JSONObject();
+                    response.put("type", "response");
+                    response.put("id", command.getInt("id"));
+                    response.put("response", new JSONObject().put("value", command.getString("name")));
+                    responses.add(response);
+                }
+                Collections.reverse(responses);
+                for (JSONObject response : responses) {
+                    onMessage(response);
+                }
+            } catch (JSONException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Never replies, responses are sent by the test
+     */
+    private static class SilentWebSocket extends BrowserWebSocket {
+        List<JSONObject> messages = new ArrayList<>();
+
+        SilentWebSocket() {
+            super(new EasyTestContext());
+        }
+
+        @Override
+        public synchronized void sendMessage(String message) {
+            try {
+                messages.add(new JSONObject(message));
+            } catch (JSONException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        void respond(int id, String value) throws JSONException {
+            JSONObject response = new JSONObject();
+            response.put("type", "response");
+            response.put("id", id);
+            response.put("response", new JSONObject().put("value", value));
+            onMessage(response);
+        }
+    }
+
+    @Test
+    public void commandsInFlight() throws Exception {
+        SilentWebSocket socket = new SilentWebSocket();
+
+        CompletableFuture<JSONObject> first = socket.sendCommandAsync("open", null);
+        CompletableFuture<JSONObject> second = socket.sendCommandAsync("query", null);
+        assertEquals(2, socket.getPendingCommandCount());
+
+        // Answered out of order
+        socket.respond(socket.messages.get(1).getInt("id"), "second");
+        assertFalse(first.isDone());
+        assertEquals("second", second.get().getJSONObject("response").getString("value"));
+
+        socket.respond(socket.messages.get(0).getInt("id"), "first");
+        assertEquals("first", first.get().getJSONObject("response").getString("value"));
+        assertEquals(0, socket.getPendingCommandCount());
+        assertEquals(0, socket.getLateResponses());
+    }
+
+    @Test
+    public void commandTimeout() throws Exception {
+        SilentWebSocket socket = new SilentWebSocket();
+
+        try {
+            socket.sendCommand("ping", null, 50);
+            fail("Command didn't time out");
+        } catch (ScriptException e) {
+            assertEquals(ErrorType.Timeout, e.getErrorType());
+        }
+        assertEquals(1, socket.getCommandTimeouts());
+        assertEquals(0, socket.getPendingCommandCount());
+
+        // The response eventually turns up, and is dropped
+        socket.respond(socket.messages.get(0).getInt("id"), "pong");
+        assertEquals(1, socket.getLateResponses());
+    }
+
+    @Test
+    public void closeFailsPendingCommands() throws Exception {
+        SilentWebSocket socket = new SilentWebSocket();
+
+        CompletableFuture<JSONObject> future = socket.sendCommandAsync("waitPageLoad", null);
+        socket.close();
+        try {
+            future.get();
+            fail("Command completed after the connection closed");
+        } catch (ExecutionException e) {
+            assertEquals("Lost connection to browser.", e.getCause().getMessage());
+        }
+        assertEquals(0, socket.getPendingCommandCount());
+        // The pool's health check asks after the socket has gone
+        assertFalse(socket.isOpen());
+    }
+
+    private static ByteBuffer binaryMessage(byte type, int id, String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(13 + bytes.length);
+        buffer.put(type).putInt(id);
+        if (type == BinaryFrame.SCREENCAST_FRAME) {
+            buffer.putDouble(1.5);
+        }
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void commandData() throws Exception {
+        List<BinaryFrame> frames = new ArrayList<>();
+        SilentWebSocket socket = new SilentWebSocket() {
+            @Override
+            protected void onScreencastFrame(BinaryFrame frame) {
+                frames.add(frame);
+            }
+        };
+
+        // Two screenshots in flight at once, each gets its own data
+        CompletableFuture<JSONObject> first = socket.sendCommandAsync("screenshot", null);
+        CompletableFuture<JSONObject> second = socket.sendCommandAsync("screenshot", null);
+        int firstId = socket.messages.get(0).getInt("id");
+        int secondId = socket.messages.get(1).getInt("id");
+        socket.onMessage(binaryMessage(BinaryFrame.COMMAND_DATA, secondId, "two"));
+        socket.respond(secondId, "");
+        socket.onMessage(binaryMessage(BinaryFrame.COMMAND_DATA, firstId, "one"));
+        socket.respond(firstId, "");
+
+        assertEquals("one", StandardCharsets.UTF_8.decode(socket.takeCommandData(first.get())).toString());
+        assertEquals("two", StandardCharsets.UTF_8.decode(socket.takeCommandData(second.get())).toString());
+
+        // Nobody waiting on it
+        socket.onMessage(binaryMessage(BinaryFrame.COMMAND_DATA, 1000, "late"));
+        assertEquals(1, socket.getLateResponses());
+
+        socket.onMessage(binaryMessage(BinaryFrame.SCREENCAST_FRAME, 7, "frame"));
+        assertEquals(1, frames.size());
+        assertEquals(7, frames.get(0).getId());
+        assertEquals(1.5, frames.get(0).getTimestamp(), 0);
+        assertArrayEquals("frame".getBytes(StandardCharsets.UTF_8), BinaryFrame.toArray(frames.get(0).getPayload()));
+    }
+
+    @Test
+    public void sendCommands() throws JSONException {
+        ReversingWebSocket socket = new ReversingWebSocket();
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("selector", "#input1");
+        List<JSONObject> responses = socket.sendCommands(Arrays.asList(
+            new BrowserWebSocket.Command("type", params),
+            new BrowserWebSocket.Command("click", null),
+            new BrowserWebSocket.Command("submit", params)));
+
+        // All sent in one message
+        assertEquals(1, socket.messages.size());
+        JSONArray commands = new JSONObject(socket.messages.get(0)).getJSONArray("commands");
+        assertEquals(3, commands.length());
+        assertEquals("#input1", commands.getJSONObject(0).getJSONObject("params").getString("selector"));
+        assertFalse(commands.getJSONObject(1).has("params"));
+
+        // Responses are matched to their commands
+        assertEquals(3, responses.size());
+        assertEquals("type", responses.get(0).getJSONObject("response").getString("value"));
+        assertEquals("click", responses.get(1).getJSONObject("response").getString("value"));
+        assertEquals("submit", responses.get(2).getJSONObject("response").getString("value"));
+    }
+
+    @Test
+    public void sendCommandsTimeout() throws Exception {
+        SilentWebSocket socket = new SilentWebSocket();
+        socket.commandTimeout = 50;
+
+        try {
+            socket.sendCommands(Arrays.asList(
+                new BrowserWebSocket.Command("click", null),
+                new BrowserWebSocket.Command("submit", null)));
+            fail("Commands didn't time out");
+        } catch (ScriptException e) {
+            assertEquals(ErrorType.Timeout, e.getErrorType());
+        }
+
+        // Nothing is left waiting for the rest of the batch
+        assertEquals(0, socket.getPendingCommandCount());
+    }
+}
@@ -0,0 +1,131 @@
+package com.loadtestgo.script.engine.internal.server;
+
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.FramedataImpl1;
+import org.java_websocket.util.ByteBufferPool;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class MessageReassemblerTest {
+    private final ByteBufferPool pool = new ByteBufferPool(true, 1024 * 1024, 4);
+
+    private static Framedata fragment(Framedata.Opcode opcode, byte[] bytes, boolean fin) throws Exception {
+        FramedataImpl1 frame = new FramedataImpl1(opcode);
+        frame.setPayload(ByteBuffer.wrap(bytes));
+        frame.setFin(fin);
+        return frame;
+    }
+
+    @Test
+    public void splitUtf8() throws Exception {
+        MessageReassembler reassembler = new MessageReassembler(1024, pool);
+        byte[] bytes = "{\"value\": \"caf\u00e9 \u2603\"}".getBytes(StandardCharsets.UTF_8);
+
+        // Split in the middle of the two byte e-acute
+        int split = "{\"value\": \"caf".length() + 1;
+        assertNull(reassembler.add(fragment(Framedata.Opcode.TEXT,
+            Arrays.copyOfRange(bytes, 0, split), false)));
+        MessageReassembler.Message message = reassembler.add(fragment(Framedata.Opcode.CONTINUOUS,
+            Arrays.copyOfRange(bytes, split, bytes.length), true));
+        assertEquals("{\"value\": \"caf\u00e9 \u2603\"}", message.text);
+        assertNull(message.binary);
+
+        // Ready for the next message
+        message = reassembler.add(fragment(Framedata.Opcode.TEXT, "{}".getBytes(StandardCharsets.UTF_8), true));
+        assertEquals("{}", message.text);
+    }
+
+    @Test
+    public void binary() throws Exception {
+        MessageReassembler reassembler = new MessageReassembler(Integer.MAX_VALUE, pool);
+        byte[] first = new byte[MessageReassembler.INITIAL_CAPACITY];
+        Arrays.fill(first, (byte) 1);
+        byte[] second = new byte[100];
+        Arrays.fill(second, (byte) 2);
+
+        assertNull(reassembler.add(fragment(Framedata.Opcode.BINARY, first, false)));
+        MessageReassembler.Message message = reassembler.add(fragment(Framedata.Opcode.CONTINUOUS, second, true));
+        assertNull(message.text);
+        assertEquals(first.length + second.length, message.binary.remaining());
+        assertEquals(1, message.binary.get(0));
+        assertEquals(2, message.binary.get(first.length + second.length - 1));
+
+        // The next message doesn't overwrite the one handed out
+        reassembler.add(fragment(Framedata.Opcode.BINARY, new byte[10], true));
+        assertEquals(1, message.binary.get(0));
+    }
+
+    @Test
+    public void maxSize() throws Exception {
+        MessageReassembler reassembler = new MessageReassembler(100, pool);
+        assertNull(reassembler.add(fragment(Framedata.Opcode.TEXT, new byte[60], false)));
+        assertNull(reassembler.add(fragment(Framedata.Opcode.CONTINUOUS, new byte[60], false)));
+        try {
+            reassembler.add(fragment(Framedata.Opcode.CONTINUOUS, new byte[60], true));
+            fail("Message over the max size wasn't dropped");
+        } catch (MessageReassembler.MessageException e) {
+            // Expected
+        }
+
+        // Following messages are fine
+        MessageReassembler.Message message =
+            reassembler.add(fragment(Framedata.Opcode.TEXT, "ok".getBytes(StandardCharsets.UTF_8), true));
+        assertEquals("ok", message.text);
+    }
+
+    @Test
+    public void invalidUtf8() throws Exception {
+        MessageReassembler reassembler = new MessageReassembler(100, pool);
+        try {
+            reassembler.add(fragment(Framedata.Opcode.TEXT, new byte[] { (byte) 0xc3 }, true));
+            fail("Invalid UTF-8 was decoded");
+        } catch (MessageReassembler.MessageException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void buffersArePooled() throws Exception {
+        MessageReassembler reassembler = new MessageReassembler(Integer.MAX_VALUE, pool);
+        byte[] first = new byte[MessageReassembler.INITIAL_CAPACITY];
+        Arrays.fill(first, (byte) 'a');
+
+        // Growing swaps the buffer for a bigger one, the smaller goes back to the pool
+        assertNull(reassembler.add(fragment(Framedata.Opcode.TEXT, first, false)));
+        assertNotNull(reassembler.add(fragment(Framedata.Opcode.CONTINUOUS, first, true)));
+        assertEquals(2, pool.getAllocatedCount());
+
+        // The text message's buffer was released once decoded
+        assertNull(reassembler.add(fragment(Framedata.Opcode.TEXT, first, false)));
+        assertNotNull(reassembler.add(fragment(Framedata.Opcode.CONTINUOUS, first, true)));
+        assertEquals(2, pool.getAllocatedCount());
+        assertEquals(2, pool.getReusedCount());
+
+        // Binary messages are kept until the receiver releases them
+        assertNull(reassembler.add(fragment(Framedata.Opcode.BINARY, first, false)));
+        MessageReassembler.Message message = reassembler.add(fragment(Framedata.Opcode.CONTINUOUS, first, true));
+        assertTrue(message.binary.isDirect());
+        assertEquals(2, pool.getAllocatedCount());
+        pool.release(message.binary);
+        reassembler.add(fragment(Framedata.Opcode.BINARY, first, false));
+        reassembler.add(fragment(Framedata.Opcode.CONTINUOUS, first, true));
+        assertEquals(2, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void closeReleasesPartialMessage() throws Exception {
+        MessageReassembler reassembler = new MessageReassembler(1024, pool);
+        assertNull(reassembler.add(fragment(Framedata.Opcode.TEXT, new byte[10], false)));
+        reassembler.close();
+        pool.acquire(MessageReassembler.INITIAL_CAPACITY);
+        assertEquals(1, pool.getReusedCount());
+    }
+}
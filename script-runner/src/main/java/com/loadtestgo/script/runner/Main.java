@@ -24,12 +24,14 @@ import org.json.JSONException;
 public class Main {
     private static final double MAX_SCRIPT_TIMEOUT_SECONDS = 10 * 1000 * 1000;
     private static final double DEFAULT_SCRIPT_TIMEOUT_SECONDS = 60;
+    private static final int MAX_WORKERS = 256;
     public static String AppName = "PizzaScript";
 
     private String fileName = null;
     private String outputDir = null;
     private boolean writeJunitXmlFile = false;
     private double timeout = DEFAULT_SCRIPT_TIMEOUT_SECONDS;
+    private int workers = 0; // 0 = use the value from the config file
     private Settings overrideSettings = new Settings();
 
     public static void main(String[] args) {
@@ -81,6 +83,25 @@ public class Main {
                             printErrorWithHelp("-" + switchName + " requires a timeout parameter");
                         }
                         break;
+                    case "w":
+                    case "workers":
+                        i++;
+                        if (i < args.length) {
+                            String w = args[i];
+                            try {
+                                workers = Integer.parseInt(w);
+                                if (workers < 1) {
+                                    printErrorWithHelp("Workers must be one or more");
+                                } else if (workers > MAX_WORKERS) {
+                                    printErrorWithHelp("Workers must be less than or equal to " + MAX_WORKERS);
+                                }
+                            } catch (NumberFormatException e) {
+                                printErrorWithHelp("Workers " + w + " not a valid number");
+                            }
+                        } else {
+                            printErrorWithHelp("-" + switchName + " requires a worker count parameter");
+                        }
+                        break;
                     case "junit":
                         writeJunitXmlFile = true;
                         break;
@@ -152,6 +173,8 @@ public class Main {
         stdout("                       default timeout is 60 seconds");
         stdout("                       set to 0 to disable the timeout");
         stdout("  --version / -v       print the version number");
+        stdout("  --workers / -w <n>   run up to n tests at the same time, each in its own browser");
+        stdout("                       can be specified in json file, defaults to 1");
         stdout();
         stdout("Run a file:");
         stdout("  pizzascript filename.js");
@@ -165,6 +188,9 @@ public class Main {
         stdout("Run all files in a directory with a timeout of 7.5 secs per test:");
         stdout("  pizzascript dir -t 7.5");
         stdout();
+        stdout("Run all files in a directory, four at a time:");
+        stdout("  pizzascript dir -w 4");
+        stdout();
     }
 
     private void printVersion() {
@@ -232,6 +258,11 @@ public class Main {
             }
         }
 
+        // The command line worker count overrides the config file
+        if (workers > 0) {
+            testConfig.setWorkers(workers);
+        }
+
         RunnerTestResults runnerTestResults = new RunnerTestResults();
         runnerTestResults.setWriteJUnitXmlFile(writeJunitXmlFile);
 
@@ -258,6 +289,12 @@ public class Main {
             settings.putAll(overrideSettings);
         }
 
+        RunnerSettings runnerSettings = new RunnerSettings(settings);
+        if (runnerSettings.harSpool() && runnerSettings.resultColumns()) {
+            // The spool removes finished requests from memory, the .results file would be missing them
+            printError("runner.results.columns can't be used with runner.har.spool, turn one of them off");
+        }
+
         File chromeExecutable = ChromeFinder.findChrome(settings, stdoutLogger);
         if (chromeExecutable == null) {
             System.exit(-1);
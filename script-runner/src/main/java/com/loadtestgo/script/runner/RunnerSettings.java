@@ -22,4 +22,37 @@ public class RunnerSettings {
     public String screenshotType() {
         return settings.getString("runner.screenshot.type", "jpeg");
     }
+
+    /**
+     * Should HAR files be gzip compressed as they are written (.har.gz)?
+     */
+    public boolean harGzip() {
+        return settings.getBoolean("runner.har.gzip", false);
+    }
+
+    /**
+     * Should finished requests be spooled to disk while the test runs, rather
+     * than kept in memory until the HAR is written at the end?
+     */
+    public boolean harSpool() {
+        return settings.getBoolean("runner.har.spool", false);
+    }
+
+    /**
+     * Should the result also be saved in the columnar binary format (.results),
+     * for aggregating over many runs?  Can't be used with runner.har.spool,
+     * the columns are written from the requests in memory and the spool
+     * removes them.
+     */
+    public boolean resultColumns() {
+        return settings.getBoolean("runner.results.columns", false);
+    }
+
+    /**
+     * Compile all the test scripts before any tests are run, rather than
+     * when each is first run.  The compiled scripts are shared by all workers.
+     */
+    public boolean precompileScripts() {
+        return settings.getBoolean("runner.script.precompile", false);
+    }
 }
@@ -8,6 +8,7 @@ public class RunnerTest {
     private File file;
     private long timeout;
     private String name;
+    private Integer optimizationLevel;
 
     private List<String> attachmentPaths = new ArrayList<>();
 
@@ -39,6 +40,18 @@ public class RunnerTest {
         return file.getName();
     }
 
+    /**
+     * The Rhino optimization level to run the script at, or null to use
+     * the script.optimization.level setting
+     */
+    public Integer getOptimizationLevel() {
+        return optimizationLevel;
+    }
+
+    public void setOptimizationLevel(Integer optimizationLevel) {
+        this.optimizationLevel = optimizationLevel;
+    }
+
     public List<String> getAttachmentPaths() {
         return attachmentPaths;
     }
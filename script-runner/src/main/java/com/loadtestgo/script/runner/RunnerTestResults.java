@@ -10,6 +10,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
@@ -24,12 +25,22 @@ public class RunnerTestResults {
     private List<RunnerTestResult> tests = new ArrayList<>();
     private File outputDir;
     private TestConfig testConfig;
+    private boolean parallel = false;
 
     public void setWriteJUnitXmlFile(boolean writeJUnitXmlFile) {
         this.writeJUnitXmlFile = writeJUnitXmlFile;
     }
 
-    public void startTests(TestConfig testConfig, File outputDir) {
+    /**
+     * When tests are run in parallel the test name and its result are written
+     * as a single line once the test completes, rather than the name being
+     * written up front, so that output from different workers doesn't interleave.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public synchronized void startTests(TestConfig testConfig, File outputDir) {
         this.outputDir = outputDir;
         this.testConfig = testConfig;
         this.allTestsStart = System.currentTimeMillis();
@@ -37,7 +48,7 @@ public class RunnerTestResults {
         info(String.format("Saving results to '%s'...", outputDir.getAbsolutePath()));
     }
 
-    public void endTests() {
+    public synchronized void endTests() {
         String results =
             String.format("%d/%d tests succeeded", testsRan - testsFailed, testsRan);
 
@@ -59,7 +70,7 @@ public class RunnerTestResults {
                 File junitTestResultsFile = new File(outputDir, "junit.xml");
 
                 JUnitXmlWriter jUnitXmlWriter = new JUnitXmlWriter();
-                jUnitXmlWriter.writeResults(junitTestResultsFile, tests, allTestsStart, duration, testConfig);
+                jUnitXmlWriter.writeResults(junitTestResultsFile, getTestsInConfigOrder(), allTestsStart, duration, testConfig);
 
             } catch (FileNotFoundException e) {
                 String error = String.format("Unable to write JUnit test results %s", e.getMessage());
@@ -77,41 +88,64 @@ public class RunnerTestResults {
         }
     }
 
-    public void startTest(RunnerTest runnerTest, TestContext testContext) {
+    public synchronized void startTest(RunnerTest runnerTest, TestContext testContext) {
         testsRan++;
 
         tests.add(new RunnerTestResult(runnerTest, testContext.getTestResult()));
 
-        String testName;
-        if (StringUtils.isSet(runnerTest.getName())) {
-            testName = runnerTest.getName() + " (" + runnerTest.getFileName() + ")";
-        } else {
-            testName = runnerTest.getFileName();
+        String testName = getTestName(runnerTest);
+        if (!parallel) {
+            System.out.print(ansi().fgBright(BLACK).a(outputFormatDate()).fg(DEFAULT).a(testName + " "));
+            System.out.flush();
         }
-
-        System.out.print(ansi().fgBright(BLACK).a(outputFormatDate()).fg(DEFAULT).a(testName + " "));
-        System.out.flush();
         Logger.info("Starting test \'{}\'", testName);
     }
 
-    public void endTest(TestContext testContext, String result) {
+    public synchronized void endTest(RunnerTest runnerTest, TestContext testContext, String result) {
         String duration = getTestDuration(testContext);
+        printTestNameIfParallel(runnerTest);
         System.out.println(ansi().fg(GREEN).a("[OK]").fgBright(BLACK).a(duration).fg(DEFAULT));
         Logger.info("Test OK after" + duration);
         Logger.info(result);
     }
 
-    public void endTestFailed(TestContext testContext, final String message) {
+    public synchronized void endTestFailed(RunnerTest runnerTest, TestContext testContext, final String message) {
         testsFailed++;
 
         String duration = getTestDuration(testContext);
 
+        printTestNameIfParallel(runnerTest);
         System.out.println(ansi().fg(RED).a("[FAILED]").fgBright(BLACK).a(duration));
         System.out.println(ansi().fgBright(BLACK).a(outputFormatDate()).fg(WHITE).a(indent(message, 4, 11)).fg(DEFAULT));
         Logger.info("Test FAILED after" + duration);
         Logger.error(message);
     }
 
+    private void printTestNameIfParallel(RunnerTest runnerTest) {
+        if (parallel) {
+            System.out.print(ansi().fgBright(BLACK).a(outputFormatDate()).fg(DEFAULT).a(getTestName(runnerTest) + " "));
+        }
+    }
+
+    private String getTestName(RunnerTest runnerTest) {
+        if (StringUtils.isSet(runnerTest.getName())) {
+            return runnerTest.getName() + " (" + runnerTest.getFileName() + ")";
+        } else {
+            return runnerTest.getFileName();
+        }
+    }
+
+    /**
+     * Workers finish tests in any order, report them in the order they appear
+     * in the config so the results are consistent between runs.
+     */
+    private List<RunnerTestResult> getTestsInConfigOrder() {
+        List<RunnerTest> configTests = testConfig.getTests();
+        List<RunnerTestResult> ordered = new ArrayList<>(tests);
+        ordered.sort(Comparator.comparingInt(t -> configTests.indexOf(t.getTest())));
+        return ordered;
+    }
+
     private String indent(String message, int firstIndent, int indent) {
         String[] lines = message.split("\n");
         StringBuilder indented = new StringBuilder();
@@ -134,11 +168,11 @@ public class RunnerTestResults {
         return " " + duration + " ms";
     }
 
-    public int failedTestsCount() {
+    public synchronized int failedTestsCount() {
         return testsFailed;
     }
 
-    public int testCount() {
+    public synchronized int testCount() {
         return testsRan;
     }
 
@@ -147,7 +181,7 @@ public class RunnerTestResults {
         return simpleDateFormat.format(new Date());
     }
 
-    public void info(String str) {
+    public synchronized void info(String str) {
         System.out.println(ansi().fgBright(BLACK).a(outputFormatDate()).fg(DEFAULT).a(str));
     }
 }
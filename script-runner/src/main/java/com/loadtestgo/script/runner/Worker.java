@@ -6,7 +6,9 @@ import com.loadtestgo.script.api.TestResult;
 import com.loadtestgo.script.engine.*;
 import com.loadtestgo.script.engine.internal.api.ChromeBrowser;
 import com.loadtestgo.script.engine.internal.browsers.chrome.ChromeProcess;
+import com.loadtestgo.script.har.HarSpool;
 import com.loadtestgo.script.har.HarWriter;
+import com.loadtestgo.script.har.ResultColumnsWriter;
 import com.loadtestgo.script.runner.config.TestConfig;
 import com.loadtestgo.util.FileUtils;
 import com.loadtestgo.util.Path;
@@ -24,6 +26,14 @@ import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.UnknownHostException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Worker {
     private File outputDir;
@@ -59,21 +69,101 @@ public class Worker {
 
         runnerTestResults.startTests(testConfig, outputDir);
 
-        UserContext userContext = new UserContext(engineContext);
+        try {
+            if (runnerSettings.precompileScripts()) {
+                precompileScripts(engineContext, testConfig);
+            }
+
+            int workers = Math.min(testConfig.getWorkers(), testConfig.getTests().size());
+            if (workers <= 1) {
+                runTests(engineContext, 0, testConfig, new ConcurrentLinkedQueue<>(testConfig.getTests()));
+            } else {
+                runTestsInParallel(engineContext, workers, testConfig);
+            }
+        } finally {
+            engineContext.cleanup();
+            runnerTestResults.endTests();
+        }
+
+        return (runnerTestResults.failedTestsCount() == 0);
+    }
+
+    /**
+     * Compile each test's script into the engine's script cache up front, the
+     * workers then all reuse the compiled scripts.  Scripts that fail to
+     * compile are left for the test itself to report.
+     */
+    private void precompileScripts(EngineContext engineContext, TestConfig testConfig) {
+        long startTime = System.currentTimeMillis();
+        int defaultOptimizationLevel = engineContext.getEngineSettings().getScriptOptimizationLevel();
+        for (RunnerTest test : testConfig.getTests()) {
+            String script = FileUtils.readAllText(test.getFile());
+            if (script == null) {
+                continue;
+            }
+            Integer optimizationLevel = test.getOptimizationLevel();
+            try {
+                JavaScriptEngine.precompile(engineContext, script, test.getFileName(),
+                    optimizationLevel != null ? optimizationLevel : defaultOptimizationLevel);
+            } catch (ScriptException e) {
+                Logger.info("Unable to precompile {}: {}", test.getFileName(), e.getMessage());
+            }
+        }
+        Logger.info("Precompiled {} scripts in {}ms", engineContext.getScriptCache().size(),
+            System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Run the tests across multiple workers.  Each worker has its own UserContext
+     * (and so its own browser, Chrome profile and tmp dir), but they all share the
+     * same EngineContext and websocket server.
+     */
+    private void runTestsInParallel(EngineContext engineContext, int workers, TestConfig testConfig) {
+        Queue<RunnerTest> queue = new ConcurrentLinkedQueue<>(testConfig.getTests());
+
+        runnerTestResults.setParallel(true);
+        engineContext.setWorkerCount(workers);
+        runnerTestResults.info(String.format("Running tests with %d workers", workers));
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; ++i) {
+                final int workerId = i;
+                futures.add(executor.submit(() -> runTests(engineContext, workerId, testConfig, queue)));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Logger.error(e.getCause(), "Worker stopped unexpectedly");
+                }
+            }
+        } catch (InterruptedException e) {
+            Logger.error("Interrupted while waiting for workers to finish");
+            executor.shutdownNow();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Run tests taken from the queue until there are none left.
+     */
+    private void runTests(EngineContext engineContext, int workerId, TestConfig testConfig, Queue<RunnerTest> queue) {
+        UserContext userContext = new UserContext(engineContext, workerId);
         userContext.setKeepBrowserOpen(testConfig.getKeepBrowserOpen());
         userContext.setReuseSession(testConfig.getReuseSession());
 
         try {
-            for (RunnerTest test : testConfig.getTests()) {
+            RunnerTest test;
+            while ((test = queue.poll()) != null) {
                 processTest(userContext, test);
             }
         } finally {
             userContext.cleanup();
-            engineContext.cleanup();
-            runnerTestResults.endTests();
         }
-
-        return (runnerTestResults.failedTestsCount() == 0);
     }
 
     private boolean processTest(UserContext userContext, RunnerTest test) {
@@ -84,6 +174,7 @@ public class Worker {
         }
         TestContext testContext = new TestContext(userContext, testName);
         testContext.setBaseDirectory(Path.getParentDirectory(test.getFile()));
+        testContext.setScriptOptimizationLevel(test.getOptimizationLevel());
         try {
             success = processTest(testContext, test);
         } finally {
@@ -105,6 +196,17 @@ public class Worker {
 
         testContext.setOutputDirectory(outputDir);
 
+        HarSpool harSpool = null;
+        if (runnerSettings.harSpool()) {
+            File spoolFile = Path.getCanonicalFile(new File(outputDir, fileName + ".har.ndjson"));
+            try {
+                harSpool = new HarSpool(spoolFile);
+                testContext.setHarSpool(harSpool);
+            } catch (IOException e) {
+                Logger.error("Unable to create HAR spool {}: {}", spoolFile, e.getMessage());
+            }
+        }
+
         File consoleLogFilePath = Path.getCanonicalFile(new File(outputDir, fileName + ".txt"));
         try {
             engine.init(testContext);
@@ -158,16 +260,48 @@ public class Worker {
             }
         }
 
+        saveHar(testContext, harSpool, outputDir, fileName);
+        if (runnerSettings.resultColumns()) {
+            saveResultColumns(testContext, outputDir, fileName);
+        }
+
+        return success;
+    }
+
+    private void saveResultColumns(TestContext testContext, File outputDir, String fileName) {
+        File resultsFile = Path.getCanonicalFile(new File(outputDir, fileName + ".results"));
+        try {
+            ResultColumnsWriter.save(testContext.getTestResult(), resultsFile);
+            testContext.addFile(resultsFile);
+        } catch (IOException e) {
+            Logger.error("Unable to save results file {}: {}", resultsFile, e.getMessage());
+        }
+    }
+
+    private void saveHar(TestContext testContext, HarSpool harSpool, File outputDir, String fileName) {
         TestResult testResult = testContext.getTestResult();
-        File harFile = Path.getCanonicalFile(new File(outputDir, fileName + ".har"));
+        boolean gzip = runnerSettings.harGzip();
+        File harFile = Path.getCanonicalFile(new File(outputDir, fileName + (gzip ? ".har.gz" : ".har")));
         try {
-            HarWriter.save(testResult, harFile);
+            if (harSpool != null) {
+                harSpool.finish(testResult);
+                harSpool.close();
+            }
+
+            if (harSpool != null && !harSpool.hasFailed()) {
+                HarWriter.saveSpool(harSpool.getFile(), harFile, gzip);
+                Logger.info("Spooled {} HAR entries, {} removed from memory",
+                    harSpool.getNumEntries(), harSpool.getNumEvicted());
+                Files.delete(harSpool.getFile().toPath());
+            } else if (gzip) {
+                HarWriter.saveGzip(testResult, harFile);
+            } else {
+                HarWriter.save(testResult, harFile);
+            }
             testContext.addFile(harFile);
         } catch (IOException e) {
             Logger.error(String.format("Unable to save har file: %s", e.getMessage()));
         }
-
-        return success;
     }
 
     private boolean runScript(TestContext testContext, JavaScriptEngine engine, RunnerTest test) {
@@ -181,10 +315,10 @@ public class Worker {
                 throw new IOException("Error reading '" + test.getFile().getAbsolutePath() + "'");
             }
             Object result = engine.runScript(scriptContexts, test.getFileName(), test.getTimeout());
-            runnerTestResults.endTest(testContext, engine.valueToString(result));
+            runnerTestResults.endTest(test, testContext, engine.valueToString(result));
             return true;
         } catch (IOException|ScriptException e) {
-            runnerTestResults.endTestFailed(testContext, e.getMessage());
+            runnerTestResults.endTestFailed(test, testContext, e.getMessage());
             return false;
         }
     }
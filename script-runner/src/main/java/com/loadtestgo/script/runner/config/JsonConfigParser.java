@@ -44,6 +44,12 @@ public class JsonConfigParser {
 
         testConfig.setName(root.optString("name"));
 
+        int workers = root.optInt("workers", 1);
+        if (workers < 1) {
+            throw new JSONException("workers must be one or more");
+        }
+        testConfig.setWorkers(workers);
+
         JSONObject settings = root.optJSONObject("settings");
         if (settings != null) {
             Map<String,String> settingsMap = new HashMap<>();
@@ -86,6 +92,14 @@ public class JsonConfigParser {
                 test.setName(jTest.getString("name"));
             }
 
+            if (jTest.has("optimizationLevel")) {
+                int optimizationLevel = jTest.getInt("optimizationLevel");
+                if (optimizationLevel < -1 || optimizationLevel > 9) {
+                    throw new JSONException("optimizationLevel must be between -1 and 9");
+                }
+                test.setOptimizationLevel(optimizationLevel);
+            }
+
             testConfig.addTest(test);
         }
     }
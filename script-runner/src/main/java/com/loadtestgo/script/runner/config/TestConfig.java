@@ -14,6 +14,7 @@ public class TestConfig {
     private String name;
     private Map<String, String> settings = new HashMap<>();
     private double defaultTimeout;
+    private int workers = 1;
 
     public String getFileName() {
         return filename;
@@ -76,4 +77,16 @@ public class TestConfig {
     public double getDefaultTimeout() {
         return defaultTimeout;
     }
+
+    /**
+     * The number of tests to run at the same time, each worker gets its own
+     * browser and Chrome profile.
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
 }
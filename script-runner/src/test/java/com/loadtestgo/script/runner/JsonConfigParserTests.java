@@ -22,6 +22,35 @@ public class JsonConfigParserTests {
         Assert.assertEquals(new File("a/abc.js"), config.getTests().get(0).getFile());
     }
 
+    @Test
+    public void workers() {
+        String json = "{ workers: 4, tests: [ { file: 'abc.js' } ] }";
+
+        TestConfig config = new TestConfig();
+        config.setFileName("");
+
+        JsonConfigParser.parseSource(config, json, new File("a"));
+        Assert.assertEquals(4, config.getWorkers());
+    }
+
+    @Test
+    public void workersDefault() {
+        String json = "{ tests: [ { file: 'abc.js' } ] }";
+
+        TestConfig config = new TestConfig();
+        config.setFileName("");
+
+        JsonConfigParser.parseSource(config, json, new File("a"));
+        Assert.assertEquals(1, config.getWorkers());
+    }
+
+    @Test
+    public void workersInvalid() {
+        String json = "{ workers: 0, tests: [ { file: 'abc.js' } ] }";
+
+        expectException("workers must be one or more", json);
+    }
+
     @Test
     public void parseError() {
         String json = "{ ";
@@ -57,6 +86,19 @@ public class JsonConfigParserTests {
         expectException("test must contain 'file' property", json);
     }
 
+    @Test
+    public void optimizationLevel() throws JSONException {
+        TestConfig config = new TestConfig();
+        JsonConfigParser.parseSource(config,
+            "{ tests: [ { file: 'a.js', optimizationLevel: -1 }, { file: 'b.js' } ] }", new File("a"));
+
+        Assert.assertEquals(Integer.valueOf(-1), config.getTests().get(0).getOptimizationLevel());
+        Assert.assertNull(config.getTests().get(1).getOptimizationLevel());
+
+        expectException("optimizationLevel must be between -1 and 9",
+            "{ tests: [ { file: 'a.js', optimizationLevel: 10 } ] }");
+    }
+
     private void expectException(String expectedError, String json) {
         TestConfig config = new TestConfig();
         config.setFileName("");
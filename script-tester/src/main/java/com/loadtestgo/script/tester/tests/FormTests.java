@@ -97,4 +97,72 @@ public class FormTests extends JavaScriptTest {
         assertNoError(result);
         assertEquals(3, result.getPages().size());
     }
+
+    @Test
+    public void batch() {
+        String script = String.format(
+            "b = pizza.open(\"%s\");\n" +
+            "b.batch(function() {\n" +
+            "  b.type('#input1', 'first');\n" +
+            "  b.type('#input2', 'second');\n" +
+            "  b.check('#checkbox1');\n" +
+            "  assert.eq(b.getValue('#input1'), 'first');\n" +
+            "  b.setValue('#input1', 'third');\n" +
+            "});\n" +
+            "assert.eq(b.getValue('#input1'), 'third');\n" +
+            "assert.eq(b.getValue('#input2'), 'second');\n" +
+            "assert.ok(b.checked('#checkbox1'));\n",
+            getTestUrl("files/form.html"));
+
+        TestResult result = runScript(script);
+
+        assertNoError(result);
+        assertEquals(1, result.getPages().size());
+    }
+
+    @Test
+    public void batchFail() {
+        String script = String.format(
+            "b = pizza.open(\"%s\");\n" +
+            "b.batch(function() {\n" +
+            "  b.type('#input1', 'first');\n" +
+            "  b.click('#not-an-element');\n" +
+            "  b.type('#input2', 'second');\n" +
+            "});\n",
+            getTestUrl("files/form.html"));
+
+        TestResult result = runScript(script);
+
+        assertError("Unable to find element for selector '#not-an-element'!", ErrorType.Script, result);
+    }
+
+    @Test
+    public void batchFailCaught() {
+        String script = String.format(
+            "b = pizza.open(\"%s\");\n" +
+            "var batchFailed = false;\n" +
+            "try {\n" +
+            "  b.batch(function() {\n" +
+            "    b.click('#not-an-element');\n" +
+            "  });\n" +
+            "} catch (e) {\n" +
+            "  batchFailed = true;\n" +
+            "}\n" +
+            "assert.ok(batchFailed);\n" +
+            // No longer batching, so the command is sent and fails straight away
+            "var clickFailed = false;\n" +
+            "try {\n" +
+            "  b.click('#not-an-element');\n" +
+            "} catch (e) {\n" +
+            "  clickFailed = true;\n" +
+            "}\n" +
+            "assert.ok(clickFailed);\n" +
+            "b.type('#input2', 'second');\n" +
+            "assert.eq(b.getValue('#input2'), 'second');\n",
+            getTestUrl("files/form.html"));
+
+        TestResult result = runScript(script);
+
+        assertNoError(result);
+    }
 }
@@ -0,0 +1,339 @@
+package com.loadtestgo.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compact list of HTTP headers.
+ *
+ * A long test records thousands of requests, each with a couple of dozen
+ * headers, so a HttpHeader with two Strings for each header adds up.
+ * Instead the values are stored as UTF-8 in one byte array, and the names,
+ * which are nearly always one of a few hundred, are interned in a table
+ * shared by all the lists and stored as an index into it.
+ *
+ * The list can be used like any other list of HttpHeader, get() creates a
+ * HttpHeader each time it's called.  Replacing or removing a header leaves
+ * its bytes unused in the array until there's enough of them to be worth
+ * copying the rest, or trimToSize() is called.  Code going through the headers of
+ * many requests should use the accessors that take the header index
+ * instead, getName() doesn't allocate and the value can be read straight
+ * from the byte array.
+ */
+public class HttpHeaders extends AbstractList<HttpHeader> {
+    // Per header: name id (or INLINE_NAME), offset into data, name length, value length (or NULL_VALUE)
+    private static final int FIELDS = 4;
+    private static final int INLINE_NAME = -1;
+    private static final int NULL_VALUE = -1;
+    private static final byte[] EMPTY_DATA = new byte[0];
+    private static final int[] EMPTY_INDEX = new int[0];
+
+    private byte[] data = EMPTY_DATA;
+    private int dataLength;
+    // Bytes in data no longer used by any header
+    private int unused;
+    private int[] index = EMPTY_INDEX;
+    private int size;
+
+    public HttpHeaders() {
+    }
+
+    public HttpHeaders(Collection<? extends HttpHeader> headers) {
+        int length = 0;
+        for (HttpHeader header : headers) {
+            length += header.value == null ? 0 : header.value.length();
+        }
+        data = new byte[length];
+        index = new int[headers.size() * FIELDS];
+        for (HttpHeader header : headers) {
+            add(header.name, header.value);
+        }
+        if (dataLength != data.length) {
+            trimToSize();
+        }
+    }
+
+    /**
+     * Copy the headers into a HttpHeaders, unless they already are one
+     */
+    public static HttpHeaders of(Collection<? extends HttpHeader> headers) {
+        if (headers == null) {
+            return new HttpHeaders();
+        } else if (headers instanceof HttpHeaders) {
+            return (HttpHeaders) headers;
+        }
+        return new HttpHeaders(headers);
+    }
+
+    public void add(String name, String value) {
+        insert(size, name, value);
+    }
+
+    private void insert(int i, String name, String value) {
+        int nameId = Names.id(name);
+        byte[] nameBytes = nameId == INLINE_NAME ? utf8(name) : EMPTY_DATA;
+        byte[] valueBytes = utf8(value);
+        int offset = store(nameBytes, valueBytes);
+        if (size * FIELDS == index.length) {
+            index = Arrays.copyOf(index, Math.max(8 * FIELDS, index.length * 2));
+        }
+        System.arraycopy(index, i * FIELDS, index, (i + 1) * FIELDS, (size - i) * FIELDS);
+        setFields(i, nameId, offset, nameBytes.length, value == null ? NULL_VALUE : valueBytes.length);
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Append the name and value bytes to the data
+     *
+     * @return the offset they were stored at
+     */
+    private int store(byte[] nameBytes, byte[] valueBytes) {
+        ensureData(nameBytes.length + valueBytes.length);
+        int offset = dataLength;
+        System.arraycopy(nameBytes, 0, data, dataLength, nameBytes.length);
+        dataLength += nameBytes.length;
+        System.arraycopy(valueBytes, 0, data, dataLength, valueBytes.length);
+        dataLength += valueBytes.length;
+        return offset;
+    }
+
+    private void setFields(int i, int nameId, int offset, int nameLength, int valueLength) {
+        int f = i * FIELDS;
+        index[f] = nameId;
+        index[f + 1] = offset;
+        index[f + 2] = nameLength;
+        index[f + 3] = valueLength;
+    }
+
+    private int storedLength(int i) {
+        int f = i * FIELDS;
+        return index[f + 2] + Math.max(0, index[f + 3]);
+    }
+
+    private void ensureData(int n) {
+        if (dataLength + n <= data.length) {
+            return;
+        }
+        if (unused > 0 && unused >= (dataLength >> 1)) {
+            // More than half the bytes are from replaced or removed headers
+            compact(Math.max(dataLength - unused + n, data.length));
+        } else {
+            data = Arrays.copyOf(data, Math.max(dataLength + n, data.length + (data.length >> 1)));
+        }
+    }
+
+    /**
+     * Copy the bytes still in use to a new array of the given size
+     */
+    private void compact(int capacity) {
+        byte[] compacted = capacity == 0 ? EMPTY_DATA : new byte[capacity];
+        int length = 0;
+        for (int i = 0; i < size; ++i) {
+            int n = storedLength(i);
+            System.arraycopy(data, index[i * FIELDS + 1], compacted, length, n);
+            index[i * FIELDS + 1] = length;
+            length += n;
+        }
+        data = compacted;
+        dataLength = length;
+        unused = 0;
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null || s.isEmpty() ? EMPTY_DATA : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean add(HttpHeader header) {
+        add(header.name, header.value);
+        return true;
+    }
+
+    @Override
+    public void add(int i, HttpHeader header) {
+        if (i < 0 || i > size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        insert(i, header.name, header.value);
+    }
+
+    @Override
+    public HttpHeader set(int i, HttpHeader header) {
+        HttpHeader previous = get(i);
+        int nameId = Names.id(header.name);
+        byte[] nameBytes = nameId == INLINE_NAME ? utf8(header.name) : EMPTY_DATA;
+        byte[] valueBytes = utf8(header.value);
+        int offset = store(nameBytes, valueBytes);
+        unused += storedLength(i);
+        setFields(i, nameId, offset, nameBytes.length, header.value == null ? NULL_VALUE : valueBytes.length);
+        return previous;
+    }
+
+    @Override
+    public HttpHeader remove(int i) {
+        HttpHeader previous = get(i);
+        unused += storedLength(i);
+        System.arraycopy(index, (i + 1) * FIELDS, index, i * FIELDS, (size - i - 1) * FIELDS);
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public HttpHeader get(int i) {
+        return new HttpHeader(getName(i), getValue(i));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        dataLength = 0;
+        unused = 0;
+        modCount++;
+    }
+
+    /**
+     * Free any space left over from adding, replacing and removing headers
+     */
+    public void trimToSize() {
+        compact(dataLength - unused);
+        index = size == 0 ? EMPTY_INDEX : Arrays.copyOf(index, size * FIELDS);
+    }
+
+    private int field(int i, int field) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return index[i * FIELDS + field];
+    }
+
+    public String getName(int i) {
+        int nameId = field(i, 0);
+        if (nameId == INLINE_NAME) {
+            return new String(data, index[i * FIELDS + 1], index[i * FIELDS + 2], StandardCharsets.UTF_8);
+        }
+        return Names.name(nameId);
+    }
+
+    public boolean nameEqualsIgnoreCase(int i, String name) {
+        int nameId = field(i, 0);
+        if (nameId == INLINE_NAME) {
+            return getName(i).equalsIgnoreCase(name);
+        }
+        return Names.name(nameId).equalsIgnoreCase(name);
+    }
+
+    public String getValue(int i) {
+        int length = getValueLength(i);
+        if (length == NULL_VALUE) {
+            return null;
+        }
+        return new String(data, getValueOffset(i), length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The array the UTF-8 values are stored in, must not be modified
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getValueOffset(int i) {
+        return field(i, 1) + index[i * FIELDS + 2];
+    }
+
+    /**
+     * The number of UTF-8 bytes in the value
+     *
+     * @return -1 if the value is null
+     */
+    public int getValueLength(int i) {
+        return field(i, 3);
+    }
+
+    /**
+     * The value of the first header with the name, ignoring case
+     *
+     * @return null if there's no header with the name
+     */
+    public String getFirst(String name) {
+        for (int i = 0; i < size; ++i) {
+            if (nameEqualsIgnoreCase(i, name)) {
+                return getValue(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The number of UTF-8 bytes in all the names and values
+     */
+    public int getByteCount() {
+        int count = 0;
+        for (int i = 0; i < size; ++i) {
+            int nameId = index[i * FIELDS];
+            count += nameId == INLINE_NAME ? index[i * FIELDS + 2] : Names.byteLength(nameId);
+            count += Math.max(0, index[i * FIELDS + 3]);
+        }
+        return count;
+    }
+
+    /**
+     * The header names seen by the process.  The table is capped so a site
+     * sending random names can't fill the heap, names after that are stored
+     * with the value.
+     */
+    private static class Names {
+        private static final int MAX_NAMES = 4096;
+
+        private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        private static volatile String[] names = new String[256];
+        private static volatile int[] byteLengths = new int[256];
+        private static int count;
+
+        static int id(String name) {
+            if (name == null) {
+                name = "";
+            }
+            Integer id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            synchronized (Names.class) {
+                id = ids.get(name);
+                if (id != null) {
+                    return id;
+                }
+                if (count == MAX_NAMES) {
+                    return INLINE_NAME;
+                }
+                if (count == names.length) {
+                    byteLengths = Arrays.copyOf(byteLengths, count * 2);
+                    names = Arrays.copyOf(names, count * 2);
+                }
+                // The arrays are written before the id is published
+                byteLengths[count] = utf8(name).length;
+                names[count] = name;
+                ids.put(name, count);
+                return count++;
+            }
+        }
+
+        static String name(int id) {
+            return names[id];
+        }
+
+        static int byteLength(int id) {
+            return byteLengths[id];
+        }
+    }
+}
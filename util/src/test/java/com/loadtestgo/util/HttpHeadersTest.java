@@ -0,0 +1,158 @@
+package com.loadtestgo.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class HttpHeadersTest {
+    @Test
+    public void addAndGet() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Type", "text/html");
+        headers.add(new HttpHeader("X-Name", "café"));
+        headers.add("X-Empty", "");
+
+        assertEquals(3, headers.size());
+        assertEquals("Content-Type", headers.getName(0));
+        assertEquals("text/html", headers.getValue(0));
+        assertEquals("café", headers.get(1).value);
+        assertEquals("X-Empty", headers.get(2).name);
+        assertEquals("", headers.get(2).value);
+
+        assertEquals("café", new String(headers.getData(), headers.getValueOffset(1),
+            headers.getValueLength(1), StandardCharsets.UTF_8));
+
+        List<String> names = new ArrayList<>();
+        for (HttpHeader header : headers) {
+            names.add(header.name);
+        }
+        assertEquals("[Content-Type, X-Name, X-Empty]", names.toString());
+    }
+
+    @Test
+    public void namesAreInterned() {
+        HttpHeaders a = new HttpHeaders();
+        a.add(new String("Accept-Encoding"), "gzip");
+        HttpHeaders b = new HttpHeaders();
+        b.add(new String("Accept-Encoding"), "br");
+        assertSame(a.getName(0), b.getName(0));
+    }
+
+    @Test
+    public void lookup() {
+        List<HttpHeader> list = new ArrayList<>();
+        list.add(new HttpHeader("content-type", "text/css"));
+        list.add(new HttpHeader("Set-Cookie", "a=b"));
+        list.add(new HttpHeader("Set-Cookie", "c=d"));
+        HttpHeaders headers = HttpHeaders.of(list);
+
+        assertSame(headers, HttpHeaders.of(headers));
+        assertEquals("text/css", headers.getFirst("Content-Type"));
+        assertEquals("a=b", headers.getFirst("set-cookie"));
+        assertNull(headers.getFirst("Location"));
+        assertTrue(headers.nameEqualsIgnoreCase(2, "SET-COOKIE"));
+        assertEquals("content-typetext/cssSet-Cookiea=bSet-Cookiec=d".length(), headers.getByteCount());
+    }
+
+    @Test
+    public void clear() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("A", "1");
+        headers.clear();
+        assertEquals(0, headers.size());
+        headers.add("B", "2");
+        headers.trimToSize();
+        assertEquals("B", headers.getName(0));
+        assertEquals("2", headers.getValue(0));
+        assertEquals(1, headers.getData().length);
+    }
+
+    private static String toString(HttpHeaders headers) {
+        StringBuilder s = new StringBuilder();
+        for (HttpHeader header : headers) {
+            s.append(header.name).append('=').append(header.value).append(';');
+        }
+        return s.toString();
+    }
+
+    @Test
+    public void insertSetAndRemove() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("A", "1");
+        headers.add("C", "3");
+        headers.add(1, new HttpHeader("B", "2"));
+        headers.add(0, new HttpHeader("Start", "0"));
+        assertEquals("Start=0;A=1;B=2;C=3;", toString(headers));
+
+        HttpHeader previous = headers.set(2, new HttpHeader("B", "two"));
+        assertEquals("2", previous.value);
+        assertEquals("Start=0;A=1;B=two;C=3;", toString(headers));
+
+        assertEquals("Start", headers.remove(0).name);
+        headers.removeIf(header -> header.name.equals("C"));
+        assertEquals("A=1;B=two;", toString(headers));
+        assertEquals("A1Btwo".length(), headers.getByteCount());
+
+        Iterator<HttpHeader> it = headers.iterator();
+        it.next();
+        it.remove();
+        assertEquals("B=two;", toString(headers));
+
+        try {
+            headers.add(3, new HttpHeader("D", "4"));
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void unusedBytesAreReclaimed() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Cookie", "a=1");
+        headers.add("Host", "example.com");
+        for (int i = 0; i < 1000; ++i) {
+            headers.set(0, new HttpHeader("Cookie", "a=" + i));
+        }
+        assertTrue(headers.getData().length < 100);
+        assertEquals("a=999", headers.getValue(0));
+        assertEquals("example.com", headers.getValue(1));
+
+        headers.remove(0);
+        headers.trimToSize();
+        assertEquals("example.com", new String(headers.getData(), StandardCharsets.UTF_8));
+        assertEquals("example.com", headers.getValue(0));
+    }
+
+    @Test
+    public void nullValues() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("A", null);
+        headers.add(new HttpHeader("B", ""));
+        headers.add(0, new HttpHeader("C", null));
+        headers.set(1, new HttpHeader("D", null));
+
+        assertNull(headers.getValue(0));
+        assertNull(headers.get(1).value);
+        assertEquals("", headers.get(2).value);
+        assertEquals(-1, headers.getValueLength(0));
+        assertEquals(0, headers.getValueLength(2));
+        assertEquals(3, headers.getByteCount());
+
+        HttpHeaders copy = new HttpHeaders(headers);
+        assertNull(copy.getValue(1));
+        assertEquals("", copy.getValue(2));
+    }
+}
@@ -56,6 +56,7 @@ public class SocketChannelIOHelper {
 					return false;
 				} else {
 					ws.outQueue.poll(); // Buffer finished. Remove it.
+					ws.getBufferPool().release( buffer );
 					buffer = ws.outQueue.peek();
 				}
 			} while ( buffer != null );
@@ -34,6 +34,7 @@ import org.java_websocket.handshake.Handshakedata;
 import org.java_websocket.handshake.ServerHandshake;
 import org.java_websocket.handshake.ServerHandshakeBuilder;
 import org.java_websocket.server.WebSocketServer.WebSocketWorker;
+import org.java_websocket.util.ByteBufferPool;
 import org.java_websocket.util.Charsetfunctions;
 
 /**
@@ -88,6 +89,9 @@ public class WebSocketImpl implements WebSocket {
 
 	private Draft draft = null;
 
+	/** Messages may be compressed with the sender's context, so they're framed and queued one at a time */
+	private final Object sendLock = new Object();
+
 	private Role role;
 
 	private Opcode current_continuous_frame_opcode = null;
@@ -104,6 +108,9 @@ public class WebSocketImpl implements WebSocket {
 	
 	private String resourceDescriptor = null;
 
+	/** Where the draft allocates frame buffers from */
+	private ByteBufferPool bufferPool = ByteBufferPool.getDefault();
+
 	/**
 	 * crates a websocket with server role
 	 */
@@ -152,7 +159,7 @@ public class WebSocketImpl implements WebSocket {
 		assert ( socketBuffer.hasRemaining() );
 
 		if( DEBUG )
-			System.out.println( "process(" + socketBuffer.remaining() + "): {" + ( socketBuffer.remaining() > 1000 ? "too big to display" : new String( socketBuffer.array(), socketBuffer.position(), socketBuffer.remaining() ) ) + "}" );
+			System.out.println( "process(" + socketBuffer.remaining() + "): {" + ( socketBuffer.remaining() > 1000 ? "too big to display" : Charsetfunctions.stringAscii( toArray( socketBuffer ) ) ) + "}" );
 
 		if( readystate != READYSTATE.NOT_YET_CONNECTED ) {
 			decodeFrames( socketBuffer );;
@@ -210,6 +217,7 @@ public class WebSocketImpl implements WebSocket {
 					if( draft == null ) {
 						for( Draft d : knownDrafts ) {
 							d = d.copyInstance();
+							d.setBufferPool( bufferPool );
 							try {
 								d.setParseMode( role );
 								socketBuffer.reset();
@@ -378,7 +386,8 @@ public class WebSocketImpl implements WebSocket {
 					}
 				} else if( curop == Opcode.BINARY ) {
 					try {
-						wsl.onWebsocketMessage( this, f.getPayloadData() );
+						// The payload is a view of the receive buffer, the listener gets a copy it can keep
+						wsl.onWebsocketMessage( this, ByteBuffer.wrap( toArray( f.getPayloadData() ) ) );
 					} catch ( RuntimeException e ) {
 						wsl.onWebsocketError( this, e );
 					}
@@ -393,6 +402,12 @@ public class WebSocketImpl implements WebSocket {
 		}
 	}
 
+	private static byte[] toArray( ByteBuffer buf ) {
+		byte[] bytes = new byte[ buf.remaining() ];
+		buf.duplicate().get( bytes );
+		return bytes;
+	}
+
 	private void close( int code, String message, boolean remote ) {
 		if( readystate != READYSTATE.CLOSING && readystate != READYSTATE.CLOSED ) {
 			if( readystate == READYSTATE.OPEN ) {
@@ -547,7 +562,9 @@ public class WebSocketImpl implements WebSocket {
 	public void send( String text ) throws WebsocketNotConnectedException {
 		if( text == null )
 			throw new IllegalArgumentException( "Cannot send 'null' data to a WebSocketImpl." );
-		send( draft.createFrames( text, role == Role.CLIENT ) );
+		synchronized ( sendLock ) {
+			send( draft.createFrames( text, role == Role.CLIENT ) );
+		}
 	}
 
 	/**
@@ -560,7 +577,9 @@ public class WebSocketImpl implements WebSocket {
 	public void send( ByteBuffer bytes ) throws IllegalArgumentException , WebsocketNotConnectedException {
 		if( bytes == null )
 			throw new IllegalArgumentException( "Cannot send 'null' data to a WebSocketImpl." );
-		send( draft.createFrames( bytes, role == Role.CLIENT ) );
+		synchronized ( sendLock ) {
+			send( draft.createFrames( bytes, role == Role.CLIENT ) );
+		}
 	}
 
 	@Override
@@ -637,7 +656,7 @@ public class WebSocketImpl implements WebSocket {
 
 	private void write( ByteBuffer buf ) {
 		if( DEBUG )
-			System.out.println( "write(" + buf.remaining() + "): {" + ( buf.remaining() > 1000 ? "too big to display" : new String( buf.array() ) ) + "}" );
+			System.out.println( "write(" + buf.remaining() + "): {" + ( buf.remaining() > 1000 ? "too big to display" : Charsetfunctions.stringAscii( toArray( buf ) ) ) + "}" );
 
 		outQueue.add( buf );
 		/*try {
@@ -729,6 +748,19 @@ public class WebSocketImpl implements WebSocket {
 		close( CloseFrame.NORMAL );
 	}
 
+	/**
+	 * Use the given pool for the frame buffers, {@link ByteBufferPool#getDefault()} is used otherwise
+	 */
+	public void setBufferPool( ByteBufferPool bufferPool ) {
+		this.bufferPool = bufferPool;
+		if( draft != null )
+			draft.setBufferPool( bufferPool );
+	}
+
+	public ByteBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
 	@Override
 	public String getResourceDescriptor() {
 		return resourceDescriptor;
@@ -85,6 +85,11 @@ public interface WebSocketListener {
 	 */
 	public void onWebsocketMessage( WebSocket conn, ByteBuffer blob );
 
+	/**
+	 * Called for each frame of a fragmented message.  The frame's payload is a
+	 * view of the receive buffer and is only valid for the duration of the call,
+	 * copy it to keep it.
+	 */
 	public void onWebsocketMessageFragment( WebSocket conn, Framedata frame );
 
 	/**
@@ -349,8 +349,15 @@ public abstract class WebSocketClient extends WebSocketAdapter implements Runnab
 			try {
 				while ( !Thread.interrupted() ) {
 					ByteBuffer buffer = engine.outQueue.take();
-					ostream.write( buffer.array(), 0, buffer.limit() );
+					if( buffer.hasArray() ) {
+						ostream.write( buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining() );
+					} else {
+						byte[] bytes = new byte[ buffer.remaining() ];
+						buffer.get( bytes );
+						ostream.write( bytes );
+					}
 					ostream.flush();
+					engine.getBufferPool().release( buffer );
 				}
 			} catch ( IOException e ) {
 				engine.eot();
@@ -24,6 +24,7 @@ import org.java_websocket.handshake.HandshakeImpl1Server;
 import org.java_websocket.handshake.Handshakedata;
 import org.java_websocket.handshake.ServerHandshake;
 import org.java_websocket.handshake.ServerHandshakeBuilder;
+import org.java_websocket.util.ByteBufferPool;
 import org.java_websocket.util.Charsetfunctions;
 
 /**
@@ -51,6 +52,9 @@ public abstract class Draft {
 
 	protected Opcode continuousFrameType = null;
 
+	/** Where frame buffers are allocated from */
+	protected ByteBufferPool bufferPool = ByteBufferPool.getDefault();
+
 	public static ByteBuffer readLine( ByteBuffer buf ) {
 		ByteBuffer sbuf = ByteBuffer.allocate( buf.remaining() );
 		byte prev = '0';
@@ -197,6 +201,11 @@ public abstract class Draft {
 
 	public abstract HandshakeBuilder postProcessHandshakeResponseAsServer( ClientHandshake request, ServerHandshakeBuilder response ) throws InvalidHandshakeException;
 
+	/**
+	 * The payloads of the frames returned may be views of <var>buffer</var> or of
+	 * the draft's own buffers, they're only valid until the buffer is reused or
+	 * translateFrame is called again.
+	 */
 	public abstract List<Framedata> translateFrame( ByteBuffer buffer ) throws InvalidDataException;
 
 	public abstract CloseHandshakeType getCloseHandshakeType();
@@ -217,6 +226,14 @@ public abstract class Draft {
 		return bytecount;
 	}
 
+	public void setBufferPool( ByteBufferPool bufferPool ) {
+		this.bufferPool = bufferPool;
+	}
+
+	public ByteBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
 	public void setParseMode( Role role ) {
 		this.role = role;
 	}
@@ -1,12 +1,13 @@
 package org.java_websocket.drafts;
-import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.zip.Deflater;
 
 import org.java_websocket.WebSocket.Role;
 import org.java_websocket.exceptions.InvalidDataException;
@@ -14,6 +15,7 @@ import org.java_websocket.exceptions.InvalidFrameException;
 import org.java_websocket.exceptions.InvalidHandshakeException;
 import org.java_websocket.exceptions.LimitExedeedException;
 import org.java_websocket.exceptions.NotSendableException;
+import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.framing.CloseFrameBuilder;
 import org.java_websocket.framing.FrameBuilder;
 import org.java_websocket.framing.Framedata;
@@ -39,6 +41,8 @@ public class Draft_10 extends Draft {
 
 		private int preferedsize;
 		public IncompleteException( int preferedsize ) {
+			// Thrown for every partly received frame, skip the stack trace
+			super( null, null, false, false );
 			this.preferedsize = preferedsize;
 		}
 		public int getPreferedSize() {
@@ -61,10 +65,66 @@ public class Draft_10 extends Draft {
 	}
 
 	private ByteBuffer incompleteframe;
+	/** The buffer the last incomplete frame was completed in, released on the next translateFrame */
+	private ByteBuffer completedframe;
 	private Framedata fragmentedframe = null;
 
 	private final Random reuseableRandom = new Random();
 
+	/** Offer / accept permessage-deflate in the handshake */
+	private final boolean deflate;
+	private final int deflateLevel;
+	/** The negotiated extension, null when messages aren't compressed */
+	private PerMessageDeflate perMessageDeflate;
+	/** The message being received was sent compressed */
+	private boolean compressedmessage;
+	/** The buffers messages were inflated into, released on the next translateFrame */
+	private final List<ByteBuffer> inflatedframes = new ArrayList<ByteBuffer>();
+	/** The most a compressed message may inflate to */
+	private int maxMessageSize = Integer.MAX_VALUE;
+	/** Bytes inflated so far for the message being received */
+	private long inflatedsize;
+
+	public Draft_10() {
+		this( false, Deflater.DEFAULT_COMPRESSION );
+	}
+
+	/**
+	 * @param deflate
+	 *            compress messages with the permessage-deflate extension (RFC 7692) when the other end supports it
+	 * @param deflateLevel
+	 *            the {@link Deflater} compression level
+	 */
+	public Draft_10( boolean deflate , int deflateLevel ) {
+		this.deflate = deflate;
+		this.deflateLevel = deflateLevel;
+	}
+
+	public boolean isDeflate() {
+		return deflate;
+	}
+
+	public int getDeflateLevel() {
+		return deflateLevel;
+	}
+
+	/**
+	 * Compressed messages that inflate to more than this many bytes are refused
+	 * with {@link CloseFrame#TOOBIG}, no limit by default
+	 */
+	public void setMaxMessageSize( int maxMessageSize ) {
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	public int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+
+	/** Whether permessage-deflate was agreed in the handshake */
+	public boolean isDeflateNegotiated() {
+		return perMessageDeflate != null;
+	}
+
 	@Override
 	public HandshakeState acceptHandshakeAsClient( ClientHandshake request, ServerHandshake response ) throws InvalidHandshakeException {
 		if( !request.hasFieldValue( "Sec-WebSocket-Key" ) || !response.hasFieldValue( "Sec-WebSocket-Accept" ) )
@@ -74,9 +134,17 @@ public class Draft_10 extends Draft {
 		String seckey_challenge = request.getFieldValue( "Sec-WebSocket-Key" );
 		seckey_challenge = generateFinalKey( seckey_challenge );
 
-		if( seckey_challenge.equals( seckey_answere ) )
-			return HandshakeState.MATCHED;
-		return HandshakeState.NOT_MATCHED;
+		if( !seckey_challenge.equals( seckey_answere ) )
+			return HandshakeState.NOT_MATCHED;
+
+		if( deflate ) {
+			try {
+				perMessageDeflate = PerMessageDeflate.acceptResponse( response.getFieldValue( PerMessageDeflate.HEADER ), deflateLevel );
+			} catch ( InvalidDataException e ) {
+				throw new InvalidHandshakeException( e.getMessage() );
+			}
+		}
+		return HandshakeState.MATCHED;
 	}
 
 	@Override
@@ -93,32 +161,34 @@ public class Draft_10 extends Draft {
 		ByteBuffer mes = framedata.getPayloadData();
 		boolean mask = role == Role.CLIENT; // framedata.getTransfereMasked();
 		int sizebytes = mes.remaining() <= 125 ? 1 : mes.remaining() <= 65535 ? 2 : 8;
-		ByteBuffer buf = ByteBuffer.allocate( 1 + ( sizebytes > 1 ? sizebytes + 1 : sizebytes ) + ( mask ? 4 : 0 ) + mes.remaining() );
+		int size = 1 + ( sizebytes > 1 ? sizebytes + 1 : sizebytes ) + ( mask ? 4 : 0 ) + mes.remaining();
+		ByteBuffer buf = bufferPool.acquire( size );
+		buf.limit( size );
 		byte optcode = fromOpcode( framedata.getOpcode() );
 		byte one = (byte) ( framedata.isFin() ? -128 : 0 );
+		if( framedata.isRSV1() )
+			one |= 0x40;
 		one |= optcode;
 		buf.put( one );
-		byte[] payloadlengthbytes = toByteArray( mes.remaining(), sizebytes );
-		assert ( payloadlengthbytes.length == sizebytes );
+		byte maskbit = mask ? (byte) -128 : 0;
 
 		if( sizebytes == 1 ) {
-			buf.put( (byte) ( (byte) payloadlengthbytes[ 0 ] | ( mask ? (byte) -128 : 0 ) ) );
+			buf.put( (byte) ( mes.remaining() | maskbit ) );
 		} else if( sizebytes == 2 ) {
-			buf.put( (byte) ( (byte) 126 | ( mask ? (byte) -128 : 0 ) ) );
-			buf.put( payloadlengthbytes );
+			buf.put( (byte) ( 126 | maskbit ) );
+			buf.putShort( (short) mes.remaining() );
 		} else if( sizebytes == 8 ) {
-			buf.put( (byte) ( (byte) 127 | ( mask ? (byte) -128 : 0 ) ) );
-			buf.put( payloadlengthbytes );
+			buf.put( (byte) ( 127 | maskbit ) );
+			buf.putLong( mes.remaining() );
 		} else
 			throw new RuntimeException( "Size representation not supported/specified" );
 
 		if( mask ) {
-			ByteBuffer maskkey = ByteBuffer.allocate( 4 );
-			maskkey.putInt( reuseableRandom.nextInt() );
-			buf.put( maskkey.array() );
-			for( int i = 0 ; mes.hasRemaining() ; i++ ) {
-				buf.put( (byte) ( mes.get() ^ maskkey.get( i % 4 ) ) );
-			}
+			int maskkey = reuseableRandom.nextInt();
+			buf.putInt( maskkey );
+			int start = buf.position();
+			buf.put( mes );
+			mask( buf, start, buf.position(), maskkey );
 		} else
 			buf.put( mes );
 		// translateFrame ( buf.array () , buf.array ().length );
@@ -128,30 +198,47 @@ public class Draft_10 extends Draft {
 		return buf;
 	}
 
+	/**
+	 * XOR the bytes from <var>start</var> to <var>end</var> with the mask key, in place,
+	 * four bytes at a time.
+	 */
+	private static void mask( ByteBuffer buf, int start, int end, int maskkey ) {
+		int i = start;
+		for( ; i + 4 <= end ; i += 4 ) {
+			buf.putInt( i, buf.getInt( i ) ^ maskkey );
+		}
+		for( int shift = 24 ; i < end ; i++, shift -= 8 ) {
+			buf.put( i, (byte) ( buf.get( i ) ^ ( maskkey >>> shift ) ) );
+		}
+	}
+
 	@Override
 	public List<Framedata> createFrames( ByteBuffer binary, boolean mask ) {
-		FrameBuilder curframe = new FramedataImpl1();
-		try {
-			curframe.setPayload( binary );
-		} catch ( InvalidDataException e ) {
-			throw new NotSendableException( e );
-		}
-		curframe.setFin( true );
-		curframe.setOptcode( Opcode.BINARY );
-		curframe.setTransferemasked( mask );
-		return Collections.singletonList( (Framedata) curframe );
+		return createFrames( binary, Opcode.BINARY, mask );
 	}
 
 	@Override
 	public List<Framedata> createFrames( String text, boolean mask ) {
+		return createFrames( ByteBuffer.wrap( Charsetfunctions.utf8Bytes( text ) ), Opcode.TEXT, mask );
+	}
+
+	/**
+	 * Messages are compressed here rather than in createBinaryFrame, so the
+	 * frames of a message must be sent in the order they were created.
+	 */
+	private List<Framedata> createFrames( ByteBuffer payload, Opcode opcode, boolean mask ) {
 		FrameBuilder curframe = new FramedataImpl1();
+		if( perMessageDeflate != null ) {
+			payload = perMessageDeflate.compress( payload );
+			curframe.setRSV1( true );
+		}
 		try {
-			curframe.setPayload( ByteBuffer.wrap( Charsetfunctions.utf8Bytes( text ) ) );
+			curframe.setPayload( payload );
 		} catch ( InvalidDataException e ) {
 			throw new NotSendableException( e );
 		}
 		curframe.setFin( true );
-		curframe.setOptcode( Opcode.TEXT );
+		curframe.setOptcode( opcode );
 		curframe.setTransferemasked( mask );
 		return Collections.singletonList( (Framedata) curframe );
 	}
@@ -193,6 +280,8 @@ public class Draft_10 extends Draft {
 		byte[] random = new byte[ 16 ];
 		reuseableRandom.nextBytes( random );
 		request.put( "Sec-WebSocket-Key", Base64.encodeBytes( random ) );
+		if( deflate )
+			request.put( PerMessageDeflate.HEADER, PerMessageDeflate.offer() );
 
 		return request;
 	}
@@ -206,16 +295,12 @@ public class Draft_10 extends Draft {
 		if( seckey == null )
 			throw new InvalidHandshakeException( "missing Sec-WebSocket-Key" );
 		response.put( "Sec-WebSocket-Accept", generateFinalKey( seckey ) );
-		return response;
-	}
-
-	private byte[] toByteArray( long val, int bytecount ) {
-		byte[] buffer = new byte[ bytecount ];
-		int highest = 8 * bytecount - 8;
-		for( int i = 0 ; i < bytecount ; i++ ) {
-			buffer[ i ] = (byte) ( val >>> ( highest - 8 * i ) );
+		if( deflate ) {
+			perMessageDeflate = PerMessageDeflate.acceptOffer( request.getFieldValue( PerMessageDeflate.HEADER ), deflateLevel );
+			if( perMessageDeflate != null )
+				response.put( PerMessageDeflate.HEADER, perMessageDeflate.getResponseHeader() );
 		}
-		return buffer;
+		return response;
 	}
 
 	private Opcode toOpcode( byte opcode ) throws InvalidFrameException {
@@ -241,6 +326,13 @@ public class Draft_10 extends Draft {
 
 	@Override
 	public List<Framedata> translateFrame( ByteBuffer buffer ) throws LimitExedeedException , InvalidDataException {
+		// The frames returned by the last call may point into this, they've been handled by now
+		if( completedframe != null ) {
+			bufferPool.release( completedframe );
+			completedframe = null;
+		}
+		releaseInflatedFrames();
+
 		List<Framedata> frames = new LinkedList<Framedata>();
 		Framedata cur;
 
@@ -254,26 +346,31 @@ public class Draft_10 extends Draft {
 
 					if( expected_next_byte_count > available_next_byte_count ) {
 						// did not receive enough bytes to complete the frame
-						incompleteframe.put( buffer.array(), buffer.position(), available_next_byte_count );
-						buffer.position( buffer.position() + available_next_byte_count );
+						incompleteframe.put( buffer );
 						return Collections.emptyList();
 					}
-					incompleteframe.put( buffer.array(), buffer.position(), expected_next_byte_count );
+					ByteBuffer rest = buffer.duplicate();
+					rest.limit( buffer.position() + expected_next_byte_count );
+					incompleteframe.put( rest );
 					buffer.position( buffer.position() + expected_next_byte_count );
 
-					cur = translateSingleFrame( (ByteBuffer) incompleteframe.duplicate().position( 0 ) );
+					ByteBuffer frame = incompleteframe.duplicate();
+					frame.flip();
+					cur = translateSingleFrame( frame );
 					frames.add( cur );
+					completedframe = incompleteframe;
 					incompleteframe = null;
 					break; // go on with the normal frame receival
 				} catch ( IncompleteException e ) {
 					// extending as much as suggested
-					int oldsize = incompleteframe.limit();
-					ByteBuffer extendedframe = ByteBuffer.allocate( checkAlloc( e.getPreferedSize() ) );
-					assert ( extendedframe.limit() > incompleteframe.limit() );
-					incompleteframe.rewind();
+					ByteBuffer extendedframe = bufferPool.acquire( checkAlloc( e.getPreferedSize() ) );
+					extendedframe.limit( e.getPreferedSize() );
+					assert ( extendedframe.limit() > incompleteframe.position() );
+					incompleteframe.flip();
 					extendedframe.put( incompleteframe );
+					bufferPool.release( incompleteframe );
 					incompleteframe = extendedframe;
-					
+
 					return translateFrame( buffer );
 				}
 			}
@@ -288,7 +385,8 @@ public class Draft_10 extends Draft {
 				// remember the incomplete data
 				buffer.reset();
 				int pref = e.getPreferedSize();
-				incompleteframe = ByteBuffer.allocate( checkAlloc( pref ) );
+				incompleteframe = bufferPool.acquire( checkAlloc( pref ) );
+				incompleteframe.limit( pref );
 				incompleteframe.put( buffer );
 				break;
 			}
@@ -296,6 +394,10 @@ public class Draft_10 extends Draft {
 		return frames;
 	}
 
+	/**
+	 * Read a frame, unmasking its payload in place.  The frame's payload is a
+	 * view of <var>buffer</var>, it isn't copied.
+	 */
 	public Framedata translateSingleFrame( ByteBuffer buffer ) throws IncompleteException , InvalidDataException {
 		int maxpacketsize = buffer.remaining();
 		int realpacketsize = 2;
@@ -304,13 +406,17 @@ public class Draft_10 extends Draft {
 		byte b1 = buffer.get( /*0*/);
 		boolean FIN = b1 >> 8 != 0;
 		byte rsv = (byte) ( ( b1 & ~(byte) 128 ) >> 4 );
-		if( rsv != 0 )
-			throw new InvalidFrameException( "bad rsv " + rsv );
+		boolean RSV1 = ( rsv & 4 ) != 0;
 		byte b2 = buffer.get( /*1*/);
 		boolean MASK = ( b2 & -128 ) != 0;
 		int payloadlength = (byte) ( b2 & ~(byte) 128 );
 		Opcode optcode = toOpcode( (byte) ( b1 & 15 ) );
 
+		// RSV1 marks the first frame of a compressed message
+		boolean compressible = optcode == Opcode.TEXT || optcode == Opcode.BINARY;
+		if( ( rsv & ~4 ) != 0 || RSV1 && ( perMessageDeflate == null || !compressible ) )
+			throw new InvalidFrameException( "bad rsv " + rsv );
+
 		if( !FIN ) {
 			if( optcode == Opcode.PING || optcode == Opcode.PONG || optcode == Opcode.CLOSING ) {
 				throw new InvalidFrameException( "control frames may no be fragmented" );
@@ -326,20 +432,13 @@ public class Draft_10 extends Draft {
 				realpacketsize += 2; // additional length bytes
 				if( maxpacketsize < realpacketsize )
 					throw new IncompleteException( realpacketsize );
-				byte[] sizebytes = new byte[ 3 ];
-				sizebytes[ 1 ] = buffer.get( /*1 + 1*/);
-				sizebytes[ 2 ] = buffer.get( /*1 + 2*/);
-				payloadlength = new BigInteger( sizebytes ).intValue();
+				payloadlength = buffer.getShort( /*1 + 1*/) & 0xFFFF;
 			} else {
 				realpacketsize += 8; // additional length bytes
 				if( maxpacketsize < realpacketsize )
 					throw new IncompleteException( realpacketsize );
-				byte[] bytes = new byte[ 8 ];
-				for( int i = 0 ; i < 8 ; i++ ) {
-					bytes[ i ] = buffer.get( /*1 + i*/);
-				}
-				long length = new BigInteger( bytes ).longValue();
-				if( length > Integer.MAX_VALUE ) {
+				long length = buffer.getLong( /*1 + 1*/);
+				if( length < 0 || length > Integer.MAX_VALUE ) {
 					throw new LimitExedeedException( "Payloadsize is to big..." );
 				} else {
 					payloadlength = (int) length;
@@ -355,16 +454,23 @@ public class Draft_10 extends Draft {
 		if( maxpacketsize < realpacketsize )
 			throw new IncompleteException( realpacketsize );
 
-		ByteBuffer payload = ByteBuffer.allocate( checkAlloc( payloadlength ) );
+		checkAlloc( payloadlength );
 		if( MASK ) {
-			byte[] maskskey = new byte[ 4 ];
-			buffer.get( maskskey );
-			for( int i = 0 ; i < payloadlength ; i++ ) {
-				payload.put( (byte) ( (byte) buffer.get( /*payloadstart + i*/) ^ (byte) maskskey[ i % 4 ] ) );
+			int maskskey = buffer.getInt();
+			mask( buffer, buffer.position(), buffer.position() + payloadlength, maskskey );
+		}
+		ByteBuffer payload = buffer.slice();
+		payload.limit( payloadlength );
+		buffer.position( buffer.position() + payloadlength );
+
+		if( perMessageDeflate != null && ( compressible || optcode == Opcode.CONTINUOUS ) ) {
+			if( compressible )
+				compressedmessage = RSV1;
+			if( compressedmessage ) {
+				payload = perMessageDeflate.decompress( payload, FIN, bufferPool, (int) ( maxMessageSize - inflatedsize ) );
+				inflatedframes.add( payload );
+				inflatedsize = FIN ? 0 : inflatedsize + payload.remaining();
 			}
-		} else {
-			payload.put( buffer.array(), buffer.position(), payload.limit() );
-			buffer.position( buffer.position() + payload.limit() );
 		}
 
 		FrameBuilder frame;
@@ -374,20 +480,32 @@ public class Draft_10 extends Draft {
 			frame = new FramedataImpl1();
 			frame.setFin( FIN );
 			frame.setOptcode( optcode );
+			frame.setRSV1( RSV1 );
 		}
-		payload.flip();
 		frame.setPayload( payload );
 		return frame;
 	}
 
 	@Override
 	public void reset() {
+		bufferPool.release( incompleteframe );
 		incompleteframe = null;
+		if( perMessageDeflate != null )
+			perMessageDeflate.end();
+	}
+
+	private void releaseInflatedFrames() {
+		for( ByteBuffer inflated : inflatedframes ) {
+			bufferPool.release( inflated );
+		}
+		inflatedframes.clear();
 	}
 
 	@Override
 	public Draft copyInstance() {
-		return new Draft_10();
+		Draft_10 copy = new Draft_10( deflate, deflateLevel );
+		copy.setMaxMessageSize( maxMessageSize );
+		return copy;
 	}
 
 	@Override
@@ -5,6 +5,14 @@ import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.handshake.ClientHandshakeBuilder;
 
 public class Draft_17 extends Draft_10 {
+	public Draft_17() {
+	}
+
+	/** @see Draft_10#Draft_10(boolean, int) */
+	public Draft_17( boolean deflate , int deflateLevel ) {
+		super( deflate, deflateLevel );
+	}
+
 	@Override
 	public HandshakeState acceptHandshakeAsServer( ClientHandshake handshakedata ) throws InvalidHandshakeException {
 		int v = readVersion( handshakedata );
@@ -22,7 +30,9 @@ public class Draft_17 extends Draft_10 {
 
 	@Override
 	public Draft copyInstance() {
-		return new Draft_17();
+		Draft_17 copy = new Draft_17( isDeflate(), getDeflateLevel() );
+		copy.setMaxMessageSize( getMaxMessageSize() );
+		return copy;
 	}
 
 }
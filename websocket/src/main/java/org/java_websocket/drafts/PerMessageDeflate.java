@@ -0,0 +1,276 @@
+package org.java_websocket.drafts;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.LimitExedeedException;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.util.ByteBufferPool;
+
+/**
+ * The permessage-deflate extension (RFC 7692), one per connection.
+ *
+ * Each message is compressed as raw deflate data ending in a sync flush, with
+ * the trailing 0x00 0x00 0xff 0xff left off.  Unless no context takeover was
+ * negotiated the deflater and inflater are kept between messages, so later
+ * messages can refer back to earlier ones, which is where most of the saving
+ * on repetitive JSON comes from.
+ *
+ * The JDK always uses a 15 bit window, so offers limiting our window to less
+ * than that are declined.
+ */
+public class PerMessageDeflate {
+	public static final String EXTENSION = "permessage-deflate";
+	public static final String HEADER = "Sec-WebSocket-Extensions";
+
+	private static final byte[] TAIL = { 0x00, 0x00, (byte) 0xff, (byte) 0xff };
+	private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+	private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+	private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+	private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+	private final Deflater deflater;
+	private final Inflater inflater;
+	private final boolean resetDeflater;
+	private final boolean resetInflater;
+	private final String responseHeader;
+	private volatile boolean ended;
+
+	// Scratch buffers, guarded by the deflater / inflater
+	private byte[] deflateInput = new byte[ 1024 ];
+	private byte[] deflateOutput = new byte[ 1024 ];
+	private byte[] inflateInput = new byte[ 1024 ];
+	private final byte[] inflateOutput = new byte[ 8192 ];
+
+	private PerMessageDeflate( int level , boolean resetDeflater , boolean resetInflater , String responseHeader ) {
+		this.deflater = new Deflater( level, true );
+		this.inflater = new Inflater( true );
+		this.resetDeflater = resetDeflater;
+		this.resetInflater = resetInflater;
+		this.responseHeader = responseHeader;
+	}
+
+	/**
+	 * Accept the first permessage-deflate offer in the client's extensions header
+	 * that we can support.
+	 *
+	 * @return null if the client didn't offer the extension or no offer can be accepted
+	 */
+	public static PerMessageDeflate acceptOffer( String extensions, int level ) {
+		if( extensions == null || extensions.isEmpty() )
+			return null;
+		for( String offer : extensions.split( "," ) ) {
+			List<String[]> params = parseParams( offer );
+			if( params == null )
+				continue;
+			boolean clientNoContextTakeover = false;
+			boolean serverNoContextTakeover = false;
+			boolean acceptable = true;
+			for( String[] param : params ) {
+				if( param[ 0 ].equals( SERVER_NO_CONTEXT_TAKEOVER ) ) {
+					serverNoContextTakeover = true;
+				} else if( param[ 0 ].equals( CLIENT_NO_CONTEXT_TAKEOVER ) ) {
+					clientNoContextTakeover = true;
+				} else if( param[ 0 ].equals( SERVER_MAX_WINDOW_BITS ) ) {
+					// We can't compress with a smaller window
+					acceptable = "15".equals( param[ 1 ] );
+				} else if( param[ 0 ].equals( CLIENT_MAX_WINDOW_BITS ) ) {
+					// We can inflate any window size, nothing to ask for
+				} else {
+					acceptable = false;
+				}
+				if( !acceptable )
+					break;
+			}
+			if( !acceptable )
+				continue;
+
+			StringBuilder response = new StringBuilder( EXTENSION );
+			if( serverNoContextTakeover )
+				response.append( "; " ).append( SERVER_NO_CONTEXT_TAKEOVER );
+			if( clientNoContextTakeover )
+				response.append( "; " ).append( CLIENT_NO_CONTEXT_TAKEOVER );
+			return new PerMessageDeflate( level, serverNoContextTakeover, clientNoContextTakeover, response.toString() );
+		}
+		return null;
+	}
+
+	/** The extensions header a client sends to offer the extension */
+	public static String offer() {
+		return EXTENSION;
+	}
+
+	/**
+	 * Read the server's response to our offer.
+	 *
+	 * @return null if the server didn't accept the extension
+	 * @throws InvalidDataException the server's response isn't valid for our offer
+	 */
+	public static PerMessageDeflate acceptResponse( String extensions, int level ) throws InvalidDataException {
+		if( extensions == null || extensions.isEmpty() )
+			return null;
+		List<String[]> params = parseParams( extensions );
+		if( params == null )
+			throw new InvalidDataException( CloseFrame.EXTENSION, "Server accepted an extension that wasn't offered: " + extensions );
+		boolean serverNoContextTakeover = false;
+		boolean clientNoContextTakeover = false;
+		for( String[] param : params ) {
+			if( param[ 0 ].equals( SERVER_NO_CONTEXT_TAKEOVER ) ) {
+				serverNoContextTakeover = true;
+			} else if( param[ 0 ].equals( CLIENT_NO_CONTEXT_TAKEOVER ) ) {
+				clientNoContextTakeover = true;
+			} else if( !param[ 0 ].equals( SERVER_MAX_WINDOW_BITS ) ) {
+				// Including client_max_window_bits, which we didn't offer
+				throw new InvalidDataException( CloseFrame.EXTENSION, "Unsupported permessage-deflate parameter: " + param[ 0 ] );
+			}
+		}
+		return new PerMessageDeflate( level, clientNoContextTakeover, serverNoContextTakeover, null );
+	}
+
+	/**
+	 * The params of a permessage-deflate offer/response, or null if it's for another extension
+	 */
+	private static List<String[]> parseParams( String extension ) {
+		String[] parts = extension.split( ";" );
+		if( !parts[ 0 ].trim().equalsIgnoreCase( EXTENSION ) )
+			return null;
+		List<String[]> params = new ArrayList<String[]>();
+		for( int i = 1 ; i < parts.length ; i++ ) {
+			String[] pair = parts[ i ].split( "=", 2 );
+			String name = pair[ 0 ].trim().toLowerCase( Locale.ENGLISH );
+			String value = pair.length > 1 ? pair[ 1 ].trim().replace( "\"", "" ) : null;
+			params.add( new String[]{ name, value } );
+		}
+		return params;
+	}
+
+	/** The extensions header the server responds with, null for a client */
+	public String getResponseHeader() {
+		return responseHeader;
+	}
+
+	/**
+	 * Compress a whole message
+	 */
+	public ByteBuffer compress( ByteBuffer payload ) {
+		synchronized ( deflater ) {
+			if( ended )
+				throw new WebsocketNotConnectedException();
+			int length = payload.remaining();
+			if( deflateInput.length < length )
+				deflateInput = new byte[ Math.max( length, deflateInput.length * 2 ) ];
+			payload.duplicate().get( deflateInput, 0, length );
+			deflater.setInput( deflateInput, 0, length );
+
+			int size = 0;
+			while ( true ) {
+				if( deflateOutput.length - size < 64 )
+					deflateOutput = grow( deflateOutput, size );
+				int n = deflater.deflate( deflateOutput, size, deflateOutput.length - size, Deflater.SYNC_FLUSH );
+				size += n;
+				if( size < deflateOutput.length && deflater.needsInput() )
+					break;
+			}
+			if( resetDeflater )
+				deflater.reset();
+
+			// Drop the 0x00 0x00 0xff 0xff ending the sync flush
+			if( size >= 4 ) {
+				size -= 4;
+			} else {
+				// Nothing is written for an empty message, send an empty block instead
+				// (RFC 7692 7.2.3.6), the other end adds the tail back
+				deflateOutput[ 0 ] = 0x00;
+				size = 1;
+			}
+			byte[] compressed = new byte[ size ];
+			System.arraycopy( deflateOutput, 0, compressed, 0, size );
+			return ByteBuffer.wrap( compressed );
+		}
+	}
+
+	/**
+	 * Decompress a frame of a compressed message, the frames of a message must
+	 * be passed in order.
+	 *
+	 * @param fin
+	 *            this is the last frame of the message
+	 * @param pool
+	 *            where the decompressed data's buffer is taken from, it's up to
+	 *            the caller to release it
+	 * @param limit
+	 *            the most bytes the frame may inflate to
+	 * @throws LimitExedeedException
+	 *             the frame inflates to more than <var>limit</var> bytes
+	 */
+	public ByteBuffer decompress( ByteBuffer payload, boolean fin, ByteBufferPool pool, int limit ) throws InvalidDataException {
+		synchronized ( inflater ) {
+			if( ended )
+				throw new InvalidDataException( CloseFrame.ABNORMAL_CLOSE, "Connection closed" );
+			int length = payload.remaining() + ( fin ? TAIL.length : 0 );
+			if( inflateInput.length < length )
+				inflateInput = new byte[ Math.max( length, inflateInput.length * 2 ) ];
+			payload.duplicate().get( inflateInput, 0, payload.remaining() );
+			if( fin )
+				System.arraycopy( TAIL, 0, inflateInput, payload.remaining(), TAIL.length );
+			inflater.setInput( inflateInput, 0, length );
+
+			ByteBuffer out = pool.acquire( Math.max( length * 4, ByteBufferPool.MIN_SIZE ) );
+			try {
+				while ( true ) {
+					int n = inflater.inflate( inflateOutput );
+					if( n == 0 ) {
+						if( inflater.needsDictionary() )
+							throw new InvalidDataException( CloseFrame.PROTOCOL_ERROR, "Compressed message needs a dictionary" );
+						break;
+					}
+					if( out.position() + n > limit ) {
+						// A small frame can inflate to any size, so don't wait for the reassembler's check
+						pool.release( out );
+						throw new LimitExedeedException( "Compressed message inflates to more than " + limit + " bytes" );
+					}
+					if( out.remaining() < n ) {
+						ByteBuffer bigger = pool.acquire( Math.max( out.capacity() * 2, out.position() + n ) );
+						out.flip();
+						bigger.put( out );
+						pool.release( out );
+						out = bigger;
+					}
+					out.put( inflateOutput, 0, n );
+				}
+			} catch ( DataFormatException e ) {
+				pool.release( out );
+				throw new InvalidDataException( CloseFrame.PROTOCOL_ERROR, "Invalid compressed message: " + e.getMessage() );
+			}
+			// A final block ends the stream, the next message starts a new one
+			if( fin && resetInflater || inflater.finished() )
+				inflater.reset();
+			out.flip();
+			return out;
+		}
+	}
+
+	private static byte[] grow( byte[] bytes, int size ) {
+		byte[] bigger = new byte[ bytes.length * 2 ];
+		System.arraycopy( bytes, 0, bigger, 0, size );
+		return bigger;
+	}
+
+	/** Free the native zlib memory, the extension can't be used after this */
+	public void end() {
+		ended = true;
+		synchronized ( deflater ) {
+			deflater.end();
+		}
+		synchronized ( inflater ) {
+			inflater.end();
+		}
+	}
+}
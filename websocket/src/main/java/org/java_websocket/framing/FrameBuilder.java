@@ -14,4 +14,6 @@ public interface FrameBuilder extends Framedata {
 
 	public abstract void setTransferemasked( boolean transferemasked );
 
+	public abstract void setRSV1( boolean rsv1 );
+
 }
\ No newline at end of file
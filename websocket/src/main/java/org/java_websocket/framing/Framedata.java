@@ -11,6 +11,8 @@ public interface Framedata {
 	}
 	public boolean isFin();
 	public boolean getTransfereMasked();
+	/** The RSV1 bit, set on the first frame of a message compressed with permessage-deflate */
+	public boolean isRSV1();
 	public Opcode getOpcode();
 	public ByteBuffer getPayloadData();// TODO the separation of the application data and the extension data is yet to be done
 	public abstract void append( Framedata nextframe ) throws InvalidFrameException;
@@ -5,7 +5,6 @@ import java.util.Arrays;
 
 import org.java_websocket.exceptions.InvalidDataException;
 import org.java_websocket.exceptions.InvalidFrameException;
-import org.java_websocket.util.Charsetfunctions;
 
 public class FramedataImpl1 implements FrameBuilder {
 	protected static byte[] emptyarray = {};
@@ -13,6 +12,7 @@ public class FramedataImpl1 implements FrameBuilder {
 	protected Opcode optcode;
 	private ByteBuffer unmaskedpayload;
 	protected boolean transferemasked;
+	protected boolean rsv1;
 
 	public FramedataImpl1() {
 	}
@@ -31,6 +31,7 @@ public class FramedataImpl1 implements FrameBuilder {
 		optcode = f.getOpcode();
 		unmaskedpayload = f.getPayloadData();
 		transferemasked = f.getTransfereMasked();
+		rsv1 = f.isRSV1();
 	}
 
 	@Override
@@ -48,6 +49,11 @@ public class FramedataImpl1 implements FrameBuilder {
 		return transferemasked;
 	}
 
+	@Override
+	public boolean isRSV1() {
+		return rsv1;
+	}
+
 	@Override
 	public ByteBuffer getPayloadData() {
 		return unmaskedpayload;
@@ -73,6 +79,11 @@ public class FramedataImpl1 implements FrameBuilder {
 		this.transferemasked = transferemasked;
 	}
 
+	@Override
+	public void setRSV1( boolean rsv1 ) {
+		this.rsv1 = rsv1;
+	}
+
 	@Override
 	public void append( Framedata nextframe ) throws InvalidFrameException {
 		ByteBuffer b = nextframe.getPayloadData();
@@ -104,7 +115,10 @@ public class FramedataImpl1 implements FrameBuilder {
 
 	@Override
 	public String toString() {
-		return "Framedata{ optcode:" + getOpcode() + ", fin:" + isFin() + ", payloadlength:[pos:" + unmaskedpayload.position() + ", len:" + unmaskedpayload.remaining() + "], payload:" + Arrays.toString( Charsetfunctions.utf8Bytes( new String( unmaskedpayload.array() ) ) ) + "}";
+		// The payload may be a view of a direct buffer, so copy it rather than using array()
+		byte[] payload = new byte[ unmaskedpayload.remaining() ];
+		unmaskedpayload.duplicate().get( payload );
+		return "Framedata{ optcode:" + getOpcode() + ", fin:" + isFin() + ", payloadlength:[pos:" + unmaskedpayload.position() + ", len:" + unmaskedpayload.remaining() + "], payload:" + Arrays.toString( payload ) + "}";
 	}
 
 }
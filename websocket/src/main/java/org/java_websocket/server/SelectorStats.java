@@ -0,0 +1,50 @@
+package org.java_websocket.server;
+
+/**
+ * A snapshot of one of the {@link WebSocketServer}'s selector loops.
+ */
+public class SelectorStats {
+	private final int index;
+	private final int connections;
+	private final int pendingRegistrations;
+	private final int inQueueDepth;
+	private final int outQueueDepth;
+
+	public SelectorStats( int index , int connections , int pendingRegistrations , int inQueueDepth , int outQueueDepth ) {
+		this.index = index;
+		this.connections = connections;
+		this.pendingRegistrations = pendingRegistrations;
+		this.inQueueDepth = inQueueDepth;
+		this.outQueueDepth = outQueueDepth;
+	}
+
+	/** The loop's position, 0 is the loop that accepts connections */
+	public int getIndex() {
+		return index;
+	}
+
+	/** Connections registered with the loop */
+	public int getConnections() {
+		return connections;
+	}
+
+	/** Accepted connections waiting for the loop to register them */
+	public int getPendingRegistrations() {
+		return pendingRegistrations;
+	}
+
+	/** Buffers read by the loop that are waiting for a decoder */
+	public int getInQueueDepth() {
+		return inQueueDepth;
+	}
+
+	/** Frames queued for the loop to write */
+	public int getOutQueueDepth() {
+		return outQueueDepth;
+	}
+
+	@Override
+	public String toString() {
+		return "SelectorStats{ index:" + index + ", connections:" + connections + ", pending:" + pendingRegistrations + ", inQueue:" + inQueueDepth + ", outQueue:" + outQueueDepth + "}";
+	}
+}
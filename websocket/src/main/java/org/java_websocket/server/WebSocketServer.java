@@ -21,8 +21,11 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -41,6 +44,7 @@ import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.handshake.Handshakedata;
 import org.java_websocket.handshake.ServerHandshakeBuilder;
+import org.java_websocket.util.ByteBufferPool;
 
 /**
  * <tt>WebSocketServer</tt> is an abstract class that only takes care of the
@@ -67,9 +71,11 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 	 */
 	private ServerSocketChannel server;
 	/**
-	 * The 'Selector' used to get event keys from the underlying socket.
+	 * The loops selecting on the connections, the first one also accepts new connections.
 	 */
-	private Selector selector;
+	private volatile List<SelectorLoop> loops = Collections.emptyList();
+
+	private int selectorcount = 1;
 	/**
 	 * The Draft of the WebSocket protocol the Server is adhering to.
 	 */
@@ -81,13 +87,16 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 
 	private List<WebSocketWorker> decoders;
 
-	private List<WebSocketImpl> iqueue;
 	private BlockingQueue<ByteBuffer> buffers;
-	private int queueinvokes = 0;
+	private final AtomicInteger queueinvokes = new AtomicInteger( 0 );
+	private int acceptinvokes = 0;
 	private final AtomicInteger queuesize = new AtomicInteger( 0 );
 
 	private WebSocketServerFactory wsf = new DefaultWebSocketServerFactory();
 
+	/** Receive and frame buffers, direct so the socket reads & writes don't need a copy */
+	private ByteBufferPool bufferPool = new ByteBufferPool( true, 1024 * 1024, 64 );
+
 	/**
 	 * Creates a WebSocketServer that will attempt to
 	 * listen on port <var>WebSocket.DEFAULT_PORT</var>.
@@ -161,8 +170,6 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 		this.address = address;
 		this.connections = connectionscontainer;
 
-		iqueue = new LinkedList<WebSocketImpl>();
-
 		decoders = new ArrayList<WebSocketWorker>( decodercount );
 		buffers = new LinkedBlockingQueue<ByteBuffer>();
 		for( int i = 0 ; i < decodercount ; i++ ) {
@@ -217,7 +224,9 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 
 		synchronized ( this ) {
 			if( selectorthread != null && selectorthread != Thread.currentThread() ) {
-				selector.wakeup();
+				for( SelectorLoop loop : loops ) {
+					loop.selector.wakeup();
+				}
 				selectorthread.interrupt();
 				selectorthread.join( timeout );
 			}
@@ -259,6 +268,31 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 		return Collections.unmodifiableList( drafts );
 	}
 
+	/**
+	 * The number of threads selecting on the connections, new connections are
+	 * handed out to them in turn.  Must be called before the server is started.
+	 */
+	public void setSelectorCount( int selectorcount ) {
+		if( selectorcount < 1 )
+			throw new IllegalArgumentException( "you need at least 1 selector" );
+		this.selectorcount = selectorcount;
+	}
+
+	public int getSelectorCount() {
+		return selectorcount;
+	}
+
+	/**
+	 * A snapshot of the connections and queued buffers of each selector loop
+	 */
+	public List<SelectorStats> getSelectorStats() {
+		List<SelectorStats> stats = new ArrayList<SelectorStats>();
+		for( SelectorLoop loop : loops ) {
+			stats.add( loop.getStats() );
+		}
+		return stats;
+	}
+
 	// Runnable IMPLEMENTATION /////////////////////////////////////////////////
 	public void run() {
 		synchronized ( this ) {
@@ -270,119 +304,46 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 			}
 		}
 		selectorthread.setName( "WebsocketSelector" + selectorthread.getId() );
+		List<SelectorLoop> newloops = new ArrayList<SelectorLoop>( selectorcount );
 		try {
 			server = ServerSocketChannel.open();
 			server.configureBlocking( false );
 			ServerSocket socket = server.socket();
 			socket.setReceiveBufferSize( WebSocketImpl.RCVBUF );
 			socket.bind( address );
-			selector = Selector.open();
-			server.register( selector, server.validOps() );
+			for( int i = 0 ; i < selectorcount ; i++ ) {
+				newloops.add( new SelectorLoop( i, Selector.open() ) );
+			}
+			server.register( newloops.get( 0 ).selector, server.validOps() );
 		} catch ( IOException ex ) {
 			handleFatal( null, ex );
 			return;
 		}
+		loops = newloops;
+		List<Thread> loopthreads = new ArrayList<Thread>();
+		for( SelectorLoop loop : newloops.subList( 1, newloops.size() ) ) {
+			Thread t = new Thread( loop );
+			t.setName( "WebsocketSelector" + t.getId() );
+			t.start();
+			loopthreads.add( t );
+		}
 		try {
-			while ( !selectorthread.isInterrupted() ) {
-				SelectionKey key = null;
-				WebSocketImpl conn = null;
+			newloops.get( 0 ).run();
+		} finally {
+			for( Thread t : loopthreads ) {
+				t.interrupt();
+			}
+			// Each loop closes its selector as it exits, wait for them so they're closed by the time we are done
+			boolean interrupted = Thread.interrupted();
+			for( Thread t : loopthreads ) {
 				try {
-					selector.select();
-					Set<SelectionKey> keys = selector.selectedKeys();
-					Iterator<SelectionKey> i = keys.iterator();
-
-					while ( i.hasNext() ) {
-						key = i.next();
-
-						if( !key.isValid() ) {
-							// Object o = key.attachment();
-							continue;
-						}
-
-						if( key.isAcceptable() ) {
-							if( !onConnect( key ) ) {
-								key.cancel();
-								continue;
-							}
-
-							SocketChannel channel = server.accept();
-							channel.configureBlocking( false );
-							WebSocketImpl w = wsf.createWebSocket( this, drafts, channel.socket() );
-							w.key = channel.register( selector, SelectionKey.OP_READ, w );
-							w.channel = wsf.wrapChannel( channel, w.key );
-							i.remove();
-							allocateBuffers( w );
-							continue;
-						}
-
-						if( key.isReadable() ) {
-							conn = (WebSocketImpl) key.attachment();
-							ByteBuffer buf = takeBuffer();
-							try {
-								if( SocketChannelIOHelper.read( buf, conn, conn.channel ) ) {
-									if( buf.hasRemaining() ) {
-										conn.inQueue.put( buf );
-										queue( conn );
-										i.remove();
-										if( conn.channel instanceof WrappedByteChannel ) {
-											if( ( (WrappedByteChannel) conn.channel ).isNeedRead() ) {
-												iqueue.add( conn );
-											}
-										}
-									} else
-										pushBuffer( buf );
-								} else {
-									pushBuffer( buf );
-								}
-							} catch ( IOException e ) {
-								pushBuffer( buf );
-								throw e;
-							}
-						}
-						if( key.isWritable() ) {
-							conn = (WebSocketImpl) key.attachment();
-							if( SocketChannelIOHelper.batch( conn, conn.channel ) ) {
-								if( key.isValid() )
-									key.interestOps( SelectionKey.OP_READ );
-							}
-						}
-					}
-					while ( !iqueue.isEmpty() ) {
-						conn = iqueue.remove( 0 );
-						WrappedByteChannel c = ( (WrappedByteChannel) conn.channel );
-						ByteBuffer buf = takeBuffer();
-						try {
-							if( SocketChannelIOHelper.readMore( buf, conn, c ) )
-								iqueue.add( conn );
-							if( buf.hasRemaining() ) {
-								conn.inQueue.put( buf );
-								queue( conn );
-							} else {
-								pushBuffer( buf );
-							}
-						} catch ( IOException e ) {
-							pushBuffer( buf );
-							throw e;
-						}
-
-					}
-				} catch ( CancelledKeyException e ) {
-					// an other thread may cancel the key
-				} catch ( ClosedByInterruptException e ) {
-					return; // do the same stuff as when InterruptedException is thrown
-				} catch ( IOException ex ) {
-					if( key != null )
-						key.cancel();
-					handleIOException( key, conn, ex );
+					t.join();
 				} catch ( InterruptedException e ) {
-					return;// FIXME controlled shutdown (e.g. take care of buffermanagement)
+					interrupted = true;
 				}
 			}
-
-		} catch ( RuntimeException e ) {
-			// should hopefully never occur
-			handleFatal( null, e );
-		} finally {
+			if( interrupted )
+				Thread.currentThread().interrupt();
 			if( decoders != null ) {
 				for( WebSocketWorker w : decoders ) {
 					w.interrupt();
@@ -397,6 +358,25 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 			}
 		}
 	}
+
+	/**
+	 * Called on the first loop's thread, picks the loop the new connection is registered with
+	 */
+	private void accept( SelectorLoop acceptor ) throws IOException , InterruptedException {
+		SocketChannel channel = server.accept();
+		if( channel == null )
+			return;
+		channel.configureBlocking( false );
+		SelectorLoop loop = loops.get( acceptinvokes++ % loops.size() );
+		if( loop == acceptor ) {
+			loop.register( channel );
+		} else {
+			// Registering blocks while the other loop is selecting, so it registers the channel itself
+			loop.pending.add( channel );
+			loop.selector.wakeup();
+		}
+	}
+
 	protected void allocateBuffers( WebSocket c ) throws InterruptedException {
 		if( queuesize.get() >= 2 * decoders.size() + 1 ) {
 			return;
@@ -411,13 +391,23 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 	}
 
 	public ByteBuffer createBuffer() {
-		return ByteBuffer.allocate( WebSocketImpl.RCVBUF );
+		return bufferPool.acquire( WebSocketImpl.RCVBUF );
+	}
+
+	/**
+	 * Use the given pool for the receive & frame buffers, must be called before the server is started
+	 */
+	public void setBufferPool( ByteBufferPool bufferPool ) {
+		this.bufferPool = bufferPool;
+	}
+
+	public ByteBufferPool getBufferPool() {
+		return bufferPool;
 	}
 
 	private void queue( WebSocketImpl ws ) throws InterruptedException {
 		if( ws.workerThread == null ) {
-			ws.workerThread = decoders.get( queueinvokes % decoders.size() );
-			queueinvokes++;
+			ws.workerThread = decoders.get( queueinvokes.getAndIncrement() % decoders.size() );
 		}
 		ws.workerThread.put( ws );
 	}
@@ -504,7 +494,12 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 
 	@Override
 	public final void onWebsocketClose( WebSocket conn, int code, String reason, boolean remote ) {
-		selector.wakeup();
+		WebSocketImpl impl = (WebSocketImpl) conn;
+		if( impl.key != null )
+			impl.key.selector().wakeup();
+		for( SelectorLoop loop : loops ) {
+			loop.loopconnections.remove( impl );
+		}
 		try {
 			if( removeConnection( conn ) ) {
 				onClose( conn, code, reason, remote );
@@ -573,7 +568,7 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 			// the thread which cancels key is responsible for possible cleanup
 			conn.outQueue.clear();
 		}
-		selector.wakeup();
+		conn.key.selector().wakeup();
 	}
 
 	@Override
@@ -665,11 +660,194 @@ public abstract class WebSocketServer extends WebSocketAdapter implements Runnab
 	}
 
 	/**
+	 * The fragment's payload is only valid for the duration of the call, copy it to keep it.
+	 * 
 	 * @see WebSocket#sendFragmentedFrame(org.java_websocket.framing.Framedata.Opcode, ByteBuffer, boolean)
 	 */
 	public void onFragment( WebSocket conn, Framedata fragment ) {
 	}
 
+	/**
+	 * A selector and the connections registered with it.  The first loop runs
+	 * on the server's thread and also accepts the connections.
+	 */
+	private class SelectorLoop implements Runnable {
+		private final int index;
+		private final Selector selector;
+		/** Accepted channels waiting to be registered with this loop's selector */
+		private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<SocketChannel>();
+		/** Connections with data left in their wrapped channel, only used by the loop's thread */
+		private final List<WebSocketImpl> iqueue = new LinkedList<WebSocketImpl>();
+		private final Set<WebSocketImpl> loopconnections = Collections.newSetFromMap( new ConcurrentHashMap<WebSocketImpl, Boolean>() );
+
+		SelectorLoop( int index , Selector selector ) {
+			this.index = index;
+			this.selector = selector;
+		}
+
+		void register( SocketChannel channel ) throws InterruptedException {
+			WebSocketImpl w = wsf.createWebSocket( WebSocketServer.this, drafts, channel.socket() );
+			try {
+				w.key = channel.register( selector, SelectionKey.OP_READ, w );
+				w.channel = wsf.wrapChannel( channel, w.key );
+			} catch ( IOException e ) {
+				try {
+					channel.close();
+				} catch ( IOException e1 ) {
+					// there is nothing that must be done here
+				}
+				if( WebSocketImpl.DEBUG )
+					System.out.println( "Connection closed because of" + e );
+				return;
+			}
+			w.setBufferPool( bufferPool );
+			loopconnections.add( w );
+			allocateBuffers( w );
+		}
+
+		SelectorStats getStats() {
+			int inqueued = 0;
+			int outqueued = 0;
+			for( WebSocketImpl w : loopconnections ) {
+				inqueued += w.inQueue.size();
+				outqueued += w.outQueue.size();
+			}
+			return new SelectorStats( index, loopconnections.size(), pending.size(), inqueued, outqueued );
+		}
+
+		/**
+		 * Close the selector, and the channels that were never registered with it.
+		 * Only called on the loop's own thread, once it has stopped selecting.
+		 */
+		private void close() {
+			SocketChannel channel;
+			while ( ( channel = pending.poll() ) != null ) {
+				try {
+					channel.close();
+				} catch ( IOException e ) {
+					// there is nothing that must be done here
+				}
+			}
+			try {
+				selector.close();
+			} catch ( IOException e ) {
+				onError( null, e );
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				select();
+			} finally {
+				close();
+			}
+		}
+
+		private void select() {
+			Thread thread = Thread.currentThread();
+			while ( !thread.isInterrupted() ) {
+				SelectionKey key = null;
+				WebSocketImpl conn = null;
+				try {
+					SocketChannel channel;
+					while ( ( channel = pending.poll() ) != null ) {
+						register( channel );
+					}
+
+					selector.select();
+					Set<SelectionKey> keys = selector.selectedKeys();
+					Iterator<SelectionKey> i = keys.iterator();
+
+					while ( i.hasNext() ) {
+						key = i.next();
+
+						if( !key.isValid() ) {
+							// Object o = key.attachment();
+							continue;
+						}
+
+						if( key.isAcceptable() ) {
+							if( !onConnect( key ) ) {
+								key.cancel();
+								continue;
+							}
+
+							i.remove();
+							accept( this );
+							continue;
+						}
+
+						if( key.isReadable() ) {
+							conn = (WebSocketImpl) key.attachment();
+							ByteBuffer buf = takeBuffer();
+							try {
+								if( SocketChannelIOHelper.read( buf, conn, conn.channel ) ) {
+									if( buf.hasRemaining() ) {
+										conn.inQueue.put( buf );
+										queue( conn );
+										i.remove();
+										if( conn.channel instanceof WrappedByteChannel ) {
+											if( ( (WrappedByteChannel) conn.channel ).isNeedRead() ) {
+												iqueue.add( conn );
+											}
+										}
+									} else
+										pushBuffer( buf );
+								} else {
+									pushBuffer( buf );
+								}
+							} catch ( IOException e ) {
+								pushBuffer( buf );
+								throw e;
+							}
+						}
+						if( key.isWritable() ) {
+							conn = (WebSocketImpl) key.attachment();
+							if( SocketChannelIOHelper.batch( conn, conn.channel ) ) {
+								if( key.isValid() )
+									key.interestOps( SelectionKey.OP_READ );
+							}
+						}
+					}
+					while ( !iqueue.isEmpty() ) {
+						conn = iqueue.remove( 0 );
+						WrappedByteChannel c = ( (WrappedByteChannel) conn.channel );
+						ByteBuffer buf = takeBuffer();
+						try {
+							if( SocketChannelIOHelper.readMore( buf, conn, c ) )
+								iqueue.add( conn );
+							if( buf.hasRemaining() ) {
+								conn.inQueue.put( buf );
+								queue( conn );
+							} else {
+								pushBuffer( buf );
+							}
+						} catch ( IOException e ) {
+							pushBuffer( buf );
+							throw e;
+						}
+
+					}
+				} catch ( CancelledKeyException e ) {
+					// an other thread may cancel the key
+				} catch ( ClosedByInterruptException e ) {
+					return; // do the same stuff as when InterruptedException is thrown
+				} catch ( IOException ex ) {
+					if( key != null )
+						key.cancel();
+					handleIOException( key, conn, ex );
+				} catch ( InterruptedException e ) {
+					return;// FIXME controlled shutdown (e.g. take care of buffermanagement)
+				} catch ( RuntimeException e ) {
+					// should hopefully never occur
+					handleFatal( null, e );
+					return;
+				}
+			}
+		}
+	}
+
 	public class WebSocketWorker extends Thread {
 
 		private BlockingQueue<WebSocketImpl> iqueue;
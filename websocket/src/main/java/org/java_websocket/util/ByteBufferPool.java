@@ -0,0 +1,123 @@
+package org.java_websocket.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of byte buffers, so reading and writing frames doesn't allocate a
+ * new buffer each time.
+ *
+ * Buffers come in power of two size classes from {@link #MIN_SIZE} up to the
+ * max pooled size, a request is served from the smallest class that fits.
+ * Bigger buffers are allocated on demand and aren't kept.
+ *
+ * Buffers returned with {@link #release(ByteBuffer)} must not be used again
+ * by the caller.
+ */
+public class ByteBufferPool {
+	public static final int MIN_SIZE = 4096;
+	private static final int MIN_SHIFT = 12;
+
+	private static final ByteBufferPool DEFAULT = new ByteBufferPool( true, 1024 * 1024, 64 );
+
+	private final boolean direct;
+	private final int maxBufferSize;
+	private final int maxBuffersPerSize;
+	private final ConcurrentLinkedQueue<ByteBuffer>[] free;
+	private final AtomicInteger[] freeCount;
+
+	private final AtomicLong allocated = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+
+	/**
+	 * @param direct
+	 *            allocate direct buffers, which the socket channels can read & write without an extra copy
+	 * @param maxBufferSize
+	 *            the biggest buffer kept in the pool, rounded up to a power of two
+	 * @param maxBuffersPerSize
+	 *            the max number of free buffers kept of each size
+	 */
+	@SuppressWarnings("unchecked")
+	public ByteBufferPool( boolean direct , int maxBufferSize , int maxBuffersPerSize ) {
+		this.direct = direct;
+		this.maxBuffersPerSize = maxBuffersPerSize;
+		int classes = sizeClass( Math.max( maxBufferSize, MIN_SIZE ) ) + 1;
+		this.maxBufferSize = MIN_SIZE << ( classes - 1 );
+		free = new ConcurrentLinkedQueue[ classes ];
+		freeCount = new AtomicInteger[ classes ];
+		for( int i = 0 ; i < classes ; i++ ) {
+			free[ i ] = new ConcurrentLinkedQueue<ByteBuffer>();
+			freeCount[ i ] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * The pool shared by connections that haven't been given one of their own
+	 */
+	public static ByteBufferPool getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Get a cleared buffer with at least <var>size</var> bytes capacity
+	 */
+	public ByteBuffer acquire( int size ) {
+		if( size > maxBufferSize ) {
+			allocated.incrementAndGet();
+			return allocate( size );
+		}
+		int sizeClass = sizeClass( size );
+		ByteBuffer buf = free[ sizeClass ].poll();
+		if( buf == null ) {
+			allocated.incrementAndGet();
+			return allocate( MIN_SIZE << sizeClass );
+		}
+		freeCount[ sizeClass ].decrementAndGet();
+		reused.incrementAndGet();
+		buf.clear();
+		return buf;
+	}
+
+	/**
+	 * Return a buffer to the pool.  Buffers that didn't come from a pool like
+	 * this one (of the wrong type or size) are left to the garbage collector.
+	 */
+	public void release( ByteBuffer buf ) {
+		if( buf == null || buf.isDirect() != direct || buf.isReadOnly() ) {
+			return;
+		}
+		int capacity = buf.capacity();
+		if( capacity < MIN_SIZE || capacity > maxBufferSize || Integer.bitCount( capacity ) != 1 ) {
+			return;
+		}
+		int sizeClass = sizeClass( capacity );
+		if( freeCount[ sizeClass ].incrementAndGet() > maxBuffersPerSize ) {
+			freeCount[ sizeClass ].decrementAndGet();
+			return;
+		}
+		free[ sizeClass ].offer( buf );
+	}
+
+	/** Number of buffers allocated, because there wasn't a free one of the right size */
+	public long getAllocatedCount() {
+		return allocated.get();
+	}
+
+	/** Number of buffers handed out again after being released */
+	public long getReusedCount() {
+		return reused.get();
+	}
+
+	private ByteBuffer allocate( int size ) {
+		return direct ? ByteBuffer.allocateDirect( size ) : ByteBuffer.allocate( size );
+	}
+
+	private static int sizeClass( int size ) {
+		if( size <= MIN_SIZE ) {
+			return 0;
+		}
+		return 32 - Integer.numberOfLeadingZeros( size - 1 ) - MIN_SHIFT;
+	}
+}
@@ -0,0 +1,184 @@
+package org.java_websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+
+import org.java_websocket.WebSocket.READYSTATE;
+import org.java_websocket.drafts.Draft_17;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.handshake.Handshakedata;
+import org.java_websocket.util.ByteBufferPool;
+import org.java_websocket.util.Charsetfunctions;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SocketChannelIOHelperTest {
+	private static class Listener extends WebSocketAdapter {
+		int closeCode = -1;
+
+		@Override
+		public void onWebsocketMessage( WebSocket conn, String message ) {
+		}
+
+		@Override
+		public void onWebsocketMessage( WebSocket conn, ByteBuffer blob ) {
+		}
+
+		@Override
+		public void onWebsocketOpen( WebSocket conn, Handshakedata d ) {
+		}
+
+		@Override
+		public void onWebsocketClose( WebSocket ws, int code, String reason, boolean remote ) {
+			closeCode = code;
+		}
+
+		@Override
+		public void onWebsocketClosing( WebSocket ws, int code, String reason, boolean remote ) {
+		}
+
+		@Override
+		public void onWebsocketCloseInitiated( WebSocket ws, int code, String reason ) {
+		}
+
+		@Override
+		public void onWebsocketError( WebSocket conn, Exception ex ) {
+		}
+
+		@Override
+		public void onWriteDemand( WebSocket conn ) {
+		}
+
+		@Override
+		public InetSocketAddress getLocalSocketAddress( WebSocket conn ) {
+			return null;
+		}
+
+		@Override
+		public InetSocketAddress getRemoteSocketAddress( WebSocket conn ) {
+			return null;
+		}
+	}
+
+	/** Writes at most maxWrite bytes a call, reads return the input then end of stream */
+	private static class Channel implements ByteChannel {
+		ByteArrayOutputStream written = new ByteArrayOutputStream();
+		int maxWrite = Integer.MAX_VALUE;
+		ByteBuffer input = ByteBuffer.allocate( 0 );
+		boolean eof = false;
+
+		@Override
+		public int read( ByteBuffer dst ) {
+			if( !input.hasRemaining() )
+				return eof ? -1 : 0;
+			int n = Math.min( dst.remaining(), input.remaining() );
+			ByteBuffer chunk = input.duplicate();
+			chunk.limit( chunk.position() + n );
+			dst.put( chunk );
+			input.position( input.position() + n );
+			return n;
+		}
+
+		@Override
+		public int write( ByteBuffer src ) {
+			int n = Math.min( src.remaining(), maxWrite );
+			for( int i = 0 ; i < n ; i++ ) {
+				written.write( src.get() );
+			}
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private ByteBufferPool pool;
+	private Listener listener;
+	private WebSocketImpl ws;
+	private Channel channel;
+
+	@Before
+	public void setUp() {
+		pool = new ByteBufferPool( false, 64 * 1024, 4 );
+		listener = new Listener();
+		ws = new WebSocketImpl( listener, new Draft_17() );
+		ws.setBufferPool( pool );
+		channel = new Channel();
+	}
+
+	private ByteBuffer queue( String text ) {
+		ByteBuffer buf = pool.acquire( 100 );
+		buf.put( Charsetfunctions.utf8Bytes( text ) );
+		buf.flip();
+		ws.outQueue.add( buf );
+		return buf;
+	}
+
+	@Test
+	public void batchReleasesWrittenBuffers() throws Exception {
+		queue( "hello " );
+		queue( "world" );
+
+		assertTrue( SocketChannelIOHelper.batch( ws, channel ) );
+		assertEquals( "hello world", channel.written.toString( "UTF-8" ) );
+		assertTrue( ws.outQueue.isEmpty() );
+
+		// Both went back to the pool
+		pool.acquire( 100 );
+		pool.acquire( 100 );
+		assertEquals( 2, pool.getReusedCount() );
+	}
+
+	@Test
+	public void partialWriteKeepsBuffer() throws Exception {
+		ByteBuffer first = queue( "hello " );
+		queue( "world" );
+		channel.maxWrite = 4;
+
+		assertFalse( SocketChannelIOHelper.batch( ws, channel ) );
+		assertEquals( "hell", channel.written.toString( "UTF-8" ) );
+		// Still being written, so not released
+		assertSame( first, ws.outQueue.peek() );
+		pool.acquire( 100 );
+		assertEquals( 0, pool.getReusedCount() );
+
+		channel.maxWrite = Integer.MAX_VALUE;
+		assertTrue( SocketChannelIOHelper.batch( ws, channel ) );
+		assertEquals( "hello world", channel.written.toString( "UTF-8" ) );
+	}
+
+	@Test
+	public void read() throws Exception {
+		ByteBuffer buf = ByteBuffer.allocate( 16 );
+		channel.input = ByteBuffer.wrap( Charsetfunctions.utf8Bytes( "abc" ) );
+
+		assertTrue( SocketChannelIOHelper.read( buf, ws, channel ) );
+		assertEquals( "abc", Charsetfunctions.stringUtf8( buf ) );
+
+		// Nothing to read
+		assertFalse( SocketChannelIOHelper.read( buf, ws, channel ) );
+		assertEquals( READYSTATE.NOT_YET_CONNECTED, ws.getReadyState() );
+
+		// End of stream closes the connection
+		channel.eof = true;
+		assertFalse( SocketChannelIOHelper.read( buf, ws, channel ) );
+		assertEquals( READYSTATE.CLOSED, ws.getReadyState() );
+		assertEquals( CloseFrame.NEVER_CONNECTED, listener.closeCode );
+	}
+}
@@ -0,0 +1,206 @@
+package org.java_websocket.drafts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.java_websocket.WebSocket.Role;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.util.ByteBufferPool;
+import org.java_websocket.util.Charsetfunctions;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class Draft_10Test {
+	private ByteBufferPool pool;
+	private Draft_17 client;
+	private Draft_17 server;
+
+	@Before
+	public void setUp() {
+		pool = new ByteBufferPool( false, 1024 * 1024, 8 );
+		client = new Draft_17();
+		client.setParseMode( Role.CLIENT );
+		// Its own pool, so only the server's buffers are counted
+		client.setBufferPool( new ByteBufferPool( false, 1024 * 1024, 8 ) );
+		server = new Draft_17();
+		server.setParseMode( Role.SERVER );
+		server.setBufferPool( pool );
+	}
+
+	private static String text( int length ) {
+		StringBuilder text = new StringBuilder( length );
+		for( int i = 0 ; i < length ; i++ ) {
+			text.append( (char) ( 'a' + i % 26 ) );
+		}
+		return text.toString();
+	}
+
+	/** The frames <var>draft</var> sends for each of the messages, one after the other */
+	private static byte[] encode( Draft draft, String... messages ) {
+		List<byte[]> frames = new ArrayList<byte[]>();
+		int size = 0;
+		for( String message : messages ) {
+			for( Framedata frame : draft.createFrames( message, draft.getRole() == Role.CLIENT ) ) {
+				ByteBuffer buf = draft.createBinaryFrame( frame );
+				byte[] bytes = new byte[ buf.remaining() ];
+				buf.get( bytes );
+				draft.getBufferPool().release( buf );
+				frames.add( bytes );
+				size += bytes.length;
+			}
+		}
+		ByteBuffer stream = ByteBuffer.allocate( size );
+		for( byte[] frame : frames ) {
+			stream.put( frame );
+		}
+		return stream.array();
+	}
+
+	/**
+	 * Feed the stream to <var>draft</var> in reads of the given sizes (repeating the last),
+	 * copying each payload out before the next read as the frames are only valid until then.
+	 */
+	private static List<String> decode( Draft draft, byte[] stream, int... readSizes ) throws InvalidDataException {
+		List<String> messages = new ArrayList<String>();
+		int pos = 0;
+		for( int i = 0 ; pos < stream.length ; i++ ) {
+			int size = Math.min( readSizes[ Math.min( i, readSizes.length - 1 ) ], stream.length - pos );
+			// A fresh buffer like a socket read, payloads are unmasked in place
+			ByteBuffer read = ByteBuffer.allocate( size );
+			read.put( stream, pos, size );
+			read.flip();
+			pos += size;
+			for( Framedata frame : draft.translateFrame( read ) ) {
+				messages.add( Charsetfunctions.stringUtf8( frame.getPayloadData() ) );
+			}
+		}
+		return messages;
+	}
+
+	@Test
+	public void payloadLengths() throws InvalidDataException {
+		// 7 bit lengths up to 125, 16 bit up to 65535, 64 bit after that
+		int[] lengths = { 0, 1, 125, 126, 1000, 65535, 65536, 200000 };
+		int[] lengthBytes = { 0, 0, 0, 2, 2, 2, 8, 8 };
+		for( int i = 0 ; i < lengths.length ; i++ ) {
+			String message = text( lengths[ i ] );
+			byte[] frame = encode( client, message );
+			assertEquals( 2 + lengthBytes[ i ] + 4 + lengths[ i ], frame.length );
+			int length = frame[ 1 ] & 0x7f;
+			if( lengthBytes[ i ] == 0 )
+				assertEquals( lengths[ i ], length );
+			else
+				assertEquals( lengthBytes[ i ] == 2 ? 126 : 127, length );
+
+			assertEquals( Arrays.asList( message ), decode( server, frame, frame.length ) );
+		}
+	}
+
+	@Test
+	public void maskedPayloads() throws InvalidDataException {
+		// Lengths that aren't a multiple of the four byte mask
+		String[] messages = { text( 1 ), text( 2 ), text( 3 ), text( 5 ), text( 131 ) };
+		for( String message : messages ) {
+			byte[] masked = encode( client, message );
+			assertTrue( ( masked[ 1 ] & 0x80 ) != 0 );
+			byte[] payload = Arrays.copyOfRange( masked, masked.length - message.length(), masked.length );
+			assertFalse( Arrays.equals( Charsetfunctions.utf8Bytes( message ), payload ) );
+			assertEquals( Arrays.asList( message ), decode( server, masked, masked.length ) );
+
+			// The server doesn't mask its frames
+			byte[] unmasked = encode( server, message );
+			assertEquals( 0, unmasked[ 1 ] & 0x80 );
+			assertEquals( Arrays.asList( message ), decode( client, unmasked, unmasked.length ) );
+		}
+	}
+
+	@Test
+	public void framesSplitAcrossReads() throws InvalidDataException {
+		String[] messages = { text( 10 ), text( 300 ), "", text( 70000 ), text( 125 ), text( 126 ) };
+		byte[] stream = encode( client, messages );
+		List<String> expected = Arrays.asList( messages );
+
+		// A byte at a time splits every header, including the 16 and 64 bit lengths and the mask key
+		assertEquals( expected, decode( server, stream, 1 ) );
+		assertEquals( expected, decode( server, stream, 3 ) );
+		assertEquals( expected, decode( server, stream, 7, 1, 4096 ) );
+		// Several frames in one read
+		assertEquals( expected, decode( server, stream, stream.length ) );
+	}
+
+	@Test
+	public void partialHeader() throws InvalidDataException {
+		byte[] frame = encode( client, text( 1000 ) );
+
+		// Only the first byte of the 16 bit length
+		ByteBuffer read = ByteBuffer.wrap( frame, 0, 3 ).slice();
+		assertTrue( server.translateFrame( read ).isEmpty() );
+		read = ByteBuffer.wrap( frame, 3, frame.length - 3 ).slice();
+		List<Framedata> frames = server.translateFrame( read );
+		assertEquals( 1, frames.size() );
+		assertEquals( text( 1000 ), Charsetfunctions.stringUtf8( frames.get( 0 ).getPayloadData() ) );
+	}
+
+	@Test
+	public void incompleteFramesArePooled() throws InvalidDataException {
+		byte[] frame = encode( client, text( 200000 ) );
+		long allocated = pool.getAllocatedCount();
+
+		assertEquals( Arrays.asList( text( 200000 ) ), decode( server, frame, 4096 ) );
+		assertEquals( allocated + 1, pool.getAllocatedCount() );
+
+		// The completed frame's buffer is released on the next read and used again
+		assertEquals( Arrays.asList( text( 200000 ) ), decode( server, frame, 4096 ) );
+		assertEquals( allocated + 1, pool.getAllocatedCount() );
+		assertEquals( 1, pool.getReusedCount() );
+	}
+
+	@Test
+	public void completedFrameIsNotReusedWhileInUse() throws InvalidDataException {
+		byte[] frame = encode( client, text( 10000 ) );
+		ByteBuffer first = ByteBuffer.wrap( frame, 0, 100 ).slice();
+		ByteBuffer rest = ByteBuffer.wrap( frame, 100, frame.length - 100 ).slice();
+		assertTrue( server.translateFrame( first ).isEmpty() );
+		List<Framedata> frames = server.translateFrame( rest );
+		ByteBuffer payload = frames.get( 0 ).getPayloadData();
+
+		// The payload is a view of a pooled buffer, which mustn't be handed out until the next read
+		ByteBuffer other = pool.acquire( frame.length );
+		while ( other.hasRemaining() ) {
+			other.put( (byte) 0 );
+		}
+		assertEquals( text( 10000 ), Charsetfunctions.stringUtf8( payload ) );
+	}
+
+	@Test
+	public void unmaskedInPlace() throws InvalidDataException {
+		byte[] frame = encode( client, "hello" );
+		ByteBuffer read = ByteBuffer.wrap( frame );
+		List<Framedata> frames = server.translateFrame( read );
+		// No copy, the payload shares the read buffer
+		assertArrayEquals( Charsetfunctions.utf8Bytes( "hello" ), Arrays.copyOfRange( frame, frame.length - 5, frame.length ) );
+		assertEquals( "hello", Charsetfunctions.stringUtf8( frames.get( 0 ).getPayloadData() ) );
+	}
+
+	@Test
+	public void toStringOfPooledPayload() throws InvalidDataException {
+		server.setBufferPool( new ByteBufferPool( true, 1024 * 1024, 8 ) );
+		byte[] frame = encode( client, "hello" );
+		// Split so the frame is joined in a direct buffer from the pool
+		assertTrue( server.translateFrame( ByteBuffer.wrap( frame, 0, 3 ).slice() ).isEmpty() );
+		Framedata joined = server.translateFrame( ByteBuffer.wrap( frame, 3, frame.length - 3 ).slice() ).get( 0 );
+		assertTrue( joined.getPayloadData().isDirect() );
+		assertTrue( joined.toString().endsWith( "payload:" + Arrays.toString( Charsetfunctions.utf8Bytes( "hello" ) ) + "}" ) );
+	}
+}
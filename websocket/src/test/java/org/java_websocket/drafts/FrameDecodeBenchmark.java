@@ -0,0 +1,79 @@
+package org.java_websocket.drafts;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.WebSocket.Role;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.Framedata;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decode throughput of the masked frames a browser sends the server, fed to
+ * the draft in socket sized reads so big frames take the incomplete frame
+ * path.  Run with -prof gc to see the allocation rate per frame.
+ *
+ * Run with: gradle :websocket:jmh -Pjmh.include=FrameDecodeBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDecodeBenchmark {
+	private static final int FRAMES = 100;
+
+	@Param({ "100", "2000", "50000" })
+	public int payloadSize;
+
+	private ByteBuffer stream;
+	private ByteBuffer read;
+	private Draft_17 server;
+
+	@Setup
+	public void setup() {
+		Draft_17 client = new Draft_17();
+		client.setParseMode( Role.CLIENT );
+		Random random = new Random( 1 );
+		StringBuilder text = new StringBuilder();
+		for( int i = 0 ; i < payloadSize ; i++ ) {
+			text.append( (char) ( 'a' + random.nextInt( 26 ) ) );
+		}
+
+		stream = ByteBuffer.allocateDirect( FRAMES * ( payloadSize + 14 ) );
+		for( int i = 0 ; i < FRAMES ; i++ ) {
+			for( Framedata frame : client.createFrames( text.toString(), true ) ) {
+				stream.put( client.createBinaryFrame( frame ) );
+			}
+		}
+		stream.flip();
+
+		read = ByteBuffer.allocateDirect( WebSocketImpl.RCVBUF );
+		server = new Draft_17();
+		server.setParseMode( Role.SERVER );
+	}
+
+	@Benchmark
+	public void decode( Blackhole blackhole ) throws InvalidDataException {
+		ByteBuffer source = stream.duplicate();
+		while ( source.hasRemaining() ) {
+			// Unmasking is done in place, so copy like a socket read would
+			ByteBuffer chunk = source.duplicate();
+			chunk.limit( Math.min( source.limit(), source.position() + read.capacity() ) );
+			source.position( chunk.limit() );
+			read.clear();
+			read.put( chunk );
+			read.flip();
+
+			List<Framedata> frames = server.translateFrame( read );
+			for( Framedata frame : frames ) {
+				blackhole.consume( frame.getPayloadData().get( 0 ) );
+			}
+		}
+	}
+}
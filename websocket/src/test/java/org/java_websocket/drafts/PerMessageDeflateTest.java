@@ -0,0 +1,212 @@
+package org.java_websocket.drafts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.LimitExedeedException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.util.ByteBufferPool;
+import org.java_websocket.util.Charsetfunctions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PerMessageDeflateTest {
+	private static final int LEVEL = Deflater.DEFAULT_COMPRESSION;
+	private final ByteBufferPool pool = new ByteBufferPool( false, 1024 * 1024, 8 );
+
+	private static String message( int n ) {
+		return "{\"method\": \"Network.responseReceived\", \"params\": {\"requestId\": \"" + n + "\", \"type\": \"Script\"}}";
+	}
+
+	private static ByteBuffer utf8( String text ) {
+		return ByteBuffer.wrap( Charsetfunctions.utf8Bytes( text ) );
+	}
+
+	private String decompress( PerMessageDeflate deflate, ByteBuffer compressed ) throws InvalidDataException {
+		ByteBuffer out = deflate.decompress( compressed, true, pool, Integer.MAX_VALUE );
+		String text = Charsetfunctions.stringUtf8( out );
+		pool.release( out );
+		return text;
+	}
+
+	@Test
+	public void acceptOffer() {
+		assertNull( PerMessageDeflate.acceptOffer( null, LEVEL ) );
+		assertNull( PerMessageDeflate.acceptOffer( "", LEVEL ) );
+		assertNull( PerMessageDeflate.acceptOffer( "x-webkit-deflate-frame", LEVEL ) );
+
+		PerMessageDeflate deflate = PerMessageDeflate.acceptOffer( "permessage-deflate", LEVEL );
+		assertEquals( "permessage-deflate", deflate.getResponseHeader() );
+
+		// What Chrome offers
+		deflate = PerMessageDeflate.acceptOffer( "permessage-deflate; client_max_window_bits", LEVEL );
+		assertEquals( "permessage-deflate", deflate.getResponseHeader() );
+
+		deflate = PerMessageDeflate.acceptOffer( "PerMessage-Deflate; Server_No_Context_Takeover; client_no_context_takeover", LEVEL );
+		assertEquals( "permessage-deflate; server_no_context_takeover; client_no_context_takeover", deflate.getResponseHeader() );
+	}
+
+	@Test
+	public void declineUnsupportedWindowBits() {
+		// The JDK's deflater always uses a 15 bit window
+		assertNull( PerMessageDeflate.acceptOffer( "permessage-deflate; server_max_window_bits=10", LEVEL ) );
+		assertNull( PerMessageDeflate.acceptOffer( "permessage-deflate; server_max_window_bits", LEVEL ) );
+		assertNotNull( PerMessageDeflate.acceptOffer( "permessage-deflate; server_max_window_bits=15", LEVEL ) );
+		assertNotNull( PerMessageDeflate.acceptOffer( "permessage-deflate; server_max_window_bits=\"15\"", LEVEL ) );
+		assertNull( PerMessageDeflate.acceptOffer( "permessage-deflate; unknown_param", LEVEL ) );
+
+		// Falls back to the next offer
+		PerMessageDeflate deflate = PerMessageDeflate.acceptOffer( "permessage-deflate; server_max_window_bits=10, permessage-deflate; server_no_context_takeover", LEVEL );
+		assertEquals( "permessage-deflate; server_no_context_takeover", deflate.getResponseHeader() );
+	}
+
+	@Test
+	public void acceptResponse() throws InvalidDataException {
+		assertNull( PerMessageDeflate.acceptResponse( null, LEVEL ) );
+		assertNull( PerMessageDeflate.acceptResponse( "", LEVEL ) );
+
+		PerMessageDeflate deflate = PerMessageDeflate.acceptResponse( "permessage-deflate; server_no_context_takeover; server_max_window_bits=10", LEVEL );
+		assertNull( deflate.getResponseHeader() );
+
+		try {
+			PerMessageDeflate.acceptResponse( "x-webkit-deflate-frame", LEVEL );
+			fail( "Accepted an extension that wasn't offered" );
+		} catch ( InvalidDataException e ) {
+			assertEquals( CloseFrame.EXTENSION, e.getCloseCode() );
+		}
+
+		try {
+			// We didn't offer to limit our window
+			PerMessageDeflate.acceptResponse( "permessage-deflate; client_max_window_bits=10", LEVEL );
+			fail( "Accepted a parameter that wasn't offered" );
+		} catch ( InvalidDataException e ) {
+			assertEquals( CloseFrame.EXTENSION, e.getCloseCode() );
+		}
+	}
+
+	@Test
+	public void contextTakeover() throws InvalidDataException {
+		PerMessageDeflate server = PerMessageDeflate.acceptOffer( "permessage-deflate", LEVEL );
+		PerMessageDeflate client = PerMessageDeflate.acceptResponse( server.getResponseHeader(), LEVEL );
+
+		int first = 0;
+		for( int i = 0 ; i < 10 ; i++ ) {
+			ByteBuffer compressed = server.compress( utf8( message( i ) ) );
+			if( i == 0 )
+				first = compressed.remaining();
+			else
+				// Refers back to the earlier messages
+				assertTrue( compressed.remaining() < first / 2 );
+			assertEquals( message( i ), decompress( client, compressed ) );
+
+			// And the other way
+			assertEquals( message( i ), decompress( server, client.compress( utf8( message( i ) ) ) ) );
+		}
+	}
+
+	@Test
+	public void serverNoContextTakeover() throws InvalidDataException {
+		PerMessageDeflate server = PerMessageDeflate.acceptOffer( "permessage-deflate; server_no_context_takeover", LEVEL );
+		PerMessageDeflate client = PerMessageDeflate.acceptResponse( server.getResponseHeader(), LEVEL );
+
+		int first = server.compress( utf8( message( 1 ) ) ).remaining();
+		for( int i = 0 ; i < 5 ; i++ ) {
+			ByteBuffer compressed = server.compress( utf8( message( 1 ) ) );
+			// Each message stands alone
+			assertEquals( first, compressed.remaining() );
+			assertEquals( message( 1 ), decompress( client, compressed ) );
+		}
+
+		// The client still keeps its context
+		int clientFirst = client.compress( utf8( message( 1 ) ) ).remaining();
+		assertTrue( client.compress( utf8( message( 1 ) ) ).remaining() < clientFirst );
+	}
+
+	@Test
+	public void clientNoContextTakeover() throws InvalidDataException {
+		PerMessageDeflate server = PerMessageDeflate.acceptOffer( "permessage-deflate; client_no_context_takeover", LEVEL );
+		assertEquals( "permessage-deflate; client_no_context_takeover", server.getResponseHeader() );
+		PerMessageDeflate client = PerMessageDeflate.acceptResponse( server.getResponseHeader(), LEVEL );
+
+		int first = client.compress( utf8( message( 1 ) ) ).remaining();
+		for( int i = 0 ; i < 5 ; i++ ) {
+			ByteBuffer compressed = client.compress( utf8( message( 1 ) ) );
+			assertEquals( first, compressed.remaining() );
+			assertEquals( message( 1 ), decompress( server, compressed ) );
+		}
+	}
+
+	@Test
+	public void fragmentedMessages() throws InvalidDataException {
+		PerMessageDeflate server = PerMessageDeflate.acceptOffer( "permessage-deflate", LEVEL );
+		PerMessageDeflate client = PerMessageDeflate.acceptResponse( server.getResponseHeader(), LEVEL );
+
+		StringBuilder big = new StringBuilder();
+		for( int i = 0 ; i < 2000 ; i++ ) {
+			big.append( message( i ) );
+		}
+		String[] messages = { message( 1 ), big.toString(), "", message( 2 ), big.toString() };
+
+		for( int fragmentSize : new int[]{ 1, 7, 1000 } ) {
+			for( String message : messages ) {
+				ByteBuffer compressed = client.compress( utf8( message ) );
+				// Each frame of the message is decompressed as it arrives
+				StringBuilder received = new StringBuilder();
+				do {
+					ByteBuffer fragment = compressed.duplicate();
+					fragment.limit( Math.min( compressed.limit(), compressed.position() + fragmentSize ) );
+					compressed.position( fragment.limit() );
+					ByteBuffer out = server.decompress( fragment, !compressed.hasRemaining(), pool, Integer.MAX_VALUE );
+					byte[] bytes = new byte[ out.remaining() ];
+					out.get( bytes );
+					pool.release( out );
+					received.append( new String( bytes, StandardCharsets.US_ASCII ) );
+				} while ( compressed.hasRemaining() );
+				assertEquals( message, received.toString() );
+			}
+		}
+	}
+
+	@Test
+	public void invalidData() {
+		PerMessageDeflate server = PerMessageDeflate.acceptOffer( "permessage-deflate", LEVEL );
+		try {
+			server.decompress( ByteBuffer.wrap( new byte[]{ (byte) 0xff, (byte) 0xff, 0x12 } ), true, pool, Integer.MAX_VALUE );
+			fail( "Decompressed invalid data" );
+		} catch ( InvalidDataException e ) {
+			assertEquals( CloseFrame.PROTOCOL_ERROR, e.getCloseCode() );
+		}
+	}
+
+	@Test
+	public void inflateLimit() throws InvalidDataException {
+		PerMessageDeflate server = PerMessageDeflate.acceptOffer( "permessage-deflate; client_no_context_takeover", LEVEL );
+		PerMessageDeflate client = PerMessageDeflate.acceptResponse( server.getResponseHeader(), LEVEL );
+
+		// A few KB that inflate to 4MB
+		ByteBuffer compressed = client.compress( ByteBuffer.allocate( 4 * 1024 * 1024 ) );
+		assertTrue( compressed.remaining() < 10000 );
+		try {
+			server.decompress( compressed.duplicate(), true, pool, 1024 * 1024 );
+			fail( "Inflated past the limit" );
+		} catch ( LimitExedeedException e ) {
+			assertEquals( CloseFrame.TOOBIG, e.getCloseCode() );
+		}
+
+		// Up to the limit is fine
+		server = PerMessageDeflate.acceptOffer( "permessage-deflate; client_no_context_takeover", LEVEL );
+		ByteBuffer out = server.decompress( compressed, true, pool, 4 * 1024 * 1024 );
+		assertEquals( 4 * 1024 * 1024, out.remaining() );
+		pool.release( out );
+	}
+}
@@ -0,0 +1,179 @@
+package org.java_websocket.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshake;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class WebSocketServerTest {
+	private static final int SELECTORS = 3;
+
+	private static class Server extends WebSocketServer {
+		final CountDownLatch messages;
+
+		Server( int expectedMessages ) {
+			super( new InetSocketAddress( "127.0.0.1", 0 ) );
+			messages = new CountDownLatch( expectedMessages );
+		}
+
+		@Override
+		public void onOpen( WebSocket conn, ClientHandshake handshake ) {
+		}
+
+		@Override
+		public void onClose( WebSocket conn, int code, String reason, boolean remote ) {
+		}
+
+		@Override
+		public void onMessage( WebSocket conn, String message ) {
+			conn.send( message );
+			messages.countDown();
+		}
+
+		@Override
+		public void onError( WebSocket conn, Exception ex ) {
+		}
+	}
+
+	private static class Client extends WebSocketClient {
+		final CountDownLatch reply = new CountDownLatch( 1 );
+
+		Client( int port ) {
+			super( URI.create( "ws://127.0.0.1:" + port ) );
+		}
+
+		@Override
+		public void onOpen( ServerHandshake handshakedata ) {
+		}
+
+		@Override
+		public void onMessage( String message ) {
+			reply.countDown();
+		}
+
+		@Override
+		public void onClose( int code, String reason, boolean remote ) {
+		}
+
+		@Override
+		public void onError( Exception ex ) {
+		}
+	}
+
+	private Server server;
+	private final List<Client> clients = new ArrayList<Client>();
+
+	@Before
+	public void setUp() throws Exception {
+		server = new Server( 2 * SELECTORS );
+		server.setSelectorCount( SELECTORS );
+		server.start();
+		waitFor( new Condition() {
+			public boolean met() {
+				return server.getSelectorStats().size() == SELECTORS && server.getPort() != 0;
+			}
+		} );
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for( Client client : clients ) {
+			client.close();
+		}
+		server.stop( 5000 );
+	}
+
+	private interface Condition {
+		boolean met();
+	}
+
+	private static void waitFor( Condition condition ) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		while ( !condition.met() ) {
+			assertTrue( "Timed out", System.currentTimeMillis() < end );
+			Thread.sleep( 10 );
+		}
+	}
+
+	private int totalConnections() {
+		int total = 0;
+		for( SelectorStats stats : server.getSelectorStats() ) {
+			total += stats.getConnections();
+		}
+		return total;
+	}
+
+	@Test
+	public void connectionsAreSpreadAcrossSelectors() throws Exception {
+		for( int i = 0 ; i < 2 * SELECTORS ; i++ ) {
+			Client client = new Client( server.getPort() );
+			clients.add( client );
+			assertTrue( client.connectBlocking() );
+		}
+		waitFor( new Condition() {
+			public boolean met() {
+				return totalConnections() == 2 * SELECTORS;
+			}
+		} );
+
+		List<SelectorStats> stats = server.getSelectorStats();
+		for( int i = 0 ; i < SELECTORS ; i++ ) {
+			// Handed out in turn
+			assertEquals( i, stats.get( i ).getIndex() );
+			assertEquals( 2, stats.get( i ).getConnections() );
+			assertEquals( 0, stats.get( i ).getPendingRegistrations() );
+		}
+
+		// Every loop reads and writes for its own connections
+		for( Client client : clients ) {
+			client.send( "ping" );
+		}
+		for( Client client : clients ) {
+			assertTrue( client.reply.await( 5, TimeUnit.SECONDS ) );
+		}
+		assertTrue( server.messages.await( 5, TimeUnit.SECONDS ) );
+
+		// Closed connections are removed from their loop
+		for( Client client : clients ) {
+			client.closeBlocking();
+		}
+		waitFor( new Condition() {
+			public boolean met() {
+				return totalConnections() == 0;
+			}
+		} );
+		for( SelectorStats loop : server.getSelectorStats() ) {
+			assertEquals( 0, loop.getInQueueDepth() );
+			assertEquals( 0, loop.getOutQueueDepth() );
+		}
+	}
+
+	@Test
+	public void stopEndsTheSelectorThreads() throws Exception {
+		Client client = new Client( server.getPort() );
+		clients.add( client );
+		assertTrue( client.connectBlocking() );
+
+		server.stop( 5000 );
+		for( Thread thread : Thread.getAllStackTraces().keySet() ) {
+			assertFalse( thread.getName(), thread.getName().startsWith( "WebsocketSelector" ) && thread.isAlive() );
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package org.java_websocket.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ByteBufferPoolTest {
+	@Test
+	public void sizeClasses() {
+		ByteBufferPool pool = new ByteBufferPool( true, 64 * 1024, 4 );
+		assertEquals( 4096, pool.acquire( 1 ).capacity() );
+		assertEquals( 4096, pool.acquire( 4096 ).capacity() );
+		assertEquals( 8192, pool.acquire( 4097 ).capacity() );
+		assertEquals( 65536, pool.acquire( 40000 ).capacity() );
+		assertTrue( pool.acquire( 1 ).isDirect() );
+
+		// Too big to pool, allocated at the size asked for
+		ByteBuffer big = pool.acquire( 100000 );
+		assertEquals( 100000, big.capacity() );
+		pool.release( big );
+		assertNotSame( big, pool.acquire( 100000 ) );
+		assertEquals( 0, pool.getReusedCount() );
+	}
+
+	@Test
+	public void reuse() {
+		ByteBufferPool pool = new ByteBufferPool( false, 64 * 1024, 4 );
+		ByteBuffer buf = pool.acquire( 5000 );
+		buf.put( (byte) 1 ).limit( 10 );
+		pool.release( buf );
+
+		ByteBuffer again = pool.acquire( 6000 );
+		assertSame( buf, again );
+		assertEquals( 0, again.position() );
+		assertEquals( again.capacity(), again.limit() );
+		assertEquals( 1, pool.getAllocatedCount() );
+		assertEquals( 1, pool.getReusedCount() );
+	}
+
+	@Test
+	public void notHandedOutTwice() {
+		ByteBufferPool pool = new ByteBufferPool( false, 64 * 1024, 4 );
+		ByteBuffer a = pool.acquire( 100 );
+		ByteBuffer b = pool.acquire( 100 );
+		assertNotSame( a, b );
+
+		pool.release( a );
+		assertSame( a, pool.acquire( 100 ) );
+		// a is in use again, so a new one is allocated
+		ByteBuffer c = pool.acquire( 100 );
+		assertNotSame( a, c );
+		assertNotSame( b, c );
+		assertEquals( 3, pool.getAllocatedCount() );
+	}
+
+	@Test
+	public void foreignBuffersAreNotPooled() {
+		ByteBufferPool pool = new ByteBufferPool( true, 64 * 1024, 4 );
+		pool.release( null );
+		pool.release( ByteBuffer.allocate( 4096 ) );
+		pool.release( ByteBuffer.allocateDirect( 4096 ).asReadOnlyBuffer() );
+		pool.release( ByteBuffer.allocateDirect( 5000 ) );
+		pool.release( ByteBuffer.allocateDirect( 1024 ) );
+
+		pool.acquire( 4096 );
+		pool.acquire( 5000 );
+		pool.acquire( 1024 );
+		assertEquals( 0, pool.getReusedCount() );
+	}
+
+	@Test
+	public void maxBuffersPerSize() {
+		ByteBufferPool pool = new ByteBufferPool( false, 64 * 1024, 2 );
+		List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+		for( int i = 0 ; i < 3 ; i++ ) {
+			buffers.add( pool.acquire( 100 ) );
+		}
+		for( ByteBuffer buf : buffers ) {
+			pool.release( buf );
+		}
+		for( int i = 0 ; i < 3 ; i++ ) {
+			pool.acquire( 100 );
+		}
+		assertEquals( 2, pool.getReusedCount() );
+		assertEquals( 4, pool.getAllocatedCount() );
+	}
+
+	@Test
+	public void concurrentUse() throws Exception {
+		final ByteBufferPool pool = new ByteBufferPool( false, 64 * 1024, 4 );
+		final Set<ByteBuffer> inUse = Collections.synchronizedSet( Collections.newSetFromMap( new IdentityHashMap<ByteBuffer, Boolean>() ) );
+		ExecutorService executor = Executors.newFixedThreadPool( 8 );
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for( int t = 0 ; t < 8 ; t++ ) {
+			final byte marker = (byte) t;
+			results.add( executor.submit( () -> {
+				for( int i = 0 ; i < 10000 ; i++ ) {
+					ByteBuffer buf = pool.acquire( 100 + i % 10000 );
+					if( !inUse.add( buf ) )
+						return false;
+					buf.put( 0, marker );
+					Thread.yield();
+					boolean untouched = buf.get( 0 ) == marker;
+					inUse.remove( buf );
+					pool.release( buf );
+					if( !untouched )
+						return false;
+				}
+				return true;
+			} ) );
+		}
+		executor.shutdown();
+		assertTrue( executor.awaitTermination( 30, TimeUnit.SECONDS ) );
+		for( Future<Boolean> result : results ) {
+			assertTrue( result.get() );
+		}
+		assertFalse( pool.getReusedCount() == 0 );
+	}
+}